@@ -0,0 +1,63 @@
+package com.goofy.GoofyDocs.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public final class BenchmarkData {
+
+    public static final String TEXT = "text";
+    public static final String BINARY = "binary";
+    public static final String REPETITIVE = "repetitive";
+
+    private static final String[] LEVELS = { "INFO", "DEBUG", "WARN", "ERROR" };
+    private static final String[] PATHS = { "/api/files", "/api/duplication/process", "/api/chunking/analyze" };
+
+    private BenchmarkData() {
+    }
+
+    public static byte[] generate(String type, int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        switch (type) {
+            case TEXT -> fillText(data, random);
+            case BINARY -> random.nextBytes(data);
+            case REPETITIVE -> fillRepetitive(data, random);
+            default -> throw new IllegalArgumentException("Unknown data type: " + type);
+        }
+        return data;
+    }
+
+    private static void fillText(byte[] data, Random random) {
+        int written = 0;
+        long timestamp = 1_700_000_000_000L;
+        while (written < data.length) {
+            timestamp += random.nextInt(1000);
+            String line = String.format("%d %s [worker-%d] %s id=%d status=%d%n",
+                    timestamp,
+                    LEVELS[random.nextInt(LEVELS.length)],
+                    random.nextInt(16),
+                    PATHS[random.nextInt(PATHS.length)],
+                    random.nextInt(1_000_000),
+                    random.nextInt(10) == 0 ? 500 : 200);
+            byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+            int length = Math.min(bytes.length, data.length - written);
+            System.arraycopy(bytes, 0, data, written, length);
+            written += length;
+        }
+    }
+
+    private static void fillRepetitive(byte[] data, Random random) {
+        byte[][] blocks = new byte[8][];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new byte[16 * 1024];
+            random.nextBytes(blocks[i]);
+        }
+        int written = 0;
+        while (written < data.length) {
+            byte[] block = blocks[random.nextInt(blocks.length)];
+            int length = Math.min(block.length, data.length - written);
+            System.arraycopy(block, 0, data, written, length);
+            written += length;
+        }
+    }
+}
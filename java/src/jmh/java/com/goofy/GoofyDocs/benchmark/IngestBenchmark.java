@@ -0,0 +1,219 @@
+package com.goofy.GoofyDocs.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.goofy.GoofyDocs.GoofyDocsApplication;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+import com.goofy.GoofyDocs.duplication.DuplicationService;
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.service.FileReconstructorService;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+public class IngestBenchmark {
+
+    private static final int SEGMENT_SIZE = 32 * 1024;
+    private static final int SHARED_SEGMENTS = 64;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    private static final double BYTES_PER_GB = BYTES_PER_MB * 1024.0;
+
+    private final int fileCount = Integer.getInteger("ingest.files", 200);
+    private final int minFileKb = Integer.getInteger("ingest.minFileKb", 64);
+    private final int maxFileKb = Integer.getInteger("ingest.maxFileKb", 8 * 1024);
+    private final double duplicateRatio = Double.parseDouble(System.getProperty("ingest.duplicateRatio", "0.5"));
+    private final int concurrency = Integer.getInteger("ingest.concurrency", 4);
+    private final long seed = Long.getLong("ingest.seed", 42L);
+    private final HashingAlgorithm algorithm = HashingAlgorithm.valueOf(
+            System.getProperty("ingest.algorithm", HashingAlgorithm.SHA256.name()));
+    private final String compression = System.getProperty("ingest.compression", "");
+    private final Path resultFile = Path.of(System.getProperty("ingest.resultFile", "target/ingest-benchmark.json"));
+
+    public static void main(String[] args) throws Exception {
+        new IngestBenchmark().run();
+    }
+
+    private void run() throws Exception {
+        Path corpusDir = Files.createTempDirectory("ingest-benchmark-");
+        List<File> corpus = generateCorpus(corpusDir);
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            System.setProperty("spring.devtools.restart.enabled", "false");
+            StatementCounter counter = new StatementCounter();
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(GoofyDocsApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .initializers(applicationContext -> applicationContext.getBeanFactory()
+                            .addBeanPostProcessor(counter))
+                    .run("--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                            "--spring.datasource.username=postgres",
+                            "--spring.datasource.password=postgres",
+                            "--logging.level.com.goofy.GoofyDocs=WARN");
+
+            try {
+                DuplicationService duplicationService = context.getBean(DuplicationService.class);
+                FileReconstructorService reconstructorService = context.getBean(FileReconstructorService.class);
+
+                List<Long> fileIds = new ArrayList<>();
+                long[] duplicateAndTotalChunks = new long[2];
+                Map<String, Object> upload = runPhase("upload", counter, corpus.size(), index -> {
+                    File file = corpus.get(index);
+                    Map<String, Object> result = compression.isEmpty()
+                            ? duplicationService.processAndStoreFile(file, file.getName(), file.length(), algorithm)
+                            : duplicationService.processAndStoreFileCompressed(file, file.getName(), file.length(),
+                                    algorithm, CompressionType.valueOf(compression));
+                    synchronized (fileIds) {
+                        fileIds.add((Long) result.get("fileId"));
+                        duplicateAndTotalChunks[0] += ((Number) result.get("duplicateChunks")).longValue();
+                        duplicateAndTotalChunks[1] += ((Number) result.get("totalChunks")).longValue();
+                    }
+                    return file.length();
+                });
+                upload.put("deduplicationRatio", duplicateAndTotalChunks[1] > 0
+                        ? (double) duplicateAndTotalChunks[0] / duplicateAndTotalChunks[1]
+                        : 0);
+
+                Map<String, Object> download = runPhase("download", counter, fileIds.size(),
+                        index -> reconstructorService.reconstructFile(fileIds.get(index)).length);
+
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("configuration", configuration());
+                report.put("upload", upload);
+                report.put("download", download);
+
+                Files.createDirectories(resultFile.toAbsolutePath().getParent());
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(resultFile.toFile(), report);
+                System.out.println("Results written to " + resultFile.toAbsolutePath());
+            } finally {
+                context.close();
+            }
+        } finally {
+            for (File file : corpus) {
+                Files.deleteIfExists(file.toPath());
+            }
+            Files.deleteIfExists(corpusDir);
+        }
+    }
+
+    private List<File> generateCorpus(Path directory) throws IOException {
+        Random random = new Random(seed);
+        byte[][] sharedSegments = new byte[SHARED_SEGMENTS][SEGMENT_SIZE];
+        for (byte[] segment : sharedSegments) {
+            random.nextBytes(segment);
+        }
+
+        double minLog = Math.log(minFileKb);
+        double maxLog = Math.log(Math.max(minFileKb, maxFileKb));
+        byte[] freshSegment = new byte[SEGMENT_SIZE];
+
+        List<File> corpus = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            int size = (int) Math.exp(minLog + random.nextDouble() * (maxLog - minLog)) * 1024;
+            byte[] content = new byte[size];
+            for (int offset = 0; offset < size; offset += SEGMENT_SIZE) {
+                byte[] segment;
+                if (random.nextDouble() < duplicateRatio) {
+                    segment = sharedSegments[random.nextInt(SHARED_SEGMENTS)];
+                } else {
+                    random.nextBytes(freshSegment);
+                    segment = freshSegment;
+                }
+                System.arraycopy(segment, 0, content, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+
+            Path file = directory.resolve("file-" + i + ".bin");
+            Files.write(file, content);
+            corpus.add(file.toFile());
+        }
+        return corpus;
+    }
+
+    private Map<String, Object> runPhase(String name, StatementCounter counter, int operations, Operation operation)
+            throws Exception {
+        long[] latencies = new long[operations];
+        long totalBytes = 0;
+
+        counter.reset();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<Long>> futures = new ArrayList<>(operations);
+            for (int i = 0; i < operations; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    long operationStart = System.nanoTime();
+                    long bytes = operation.execute(index);
+                    latencies[index] = System.nanoTime() - operationStart;
+                    return bytes;
+                }));
+            }
+            for (Future<Long> future : futures) {
+                totalBytes += future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long statements = counter.statements();
+        long commits = counter.commits();
+        long roundTrips = statements + commits;
+
+        Arrays.sort(latencies);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("operations", operations);
+        result.put("bytes", totalBytes);
+        result.put("elapsedSeconds", elapsedSeconds);
+        result.put("throughputMBps", totalBytes / BYTES_PER_MB / elapsedSeconds);
+        result.put("latencyP50Ms", percentile(latencies, 0.50) / 1e6);
+        result.put("latencyP99Ms", percentile(latencies, 0.99) / 1e6);
+        result.put("dbStatements", statements);
+        result.put("dbCommits", commits);
+        result.put("dbRoundTripsPerGB", totalBytes > 0 ? roundTrips / (totalBytes / BYTES_PER_GB) : 0);
+
+        System.out.printf("%-8s | %d ops | %.2f MB | %.2f MB/s | p50 %.2f ms | p99 %.2f ms | %.0f round trips/GB%n",
+                name, operations, totalBytes / BYTES_PER_MB, result.get("throughputMBps"),
+                result.get("latencyP50Ms"), result.get("latencyP99Ms"), result.get("dbRoundTripsPerGB"));
+        return result;
+    }
+
+    private static long percentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+
+    private Map<String, Object> configuration() {
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("files", fileCount);
+        configuration.put("minFileKb", minFileKb);
+        configuration.put("maxFileKb", maxFileKb);
+        configuration.put("duplicateRatio", duplicateRatio);
+        configuration.put("concurrency", concurrency);
+        configuration.put("seed", seed);
+        configuration.put("algorithm", algorithm.name());
+        configuration.put("compression", compression.isEmpty() ? "NONE" : compression);
+        return configuration;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        long execute(int index) throws Exception;
+    }
+}
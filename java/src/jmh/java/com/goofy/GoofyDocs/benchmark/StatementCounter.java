@@ -0,0 +1,64 @@
+package com.goofy.GoofyDocs.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Counts the statements and commits sent through every {@link DataSource} of the context, at the JDBC level
+ * so Hibernate, JdbcTemplate and Flyway are all seen. A batch counts as one statement, as it is one round trip.
+ */
+final class StatementCounter implements BeanPostProcessor {
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource dataSource ? wrap(dataSource, DataSource.class) : bean;
+    }
+
+    void reset() {
+        statements.reset();
+        commits.reset();
+    }
+
+    long statements() {
+        return statements.sum();
+    }
+
+    long commits() {
+        return commits.sum();
+    }
+
+    private Object wrap(Object target, Class<?> type) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (instance, method, args) -> {
+                    String name = method.getName();
+                    if (target instanceof Statement && name.startsWith("execute")) {
+                        statements.increment();
+                    } else if (target instanceof Connection && name.equals("commit")) {
+                        commits.increment();
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    return result != null && isJdbcResource(method.getReturnType())
+                            ? wrap(result, method.getReturnType())
+                            : result;
+                });
+    }
+
+    private static boolean isJdbcResource(Class<?> type) {
+        return type == Connection.class || Statement.class.isAssignableFrom(type);
+    }
+}
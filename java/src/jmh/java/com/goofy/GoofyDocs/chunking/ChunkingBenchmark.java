@@ -0,0 +1,57 @@
+package com.goofy.GoofyDocs.chunking;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.goofy.GoofyDocs.benchmark.BenchmarkData;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ChunkingBenchmark {
+
+    @Param({ "1", "16" })
+    public int fileSizeMb;
+
+    @Param({ BenchmarkData.TEXT, BenchmarkData.BINARY, BenchmarkData.REPETITIVE })
+    public String dataType;
+
+    private File file;
+    private ChunkingService chunkingService;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("chunking-benchmark-", ".dat");
+        Files.write(file.toPath(), BenchmarkData.generate(dataType, fileSizeMb * 1024 * 1024, 42));
+        chunkingService = new ChunkingService();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public List<Chunk> chunkFile() throws IOException {
+        return chunkingService.chunkFile(file);
+    }
+}
@@ -0,0 +1,154 @@
+package com.goofy.GoofyDocs.chunking;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.goofy.GoofyDocs.benchmark.BenchmarkData;
+
+/**
+ * Replays a corpus through every {@link ChunkingProfile} and reports dedup ratio, metadata overhead and
+ * chunking throughput side by side. Uses {@code -Devaluator.corpus=<dir>} when given, otherwise a synthetic
+ * corpus of documents and lightly edited revisions of them.
+ */
+public class ChunkingProfileEvaluator {
+
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    private static final String[] DATA_TYPES = { BenchmarkData.TEXT, BenchmarkData.BINARY, BenchmarkData.REPETITIVE };
+
+    private final String corpusDirectory = System.getProperty("evaluator.corpus", "");
+    private final int documents = Integer.getInteger("evaluator.documents", 20);
+    private final int revisions = Integer.getInteger("evaluator.revisions", 4);
+    private final int documentKb = Integer.getInteger("evaluator.documentKb", 1024);
+    private final long seed = Long.getLong("evaluator.seed", 42L);
+    // Approximate on-disk cost of a chunk row with its fingerprint, and of a file reference (manifest entry and
+    // chunk_ref row), including indexes
+    private final int chunkMetadataBytes = Integer.getInteger("evaluator.chunkMetadataBytes", 200);
+    private final int referenceMetadataBytes = Integer.getInteger("evaluator.referenceMetadataBytes", 100);
+    private final Path resultFile = Path.of(System.getProperty("evaluator.resultFile",
+            "target/chunking-profiles.json"));
+
+    public static void main(String[] args) throws Exception {
+        new ChunkingProfileEvaluator().run();
+    }
+
+    private void run() throws Exception {
+        Path generatedDir = null;
+        List<File> corpus;
+        if (corpusDirectory.isEmpty()) {
+            generatedDir = Files.createTempDirectory("chunking-profiles-");
+            corpus = generateCorpus(generatedDir);
+        } else {
+            try (Stream<Path> paths = Files.walk(Path.of(corpusDirectory))) {
+                corpus = paths.filter(Files::isRegularFile).map(Path::toFile).toList();
+            }
+        }
+
+        try {
+            ChunkingService chunkingService = new ChunkingService();
+            Map<String, Object> profiles = new LinkedHashMap<>();
+            for (ChunkingProfile profile : ChunkingProfile.values()) {
+                profiles.put(profile.name(), evaluate(chunkingService, profile, corpus));
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("corpus", corpusDirectory.isEmpty() ? "synthetic" : corpusDirectory);
+            report.put("files", corpus.size());
+            report.put("profiles", profiles);
+
+            Files.createDirectories(resultFile.toAbsolutePath().getParent());
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(resultFile.toFile(), report);
+            System.out.println("Results written to " + resultFile.toAbsolutePath());
+        } finally {
+            if (generatedDir != null) {
+                for (File file : corpus) {
+                    Files.deleteIfExists(file.toPath());
+                }
+                Files.deleteIfExists(generatedDir);
+            }
+        }
+    }
+
+    private Map<String, Object> evaluate(ChunkingService chunkingService, ChunkingProfile profile, List<File> corpus)
+            throws IOException {
+        Set<String> uniqueHashes = new HashSet<>();
+        long totalBytes = 0;
+        long storedBytes = 0;
+        long chunks = 0;
+
+        long start = System.nanoTime();
+        for (File file : corpus) {
+            for (Chunk chunk : chunkingService.chunkFile(file, profile)) {
+                chunks++;
+                totalBytes += chunk.getOriginalSize();
+                if (uniqueHashes.add(chunk.getHash())) {
+                    storedBytes += chunk.getOriginalSize();
+                }
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        long uniqueChunks = uniqueHashes.size();
+        long metadataBytes = uniqueChunks * chunkMetadataBytes + chunks * referenceMetadataBytes;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("minChunkSize", profile.getMinChunkSize());
+        result.put("maxChunkSize", profile.getMaxChunkSize());
+        result.put("chunks", chunks);
+        result.put("uniqueChunks", uniqueChunks);
+        result.put("averageChunkSize", chunks > 0 ? (double) totalBytes / chunks : 0);
+        result.put("totalBytes", totalBytes);
+        result.put("storedBytes", storedBytes);
+        result.put("deduplicationRatio", totalBytes > 0 ? 1 - (double) storedBytes / totalBytes : 0);
+        result.put("metadataBytes", metadataBytes);
+        result.put("metadataOverhead", storedBytes > 0 ? (double) metadataBytes / storedBytes : 0);
+        result.put("netSavedBytes", totalBytes - storedBytes - metadataBytes);
+        result.put("throughputMBps", totalBytes / BYTES_PER_MB / elapsedSeconds);
+
+        System.out.printf("%-8s | %d chunks | avg %.1f KB | dedup %.3f | metadata %.4f | %.2f MB/s%n",
+                profile.name(), chunks, (double) result.get("averageChunkSize") / 1024,
+                result.get("deduplicationRatio"), result.get("metadataOverhead"), result.get("throughputMBps"));
+        return result;
+    }
+
+    private List<File> generateCorpus(Path directory) throws IOException {
+        Random random = new Random(seed);
+        List<File> corpus = new ArrayList<>();
+        for (int document = 0; document < documents; document++) {
+            String type = DATA_TYPES[document % DATA_TYPES.length];
+            byte[] content = BenchmarkData.generate(type, documentKb * 1024, random.nextLong());
+            for (int revision = 0; revision <= revisions; revision++) {
+                Path file = directory.resolve("doc-" + document + "-rev-" + revision + "." + type);
+                Files.write(file, content);
+                corpus.add(file.toFile());
+                content = edit(content, random);
+            }
+        }
+        return corpus;
+    }
+
+    private static byte[] edit(byte[] content, Random random) {
+        byte[] edited = content;
+        for (int edit = 0; edit < 3; edit++) {
+            int offset = random.nextInt(edited.length);
+            byte[] insertion = new byte[1 + random.nextInt(256)];
+            random.nextBytes(insertion);
+            byte[] next = new byte[edited.length + insertion.length];
+            System.arraycopy(edited, 0, next, 0, offset);
+            System.arraycopy(insertion, 0, next, offset, insertion.length);
+            System.arraycopy(edited, offset, next, offset + insertion.length, edited.length - offset);
+            edited = next;
+        }
+        return edited;
+    }
+}
@@ -0,0 +1,50 @@
+package com.goofy.GoofyDocs.chunking;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.goofy.GoofyDocs.benchmark.BenchmarkData;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class RabinKarpBenchmark {
+
+    private static final int DATA_SIZE = 1024 * 1024;
+
+    private byte[] data;
+    private RabinKarp rabinKarp;
+
+    @Setup
+    public void setup() {
+        data = BenchmarkData.generate(BenchmarkData.BINARY, DATA_SIZE, 42);
+        rabinKarp = new RabinKarp();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATA_SIZE)
+    public int pushByte() {
+        rabinKarp.reset();
+        int boundaries = 0;
+        for (byte b : data) {
+            if (rabinKarp.pushByte(b)) {
+                boundaries++;
+            }
+        }
+        return boundaries;
+    }
+}
@@ -0,0 +1,58 @@
+package com.goofy.GoofyDocs.compression;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.goofy.GoofyDocs.benchmark.BenchmarkData;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CompressionBenchmark {
+
+    @Param({ "LZ4", "ZSTD", "SNAPPY" })
+    public CompressionService.CompressionType type;
+
+    @Param({ "4096", "16384", "65536" })
+    public int chunkSize;
+
+    @Param({ BenchmarkData.TEXT, BenchmarkData.BINARY, BenchmarkData.REPETITIVE })
+    public String dataType;
+
+    private CompressionService compressionService;
+    private byte[] chunk;
+    private byte[] compressedChunk;
+    private byte[] output;
+
+    @Setup
+    public void setup() {
+        compressionService = new CompressionService();
+        chunk = BenchmarkData.generate(dataType, chunkSize, 42);
+        compressedChunk = compressionService.compress(chunk, type);
+        output = new byte[chunkSize];
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return compressionService.compress(chunk, type);
+    }
+
+    @Benchmark
+    public int decompress() {
+        return compressionService.decompress(compressedChunk, type, output, 0, chunkSize);
+    }
+}
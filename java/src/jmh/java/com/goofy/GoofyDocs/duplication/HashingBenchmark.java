@@ -0,0 +1,47 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.goofy.GoofyDocs.benchmark.BenchmarkData;
+import com.goofy.GoofyDocs.chunking.ChunkingService;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class HashingBenchmark {
+
+    @Param({ "SHA1", "SHA256", "BLAKE3" })
+    public HashingAlgorithm algorithm;
+
+    @Param({ "4096", "16384", "65536" })
+    public int chunkSize;
+
+    private byte[] chunk;
+    private DuplicationService duplicationService;
+
+    @Setup
+    public void setup() {
+        chunk = BenchmarkData.generate(BenchmarkData.BINARY, chunkSize, 42);
+        duplicationService = new DuplicationService(new ChunkingService());
+    }
+
+    @Benchmark
+    public String calculateHash() {
+        return duplicationService.calculateHash(chunk, algorithm);
+    }
+}
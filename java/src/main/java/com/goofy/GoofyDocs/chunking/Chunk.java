@@ -1,33 +1,60 @@
 package com.goofy.GoofyDocs.chunking;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HexFormat;
 
 public class Chunk {
     private final byte[] data;
-    private final String hash;
+    private volatile String hash;
     private final int originalSize;
-    private final int position;
+    private final long position;
 
-    public Chunk(byte[] data, String hash, int position) {
+    public Chunk(byte[] data, String hash, long position) {
         this.data = Arrays.copyOf(data, data.length);
         this.hash = hash;
         this.originalSize = data.length;
         this.position = position;
     }
 
+    // The chunker hands over a fresh array and leaves the SHA-256 to the (rare) callers of getHash()
+    Chunk(byte[] data, long position) {
+        this.data = data;
+        this.originalSize = data.length;
+        this.position = position;
+    }
+
     public byte[] getData() {
         return Arrays.copyOf(data, data.length);
     }
 
+    /**
+     * The chunk's own array, without the copy of {@link #getData()}, for the ingest path that reads each chunk
+     * several times; it must not be modified.
+     */
+    public byte[] data() {
+        return data;
+    }
+
     public String getHash() {
-        return hash;
+        String value = hash;
+        if (value == null) {
+            try {
+                value = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+            hash = value;
+        }
+        return value;
     }
 
     public int getOriginalSize() {
         return originalSize;
     }
 
-    public int getPosition() {
+    public long getPosition() {
         return position;
     }
 }
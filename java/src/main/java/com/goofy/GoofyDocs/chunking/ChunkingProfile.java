@@ -0,0 +1,50 @@
+package com.goofy.GoofyDocs.chunking;
+
+public enum ChunkingProfile {
+    DEFAULT(1, 4 * 1024, 64 * 1024, 48, 13),
+    SMALL(2, 2 * 1024, 16 * 1024, 48, 11),
+    LARGE(3, 16 * 1024, 256 * 1024, 48, 15);
+
+    private final short id;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final int windowSize;
+    private final int mask;
+
+    ChunkingProfile(int id, int minChunkSize, int maxChunkSize, int windowSize, int maskBits) {
+        this.id = (short) id;
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.windowSize = windowSize;
+        this.mask = (1 << maskBits) - 1;
+    }
+
+    public short getId() {
+        return id;
+    }
+
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public static ChunkingProfile fromId(short id) {
+        for (ChunkingProfile profile : values()) {
+            if (profile.id == id) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown chunking profile id: " + id);
+    }
+}
@@ -0,0 +1,48 @@
+package com.goofy.GoofyDocs.chunking;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ChunkingProfileResolver {
+
+    private final ChunkingProfile defaultProfile;
+    private final Map<String, ChunkingProfile> profilesByExtension = new HashMap<>();
+
+    @Autowired
+    public ChunkingProfileResolver(
+            @Value("${goofydocs.chunking.default-profile:DEFAULT}") ChunkingProfile defaultProfile,
+            @Value("${goofydocs.chunking.extension-profiles:}") String extensionProfiles) {
+        this.defaultProfile = defaultProfile;
+        for (String entry : extensionProfiles.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid extension profile mapping: " + entry);
+            }
+            profilesByExtension.put(parts[0].trim().toLowerCase(Locale.ROOT),
+                    ChunkingProfile.valueOf(parts[1].trim().toUpperCase(Locale.ROOT)));
+        }
+    }
+
+    public static ChunkingProfileResolver defaults() {
+        return new ChunkingProfileResolver(ChunkingProfile.DEFAULT, "");
+    }
+
+    public ChunkingProfile resolve(ChunkingProfile requested, String extension) {
+        if (requested != null) {
+            return requested;
+        }
+        if (extension == null || extension.isEmpty()) {
+            return defaultProfile;
+        }
+        return profilesByExtension.getOrDefault(extension.toLowerCase(Locale.ROOT), defaultProfile);
+    }
+}
@@ -1,76 +1,188 @@
 package com.goofy.GoofyDocs.chunking;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
+
 @Service
 public class ChunkingService {
-    private static final int MIN_CHUNK_SIZE = 4 * 1024;
-    private static final int MAX_CHUNK_SIZE = 64 * 1024;
-    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final IngestMetrics metrics;
 
-    private final RabinKarp rabinKarp;
-    private final MessageDigest messageDigest;
+    public ChunkingService() {
+        this(IngestMetrics.noop());
+    }
 
-    public ChunkingService() throws NoSuchAlgorithmException {
-        this.rabinKarp = new RabinKarp();
-        this.messageDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+    @Autowired
+    public ChunkingService(IngestMetrics metrics) {
+        this.metrics = metrics;
     }
 
     public List<Chunk> chunkFile(File file) throws IOException {
+        return chunkFile(file, ChunkingProfile.DEFAULT);
+    }
+
+    public List<Chunk> chunkFile(File file, ChunkingProfile profile) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        chunkFile(file, profile, 0, chunks::add);
+        return chunks;
+    }
+
+    /**
+     * Streams the chunks of {@code file} to {@code sink} as they are cut, starting at {@code startOffset}.
+     * The rolling hash restarts at every boundary, so resuming at the end offset of a chunk yields the same
+     * chunks as the uninterrupted run. Returns the number of bytes read.
+     */
+    public long chunkFile(File file, ChunkingProfile profile, long startOffset, ChunkSink sink) throws IOException {
+        try (FileInputStream fileInput = new FileInputStream(file);
+                InputStream in = new BufferedInputStream(fileInput, READ_BUFFER_SIZE)) {
+            fileInput.getChannel().position(startOffset);
+            return chunkStream(in, profile, startOffset, sink);
+        }
+    }
+
+    public List<Chunk> chunkBytes(byte[] data, ChunkingProfile profile) throws IOException {
         List<Chunk> chunks = new ArrayList<>();
-        try (FileInputStream fis = new FileInputStream(file)) {
-            ByteArrayOutputStream currentChunk = new ByteArrayOutputStream();
-            int currentPosition = 0;
-            int b;
-            int currentChunkSize = 0;
-
-            while ((b = fis.read()) != -1) {
-                currentChunk.write(b);
+        chunkStream(new ByteArrayInputStream(data), profile, 0, chunks::add);
+        return chunks;
+    }
+
+    /**
+     * Chunks {@code in} (which should be buffered) to its end; positions start at {@code startPosition}.
+     */
+    public long chunkStream(InputStream in, ChunkingProfile profile, long startPosition, ChunkSink sink)
+            throws IOException {
+        long start = System.nanoTime();
+        RabinKarp rabinKarp = new RabinKarp(profile.getWindowSize(), profile.getMask());
+        int minChunkSize = profile.getMinChunkSize();
+        int maxChunkSize = profile.getMaxChunkSize();
+
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int chunkCount = 0;
+        // Time spent in the sink is the caller's work, not chunking
+        long sinkNanos = 0;
+        ByteArrayOutputStream currentChunk = new ByteArrayOutputStream(maxChunkSize);
+        long currentPosition = startPosition;
+        int currentChunkSize = 0;
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            int sliceStart = 0;
+            for (int i = 0; i < read; i++) {
                 currentChunkSize++;
 
-                if (currentChunkSize >= MIN_CHUNK_SIZE && rabinKarp.pushByte((byte) b) ||
-                        currentChunkSize >= MAX_CHUNK_SIZE) {
+                if (currentChunkSize >= minChunkSize && rabinKarp.pushByte(buffer[i]) ||
+                        currentChunkSize >= maxChunkSize) {
+                    currentChunk.write(buffer, sliceStart, i + 1 - sliceStart);
 
-                    byte[] chunkData = currentChunk.toByteArray();
-                    String hash = calculateHash(chunkData);
-                    chunks.add(new Chunk(chunkData, hash, currentPosition));
+                    long sinkStart = System.nanoTime();
+                    sink.accept(new Chunk(currentChunk.toByteArray(), currentPosition));
+                    sinkNanos += System.nanoTime() - sinkStart;
+                    chunkCount++;
 
+                    sliceStart = i + 1;
                     currentPosition += currentChunkSize;
                     currentChunkSize = 0;
                     currentChunk.reset();
                     rabinKarp.reset();
                 }
             }
+            currentChunk.write(buffer, sliceStart, read - sliceStart);
+        }
 
-            if (currentChunkSize > 0) {
-                byte[] chunkData = currentChunk.toByteArray();
-                String hash = calculateHash(chunkData);
-                chunks.add(new Chunk(chunkData, hash, currentPosition));
-            }
+        if (currentChunkSize > 0) {
+            long sinkStart = System.nanoTime();
+            sink.accept(new Chunk(currentChunk.toByteArray(), currentPosition));
+            sinkNanos += System.nanoTime() - sinkStart;
+            chunkCount++;
         }
+        long totalBytes = currentPosition + currentChunkSize - startPosition;
 
-        return chunks;
+        metrics.recordChunking(profile, System.nanoTime() - start - sinkNanos, chunkCount, totalBytes);
+        return totalBytes;
     }
 
-    private String calculateHash(byte[] data) {
-        messageDigest.reset();
-        byte[] hash = messageDigest.digest(data);
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1)
-                hexString.append('0');
-            hexString.append(hex);
+    /**
+     * Finds the same boundaries as {@link #chunkStream} without building chunks: the bytes of each chunk are
+     * handed to {@code sink} as slices of the read buffer, followed by its boundary, so nothing outlives a
+     * buffer. Returns the number of bytes read.
+     */
+    public long scanStream(InputStream in, ChunkingProfile profile, ScanSink sink) throws IOException {
+        long start = System.nanoTime();
+        RabinKarp rabinKarp = new RabinKarp(profile.getWindowSize(), profile.getMask());
+        int minChunkSize = profile.getMinChunkSize();
+        int maxChunkSize = profile.getMaxChunkSize();
+
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int chunkCount = 0;
+        long sinkNanos = 0;
+        long currentPosition = 0;
+        int currentChunkSize = 0;
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            int sliceStart = 0;
+            for (int i = 0; i < read; i++) {
+                currentChunkSize++;
+
+                if (currentChunkSize >= minChunkSize && rabinKarp.pushByte(buffer[i]) ||
+                        currentChunkSize >= maxChunkSize) {
+
+                    long sinkStart = System.nanoTime();
+                    sink.update(buffer, sliceStart, i + 1 - sliceStart);
+                    sink.boundary(currentPosition, currentChunkSize);
+                    sinkNanos += System.nanoTime() - sinkStart;
+                    chunkCount++;
+
+                    sliceStart = i + 1;
+                    currentPosition += currentChunkSize;
+                    currentChunkSize = 0;
+                    rabinKarp.reset();
+                }
+            }
+            if (sliceStart < read) {
+                long sinkStart = System.nanoTime();
+                sink.update(buffer, sliceStart, read - sliceStart);
+                sinkNanos += System.nanoTime() - sinkStart;
+            }
         }
-        return hexString.toString();
+
+        if (currentChunkSize > 0) {
+            long sinkStart = System.nanoTime();
+            sink.boundary(currentPosition, currentChunkSize);
+            sinkNanos += System.nanoTime() - sinkStart;
+            chunkCount++;
+        }
+        long totalBytes = currentPosition + currentChunkSize;
+
+        metrics.recordChunking(profile, System.nanoTime() - start - sinkNanos, chunkCount, totalBytes);
+        return totalBytes;
+    }
+
+    @FunctionalInterface
+    public interface ChunkSink {
+        void accept(Chunk chunk) throws IOException;
+    }
+
+    /**
+     * Receives the content of the current chunk piece by piece, then its boundary. The slices are only valid
+     * during the call.
+     */
+    public interface ScanSink {
+        void update(byte[] data, int offset, int length);
+
+        void boundary(long position, int length) throws IOException;
     }
 }
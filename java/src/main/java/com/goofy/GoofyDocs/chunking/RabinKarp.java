@@ -4,13 +4,18 @@ import org.rabinfingerprint.fingerprint.RabinFingerprintLong;
 import org.rabinfingerprint.polynomial.Polynomial;
 
 public class RabinKarp {
-    private static final int WINDOW_SIZE = 48;
-    private static final int MASK = (1 << 13) - 1;
-
     private final RabinFingerprintLong fingerprint;
+    private final int windowSize;
+    private final int mask;
     private int windowPos;
 
     public RabinKarp() {
+        this(ChunkingProfile.DEFAULT.getWindowSize(), ChunkingProfile.DEFAULT.getMask());
+    }
+
+    public RabinKarp(int windowSize, int mask) {
+        this.windowSize = windowSize;
+        this.mask = mask;
         this.windowPos = 0;
         Polynomial polynomial = Polynomial.createFromLong(9223372036854775783L);
         this.fingerprint = new RabinFingerprintLong(polynomial);
@@ -25,6 +30,6 @@ public class RabinKarp {
         fingerprint.pushByte(b);
         windowPos++;
 
-        return windowPos >= WINDOW_SIZE && (fingerprint.getFingerprintLong() & MASK) == 0;
+        return windowPos >= windowSize && (fingerprint.getFingerprintLong() & mask) == 0;
     }
 }
@@ -0,0 +1,98 @@
+package com.goofy.GoofyDocs.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+
+/**
+ * Binary envelope wrapped around every stored compressed chunk.
+ *
+ * <pre>
+ * offset size field
+ *      0    2 magic "GD"
+ *      2    1 format version
+ *      3    1 codec id
+ *      4    4 raw (uncompressed) length
+ *      8    8 dictionary id (0 when none; otherwise the id of the base chunk the payload is a delta of)
+ *     16    4 CRC32C of bytes [0, 16) followed by the payload
+ *     20    n codec payload
+ * </pre>
+ */
+public final class ChunkEnvelope {
+    public static final int HEADER_SIZE = 20;
+    public static final long NO_DICTIONARY = 0L;
+
+    private static final short MAGIC = 0x4744;
+    private static final byte VERSION = 1;
+    private static final int CHECKSUM_OFFSET = 16;
+
+    public record Header(CompressionType codec, int rawLength, long dictionaryId, int payloadLength) {
+        public int payloadOffset() {
+            return HEADER_SIZE;
+        }
+    }
+
+    private ChunkEnvelope() {
+    }
+
+    public static boolean isEnveloped(byte[] data) {
+        return data.length >= HEADER_SIZE
+                && ByteBuffer.wrap(data).getShort() == MAGIC
+                && data[2] == VERSION;
+    }
+
+    public static void writeHeader(byte[] buffer, CompressionType codec, int rawLength, long dictionaryId,
+            int payloadLength) {
+        ByteBuffer header = ByteBuffer.wrap(buffer, 0, HEADER_SIZE);
+        header.putShort(MAGIC);
+        header.put(VERSION);
+        header.put(codec.getId());
+        header.putInt(rawLength);
+        header.putLong(dictionaryId);
+        header.putInt(checksum(buffer, payloadLength));
+    }
+
+    public static int peekRawLength(byte[] data) {
+        if (!isEnveloped(data)) {
+            throw new CorruptChunkException("Not an enveloped chunk");
+        }
+        return ByteBuffer.wrap(data).getInt(4);
+    }
+
+    public static long peekDictionaryId(byte[] data) {
+        return isEnveloped(data) ? ByteBuffer.wrap(data).getLong(8) : NO_DICTIONARY;
+    }
+
+    public static Header read(byte[] data) {
+        if (!isEnveloped(data)) {
+            throw new CorruptChunkException("Not an enveloped chunk");
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(data);
+        header.position(3);
+        CompressionType codec = CompressionType.fromId(header.get());
+        int rawLength = header.getInt();
+        long dictionaryId = header.getLong();
+        int storedChecksum = header.getInt();
+
+        int payloadLength = data.length - HEADER_SIZE;
+        if (rawLength <= 0) {
+            throw new CorruptChunkException("Invalid raw length in chunk envelope: " + rawLength);
+        }
+        int actualChecksum = checksum(data, payloadLength);
+        if (actualChecksum != storedChecksum) {
+            throw new CorruptChunkException(String.format(
+                    "Chunk checksum mismatch: stored=%08x, computed=%08x", storedChecksum, actualChecksum));
+        }
+
+        return new Header(codec, rawLength, dictionaryId, payloadLength);
+    }
+
+    private static int checksum(byte[] buffer, int payloadLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer, 0, CHECKSUM_OFFSET);
+        crc.update(buffer, HEADER_SIZE, payloadLength);
+        return (int) crc.getValue();
+    }
+}
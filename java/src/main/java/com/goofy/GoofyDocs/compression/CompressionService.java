@@ -1,6 +1,7 @@
 package com.goofy.GoofyDocs.compression;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,14 +17,36 @@ import net.jpountz.lz4.LZ4FastDecompressor;
 @Service
 public class CompressionService {
     private static final Logger logger = LoggerFactory.getLogger(CompressionService.class);
+    private static final int MAX_ORIGINAL_LENGTH = 100_000_000;
+    private static final int LEGACY_LZ4_HEADER_SIZE = 8;
+
     private final LZ4Factory lz4Factory;
     private final LZ4Compressor lz4Compressor;
     private final LZ4FastDecompressor lz4Decompressor;
 
     public enum CompressionType {
-        LZ4,
-        ZSTD,
-        SNAPPY
+        LZ4(1),
+        ZSTD(2),
+        SNAPPY(3);
+
+        private final byte id;
+
+        CompressionType(int id) {
+            this.id = (byte) id;
+        }
+
+        public byte getId() {
+            return id;
+        }
+
+        public static CompressionType fromId(byte id) {
+            for (CompressionType type : values()) {
+                if (type.id == id) {
+                    return type;
+                }
+            }
+            throw new CorruptChunkException("Unknown codec id: " + id);
+        }
     }
 
     public CompressionService() {
@@ -33,24 +56,95 @@ public class CompressionService {
     }
 
     public byte[] compress(byte[] data, CompressionType type) {
+        return compress(data, type, Zstd.defaultCompressionLevel());
+    }
+
+    /**
+     * Compresses with an explicit ZSTD level, e.g. a high one for rarely read chunks; other codecs ignore it.
+     */
+    public byte[] compress(byte[] data, CompressionType type, int zstdLevel) {
         try {
-            return switch (type) {
-                case LZ4 -> compressLZ4(data);
-                case ZSTD -> compressZstd(data);
-                case SNAPPY -> compressSnappy(data);
+            byte[] buffer = new byte[ChunkEnvelope.HEADER_SIZE + maxCompressedLength(data.length, type)];
+            int payloadLength = switch (type) {
+                case LZ4 -> compressLZ4(data, buffer, ChunkEnvelope.HEADER_SIZE);
+                case ZSTD -> compressZstd(data, buffer, ChunkEnvelope.HEADER_SIZE, zstdLevel);
+                case SNAPPY -> compressSnappy(data, buffer, ChunkEnvelope.HEADER_SIZE);
             };
+            ChunkEnvelope.writeHeader(buffer, type, data.length, ChunkEnvelope.NO_DICTIONARY, payloadLength);
+            return Arrays.copyOf(buffer, ChunkEnvelope.HEADER_SIZE + payloadLength);
         } catch (Exception e) {
             throw new RuntimeException("Compression failed", e);
         }
     }
 
+    /**
+     * Encodes {@code data} as a ZSTD delta of {@code base}: the base bytes are the compression dictionary and
+     * the envelope records the base chunk id, which decoding needs to supply the same bytes again.
+     */
+    public byte[] compressDelta(byte[] data, byte[] base, long baseChunkId) {
+        if (baseChunkId == ChunkEnvelope.NO_DICTIONARY) {
+            throw new IllegalArgumentException("A delta needs a base chunk id");
+        }
+        byte[] buffer = new byte[ChunkEnvelope.HEADER_SIZE + (int) Zstd.compressBound(data.length)];
+        long written = Zstd.compressUsingDict(buffer, ChunkEnvelope.HEADER_SIZE, data, 0, data.length, base,
+                Zstd.defaultCompressionLevel());
+        if (Zstd.isError(written)) {
+            throw new IllegalStateException("ZSTD delta compression error: " + Zstd.getErrorName(written));
+        }
+        ChunkEnvelope.writeHeader(buffer, CompressionType.ZSTD, data.length, baseChunkId, (int) written);
+        return Arrays.copyOf(buffer, ChunkEnvelope.HEADER_SIZE + (int) written);
+    }
+
     public byte[] decompress(byte[] compressedData, CompressionType type, int originalLength) {
+        return decompress(compressedData, type, originalLength, null);
+    }
+
+    public byte[] decompress(byte[] compressedData, CompressionType type, int originalLength, byte[] dictionary) {
+        int length = originalLength > 0 ? originalLength : readOriginalLength(compressedData, type);
+        byte[] output = new byte[length];
+        decompress(compressedData, type, output, 0, length, dictionary);
+        return output;
+    }
+
+    public int decompress(byte[] compressedData, CompressionType type, byte[] destination, int destinationOffset,
+            int originalLength) {
+        return decompress(compressedData, type, destination, destinationOffset, originalLength, null);
+    }
+
+    public int decompress(byte[] compressedData, CompressionType type, byte[] destination, int destinationOffset,
+            int originalLength, byte[] dictionary) {
         try {
-            return switch (type) {
-                case LZ4 -> decompressLZ4(compressedData);
-                case ZSTD -> decompressZstd(compressedData);
-                case SNAPPY -> decompressSnappy(compressedData);
-            };
+            int written;
+            if (ChunkEnvelope.isEnveloped(compressedData)) {
+                ChunkEnvelope.Header header = ChunkEnvelope.read(compressedData);
+                if (header.rawLength() != originalLength) {
+                    throw new CorruptChunkException("Envelope raw length " + header.rawLength()
+                            + " does not match expected size " + originalLength);
+                }
+                if (header.dictionaryId() != ChunkEnvelope.NO_DICTIONARY) {
+                    if (dictionary == null || header.codec() != CompressionType.ZSTD) {
+                        throw new CorruptChunkException("Chunk is a " + header.codec() + " delta of chunk "
+                                + header.dictionaryId() + " and cannot be decoded without its base");
+                    }
+                    written = decompressZstdDelta(compressedData, header.payloadOffset(), header.payloadLength(),
+                            destination, destinationOffset, originalLength, dictionary);
+                } else {
+                    written = decode(header.codec(), compressedData, header.payloadOffset(),
+                            header.payloadLength(), destination, destinationOffset, originalLength);
+                }
+            } else {
+                written = decodeLegacy(compressedData, type, destination, destinationOffset, originalLength);
+            }
+
+            if (written != originalLength) {
+                throw new CorruptChunkException(
+                        "Decompressed size " + written + " does not match expected size " + originalLength);
+            }
+            return written;
+        } catch (CorruptChunkException e) {
+            logger.error("Corrupt chunk rejected for type {}: original length={}, compressed data length={}",
+                    type, originalLength, compressedData.length, e);
+            throw e;
         } catch (Exception e) {
             logger.error("Decompression failed for type {}: original length={}, compressed data length={}",
                     type, originalLength, compressedData.length, e);
@@ -58,56 +152,120 @@ public class CompressionService {
         }
     }
 
-    private byte[] compressLZ4(byte[] data) {
-        byte[] compressed = lz4Compressor.compress(data);
+    public int readOriginalLength(byte[] compressedData, CompressionType type) {
+        try {
+            long length;
+            if (ChunkEnvelope.isEnveloped(compressedData)) {
+                length = ChunkEnvelope.peekRawLength(compressedData);
+            } else {
+                length = switch (type) {
+                    case LZ4 -> ByteBuffer.wrap(compressedData).getInt();
+                    case ZSTD -> Zstd.getFrameContentSize(compressedData);
+                    case SNAPPY -> Snappy.uncompressedLength(compressedData);
+                };
+            }
+            if (length <= 0 || length > MAX_ORIGINAL_LENGTH) {
+                throw new IllegalArgumentException("Invalid original length: " + length);
+            }
+            return (int) length;
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to read original length for type " + type, e);
+        }
+    }
 
-        ByteBuffer buffer = ByteBuffer.allocate(8 + compressed.length);
-        buffer.putInt(data.length);
-        buffer.putInt(compressed.length);
-        buffer.put(compressed);
-        return buffer.array();
+    private int maxCompressedLength(int length, CompressionType type) {
+        return switch (type) {
+            case LZ4 -> lz4Compressor.maxCompressedLength(length);
+            case ZSTD -> (int) Zstd.compressBound(length);
+            case SNAPPY -> Snappy.maxCompressedLength(length);
+        };
     }
 
-    private byte[] decompressLZ4(byte[] compressedData) {
-        try {
-            ByteBuffer buffer = ByteBuffer.wrap(compressedData);
-            int originalLength = buffer.getInt();
-            int compressedLength = buffer.getInt();
+    private int decode(CompressionType codec, byte[] source, int sourceOffset, int sourceLength,
+            byte[] destination, int destinationOffset, int originalLength) throws Exception {
+        return switch (codec) {
+            case LZ4 -> decompressLZ4(source, sourceOffset, sourceLength, destination, destinationOffset,
+                    originalLength);
+            case ZSTD -> decompressZstd(source, sourceOffset, sourceLength, destination, destinationOffset,
+                    originalLength);
+            case SNAPPY -> decompressSnappy(source, sourceOffset, sourceLength, destination, destinationOffset);
+        };
+    }
 
-            if (originalLength <= 0 || originalLength > 100_000_000) {
-                throw new IllegalArgumentException("Invalid original length: " + originalLength);
-            }
-            if (compressedLength <= 0 || compressedLength > compressedData.length - 8) {
-                throw new IllegalArgumentException("Invalid compressed size: " + compressedLength);
-            }
+    private int decodeLegacy(byte[] compressedData, CompressionType type, byte[] destination,
+            int destinationOffset, int originalLength) throws Exception {
+        if (type != CompressionType.LZ4) {
+            return decode(type, compressedData, 0, compressedData.length, destination, destinationOffset,
+                    originalLength);
+        }
 
-            byte[] compressedOnly = new byte[compressedLength];
-            buffer.get(compressedOnly);
+        ByteBuffer buffer = ByteBuffer.wrap(compressedData);
+        int legacyOriginalLength = buffer.getInt();
+        int compressedLength = buffer.getInt();
 
-            logger.debug("LZ4 decompression: original size={}, compressed size={}",
-                    originalLength, compressedLength);
+        if (legacyOriginalLength <= 0 || legacyOriginalLength > MAX_ORIGINAL_LENGTH
+                || legacyOriginalLength != originalLength) {
+            throw new IllegalArgumentException("Invalid original length: " + legacyOriginalLength);
+        }
+        if (compressedLength <= 0 || compressedLength > compressedData.length - LEGACY_LZ4_HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid compressed size: " + compressedLength);
+        }
 
-            return lz4Decompressor.decompress(compressedOnly, originalLength);
-        } catch (IllegalArgumentException e) {
-            logger.error("Error during LZ4 decompression", e);
-            throw e;
+        return decompressLZ4(compressedData, LEGACY_LZ4_HEADER_SIZE, compressedLength, destination,
+                destinationOffset, originalLength);
+    }
+
+    private int compressLZ4(byte[] data, byte[] destination, int destinationOffset) {
+        return lz4Compressor.compress(data, 0, data.length, destination, destinationOffset,
+                destination.length - destinationOffset);
+    }
+
+    private int decompressLZ4(byte[] source, int sourceOffset, int sourceLength, byte[] destination,
+            int destinationOffset, int originalLength) {
+        logger.debug("LZ4 decompression: original size={}, compressed size={}", originalLength, sourceLength);
+
+        int read = lz4Decompressor.decompress(source, sourceOffset, destination, destinationOffset, originalLength);
+        if (read != sourceLength) {
+            throw new CorruptChunkException("LZ4 payload length " + sourceLength + " but " + read + " bytes decoded");
+        }
+        return originalLength;
+    }
+
+    private int compressZstd(byte[] data, byte[] destination, int destinationOffset, int level) {
+        long written = Zstd.compressByteArray(destination, destinationOffset, destination.length - destinationOffset,
+                data, 0, data.length, level);
+        if (Zstd.isError(written)) {
+            throw new IllegalStateException("ZSTD compression error: " + Zstd.getErrorName(written));
         }
+        return (int) written;
     }
 
-    private byte[] compressZstd(byte[] data) {
-        return Zstd.compress(data);
+    private int decompressZstd(byte[] source, int sourceOffset, int sourceLength, byte[] destination,
+            int destinationOffset, int originalLength) {
+        long written = Zstd.decompressByteArray(destination, destinationOffset, originalLength,
+                source, sourceOffset, sourceLength);
+        if (Zstd.isError(written)) {
+            throw new IllegalStateException("ZSTD decompression error: " + Zstd.getErrorName(written));
+        }
+        return (int) written;
     }
 
-    private byte[] decompressZstd(byte[] compressedData) {
-        long originalSize = Zstd.getFrameContentSize(compressedData);
-        return Zstd.decompress(compressedData, (int) originalSize);
+    private int decompressZstdDelta(byte[] source, int sourceOffset, int sourceLength, byte[] destination,
+            int destinationOffset, int originalLength, byte[] dictionary) {
+        long written = Zstd.decompressUsingDict(destination, destinationOffset, source, sourceOffset, sourceLength,
+                dictionary);
+        if (Zstd.isError(written)) {
+            throw new IllegalStateException("ZSTD delta decompression error: " + Zstd.getErrorName(written));
+        }
+        return (int) written;
     }
 
-    private byte[] compressSnappy(byte[] data) throws Exception {
-        return Snappy.compress(data);
+    private int compressSnappy(byte[] data, byte[] destination, int destinationOffset) throws Exception {
+        return Snappy.compress(data, 0, data.length, destination, destinationOffset);
     }
 
-    private byte[] decompressSnappy(byte[] compressedData) throws Exception {
-        return Snappy.uncompress(compressedData);
+    private int decompressSnappy(byte[] source, int sourceOffset, int sourceLength, byte[] destination,
+            int destinationOffset) throws Exception {
+        return Snappy.uncompress(source, sourceOffset, sourceLength, destination, destinationOffset);
     }
 }
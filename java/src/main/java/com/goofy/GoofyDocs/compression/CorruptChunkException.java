@@ -0,0 +1,8 @@
+package com.goofy.GoofyDocs.compression;
+
+public class CorruptChunkException extends RuntimeException {
+
+    public CorruptChunkException(String message) {
+        super(message);
+    }
+}
@@ -1,9 +1,7 @@
 package com.goofy.GoofyDocs.controller.api;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.List;
+import java.io.InputStream;
 import java.util.Map;
 
 import org.springframework.http.ResponseEntity;
@@ -13,35 +11,33 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.goofy.GoofyDocs.chunking.Chunk;
-import com.goofy.GoofyDocs.chunking.ChunkingService;
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.duplication.DuplicationService;
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
 
 @RestController
 @RequestMapping("api/chunking")
 public class ChunkingController {
 
-    private final ChunkingService chunkingService;
+    private final DuplicationService duplicationService;
 
-    public ChunkingController(ChunkingService chunkingService) {
-        this.chunkingService = chunkingService;
+    public ChunkingController(DuplicationService duplicationService) {
+        this.duplicationService = duplicationService;
     }
 
     @PostMapping("/analyze")
     public ResponseEntity<?> analyzeFile(@RequestParam("file") MultipartFile file) {
-        try {
-            File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
-            file.transferTo(tempFile);
-
-            List<Chunk> chunks = chunkingService.chunkFile(tempFile);
+        try (InputStream in = file.getInputStream()) {
+            Map<String, Object> analysis = duplicationService.analyze(in, file.getOriginalFilename(),
+                    HashingAlgorithm.SHA256, ChunkingProfile.DEFAULT, false);
+            long numberOfChunks = (long) analysis.get("totalChunks");
 
             Map<String, Object> stats = Map.of(
                     "fileName", file.getOriginalFilename(),
                     "originalSize", file.getSize(),
-                    "numberOfChunks", chunks.size(),
-                    "averageChunkSize", file.getSize() / chunks.size(),
-                    "uniqueChunks", chunks.stream().map(Chunk::getHash).distinct().count());
-
-            Files.delete(tempFile.toPath());
+                    "numberOfChunks", numberOfChunks,
+                    "averageChunkSize", numberOfChunks > 0 ? file.getSize() / numberOfChunks : 0,
+                    "uniqueChunks", analysis.get("uniqueChunks"));
 
             return ResponseEntity.ok(stats);
         } catch (IOException e) {
@@ -49,4 +45,4 @@ public class ChunkingController {
                     .body(Map.of("error", "Failed to process file: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+}
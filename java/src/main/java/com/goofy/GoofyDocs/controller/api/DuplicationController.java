@@ -2,8 +2,11 @@ package com.goofy.GoofyDocs.controller.api;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -11,7 +14,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
 import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.duplication.ArchiveReader;
+import com.goofy.GoofyDocs.duplication.BulkIngestService;
 import com.goofy.GoofyDocs.duplication.DuplicationService;
 import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
 
@@ -20,22 +26,22 @@ import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
 public class DuplicationController {
 
     private final DuplicationService duplicationService;
+    private final BulkIngestService bulkIngestService;
 
-    public DuplicationController(DuplicationService duplicationService) {
+    public DuplicationController(DuplicationService duplicationService, BulkIngestService bulkIngestService) {
         this.duplicationService = duplicationService;
+        this.bulkIngestService = bulkIngestService;
     }
 
     @PostMapping("/analyze")
     public ResponseEntity<?> analyzeFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm) {
-        try {
-            File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
-            file.transferTo(tempFile);
-
-            Map<String, Object> result = duplicationService.analyzeFile(tempFile, algorithm);
-
-            tempFile.delete();
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "chunkingProfile", required = false) ChunkingProfile chunkingProfile,
+            @RequestParam(value = "checkStored", defaultValue = "false") boolean checkStored) {
+        try (InputStream in = file.getInputStream()) {
+            Map<String, Object> result = duplicationService.analyze(in, file.getOriginalFilename(), algorithm,
+                    chunkingProfile, checkStored);
             return ResponseEntity.ok(result);
         } catch (IOException e) {
             return ResponseEntity.internalServerError()
@@ -43,10 +49,31 @@ public class DuplicationController {
         }
     }
 
+    /**
+     * Same analysis on a raw request body, scanned as it arrives without being spooled.
+     */
+    @PostMapping(value = "/analyze", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> analyzeStream(
+            InputStream body,
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "chunkingProfile", required = false) ChunkingProfile chunkingProfile,
+            @RequestParam(value = "checkStored", defaultValue = "false") boolean checkStored) {
+        try {
+            return ResponseEntity.ok(duplicationService.analyze(body, fileName, algorithm, chunkingProfile,
+                    checkStored));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Échec du traitement du fichier: " + e.getMessage()));
+        }
+    }
+
     @PostMapping("/process")
     public ResponseEntity<?> processFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm) {
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "chunkingProfile", required = false) ChunkingProfile chunkingProfile,
+            @RequestParam(value = "parentId", required = false) Long parentId) {
         try {
             File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
             file.transferTo(tempFile);
@@ -55,7 +82,9 @@ public class DuplicationController {
                     tempFile,
                     file.getOriginalFilename(),
                     file.getSize(),
-                    algorithm);
+                    algorithm,
+                    chunkingProfile,
+                    parentId);
 
             tempFile.delete();
             return ResponseEntity.ok(result);
@@ -69,7 +98,9 @@ public class DuplicationController {
     public ResponseEntity<?> processFileCompressed(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
-            @RequestParam(value = "compression", defaultValue = "LZ4") CompressionService.CompressionType compression) {
+            @RequestParam(value = "compression", defaultValue = "LZ4") CompressionService.CompressionType compression,
+            @RequestParam(value = "chunkingProfile", required = false) ChunkingProfile chunkingProfile,
+            @RequestParam(value = "parentId", required = false) Long parentId) {
         try {
             File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
             file.transferTo(tempFile);
@@ -79,7 +110,9 @@ public class DuplicationController {
                     file.getOriginalFilename(),
                     file.getSize(),
                     algorithm,
-                    compression);
+                    compression,
+                    chunkingProfile,
+                    parentId);
 
             tempFile.delete();
             return ResponseEntity.ok(result);
@@ -88,4 +121,64 @@ public class DuplicationController {
                     .body(Map.of("error", "Failed to process and store the compressed file: " + e.getMessage()));
         }
     }
+
+    /**
+     * Stores many files in one request: any number of {@code files} parts and/or zip / tar(.gz) {@code archive}
+     * parts. Returns one result (or error) per file.
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> processBulk(
+            @RequestParam(value = "files", required = false) List<MultipartFile> files,
+            @RequestParam(value = "archive", required = false) List<MultipartFile> archives,
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "compression", required = false) CompressionService.CompressionType compression,
+            @RequestParam(value = "chunkingProfile", required = false) ChunkingProfile chunkingProfile) {
+        return bulk(handler -> {
+            for (MultipartFile file : files != null ? files : List.<MultipartFile>of()) {
+                try (InputStream in = file.getInputStream()) {
+                    handler.accept(file.getOriginalFilename() != null ? file.getOriginalFilename() : "",
+                            file.getSize(), in);
+                }
+            }
+            for (MultipartFile archive : archives != null ? archives : List.<MultipartFile>of()) {
+                try (InputStream in = archive.getInputStream()) {
+                    ArchiveReader.read(in, handler);
+                }
+            }
+        }, algorithm, compression, chunkingProfile);
+    }
+
+    /**
+     * Stores every file of a zip or tar(.gz) archive streamed as the request body.
+     */
+    @PostMapping(value = "/bulk", consumes = { "application/zip", "application/x-tar", "application/gzip",
+            MediaType.APPLICATION_OCTET_STREAM_VALUE })
+    public ResponseEntity<?> processBulkArchive(
+            InputStream body,
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "compression", required = false) CompressionService.CompressionType compression,
+            @RequestParam(value = "chunkingProfile", required = false) ChunkingProfile chunkingProfile) {
+        return bulk(handler -> ArchiveReader.read(body, handler), algorithm, compression, chunkingProfile);
+    }
+
+    private ResponseEntity<?> bulk(
+            BulkIngestService.EntrySource source,
+            HashingAlgorithm algorithm,
+            CompressionService.CompressionType compression,
+            ChunkingProfile chunkingProfile) {
+        try {
+            List<Map<String, Object>> results = bulkIngestService.ingest(source, algorithm, compression,
+                    chunkingProfile);
+            long failed = results.stream().filter(result -> result.containsKey("error")).count();
+            return ResponseEntity.ok(Map.of(
+                    "files", results.size(),
+                    "failed", failed,
+                    "results", results));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Failed to process the bulk upload: " + e.getMessage()));
+        }
+    }
 }
@@ -1,19 +1,30 @@
 package com.goofy.GoofyDocs.controller.api;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.goofy.GoofyDocs.model.FileEntity;
 import com.goofy.GoofyDocs.repository.FileRepository;
+import com.goofy.GoofyDocs.service.ArchiveExportService;
+import com.goofy.GoofyDocs.service.ArchiveFormat;
+import com.goofy.GoofyDocs.service.FileDeletionService;
 import com.goofy.GoofyDocs.service.FileReconstructorService;
 
 @RestController
@@ -21,12 +32,17 @@ import com.goofy.GoofyDocs.service.FileReconstructorService;
 public class FileController {
 
     private final FileReconstructorService fileReconstructorService;
+    private final FileDeletionService fileDeletionService;
     private final FileRepository fileRepository;
+    private final ArchiveExportService archiveExportService;
 
     @Autowired
-    public FileController(FileReconstructorService fileReconstructorService, FileRepository fileRepository) {
+    public FileController(FileReconstructorService fileReconstructorService, FileDeletionService fileDeletionService,
+            FileRepository fileRepository, ArchiveExportService archiveExportService) {
         this.fileReconstructorService = fileReconstructorService;
+        this.fileDeletionService = fileDeletionService;
         this.fileRepository = fileRepository;
+        this.archiveExportService = archiveExportService;
     }
 
     @GetMapping("/{fileId}/download")
@@ -53,4 +69,54 @@ public class FileController {
                     .body("Error during file Reconstructor: " + e.getMessage());
         }
     }
+
+    /**
+     * Streams the selected files as one archive: by {@code ids}, or else every file matching {@code extension}
+     * and {@code namePrefix}.
+     */
+    @GetMapping("/archive")
+    public ResponseEntity<?> downloadArchive(
+            @RequestParam(value = "ids", required = false) List<Long> ids,
+            @RequestParam(value = "extension", required = false) String extension,
+            @RequestParam(value = "namePrefix", required = false) String namePrefix,
+            @RequestParam(value = "format", defaultValue = "ZIP") ArchiveFormat format) {
+        return archive(ids, extension, namePrefix, format);
+    }
+
+    /**
+     * Same as {@code GET /archive} for id lists too long for a URL.
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<?> downloadArchiveOf(
+            @RequestBody List<Long> ids,
+            @RequestParam(value = "format", defaultValue = "ZIP") ArchiveFormat format) {
+        return archive(ids, null, null, format);
+    }
+
+    private ResponseEntity<?> archive(List<Long> ids, String extension, String namePrefix, ArchiveFormat format) {
+        ArchiveExportService.ArchiveExport export;
+        try {
+            export = archiveExportService.prepare(ids, extension, namePrefix);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+
+        StreamingResponseBody body = out -> archiveExportService.write(export, format, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files." + format.getExtension() + "\"")
+                .body(body);
+    }
+
+    @DeleteMapping("/{fileId}")
+    public ResponseEntity<?> deleteFile(@PathVariable Long fileId) {
+        try {
+            int orphanedChunks = fileDeletionService.deleteFile(fileId);
+            return ResponseEntity.ok(Map.of("fileId", fileId, "orphanedChunks", orphanedChunks));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package com.goofy.GoofyDocs.controller.api;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.duplication.IngestJobService;
+
+@RestController
+@RequestMapping("api/ingest-jobs")
+public class IngestJobController {
+
+    private final IngestJobService ingestJobService;
+
+    @Autowired
+    public IngestJobController(IngestJobService ingestJobService) {
+        this.ingestJobService = ingestJobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> submitJob(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "compression", required = false) CompressionService.CompressionType compression,
+            @RequestParam(value = "chunkingProfile", required = false) ChunkingProfile chunkingProfile,
+            @RequestParam(value = "parentId", required = false) Long parentId) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ingestJobService.submit(file, algorithm, compression, chunkingProfile, parentId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Failed to spool the upload: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        return ingestJobService.getStatus(jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
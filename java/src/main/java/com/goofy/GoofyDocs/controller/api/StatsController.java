@@ -0,0 +1,48 @@
+package com.goofy.GoofyDocs.controller.api;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.stats.DedupStatsService;
+import com.goofy.GoofyDocs.stats.StatsWindow;
+
+@RestController
+@RequestMapping("api/stats")
+public class StatsController {
+
+    private static final int MAX_WINDOWS = 1000;
+
+    private final DedupStatsService dedupStatsService;
+    private final ChunkRepository chunkRepository;
+
+    @Autowired
+    public StatsController(DedupStatsService dedupStatsService, ChunkRepository chunkRepository) {
+        this.dedupStatsService = dedupStatsService;
+        this.chunkRepository = chunkRepository;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getStats(
+            @RequestParam(defaultValue = "DAY") StatsWindow window,
+            @RequestParam(defaultValue = "30") int windows) {
+        if (windows < 1 || windows > MAX_WINDOWS) {
+            return ResponseEntity.badRequest().body("windows must be between 1 and " + MAX_WINDOWS);
+        }
+        return ResponseEntity.ok(dedupStatsService.summary(window, windows));
+    }
+
+    @GetMapping("/chunks/{chunkId}")
+    public ResponseEntity<?> getChunkReferences(@PathVariable Long chunkId) {
+        return chunkRepository.findReferenceCount(chunkId)
+                .<ResponseEntity<?>>map(refCount -> ResponseEntity.ok(Map.of("chunkId", chunkId, "refCount", refCount)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,81 @@
+package com.goofy.GoofyDocs.controller.api;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.goofy.GoofyDocs.duplication.ChunkUploadService;
+import com.goofy.GoofyDocs.duplication.IncompleteUploadException;
+import com.goofy.GoofyDocs.duplication.UploadManifest;
+
+@RestController
+@RequestMapping("api/uploads")
+public class UploadController {
+
+    private final ChunkUploadService chunkUploadService;
+
+    @Autowired
+    public UploadController(ChunkUploadService chunkUploadService) {
+        this.chunkUploadService = chunkUploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createUpload(@RequestBody UploadManifest manifest) {
+        try {
+            return ResponseEntity.ok(chunkUploadService.createSession(manifest));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<?> getUpload(@PathVariable String uploadId) {
+        return chunkUploadService.getStatus(uploadId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PutMapping(value = "/{uploadId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadChunk(@PathVariable String uploadId, @PathVariable int index,
+            @RequestBody byte[] data) {
+        try {
+            return chunkUploadService.uploadChunk(uploadId, index, data)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{uploadId}/commit")
+    public ResponseEntity<?> commitUpload(@PathVariable String uploadId) {
+        try {
+            return chunkUploadService.commit(uploadId)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IncompleteUploadException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage(), "missingChunks", e.getMissingChunks()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<?> abortUpload(@PathVariable String uploadId) {
+        return chunkUploadService.abort(uploadId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
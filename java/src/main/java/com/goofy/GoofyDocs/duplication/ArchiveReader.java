@@ -0,0 +1,236 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the regular files of a zip or (optionally gzipped) tar stream in a single pass, without spooling the
+ * archive. Directories, links and other special tar entries are skipped.
+ */
+public final class ArchiveReader {
+    private static final int TAR_BLOCK_SIZE = 512;
+    private static final int MAGIC_LENGTH = 512;
+
+    @FunctionalInterface
+    public interface EntryHandler {
+        /**
+         * Called once per file; {@code size} is -1 when the archive does not record it up front. The stream
+         * ends with the entry and must not be closed.
+         */
+        void accept(String name, long size, InputStream content) throws IOException;
+    }
+
+    private ArchiveReader() {
+    }
+
+    public static void read(InputStream in, EntryHandler handler) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        byte[] head = peek(buffered, 2);
+        if (head.length == 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b) {
+            buffered = new BufferedInputStream(new GZIPInputStream(buffered));
+        }
+
+        byte[] magic = peek(buffered, MAGIC_LENGTH);
+        if (magic.length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            readZip(buffered, handler);
+        } else if (magic.length == MAGIC_LENGTH && isTarHeader(magic)) {
+            readTar(buffered, handler);
+        } else if (magic.length == 0) {
+            return;
+        } else {
+            throw new IllegalArgumentException("Unsupported archive format, expected zip, tar or tar.gz");
+        }
+    }
+
+    private static byte[] peek(BufferedInputStream in, int length) throws IOException {
+        in.mark(length);
+        byte[] data = in.readNBytes(length);
+        in.reset();
+        return data;
+    }
+
+    private static void readZip(InputStream in, EntryHandler handler) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in, StandardCharsets.UTF_8);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                handler.accept(entry.getName(), entry.getSize(), new NonClosingInputStream(zip));
+            }
+            zip.closeEntry();
+        }
+    }
+
+    private static void readTar(InputStream in, EntryHandler handler) throws IOException {
+        byte[] header = new byte[TAR_BLOCK_SIZE];
+        String longName = null;
+        while (true) {
+            if (in.readNBytes(header, 0, TAR_BLOCK_SIZE) < TAR_BLOCK_SIZE || isZeroBlock(header)) {
+                return;
+            }
+            if (!isTarHeader(header)) {
+                throw new IOException("Corrupt tar header");
+            }
+
+            long size = parseSize(header);
+            char type = (char) header[156];
+            BoundedInputStream content = new BoundedInputStream(in, size);
+            switch (type) {
+                // GNU long name and pax extended header: they apply to the next entry
+                case 'L' -> longName = trimNul(new String(content.readAllBytes(), StandardCharsets.UTF_8));
+                case 'x' -> longName = paxPath(content.readAllBytes(), longName);
+                case '0', '\0', '7' -> {
+                    String name = longName != null ? longName : headerName(header);
+                    longName = null;
+                    handler.accept(name, size, new NonClosingInputStream(content));
+                }
+                default -> longName = null;
+            }
+            content.skipRemaining();
+            in.skipNBytes((TAR_BLOCK_SIZE - size % TAR_BLOCK_SIZE) % TAR_BLOCK_SIZE);
+        }
+    }
+
+    private static boolean isTarHeader(byte[] header) {
+        long stored;
+        try {
+            stored = parseOctal(header, 148, 8);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        long sum = 0;
+        for (int i = 0; i < TAR_BLOCK_SIZE; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+        return sum == stored;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String headerName(byte[] header) {
+        String name = trimNul(new String(header, 0, 100, StandardCharsets.UTF_8));
+        // ustar splits long paths into prefix and name
+        if (header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[345] != 0) {
+            name = trimNul(new String(header, 345, 155, StandardCharsets.UTF_8)) + "/" + name;
+        }
+        return name;
+    }
+
+    private static long parseSize(byte[] header) throws IOException {
+        // GNU base-256 encoding for entries of 8 GiB and more
+        if ((header[124] & 0x80) != 0) {
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        try {
+            return parseOctal(header, 124, 12);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt tar entry size", e);
+        }
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) {
+        String field = new String(header, offset, length, StandardCharsets.US_ASCII).trim();
+        int end = field.indexOf('\0');
+        return Long.parseLong((end >= 0 ? field.substring(0, end) : field).trim(), 8);
+    }
+
+    private static String paxPath(byte[] records, String current) {
+        // Records are "<length> <key>=<value>\n"
+        String text = new String(records, StandardCharsets.UTF_8);
+        for (String record : text.split("\n")) {
+            int space = record.indexOf(' ');
+            if (space > 0 && record.startsWith("path=", space + 1)) {
+                return record.substring(space + 6);
+            }
+        }
+        return current;
+    }
+
+    private static String trimNul(String value) {
+        int end = value.indexOf('\0');
+        return end >= 0 ? value.substring(0, end) : value;
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated tar entry");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read < 0) {
+                throw new IOException("Truncated tar entry");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        void skipRemaining() throws IOException {
+            in.skipNBytes(remaining);
+            remaining = 0;
+        }
+    }
+
+    private static final class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyDocs.chunking.Chunk;
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.chunking.ChunkingService;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+import com.goofy.GoofyDocs.repository.FingerprintMatch;
+import com.goofy.GoofyDocs.repository.NewChunk;
+import com.goofy.GoofyDocs.stats.DedupStats;
+import com.goofy.GoofyDocs.stats.DedupStatsService;
+
+/**
+ * Ingests many small files per request. Entries are buffered into groups of up to {@code batch-files} files
+ * or {@code batch-bytes} bytes; a group is chunked and fingerprinted in parallel, looked up with one batched
+ * query, and committed in a single transaction that inserts its new chunks, files, manifests and references
+ * in batches. Entries larger than {@code max-in-memory-entry} go through the streaming single-file ingest.
+ *
+ * Grouped files skip the segment index and similarity (delta) encoding, which pay off on large files only.
+ */
+@Service
+public class BulkIngestService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkIngestService.class);
+    private static final int MAX_NAME_LENGTH = 255;
+
+    /**
+     * Produces the entries of one request, e.g. the parts of a multipart upload or the files of an archive.
+     */
+    @FunctionalInterface
+    public interface EntrySource {
+        void feed(ArchiveReader.EntryHandler handler) throws IOException;
+    }
+
+    private final DuplicationService duplicationService;
+    private final ChunkingService chunkingService;
+    private final ChunkRepository chunkRepository;
+    private final FileRepository fileRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final DedupStatsService statsService;
+    private final IngestMetrics metrics;
+    private final HashingAlgorithm secondaryAlgorithm;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchFiles;
+    private final long batchBytes;
+    private final int maxInMemoryEntry;
+
+    @Autowired
+    public BulkIngestService(
+            DuplicationService duplicationService,
+            ChunkingService chunkingService,
+            ChunkRepository chunkRepository,
+            FileRepository fileRepository,
+            FileChunkRepository fileChunkRepository,
+            DedupStatsService statsService,
+            IngestMetrics metrics,
+            @Value("${goofydocs.fingerprint.secondary-algorithm:}") HashingAlgorithm secondaryAlgorithm,
+            PlatformTransactionManager transactionManager,
+            @Value("${goofydocs.bulk.batch-files:512}") int batchFiles,
+            @Value("${goofydocs.bulk.batch-bytes:64MB}") DataSize batchBytes,
+            @Value("${goofydocs.bulk.max-in-memory-entry:8MB}") DataSize maxInMemoryEntry) {
+        this.duplicationService = duplicationService;
+        this.chunkingService = chunkingService;
+        this.chunkRepository = chunkRepository;
+        this.fileRepository = fileRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.statsService = statsService;
+        this.metrics = metrics;
+        this.secondaryAlgorithm = secondaryAlgorithm;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchFiles = batchFiles;
+        this.batchBytes = batchBytes.toBytes();
+        this.maxInMemoryEntry = (int) Math.min(maxInMemoryEntry.toBytes(), Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Ingests every entry of {@code source} and returns one result per entry, in order. A group that fails
+     * is rolled back and reported as an error on each of its entries; the other groups are kept.
+     */
+    public List<Map<String, Object>> ingest(
+            EntrySource source,
+            HashingAlgorithm algorithm,
+            CompressionType compressionType,
+            ChunkingProfile chunkingProfile) throws IOException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<Entry> group = new ArrayList<>();
+        long[] groupBytes = { 0 };
+
+        source.feed((name, size, content) -> {
+            if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+                results.add(error(name, "Entry name must be between 1 and " + MAX_NAME_LENGTH + " characters"));
+                content.transferTo(OutputStream.nullOutputStream());
+                return;
+            }
+            byte[] data = content.readNBytes(maxInMemoryEntry + 1);
+            if (data.length > maxInMemoryEntry) {
+                flush(group, algorithm, compressionType, chunkingProfile, results);
+                groupBytes[0] = 0;
+                results.add(ingestLarge(name, data, content, algorithm, compressionType, chunkingProfile));
+                return;
+            }
+            group.add(new Entry(name, data));
+            groupBytes[0] += data.length;
+            if (group.size() >= batchFiles || groupBytes[0] >= batchBytes) {
+                flush(group, algorithm, compressionType, chunkingProfile, results);
+                groupBytes[0] = 0;
+            }
+        });
+        flush(group, algorithm, compressionType, chunkingProfile, results);
+
+        logger.info("Bulk ingest: entries={}, failed={}", results.size(),
+                results.stream().filter(result -> result.containsKey("error")).count());
+        return results;
+    }
+
+    private void flush(
+            List<Entry> group,
+            HashingAlgorithm algorithm,
+            CompressionType compressionType,
+            ChunkingProfile chunkingProfile,
+            List<Map<String, Object>> results) {
+        if (group.isEmpty()) {
+            return;
+        }
+        long bytes = group.stream().mapToLong(entry -> entry.data().length).sum();
+        metrics.addBytesInFlight(bytes);
+        try {
+            results.addAll(storeGroup(group, algorithm, compressionType, chunkingProfile));
+        } catch (RuntimeException e) {
+            logger.warn("Bulk ingest group of {} files failed", group.size(), e);
+            for (Entry entry : group) {
+                results.add(error(entry.name(), e.getMessage()));
+            }
+        } finally {
+            metrics.addBytesInFlight(-bytes);
+            group.clear();
+        }
+    }
+
+    private Map<String, Object> ingestLarge(
+            String name,
+            byte[] head,
+            InputStream rest,
+            HashingAlgorithm algorithm,
+            CompressionType compressionType,
+            ChunkingProfile chunkingProfile) throws IOException {
+        File spooled = Files.createTempFile("bulk-", ".part").toFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(spooled.toPath())) {
+                out.write(head);
+                rest.transferTo(out);
+            }
+            Map<String, Object> result = compressionType != null
+                    ? duplicationService.processAndStoreFileCompressed(spooled, name, spooled.length(), algorithm,
+                            compressionType, chunkingProfile, null)
+                    : duplicationService.processAndStoreFile(spooled, name, spooled.length(), algorithm,
+                            chunkingProfile, null);
+            result.put("entryName", name);
+            return result;
+        } catch (RuntimeException e) {
+            logger.warn("Bulk ingest of large entry {} failed", name, e);
+            return error(name, e.getMessage());
+        } finally {
+            Files.deleteIfExists(spooled.toPath());
+        }
+    }
+
+    private List<Map<String, Object>> storeGroup(
+            List<Entry> group,
+            HashingAlgorithm algorithm,
+            CompressionType compressionType,
+            ChunkingProfile chunkingProfile) {
+        // One duplicate filter per worker, each over a run of consecutive entries, which are the likeliest to
+        // share chunks; the filter is not thread-safe
+        int workers = Math.min(group.size(), Runtime.getRuntime().availableProcessors());
+        List<List<Entry>> slices = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            slices.add(group.subList(group.size() * worker / workers, group.size() * (worker + 1) / workers));
+        }
+        List<PreparedEntry> prepared = slices.parallelStream()
+                .flatMap(slice -> {
+                    DuplicateFilter duplicateFilter = duplicationService.duplicateFilter(algorithm);
+                    return slice.stream()
+                            .map(entry -> prepare(entry, algorithm, chunkingProfile, duplicateFilter))
+                            .toList()
+                            .stream();
+                })
+                .toList();
+
+        Map<String, PreparedChunk> distinct = new LinkedHashMap<>();
+        for (PreparedEntry entry : prepared) {
+            for (int i = 0; i < entry.chunks().size(); i++) {
+                distinct.putIfAbsent(entry.hexDigests().get(i),
+                        new PreparedChunk(entry.digests().get(i), entry.chunks().get(i)));
+            }
+        }
+
+        // Compression runs before the transaction for the chunks that look new; the authoritative lookup is
+        // repeated inside it
+        long lookupStart = System.nanoTime();
+        Map<String, Long> known = findExisting(algorithm, digestsOf(distinct.values()));
+        long lookupNanos = System.nanoTime() - lookupStart;
+        Map<String, byte[]> compressed = new ConcurrentHashMap<>();
+        if (compressionType != null) {
+            distinct.entrySet().parallelStream()
+                    .filter(chunk -> !known.containsKey(chunk.getKey()))
+                    .forEach(chunk -> compressed.put(chunk.getKey(),
+                            duplicationService.compress(chunk.getValue().chunk().data(), compressionType)));
+        }
+
+        List<Map<String, Object>> results = transactionTemplate.execute(
+                status -> commit(prepared, distinct, compressed, algorithm, compressionType));
+        long perLookup = distinct.isEmpty() ? 0 : lookupNanos / distinct.size();
+        distinct.forEach((hex, chunk) -> metrics.recordLookup(perLookup, known.containsKey(hex),
+                chunk.chunk().getOriginalSize()));
+        return results;
+    }
+
+    private PreparedEntry prepare(
+            Entry entry,
+            HashingAlgorithm algorithm,
+            ChunkingProfile chunkingProfile,
+            DuplicateFilter duplicateFilter) {
+        IngestResult result = duplicationService.prepare(entry.name(), entry.data().length, algorithm,
+                chunkingProfile, null);
+        List<Chunk> chunks;
+        try {
+            chunks = chunkingService.chunkBytes(entry.data(), result.profile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<byte[]> digests = new ArrayList<>(chunks.size());
+        List<String> hexDigests = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            byte[] digest = duplicateFilter.fingerprint(chunk.data());
+            digests.add(digest);
+            hexDigests.add(HexFormat.of().formatHex(digest));
+        }
+        return new PreparedEntry(entry.name(), result, chunks, digests, hexDigests);
+    }
+
+    private List<Map<String, Object>> commit(
+            List<PreparedEntry> prepared,
+            Map<String, PreparedChunk> distinct,
+            Map<String, byte[]> compressed,
+            HashingAlgorithm algorithm,
+            CompressionType compressionType) {
+        long writeStart = System.nanoTime();
+        Map<String, Long> chunkIds = resolveExisting(algorithm, digestsOf(distinct.values()));
+
+        List<String> missing = new ArrayList<>();
+        distinct.keySet().stream().filter(hex -> !chunkIds.containsKey(hex)).forEach(missing::add);
+
+        Map<String, byte[]> secondaryDigests = new HashMap<>();
+        if (!missing.isEmpty() && secondaryAlgorithm != null && secondaryAlgorithm != algorithm) {
+            Map<String, String> primaryBySecondary = new HashMap<>();
+            for (String hex : missing) {
+                byte[] secondaryDigest = duplicationService.fingerprint(distinct.get(hex).chunk().data(),
+                        secondaryAlgorithm);
+                secondaryDigests.put(hex, secondaryDigest);
+                primaryBySecondary.put(HexFormat.of().formatHex(secondaryDigest), hex);
+            }
+            Map<Long, byte[]> primaryFingerprints = new HashMap<>();
+            resolveExisting(secondaryAlgorithm, secondaryDigests.values()).forEach((secondaryHex, chunkId) -> {
+                String hex = primaryBySecondary.get(secondaryHex);
+                chunkIds.put(hex, chunkId);
+                primaryFingerprints.put(chunkId, distinct.get(hex).digest());
+            });
+            chunkRepository.addFingerprints(algorithm, primaryFingerprints);
+            missing.removeIf(chunkIds::containsKey);
+        }
+
+        List<NewChunk> newChunks = new ArrayList<>(missing.size());
+        Map<String, Integer> storedSizes = new HashMap<>();
+        for (String hex : missing) {
+            PreparedChunk chunk = distinct.get(hex);
+            byte[] data = compressionType == null
+                    ? chunk.chunk().data()
+                    : compressed.computeIfAbsent(hex,
+                            key -> duplicationService.compress(chunk.chunk().data(), compressionType));
+            newChunks.add(new NewChunk(chunk.digest(), data,
+                    compressionType != null ? compressionType.name() : null, chunk.chunk().getOriginalSize()));
+            storedSizes.put(hex, data.length);
+        }
+        Map<String, Long> inserted = chunkRepository.insertAllIfAbsent(algorithm, newChunks, null);
+        chunkIds.putAll(inserted);
+
+        List<byte[]> conflicts = missing.stream()
+                .filter(hex -> !inserted.containsKey(hex))
+                .map(hex -> distinct.get(hex).digest())
+                .toList();
+        if (!conflicts.isEmpty()) {
+            logger.debug("{} chunk(s) inserted concurrently by another upload", conflicts.size());
+            chunkIds.putAll(resolveExisting(algorithm, conflicts));
+            if (!chunkIds.keySet().containsAll(missing)) {
+                throw new IllegalStateException("Chunk disappeared after insert conflict");
+            }
+        }
+        if (!secondaryDigests.isEmpty()) {
+            Map<Long, byte[]> secondaryFingerprints = new HashMap<>();
+            inserted.forEach((hex, chunkId) -> secondaryFingerprints.put(chunkId, secondaryDigests.get(hex)));
+            chunkRepository.addFingerprints(secondaryAlgorithm, secondaryFingerprints);
+        }
+
+        Map<Long, ChunkManifest> manifests = new LinkedHashMap<>();
+        Map<Long, ChunkCounts> references = new LinkedHashMap<>();
+        ChunkCounts totalReferences = new ChunkCounts();
+        Map<StatsKey, DedupStats> stats = new LinkedHashMap<>();
+        List<FileEntity> files = prepared.stream().map(entry -> entry.result().fileEntity).toList();
+        fileRepository.insertAll(files);
+
+        List<Map<String, Object>> results = new ArrayList<>(prepared.size());
+        for (PreparedEntry entry : prepared) {
+            IngestResult result = entry.result();
+            ChunkManifest.Builder manifest = ChunkManifest.builder(entry.chunks().size());
+            for (int i = 0; i < entry.chunks().size(); i++) {
+                Chunk chunk = entry.chunks().get(i);
+                String hex = entry.hexDigests().get(i);
+                manifest.add(chunkIds.get(hex), chunk.getOriginalSize());
+                // The first file of the group holding a new chunk is the one that stored it
+                Integer storedSize = inserted.containsKey(hex) ? storedSizes.remove(hex) : null;
+                if (storedSize != null) {
+                    result.recordUnique(chunk, storedSize);
+                    result.totalCompressedSize += compressionType != null ? storedSize : 0;
+                } else {
+                    result.recordDuplicate(chunk);
+                }
+            }
+            result.totalChunks = entry.chunks().size();
+
+            long fileId = result.fileEntity.getId();
+            ChunkManifest built = manifest.build();
+            ChunkCounts fileReferences = built.referenceCounts();
+            manifests.put(fileId, built);
+            references.put(fileId, fileReferences);
+            totalReferences.addAll(fileReferences);
+            result.manifestEntries = (int) fileReferences.total();
+            stats.merge(new StatsKey(result.fileEntity.getExtension(), result.profile), result.toStats(),
+                    DedupStats::plus);
+
+            Map<String, Object> map = result.toMap();
+            map.put("entryName", entry.name());
+            if (compressionType != null) {
+                map.put("compressionType", compressionType.name());
+                map.put("totalCompressedSize", result.totalCompressedSize);
+            }
+            results.add(map);
+        }
+
+        fileChunkRepository.insertManifests(manifests);
+        fileChunkRepository.insertReferencesOfFiles(references);
+        // Shared counters are touched last so their row locks are held only until commit
+        chunkRepository.incrementReferenceCounts(totalReferences);
+        stats.forEach((key, delta) -> statsService.record(key.extension(), key.profile(), delta));
+        metrics.recordDbWrite(System.nanoTime() - writeStart);
+        return results;
+    }
+
+    private Map<String, Long> findExisting(HashingAlgorithm algorithm, Collection<byte[]> digests) {
+        Map<String, Long> existing = new HashMap<>();
+        for (FingerprintMatch match : chunkRepository.findByFingerprints(algorithm, digests)) {
+            existing.put(HexFormat.of().formatHex(match.digest()), match.chunkId());
+        }
+        return existing;
+    }
+
+    /**
+     * Looks up {@code digests} and clears the GC mark of the orphaned matches. A match collected between the
+     * two statements is looked up again, and then no longer found.
+     */
+    private Map<String, Long> resolveExisting(HashingAlgorithm algorithm, Collection<byte[]> digests) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Map<String, Long> existing = new HashMap<>();
+            List<Long> orphaned = new ArrayList<>();
+            for (FingerprintMatch match : chunkRepository.findByFingerprints(algorithm, digests)) {
+                existing.put(HexFormat.of().formatHex(match.digest()), match.chunkId());
+                if (match.orphaned()) {
+                    orphaned.add(match.chunkId());
+                }
+            }
+            if (chunkRepository.reviveChunks(orphaned.stream().mapToLong(Long::longValue).toArray())
+                    == orphaned.size()) {
+                return existing;
+            }
+            logger.info("Chunks were collected while being reused, looking them up again");
+        }
+        throw new IllegalStateException("Chunks kept being collected while being reused");
+    }
+
+    private static List<byte[]> digestsOf(Collection<PreparedChunk> chunks) {
+        return chunks.stream().map(PreparedChunk::digest).toList();
+    }
+
+    private static Map<String, Object> error(String name, String message) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entryName", name);
+        result.put("error", message != null ? message : "Ingest failed");
+        return result;
+    }
+
+    private record Entry(String name, byte[] data) {
+    }
+
+    private record PreparedEntry(String name, IngestResult result, List<Chunk> chunks, List<byte[]> digests,
+            List<String> hexDigests) {
+    }
+
+    private record PreparedChunk(byte[] digest, Chunk chunk) {
+    }
+
+    private record StatsKey(String extension, ChunkingProfile profile) {
+    }
+}
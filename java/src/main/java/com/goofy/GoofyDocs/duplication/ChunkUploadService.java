@@ -0,0 +1,344 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.chunking.ChunkingProfileResolver;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.model.UploadSessionEntity;
+import com.goofy.GoofyDocs.repository.ChunkReference;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+import com.goofy.GoofyDocs.repository.FingerprintMatch;
+import com.goofy.GoofyDocs.repository.UploadChunk;
+import com.goofy.GoofyDocs.repository.UploadSessionRepository;
+import com.goofy.GoofyDocs.stats.DedupStats;
+import com.goofy.GoofyDocs.stats.DedupStatsService;
+
+/**
+ * Negotiated upload: the client declares the ordered chunk fingerprints of a file, sends only the chunks the
+ * server does not have yet (in any order, retrying as needed), then commits the manifest.
+ *
+ * Chunks uploaded for a session are stored already marked as orphaned, dated at the session expiry, so an
+ * abandoned upload is reclaimed by the chunk GC; commit clears the mark like a regular ingest reusing a chunk.
+ */
+@Service
+public class ChunkUploadService {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkUploadService.class);
+    private static final int MAX_UPLOAD_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final DuplicationService duplicationService;
+    private final ChunkRepository chunkRepository;
+    private final FileRepository fileRepository;
+    private final FileManifestService manifestService;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final DedupStatsService statsService;
+    private final ChunkingProfileResolver profileResolver;
+    private final Duration sessionTtl;
+
+    @Autowired
+    public ChunkUploadService(
+            DuplicationService duplicationService,
+            ChunkRepository chunkRepository,
+            FileRepository fileRepository,
+            FileManifestService manifestService,
+            UploadSessionRepository uploadSessionRepository,
+            DedupStatsService statsService,
+            ChunkingProfileResolver profileResolver,
+            @Value("${goofydocs.upload.session-ttl:PT24H}") Duration sessionTtl) {
+        this.duplicationService = duplicationService;
+        this.chunkRepository = chunkRepository;
+        this.fileRepository = fileRepository;
+        this.manifestService = manifestService;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.statsService = statsService;
+        this.profileResolver = profileResolver;
+        this.sessionTtl = sessionTtl;
+    }
+
+    @Transactional
+    public Map<String, Object> createSession(UploadManifest manifest) {
+        if (manifest.fileName() == null || manifest.fileName().isBlank()) {
+            throw new IllegalArgumentException("fileName is required");
+        }
+        HashingAlgorithm algorithm = manifest.algorithm() != null ? manifest.algorithm() : HashingAlgorithm.SHA256;
+        List<UploadManifest.Entry> entries = manifest.chunks() != null ? manifest.chunks() : List.of();
+
+        List<UploadChunk> chunks = new ArrayList<>(entries.size());
+        long totalSize = 0;
+        for (int index = 0; index < entries.size(); index++) {
+            UploadManifest.Entry entry = entries.get(index);
+            byte[] digest;
+            try {
+                digest = HexFormat.of().parseHex(entry.fingerprint());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("Chunk " + index + " has an invalid fingerprint");
+            }
+            if (digest.length != algorithm.getDigestLength()) {
+                throw new IllegalArgumentException("Chunk " + index + " fingerprint is not a " + algorithm + " digest");
+            }
+            if (entry.size() <= 0 || entry.size() > MAX_UPLOAD_CHUNK_SIZE) {
+                throw new IllegalArgumentException("Chunk " + index + " size must be between 1 and "
+                        + MAX_UPLOAD_CHUNK_SIZE);
+            }
+            chunks.add(new UploadChunk(index, digest, entry.size()));
+            totalSize += entry.size();
+        }
+        if (totalSize != manifest.fileSize()) {
+            throw new IllegalArgumentException("Chunk sizes add up to " + totalSize + " bytes, expected "
+                    + manifest.fileSize());
+        }
+
+        String extension = DuplicationService.extensionOf(manifest.fileName());
+        ChunkingProfile profile = profileResolver.resolve(manifest.chunkingProfile(), extension);
+
+        UploadSessionEntity session = new UploadSessionEntity();
+        session.setId(UUID.randomUUID().toString());
+        session.setFileName(manifest.fileName());
+        session.setFileSize(manifest.fileSize());
+        session.setAlgorithm(algorithm.name());
+        session.setCompressionType(manifest.compression() != null ? manifest.compression().name() : null);
+        session.setChunkingProfile(profile.getId());
+        session.setChunkCount(chunks.size());
+        session.setExpiresAt(LocalDateTime.now().plus(sessionTtl));
+        session = uploadSessionRepository.save(session);
+        uploadSessionRepository.insertChunks(session.getId(), chunks);
+
+        Map<String, Object> status = status(session, chunks);
+        logger.info("Upload session created: id={}, name={}, chunks={}, missing={}",
+                session.getId(), manifest.fileName(), chunks.size(), ((List<?>) status.get("missingChunks")).size());
+        return status;
+    }
+
+    @Transactional
+    public Optional<Map<String, Object>> getStatus(String uploadId) {
+        return findActive(uploadId)
+                .map(session -> status(session, uploadSessionRepository.findChunks(uploadId)));
+    }
+
+    @Transactional
+    public Optional<Map<String, Object>> uploadChunk(String uploadId, int index, byte[] data) {
+        Optional<UploadSessionEntity> activeSession = findActive(uploadId);
+        if (activeSession.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSessionEntity session = activeSession.get();
+        Optional<UploadChunk> expected = uploadSessionRepository.findChunk(uploadId, index);
+        if (expected.isEmpty()) {
+            return Optional.empty();
+        }
+
+        UploadChunk chunk = expected.get();
+        if (data.length != chunk.size()) {
+            throw new IllegalArgumentException("Chunk " + index + " is " + data.length + " bytes, expected "
+                    + chunk.size());
+        }
+        HashingAlgorithm algorithm = HashingAlgorithm.valueOf(session.getAlgorithm());
+        byte[] digest = duplicationService.fingerprint(data, algorithm);
+        if (!Arrays.equals(digest, chunk.digest())) {
+            throw new IllegalArgumentException("Chunk " + index + " does not match its fingerprint");
+        }
+
+        boolean stored = false;
+        Optional<ChunkReference> existing = chunkRepository.findByFingerprint(algorithm, digest);
+        if (existing.isPresent()) {
+            if (existing.get().orphaned()) {
+                chunkRepository.deferOrphanedMark(List.of(existing.get().id()), session.getExpiresAt());
+            }
+        } else {
+            String compressionType = session.getCompressionType();
+            byte[] payload = compressionType != null
+                    ? duplicationService.compress(data, CompressionType.valueOf(compressionType))
+                    : data;
+            stored = chunkRepository.insertIfAbsent(algorithm, digest, payload, compressionType, data.length,
+                    session.getExpiresAt()).isPresent();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("uploadId", uploadId);
+        result.put("index", index);
+        result.put("stored", stored);
+        return Optional.of(result);
+    }
+
+    @Transactional
+    public Optional<Map<String, Object>> commit(String uploadId) {
+        Optional<UploadSessionEntity> lockedSession = uploadSessionRepository.findByIdForUpdate(uploadId)
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()));
+        if (lockedSession.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSessionEntity session = lockedSession.get();
+        HashingAlgorithm algorithm = HashingAlgorithm.valueOf(session.getAlgorithm());
+        List<UploadChunk> chunks = uploadSessionRepository.findChunks(uploadId);
+
+        Map<String, FingerprintMatch> matches = lookup(algorithm, chunks);
+        long[] orphaned = matches.values().stream()
+                .filter(FingerprintMatch::orphaned)
+                .mapToLong(FingerprintMatch::chunkId)
+                .distinct()
+                .sorted()
+                .toArray();
+        if (orphaned.length > 0 && chunkRepository.reviveChunks(orphaned) != orphaned.length) {
+            // The GC took some of them since they were uploaded; look again to report which ones
+            matches = lookup(algorithm, chunks);
+            matches.values().removeIf(FingerprintMatch::orphaned);
+        }
+        List<Integer> missing = missingChunks(chunks, matches);
+        if (!missing.isEmpty()) {
+            throw new IncompleteUploadException(uploadId, missing);
+        }
+
+        String fileName = session.getFileName();
+        String extension = DuplicationService.extensionOf(fileName);
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setName(extension.isEmpty() ? fileName
+                : fileName.substring(0, fileName.length() - extension.length() - 1));
+        fileEntity.setExtension(extension);
+        fileEntity.setSize(session.getFileSize());
+        fileEntity.setChunkingProfile(session.getChunkingProfile());
+        fileEntity = fileRepository.save(fileEntity);
+
+        ChunkManifest.Builder manifest = ChunkManifest.builder(chunks.size());
+        ChunkCounts seen = new ChunkCounts(chunks.size());
+        long duplicateChunks = 0;
+        long duplicateBytes = 0;
+        long newChunkBytes = 0;
+        long storedBytes = 0;
+        for (UploadChunk chunk : chunks) {
+            FingerprintMatch match = matches.get(HexFormat.of().formatHex(chunk.digest()));
+            if (match.originalSize() != chunk.size()) {
+                throw new IllegalArgumentException("Chunk " + chunk.index() + " is declared as " + chunk.size()
+                        + " bytes but the stored chunk has " + match.originalSize());
+            }
+
+            manifest.add(match.chunkId(), chunk.size());
+            if (seen.add(match.chunkId(), 1) == 1 && match.refCount() == 0) {
+                newChunkBytes += chunk.size();
+                storedBytes += match.storedSize();
+            } else {
+                duplicateChunks++;
+                duplicateBytes += chunk.size();
+            }
+        }
+
+        chunkRepository.incrementReferenceCounts(manifestService.write(fileEntity, null, manifest.build()));
+        ChunkingProfile profile = ChunkingProfile.fromId(session.getChunkingProfile());
+        statsService.record(extension, profile, new DedupStats(1, session.getFileSize(), chunks.size(),
+                duplicateChunks, duplicateBytes, newChunkBytes, storedBytes));
+        uploadSessionRepository.deleteSession(uploadId);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("fileId", fileEntity.getId());
+        result.put("fileName", fileEntity.getName());
+        result.put("extension", extension);
+        result.put("fileSize", fileEntity.getSize());
+        result.put("algorithm", algorithm.name());
+        result.put("chunkingProfile", profile.name());
+        result.put("totalChunks", chunks.size());
+        result.put("uniqueChunks", chunks.size() - duplicateChunks);
+        result.put("duplicateChunks", duplicateChunks);
+        result.put("savedStorage", duplicateBytes);
+        result.put("deduplicationRatio", chunks.isEmpty() ? 0 : (double) duplicateChunks / chunks.size());
+
+        logger.info("Upload committed: session={}, fileId={}, chunks={}, duplicateChunks={}",
+                uploadId, fileEntity.getId(), chunks.size(), duplicateChunks);
+        return Optional.of(result);
+    }
+
+    @Transactional
+    public boolean abort(String uploadId) {
+        return uploadSessionRepository.deleteSession(uploadId) > 0;
+    }
+
+    @Scheduled(fixedDelayString = "${goofydocs.upload.purge-interval:PT15M}")
+    @Transactional
+    public void purgeExpiredSessions() {
+        int purged = uploadSessionRepository.deleteExpired(LocalDateTime.now());
+        if (purged > 0) {
+            logger.info("Purged {} expired upload session(s)", purged);
+        }
+    }
+
+    private Optional<UploadSessionEntity> findActive(String uploadId) {
+        return uploadSessionRepository.findById(uploadId)
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()));
+    }
+
+    private Map<String, Object> status(UploadSessionEntity session, List<UploadChunk> chunks) {
+        Map<String, FingerprintMatch> matches = lookup(HashingAlgorithm.valueOf(session.getAlgorithm()), chunks);
+
+        List<Long> orphaned = matches.values().stream()
+                .filter(FingerprintMatch::orphaned)
+                .map(FingerprintMatch::chunkId)
+                .toList();
+        if (!orphaned.isEmpty()) {
+            chunkRepository.deferOrphanedMark(orphaned, session.getExpiresAt());
+        }
+
+        List<Integer> missing = missingChunks(chunks, matches);
+        long missingBytes = missing.stream().mapToLong(index -> chunks.get(index).size()).sum();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("uploadId", session.getId());
+        result.put("fileName", session.getFileName());
+        result.put("fileSize", session.getFileSize());
+        result.put("algorithm", session.getAlgorithm());
+        result.put("chunkingProfile", ChunkingProfile.fromId(session.getChunkingProfile()).name());
+        result.put("totalChunks", chunks.size());
+        result.put("missingChunks", missing);
+        result.put("missingBytes", missingBytes);
+        result.put("expiresAt", session.getExpiresAt().toString());
+        return result;
+    }
+
+    private Map<String, FingerprintMatch> lookup(HashingAlgorithm algorithm, List<UploadChunk> chunks) {
+        Map<String, byte[]> distinct = new LinkedHashMap<>();
+        for (UploadChunk chunk : chunks) {
+            distinct.putIfAbsent(HexFormat.of().formatHex(chunk.digest()), chunk.digest());
+        }
+
+        Map<String, FingerprintMatch> matches = new HashMap<>();
+        for (FingerprintMatch match : chunkRepository.findByFingerprints(algorithm, distinct.values())) {
+            matches.put(HexFormat.of().formatHex(match.digest()), match);
+        }
+        return matches;
+    }
+
+    // Only the first index of each missing fingerprint is reported; one body covers every repetition
+    private static List<Integer> missingChunks(List<UploadChunk> chunks, Map<String, FingerprintMatch> matches) {
+        Set<String> reported = new HashSet<>();
+        List<Integer> missing = new ArrayList<>();
+        for (UploadChunk chunk : chunks) {
+            String fingerprint = HexFormat.of().formatHex(chunk.digest());
+            if (!matches.containsKey(fingerprint) && reported.add(fingerprint)) {
+                missing.add(chunk.index());
+            }
+        }
+        return missing;
+    }
+}
@@ -0,0 +1,155 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.Arrays;
+
+/**
+ * Occurrence count per fingerprint for one upload. Digests are copied into a single slab and found through
+ * an open-addressing index of slab positions, so each distinct chunk costs its digest bytes plus a few ints
+ * instead of a hex string, a map entry and a boxed count.
+ */
+final class DigestTable {
+    private final int digestLength;
+    private byte[] digests;
+    private int[] counts;
+    private int[] firstIndexes;
+    private int[] lengths;
+    private boolean[] stored;
+    // Slab position + 1 per slot, 0 when free
+    private int[] slots;
+    private int size;
+
+    DigestTable(int digestLength, int expectedDigests) {
+        this.digestLength = digestLength;
+        int capacity = Math.max(16, expectedDigests);
+        this.digests = new byte[capacity * digestLength];
+        this.counts = new int[capacity];
+        this.firstIndexes = new int[capacity];
+        this.lengths = new int[capacity];
+        this.stored = new boolean[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    /**
+     * Records one occurrence of {@code digest}, seen at chunk {@code index}, and returns how often it has been
+     * seen so far (1 for a first occurrence).
+     */
+    int add(byte[] digest, int index) {
+        return add(digest, index, 0);
+    }
+
+    /**
+     * Same as {@link #add(byte[], int)}, also recording the chunk length for {@link #storedBytes()}.
+     */
+    int add(byte[] digest, int index, int length) {
+        if (digest.length != digestLength) {
+            throw new IllegalArgumentException("Expected a " + digestLength + "-byte digest, got " + digest.length);
+        }
+        int slot = slot(digest);
+        if (slots[slot] != 0) {
+            return ++counts[slots[slot] - 1];
+        }
+
+        if (size == counts.length) {
+            int capacity = size * 2;
+            digests = Arrays.copyOf(digests, capacity * digestLength);
+            counts = Arrays.copyOf(counts, capacity);
+            firstIndexes = Arrays.copyOf(firstIndexes, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            stored = Arrays.copyOf(stored, capacity);
+        }
+        System.arraycopy(digest, 0, digests, size * digestLength, digestLength);
+        counts[size] = 1;
+        firstIndexes[size] = index;
+        lengths[size] = length;
+        size++;
+        slots[slot] = size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Flags {@code digest} as already held by the store; returns false when it was never added.
+     */
+    boolean markStored(byte[] digest) {
+        if (digest.length != digestLength) {
+            return false;
+        }
+        int entry = slots[slot(digest)] - 1;
+        if (entry < 0) {
+            return false;
+        }
+        stored[entry] = true;
+        return true;
+    }
+
+    int storedCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += stored[i] ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Bytes covered by every occurrence of the stored digests.
+     */
+    long storedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < size; i++) {
+            bytes += stored[i] ? (long) counts[i] * lengths[i] : 0;
+        }
+        return bytes;
+    }
+
+    /**
+     * Visits the distinct digests in order of first occurrence; the digest array is reused between calls.
+     */
+    void forEach(Consumer consumer) {
+        byte[] digest = new byte[digestLength];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(digests, i * digestLength, digest, 0, digestLength);
+            consumer.accept(digest, counts[i], firstIndexes[i]);
+        }
+    }
+
+    @FunctionalInterface
+    interface Consumer {
+        void accept(byte[] digest, int count, int firstIndex);
+    }
+
+    private int slot(byte[] digest) {
+        int mask = slots.length - 1;
+        int slot = hash(digest, 0) & mask;
+        while (slots[slot] != 0 && !Arrays.equals(digests, (slots[slot] - 1) * digestLength,
+                slots[slot] * digestLength, digest, 0, digestLength)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int hash(byte[] data, int offset) {
+        long hash = 0;
+        for (int i = 0; i < digestLength; i++) {
+            hash = hash * 31 + data[offset + i];
+        }
+        return (int) ((hash * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(digests, i * digestLength) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
+
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Two-tier fingerprinting for one ingest: every chunk gets a cheap xxHash64, and a chunk whose xxHash and bytes
+ * match a recently fingerprinted one of the same ingest reuses its cryptographic digest instead of computing it
+ * again. Identity is confirmed byte for byte, so a reused digest is exactly the one the chunk would have had.
+ * Recent chunks are kept by reference (chunk arrays are never modified) within {@code capacity} bytes, least
+ * recently matched first out. Digests may be computed on an {@link Executor}; a repeat then waits for the digest
+ * of its earlier copy rather than computing its own. Not thread-safe: chunks are submitted from one thread.
+ */
+final class DuplicateFilter {
+    private static final XXHash64 XXHASH = XXHashFactory.fastestInstance().hash64();
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private record Entry(byte[] data, CompletableFuture<byte[]> digest) {
+    }
+
+    private final long capacity;
+    private final Function<byte[], byte[]> digestFunction;
+    private final Executor executor;
+    private final IngestMetrics metrics;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long size;
+    private long hits;
+
+    DuplicateFilter(long capacity, Function<byte[], byte[]> digestFunction, IngestMetrics metrics) {
+        this(capacity, digestFunction, Runnable::run, metrics);
+    }
+
+    DuplicateFilter(long capacity, Function<byte[], byte[]> digestFunction, Executor executor, IngestMetrics metrics) {
+        this.capacity = capacity;
+        this.digestFunction = digestFunction;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Cryptographic digest of {@code data}, computed only when no identical chunk was seen recently.
+     */
+    byte[] fingerprint(byte[] data) {
+        return await(submit(data));
+    }
+
+    /**
+     * Same as {@link #fingerprint(byte[])}, but a digest to compute is handed to the executor instead of waited
+     * for.
+     */
+    CompletableFuture<byte[]> submit(byte[] data) {
+        if (capacity <= 0) {
+            return CompletableFuture.supplyAsync(() -> digestFunction.apply(data), executor);
+        }
+        long start = System.nanoTime();
+        long key = XXHASH.hash(data, 0, data.length, SEED);
+        Entry entry = entries.get(key);
+        if (entry != null && Arrays.equals(entry.data(), data)) {
+            metrics.recordPrefilter(System.nanoTime() - start, true);
+            hits++;
+            return entry.digest();
+        }
+        metrics.recordPrefilter(System.nanoTime() - start, false);
+
+        CompletableFuture<byte[]> digest = CompletableFuture.supplyAsync(() -> digestFunction.apply(data), executor);
+        // On an xxHash collision the entry already there stays
+        if (entry == null && data.length <= capacity) {
+            entries.put(key, new Entry(data, digest));
+            size += data.length;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (size > capacity) {
+                size -= eldest.next().data().length;
+                eldest.remove();
+            }
+        }
+        return digest;
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    static byte[] await(CompletableFuture<byte[]> digest) {
+        try {
+            return digest.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
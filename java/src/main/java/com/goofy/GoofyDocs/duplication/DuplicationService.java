@@ -1,43 +1,83 @@
 package com.goofy.GoofyDocs.duplication;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.Blake3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
 import com.goofy.GoofyDocs.chunking.Chunk;
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.chunking.ChunkingProfileResolver;
 import com.goofy.GoofyDocs.chunking.ChunkingService;
 import com.goofy.GoofyDocs.compression.CompressionService;
 import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
-import com.goofy.GoofyDocs.model.ChunkEntity;
-import com.goofy.GoofyDocs.model.FileChunkEntity;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
 import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.repository.ChunkReference;
 import com.goofy.GoofyDocs.repository.ChunkRepository;
 import com.goofy.GoofyDocs.repository.FileChunkRepository;
 import com.goofy.GoofyDocs.repository.FileRepository;
-import com.google.common.hash.Hashing;
+import com.goofy.GoofyDocs.repository.FingerprintMatch;
+import com.goofy.GoofyDocs.segment.SegmentIndex;
+import com.goofy.GoofyDocs.segment.SegmentMatch;
+import com.goofy.GoofyDocs.similarity.SimilarityService;
+import com.goofy.GoofyDocs.stats.DedupStatsService;
+
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class DuplicationService {
 
   private static final Logger logger = LoggerFactory.getLogger(DuplicationService.class);
+  private static final int RELEASE_BATCH_SIZE = 1000;
+  private static final int LOOKUP_BATCH_SIZE = 1000;
+  private static final int HASH_QUEUE_PER_THREAD = 256;
 
   private final ChunkingService chunkingService;
   private final FileRepository fileRepository;
   private final ChunkRepository chunkRepository;
   private final FileChunkRepository fileChunkRepository;
   private final CompressionService compressionService;
+  private final IngestMetrics metrics;
+  private final HashingAlgorithm secondaryAlgorithm;
+  private final DedupStatsService statsService;
+  private final ChunkingProfileResolver profileResolver;
+  private final FileManifestService manifestService;
+  private final SegmentIndex segmentIndex;
+  private final SimilarityService similarityService;
+  private final TransactionTemplate transactionTemplate;
+  private final int batchChunks;
+  private final Duration leaseDuration;
+  private final FingerprintHasher fingerprintHasher;
+  private final long prefilterBytes;
+  private final ThreadPoolExecutor hashPool;
 
   @Autowired
   public DuplicationService(
@@ -45,167 +85,266 @@ public class DuplicationService {
       FileRepository fileRepository,
       ChunkRepository chunkRepository,
       FileChunkRepository fileChunkRepository,
-      CompressionService compressionService) {
+      CompressionService compressionService,
+      IngestMetrics metrics,
+      @Value("${goofydocs.fingerprint.secondary-algorithm:}") HashingAlgorithm secondaryAlgorithm,
+      DedupStatsService statsService,
+      ChunkingProfileResolver profileResolver,
+      FileManifestService manifestService,
+      SegmentIndex segmentIndex,
+      SimilarityService similarityService,
+      PlatformTransactionManager transactionManager,
+      @Value("${goofydocs.ingest.batch-chunks:2048}") int batchChunks,
+      @Value("${goofydocs.ingest.job-ttl:PT24H}") Duration leaseDuration,
+      FingerprintHasher fingerprintHasher,
+      @Value("${goofydocs.fingerprint.prefilter-cache-size:0}") DataSize prefilterCacheSize,
+      @Value("${goofydocs.fingerprint.hash-threads:2}") int hashThreads) {
     this.chunkingService = chunkingService;
     this.fileRepository = fileRepository;
     this.chunkRepository = chunkRepository;
     this.fileChunkRepository = fileChunkRepository;
     this.compressionService = compressionService;
+    this.metrics = metrics;
+    this.secondaryAlgorithm = secondaryAlgorithm;
+    this.statsService = statsService;
+    this.profileResolver = profileResolver;
+    this.manifestService = manifestService;
+    this.segmentIndex = segmentIndex;
+    this.similarityService = similarityService;
+    this.transactionTemplate = transactionManager != null ? new TransactionTemplate(transactionManager) : null;
+    this.batchChunks = batchChunks;
+    this.leaseDuration = leaseDuration;
+    this.fingerprintHasher = fingerprintHasher;
+    this.prefilterBytes = prefilterCacheSize.toBytes();
+    this.hashPool = hashThreads > 0 ? hashPool(hashThreads) : null;
+  }
+
+  public DuplicationService(
+      ChunkingService chunkingService,
+      FileRepository fileRepository,
+      ChunkRepository chunkRepository,
+      FileChunkRepository fileChunkRepository,
+      CompressionService compressionService) {
+    this(chunkingService, fileRepository, chunkRepository, fileChunkRepository, compressionService,
+        IngestMetrics.noop(), null, null, ChunkingProfileResolver.defaults(),
+        FileManifestService.fullManifestsOnly(fileRepository, fileChunkRepository), null, null, null, 2048,
+        Duration.ofHours(24), FingerprintHasher.defaults(), DataSize.ofBytes(0), 0);
   }
 
   public DuplicationService(ChunkingService chunkingService) {
     this(chunkingService, null, null, null, null);
   }
 
+  @PreDestroy
+  public void shutdown() {
+    if (hashPool != null) {
+      hashPool.shutdown();
+    }
+  }
+
   public Map<String, Object> analyzeFile(File file, HashingAlgorithm algorithm) throws IOException {
-    List<Chunk> chunks = chunkingService.chunkFile(file);
-    Map<String, Integer> duplicates = new HashMap<>();
-
-    for (Chunk chunk : chunks) {
-      String hash = calculateHash(chunk.getData(), algorithm);
-      duplicates.merge(hash, 1, Integer::sum);
-      logger.debug("Chunk at position {} with size {} bytes has hash: {}",
-          chunk.getPosition(), chunk.getData().length, hash);
+    return analyzeFile(file, algorithm, null);
+  }
+
+  public Map<String, Object> analyzeFile(File file, HashingAlgorithm algorithm, ChunkingProfile chunkingProfile)
+      throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return analyze(in, file.getName(), algorithm, chunkingProfile, false);
     }
+  }
 
-    duplicates.entrySet().stream()
-        .filter(e -> e.getValue() > 1);
-
-    long uniqueChunks = duplicates.size();
-    long totalChunks = chunks.size();
-    long duplicatedChunks = duplicates.entrySet().stream()
-        .filter(e -> e.getValue() > 1)
-        .count();
-
-    return Map.of(
-        "fileName", file.getName(),
-        "totalChunks", totalChunks,
-        "uniqueChunks", uniqueChunks,
-        "duplicatedChunks", duplicatedChunks,
-        "algorithm", algorithm.name(),
-        "duplicateDetails", duplicates.entrySet().stream()
-            .filter(e -> e.getValue() > 1)
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue)));
+  /**
+   * Scan-only analysis: boundaries and fingerprints are computed as {@code in} is read and no chunk content is
+   * kept, so memory grows with the distinct digests only. With {@code checkStored}, first occurrences are
+   * looked up in the global index in batches and the result reports how much of the content is already stored.
+   */
+  public Map<String, Object> analyze(InputStream in, String fileName, HashingAlgorithm algorithm,
+      ChunkingProfile chunkingProfile, boolean checkStored) throws IOException {
+    ChunkingProfile profile = profileResolver.resolve(chunkingProfile, extensionOf(fileName));
+    DigestTable occurrences = new DigestTable(algorithm.getDigestLength(), 1024);
+    List<byte[]> pendingLookups = new ArrayList<>();
+    IncrementalFingerprint fingerprint = new IncrementalFingerprint(algorithm);
+
+    long totalBytes = chunkingService.scanStream(in, profile, new ChunkingService.ScanSink() {
+      private int index;
+
+      @Override
+      public void update(byte[] data, int offset, int length) {
+        fingerprint.update(data, offset, length);
+      }
+
+      @Override
+      public void boundary(long position, int length) {
+        byte[] digest = fingerprint.finish();
+        logger.debug("Chunk at position {} with size {} bytes", position, length);
+        if (occurrences.add(digest, index++, length) == 1 && checkStored) {
+          pendingLookups.add(digest);
+          if (pendingLookups.size() >= LOOKUP_BATCH_SIZE) {
+            markStored(algorithm, pendingLookups, occurrences);
+          }
+        }
+      }
+    });
+    if (checkStored) {
+      markStored(algorithm, pendingLookups, occurrences);
+    }
+
+    // Only the repeated digests are turned into hex strings
+    Map<String, Integer> duplicateDetails = new HashMap<>();
+    long[] totalChunks = { 0 };
+    occurrences.forEach((digest, count, firstIndex) -> {
+      totalChunks[0] += count;
+      if (count > 1) {
+        duplicateDetails.put(HexFormat.of().formatHex(digest), count);
+      }
+    });
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("fileName", fileName);
+    result.put("totalBytes", totalBytes);
+    result.put("totalChunks", totalChunks[0]);
+    result.put("uniqueChunks", (long) occurrences.size());
+    result.put("duplicatedChunks", (long) duplicateDetails.size());
+    result.put("algorithm", algorithm.name());
+    result.put("chunkingProfile", profile.name());
+    if (checkStored) {
+      long storedBytes = occurrences.storedBytes();
+      result.put("storedChunks", (long) occurrences.storedCount());
+      result.put("storedBytes", storedBytes);
+      result.put("storedRatio", totalBytes > 0 ? (double) storedBytes / totalBytes : 0.0);
+    }
+    result.put("duplicateDetails", duplicateDetails);
+    return result;
+  }
+
+  // Chunks pending collection count as missing: storing the file would write them again if they are gone by then
+  private void markStored(HashingAlgorithm algorithm, List<byte[]> digests, DigestTable occurrences) {
+    if (digests.isEmpty()) {
+      return;
+    }
+    for (FingerprintMatch match : chunkRepository.findByFingerprints(algorithm, digests)) {
+      if (!match.orphaned()) {
+        occurrences.markStored(match.digest());
+      }
+    }
+    digests.clear();
   }
 
-  private String calculateHash(byte[] data, HashingAlgorithm algorithm) {
+  String calculateHash(byte[] data, HashingAlgorithm algorithm) {
+    return HexFormat.of().formatHex(fingerprint(data, algorithm));
+  }
+
+  byte[] fingerprint(byte[] data, HashingAlgorithm algorithm) {
+    long start = System.nanoTime();
     try {
-      switch (algorithm) {
-        case SHA1 -> {
-          return Hashing.hmacSha1("key".getBytes()).hashBytes(data).toString();
-        }
-        case SHA256 -> {
-          return Hashing.sha256().hashBytes(data).toString();
-        }
-        case BLAKE3 -> {
-          byte[] hashBytes = Blake3.hash(data);
-          return Hex.encodeHexString(hashBytes);
-        }
-        default -> throw new IllegalArgumentException("Unsupported hashing algorithm: " + algorithm);
+      return fingerprintHasher.hash(algorithm, data);
+    } finally {
+      metrics.recordHashing(algorithm, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Fingerprints the chunks of one ingest; with the pre-filter enabled, chunks repeated within it reuse the
+   * digest of their earlier copy.
+   */
+  DuplicateFilter duplicateFilter(HashingAlgorithm algorithm) {
+    return new DuplicateFilter(prefilterBytes, data -> fingerprint(data, algorithm), metrics);
+  }
+
+  /**
+   * Chunks of one ingest waiting to be stored, fingerprinted on the hashing pool (if any) while the chunker reads
+   * on.
+   */
+  PendingChunks pendingChunks(HashingAlgorithm algorithm) {
+    Executor executor = hashPool != null ? hashPool : Runnable::run;
+    return new PendingChunks(new DuplicateFilter(prefilterBytes, data -> fingerprint(data, algorithm), executor,
+        metrics), batchChunks);
+  }
+
+  // Shared by all ingests; with its queue full the chunker hashes the chunk itself, which bounds how far it
+  // reads ahead
+  private static ThreadPoolExecutor hashPool(int threads) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(threads * HASH_QUEUE_PER_THREAD), new CustomizableThreadFactory("fingerprint-"),
+        (task, executor) -> task.run());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  byte[] compress(byte[] data, CompressionType compressionType) {
+    long compressionStart = System.nanoTime();
+    byte[] compressed = compressionService.compress(data, compressionType);
+    metrics.recordCompression(compressionType, System.nanoTime() - compressionStart, data.length,
+        compressed.length);
+    return compressed;
+  }
+
+  private Optional<Long> findExistingChunk(HashingAlgorithm algorithm, byte[] digest, LocalDateTime lease) {
+    Optional<ChunkReference> existingChunk = chunkRepository.findByFingerprint(algorithm, digest);
+    if (existingChunk.isEmpty()) {
+      return Optional.empty();
+    }
+
+    ChunkReference reference = existingChunk.get();
+    if (reference.orphaned()) {
+      int updated = lease != null
+          ? chunkRepository.deferOrphanedMark(List.of(reference.id()), lease)
+          : chunkRepository.clearOrphanedMark(reference.id());
+      if (updated == 0) {
+        logger.info("Chunk {} was collected while being reused, storing it again", reference.id());
+        return Optional.empty();
       }
-    } catch (IllegalArgumentException | UnsupportedOperationException e) {
-      throw new RuntimeException("Error while calculating hash", e);
     }
+    return Optional.of(reference.id());
   }
 
-  @Transactional
   public Map<String, Object> processAndStoreFile(
       File file,
       String fileName,
       long fileSize,
       HashingAlgorithm algorithm) throws IOException {
+    return processAndStoreFile(file, fileName, fileSize, algorithm, null, null);
+  }
+
+  public Map<String, Object> processAndStoreFile(
+      File file,
+      String fileName,
+      long fileSize,
+      HashingAlgorithm algorithm,
+      ChunkingProfile chunkingProfile,
+      Long parentId) throws IOException {
     if (fileRepository == null || chunkRepository == null || fileChunkRepository == null) {
       throw new UnsupportedOperationException(
           "This method requires the repositories that have not been injected. " +
               "Use the constructor with all parameters for this functionality.");
     }
 
-    String name = fileName;
-    String extension = "";
-    int lastDotIndex = fileName.lastIndexOf('.');
-    if (lastDotIndex > 0) {
-      name = fileName.substring(0, lastDotIndex);
-      extension = fileName.substring(lastDotIndex + 1);
-    }
-
-    FileEntity fileEntity = new FileEntity();
-    fileEntity.setName(name);
-    fileEntity.setExtension(extension);
-    fileEntity.setSize(fileSize);
-    fileEntity = fileRepository.save(fileEntity);
-
-    List<Chunk> chunks = chunkingService.chunkFile(file);
-
-    int totalChunks = chunks.size();
-    int duplicateChunks = 0;
-    int uniqueChunks = 0;
-    long savedStorage = 0;
-
-    for (Chunk chunk : chunks) {
-      String hash = calculateHash(chunk.getData(), algorithm);
-
-      Optional<ChunkEntity> existingChunk;
-      existingChunk = switch (algorithm) {
-        case SHA1 -> chunkRepository.findByHashSha1(hash);
-        case SHA256 -> chunkRepository.findByHashSha256(hash);
-        case BLAKE3 -> chunkRepository.findByHashBlake3(hash);
-        default -> Optional.empty();
-      };
-
-      ChunkEntity chunkEntity;
-      if (existingChunk.isPresent()) {
-        chunkEntity = existingChunk.get();
-        duplicateChunks++;
-        savedStorage += chunk.getOriginalSize();
-        logger.info("Duplicate chunk found: {}", hash);
-      } else {
-        chunkEntity = new ChunkEntity();
-        chunkEntity.setData(chunk.getData());
-
-        switch (algorithm) {
-          case SHA1 -> chunkEntity.setHashSha1(hash);
-          case SHA256 -> chunkEntity.setHashSha256(hash);
-          case BLAKE3 -> chunkEntity.setHashBlake3(hash);
-        }
-
-        chunkEntity = chunkRepository.save(chunkEntity);
-        uniqueChunks++;
-      }
-
-      FileChunkEntity fileChunk = new FileChunkEntity();
-      fileChunk.setFile(fileEntity);
-      fileChunk.setChunk(chunkEntity);
-      fileChunk.setPosition(chunk.getPosition());
-      fileChunkRepository.save(fileChunk);
-    }
-
-    Map<String, Object> result = new HashMap<>();
-    result.put("fileId", fileEntity.getId());
-    result.put("fileName", fileEntity.getName());
-    result.put("extension", fileEntity.getExtension());
-    result.put("fileSize", fileEntity.getSize());
-    result.put("algorithm", algorithm.name());
-    result.put("totalChunks", totalChunks);
-    result.put("uniqueChunks", uniqueChunks);
-    result.put("duplicateChunks", duplicateChunks);
-    result.put("savedStorage", savedStorage);
-    result.put("deduplicationRatio", totalChunks > 0 ? (double) duplicateChunks / totalChunks : 0);
+    IngestResult ingest = ingest(file, fileName, fileSize, algorithm, null, chunkingProfile, parentId);
+    Map<String, Object> result = ingest.toMap();
 
     logger.info("Processed file: id={}, name={}, chunks={}, uniqueChunks={}, duplicateChunks={}",
-        fileEntity.getId(), fileName, totalChunks, uniqueChunks, duplicateChunks);
+        ingest.fileEntity.getId(), fileName, ingest.totalChunks, ingest.uniqueChunks, ingest.duplicateChunks);
 
     return result;
   }
 
-  @Transactional
   public Map<String, Object> processAndStoreFileCompressed(
       File file,
       String fileName,
       long fileSize,
       HashingAlgorithm algorithm,
       CompressionType compressionType) throws IOException {
+    return processAndStoreFileCompressed(file, fileName, fileSize, algorithm, compressionType, null, null);
+  }
+
+  public Map<String, Object> processAndStoreFileCompressed(
+      File file,
+      String fileName,
+      long fileSize,
+      HashingAlgorithm algorithm,
+      CompressionType compressionType,
+      ChunkingProfile chunkingProfile,
+      Long parentId) throws IOException {
     if (fileRepository == null || chunkRepository == null || fileChunkRepository == null
         || compressionService == null) {
       throw new UnsupportedOperationException(
@@ -213,88 +352,362 @@ public class DuplicationService {
               "Use the constructor with all parameters for this functionality.");
     }
 
+    IngestResult ingest = ingest(file, fileName, fileSize, algorithm, compressionType, chunkingProfile, parentId);
+    Map<String, Object> result = ingest.toMap();
+    result.put("compressionType", compressionType.name());
+    result.put("totalCompressedSize", ingest.totalCompressedSize);
+
+    logger.info(
+        "Processed compressed file: id={}, name={}, chunks={}, uniqueChunks={}, duplicateChunks={}, compressedSize={}",
+        ingest.fileEntity.getId(), fileName, ingest.totalChunks, ingest.uniqueChunks, ingest.duplicateChunks,
+        ingest.totalCompressedSize);
+
+    return result;
+  }
+
+  /**
+   * Chunks the file as a stream and commits every {@code batch-chunks} chunks in their own transaction, so
+   * neither the chunk list nor the persistence context grows with the file. Chunks are leased until the last
+   * transaction saves the file, which is when it becomes visible; an ingest that dies halfway leaves only
+   * leased chunks for the GC.
+   */
+  private IngestResult ingest(
+      File file,
+      String fileName,
+      long fileSize,
+      HashingAlgorithm algorithm,
+      CompressionType compressionType,
+      ChunkingProfile chunkingProfile,
+      Long parentId) throws IOException {
+    metrics.addBytesInFlight(fileSize);
+    // Without a transaction manager (unit tests) everything runs in the caller's context, unleased
+    boolean leased = transactionTemplate != null;
+    LocalDateTime lease = leased ? LocalDateTime.now().plus(leaseDuration) : null;
+    ChunkManifest.Builder manifest = ChunkManifest.builder(batchChunks);
+    try {
+      IngestResult result = prepare(fileName, fileSize, algorithm, chunkingProfile, parentId);
+
+      PendingChunks pending = pendingChunks(algorithm);
+      chunkingService.chunkFile(file, result.profile, 0, chunk -> {
+        pending.add(chunk);
+        if (pending.size() >= batchChunks) {
+          storeBatch(pending, false, compressionType, lease, result, manifest);
+        }
+      });
+      storeBatch(pending, true, compressionType, lease, result, manifest);
+
+      inTransaction(() -> {
+        finish(result, manifest.build(), leased);
+        return null;
+      });
+      return result;
+    } catch (IOException | RuntimeException e) {
+      if (leased) {
+        try {
+          inTransaction(() -> release(manifest.build().referenceCounts()));
+        } catch (RuntimeException releaseError) {
+          e.addSuppressed(releaseError);
+        }
+      }
+      throw e;
+    } finally {
+      metrics.addBytesInFlight(-fileSize);
+    }
+  }
+
+  private void storeBatch(
+      PendingChunks pending,
+      boolean last,
+      CompressionType compressionType,
+      LocalDateTime lease,
+      IngestResult result,
+      ChunkManifest.Builder manifest) {
+    if (pending.isEmpty()) {
+      return;
+    }
+    // Digests are awaited before the transaction opens, so it does not wait on the hashing pool
+    List<byte[]> digests = pending.digests();
+    int consumed = inTransaction(() -> storeChunks(pending.chunks(), digests, last, compressionType, lease, result,
+        manifest));
+    pending.consume(consumed);
+  }
+
+  private <T> T inTransaction(Supplier<T> work) {
+    return transactionTemplate != null ? transactionTemplate.execute(status -> work.get()) : work.get();
+  }
+
+  /**
+   * Resolves the parent and chunking profile of a new file and builds its (not yet saved) entity.
+   */
+  IngestResult prepare(
+      String fileName,
+      long fileSize,
+      HashingAlgorithm algorithm,
+      ChunkingProfile chunkingProfile,
+      Long parentId) {
+    return prepare(fileName, fileSize, algorithm, chunkingProfile, parentId, true);
+  }
+
+  /**
+   * Same as {@link #prepare(String, long, HashingAlgorithm, ChunkingProfile, Long)}, but unless
+   * {@code requireParent} a missing parent is dropped instead of rejected: an ingest resumed after its parent was
+   * deleted then stores a standalone file, as {@link #finish} does for one deleted while it ran.
+   */
+  IngestResult prepare(
+      String fileName,
+      long fileSize,
+      HashingAlgorithm algorithm,
+      ChunkingProfile chunkingProfile,
+      Long parentId,
+      boolean requireParent) {
     String name = fileName;
-    String extension = "";
-    int lastDotIndex = fileName.lastIndexOf('.');
-    if (lastDotIndex > 0) {
-      name = fileName.substring(0, lastDotIndex);
-      extension = fileName.substring(lastDotIndex + 1);
+    String extension = extensionOf(fileName);
+    if (!extension.isEmpty()) {
+      name = fileName.substring(0, fileName.length() - extension.length() - 1);
+    }
+
+    FileEntity parent = null;
+    if (parentId != null) {
+      parent = fileRepository.findById(parentId).orElse(null);
+      if (parent == null && requireParent) {
+        throw new IllegalArgumentException("Parent file not found: " + parentId);
+      }
     }
+    // A new version keeps its parent's chunking so unchanged regions produce the same chunks
+    ChunkingProfile profile = chunkingProfile == null && parent != null
+        ? ChunkingProfile.fromId(parent.getChunkingProfile())
+        : profileResolver.resolve(chunkingProfile, extension);
 
     FileEntity fileEntity = new FileEntity();
     fileEntity.setName(name);
     fileEntity.setExtension(extension);
     fileEntity.setSize(fileSize);
-    fileEntity = fileRepository.save(fileEntity);
-
-    List<Chunk> chunks = chunkingService.chunkFile(file);
-
-    int totalChunks = chunks.size();
-    int duplicateChunks = 0;
-    int uniqueChunks = 0;
-    long savedStorage = 0;
-    long totalCompressedSize = 0;
-
-    for (Chunk chunk : chunks) {
-      String hash = calculateHash(chunk.getData(), algorithm);
-
-      Optional<ChunkEntity> existingChunk;
-      existingChunk = switch (algorithm) {
-        case SHA1 -> chunkRepository.findByHashSha1(hash);
-        case SHA256 -> chunkRepository.findByHashSha256(hash);
-        case BLAKE3 -> chunkRepository.findByHashBlake3(hash);
-        default -> Optional.empty();
-      };
-
-      ChunkEntity chunkEntity;
-      if (existingChunk.isPresent()) {
-        chunkEntity = existingChunk.get();
-        duplicateChunks++;
-        savedStorage += chunk.getOriginalSize();
-        logger.info("Duplicate chunk found: {}", hash);
-      } else {
-        byte[] compressedData = compressionService.compress(chunk.getData(), compressionType);
-        totalCompressedSize += compressedData.length;
+    fileEntity.setChunkingProfile(profile.getId());
+    if (parent != null) {
+      fileEntity.setParentId(parent.getId());
+      fileEntity.setVersion(parent.getVersion() + 1);
+    }
+    return new IngestResult(fileEntity, algorithm, profile);
+  }
+
+  /**
+   * Stores {@code chunks} segment by segment and appends their ids to {@code manifest}. Unless this is the
+   * {@code last} run of the file, the trailing segment may still grow, so it is left for the next call; the
+   * number of chunks consumed is returned. With a {@code lease}, new chunks are stored marked as orphaned
+   * until then (and reused orphaned chunks have their mark deferred), so an abandoned ingest is reclaimed by
+   * the chunk GC.
+   */
+  int storeChunks(
+      List<Chunk> chunks,
+      List<byte[]> digests,
+      boolean last,
+      CompressionType compressionType,
+      LocalDateTime lease,
+      IngestResult result,
+      ChunkManifest.Builder manifest) {
+    HashingAlgorithm algorithm = result.algorithm;
+    boolean segmented = segmentIndex != null && segmentIndex.isEnabled();
+    List<SegmentIndex.Span> spans = segmented
+        ? segmentIndex.split(digests)
+        : List.of(new SegmentIndex.Span(0, chunks.size()));
+    if (!last && segmented && !spans.isEmpty()) {
+      spans = spans.subList(0, spans.size() - 1);
+    }
 
-        chunkEntity = new ChunkEntity();
-        chunkEntity.setData(compressedData);
-        chunkEntity.setCompressionType(compressionType.name());
+    int consumed = 0;
+    for (SegmentIndex.Span span : spans) {
+      List<byte[]> segmentDigests = digests.subList(span.from(), span.to());
+      SegmentMatch match = null;
+      if (segmented) {
+        long lookupStart = System.nanoTime();
+        match = segmentIndex.lookup(algorithm, segmentDigests, lease);
+        long resolvedBytes = 0;
+        for (int i = 0; i < span.length(); i++) {
+          if (match.chunkId(i) != 0) {
+            resolvedBytes += chunks.get(span.from() + i).getOriginalSize();
+          }
+        }
+        metrics.recordSegmentLookup(match.kind(), System.nanoTime() - lookupStart, match.resolvedChunks(),
+            resolvedBytes);
+      }
 
-        switch (algorithm) {
-          case SHA1 -> chunkEntity.setHashSha1(hash);
-          case SHA256 -> chunkEntity.setHashSha256(hash);
-          case BLAKE3 -> chunkEntity.setHashBlake3(hash);
+      ChunkManifest.Builder segmentManifest = ChunkManifest.builder(span.length());
+      for (int i = 0; i < span.length(); i++) {
+        Chunk chunk = chunks.get(span.from() + i);
+        long chunkId;
+        if (match != null && match.chunkId(i) != 0) {
+          chunkId = match.chunkId(i);
+          result.recordDuplicate(chunk);
+          result.segmentResolvedChunks++;
+        } else {
+          chunkId = storeChunk(chunk, segmentDigests.get(i), algorithm, compressionType, lease, result);
         }
+        manifest.add(chunkId, chunk.getOriginalSize());
+        segmentManifest.add(chunkId, chunk.getOriginalSize());
+      }
+      result.totalChunks += span.length();
+      consumed = span.to();
 
-        chunkEntity = chunkRepository.save(chunkEntity);
-        uniqueChunks++;
+      if (segmented) {
+        segmentIndex.record(algorithm, match, segmentDigests, segmentManifest.build());
       }
+    }
+    return consumed;
+  }
 
-      FileChunkEntity fileChunk = new FileChunkEntity();
-      fileChunk.setFile(fileEntity);
-      fileChunk.setChunk(chunkEntity);
-      fileChunk.setPosition(chunk.getPosition());
-      fileChunkRepository.save(fileChunk);
+  /**
+   * Saves the file with its manifest and chunk references, which makes it visible. The leases of
+   * {@code leased} chunks are cleared first; a chunk the GC took anyway (one reused while already marked by
+   * another file's deletion, on an ingest that outlived the grace period) fails the ingest rather than the file.
+   */
+  void finish(IngestResult result, ChunkManifest manifest, boolean leased) {
+    long writeStart = System.nanoTime();
+    if (leased) {
+      ChunkCounts references = manifest.referenceCounts();
+      int live = chunkRepository.reviveChunks(references.sortedIds());
+      if (live != references.size()) {
+        throw new IllegalStateException((references.size() - live)
+            + " chunk(s) were collected before the ingest completed");
+      }
     }
 
-    Map<String, Object> result = new HashMap<>();
-    result.put("fileId", fileEntity.getId());
-    result.put("fileName", fileEntity.getName());
-    result.put("extension", fileEntity.getExtension());
-    result.put("fileSize", fileEntity.getSize());
-    result.put("algorithm", algorithm.name());
-    result.put("compressionType", compressionType.name());
-    result.put("totalChunks", totalChunks);
-    result.put("uniqueChunks", uniqueChunks);
-    result.put("duplicateChunks", duplicateChunks);
-    result.put("savedStorage", savedStorage);
-    result.put("deduplicationRatio", totalChunks > 0 ? (double) duplicateChunks / totalChunks : 0);
-    result.put("totalCompressedSize", totalCompressedSize);
+    FileEntity parent = null;
+    if (result.fileEntity.getParentId() != null) {
+      // The parent may have been deleted since the ingest started; the version is then stored standalone
+      parent = fileRepository.findById(result.fileEntity.getParentId()).orElse(null);
+      if (parent == null) {
+        result.fileEntity.setParentId(null);
+      }
+    }
+    result.fileEntity = fileRepository.save(result.fileEntity);
+
+    ChunkCounts storedReferences = manifestService.write(result.fileEntity, parent, manifest);
+    result.manifestEntries = (int) storedReferences.total();
+    // Shared counters are touched last so their row locks are held only until commit
+    chunkRepository.incrementReferenceCounts(storedReferences);
+    if (statsService != null) {
+      statsService.record(result.fileEntity.getExtension(), result.profile, result.toStats());
+    }
+    metrics.recordDbWrite(System.nanoTime() - writeStart);
+  }
 
-    logger.info(
-        "Processed compressed file: id={}, name={}, chunks={}, uniqueChunks={}, duplicateChunks={}, compressedSize={}",
-        fileEntity.getId(), fileName, totalChunks, uniqueChunks, duplicateChunks, totalCompressedSize);
+  /**
+   * Hands the chunks of an abandoned ingest back to the GC. Chunks it stored are still leased and expire on
+   * their own, and so do the reused ones and delta bases whose mark was deferred to the lease. This marks the
+   * reused ones that were live when looked up and that nothing else references anymore.
+   */
+  int release(ChunkCounts chunkIds) {
+    List<Long> ids = chunkIds.idList();
+    LocalDateTime now = LocalDateTime.now();
+    int marked = 0;
+    for (int from = 0; from < ids.size(); from += RELEASE_BATCH_SIZE) {
+      marked += chunkRepository.markOrphaned(ids.subList(from, Math.min(from + RELEASE_BATCH_SIZE, ids.size())), now);
+    }
+    return marked;
+  }
 
-    return result;
+  private long storeChunk(
+      Chunk chunk,
+      byte[] digest,
+      HashingAlgorithm algorithm,
+      CompressionType compressionType,
+      LocalDateTime lease,
+      IngestResult result) {
+    long lookupStart = System.nanoTime();
+    Optional<Long> existingChunkId = findExistingChunk(algorithm, digest, lease);
+    byte[] secondaryDigest = null;
+    if (existingChunkId.isEmpty() && secondaryAlgorithm != null && secondaryAlgorithm != algorithm) {
+      secondaryDigest = fingerprint(chunk.data(), secondaryAlgorithm);
+      existingChunkId = findExistingChunk(secondaryAlgorithm, secondaryDigest, lease);
+      existingChunkId.ifPresent(id -> chunkRepository.addFingerprint(algorithm, digest, id));
+    }
+    metrics.recordLookup(System.nanoTime() - lookupStart, existingChunkId.isPresent(), chunk.getOriginalSize());
+
+    long chunkId;
+    if (existingChunkId.isPresent()) {
+      chunkId = existingChunkId.get();
+      result.recordDuplicate(chunk);
+      logger.info("Duplicate chunk found: {}", chunkId);
+    } else {
+      byte[] data = chunk.data();
+      String storedCompression = compressionType != null ? compressionType.name() : null;
+      long[] superFeatures = similarityService != null && similarityService.isEnabled()
+          ? similarityService.sketch(data)
+          : null;
+      SimilarityService.DeltaChunk delta = null;
+      if (compressionType != null) {
+        data = compress(data, compressionType);
+        if (superFeatures != null) {
+          long deltaStart = System.nanoTime();
+          delta = similarityService.encode(chunk.data(), superFeatures, data.length, lease).orElse(null);
+          metrics.recordDeltaEncoding(System.nanoTime() - deltaStart, delta != null, data.length,
+              delta != null ? delta.data().length : data.length);
+          if (delta != null) {
+            data = delta.data();
+            storedCompression = CompressionType.ZSTD.name();
+          }
+        }
+      }
+
+      long writeStart = System.nanoTime();
+      Optional<Long> insertedId = lease != null
+          ? chunkRepository.insertIfAbsent(algorithm, digest, data, storedCompression, chunk.getOriginalSize(),
+              lease)
+          : chunkRepository.insertIfAbsent(algorithm, digest, data, storedCompression, chunk.getOriginalSize());
+      if (insertedId.isPresent() && secondaryDigest != null) {
+        chunkRepository.addFingerprint(secondaryAlgorithm, secondaryDigest, insertedId.get());
+      }
+      if (insertedId.isPresent() && superFeatures != null) {
+        similarityService.index(insertedId.get(), superFeatures, delta);
+      }
+      metrics.recordDbWrite(System.nanoTime() - writeStart);
+
+      if (insertedId.isPresent()) {
+        chunkId = insertedId.get();
+        result.recordUnique(chunk, data.length);
+        result.deltaChunks += delta != null ? 1 : 0;
+        result.totalCompressedSize += compressionType != null ? data.length : 0;
+      } else {
+        chunkId = findExistingChunk(algorithm, digest, lease)
+            .orElseThrow(() -> new IllegalStateException("Chunk disappeared after insert conflict"));
+        result.recordDuplicate(chunk);
+        logger.debug("Chunk {} inserted concurrently by another upload", chunkId);
+      }
+    }
+
+    return chunkId;
+  }
+
+  static String extensionOf(String fileName) {
+    int lastDotIndex = fileName.lastIndexOf('.');
+    return lastDotIndex > 0 ? fileName.substring(lastDotIndex + 1) : "";
+  }
+
+  /**
+   * Fingerprint of a chunk fed in slices, matching {@link #fingerprint(byte[], HashingAlgorithm)} on the whole.
+   */
+  private final class IncrementalFingerprint {
+    private final HashingAlgorithm algorithm;
+    private final FingerprintHasher.Hasher hasher;
+    private long nanos;
+
+    IncrementalFingerprint(HashingAlgorithm algorithm) {
+      this.algorithm = algorithm;
+      this.hasher = fingerprintHasher.newHasher(algorithm);
+    }
+
+    void update(byte[] data, int offset, int length) {
+      long start = System.nanoTime();
+      hasher.update(data, offset, length);
+      nanos += System.nanoTime() - start;
+    }
+
+    byte[] finish() {
+      long start = System.nanoTime();
+      byte[] digest = hasher.digest();
+      metrics.recordHashing(algorithm, nanos + System.nanoTime() - start);
+      nanos = 0;
+      return digest;
+    }
   }
 }
@@ -0,0 +1,292 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.digest.Blake3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Chunk fingerprints, computed with the fastest provider available for each algorithm. Every JCA provider
+ * offering the algorithm is a candidate (the JDK ones use the SHA intrinsics where the CPU has them), as is
+ * commons-codec for BLAKE3. Candidates must reproduce the digests already stored, including the "key"-keyed
+ * HMAC used for SHA1, and are timed at startup over {@code benchmark-size} bytes hashed in chunk-sized slices.
+ * Hashers are reused per thread, so hashing allocates nothing but the digest.
+ */
+@Component
+public class FingerprintHasher {
+    private static final Logger logger = LoggerFactory.getLogger(FingerprintHasher.class);
+    private static final byte[] HMAC_KEY = "key".getBytes(StandardCharsets.US_ASCII);
+    private static final int BENCHMARK_SLICE = 8 * 1024;
+
+    /**
+     * Incremental digest; not thread-safe.
+     */
+    public interface Hasher {
+        void update(byte[] data, int offset, int length);
+
+        /**
+         * Consumes the remaining bytes of {@code data}; heap buffers are read in place.
+         */
+        void update(ByteBuffer data);
+
+        /**
+         * Returns the digest of everything fed since the previous digest and starts over.
+         */
+        byte[] digest();
+    }
+
+    private record Candidate(String name, Supplier<Hasher> factory) {
+    }
+
+    private final Map<HashingAlgorithm, Candidate> selected = new EnumMap<>(HashingAlgorithm.class);
+    private final Map<HashingAlgorithm, ThreadLocal<Hasher>> hashers = new EnumMap<>(HashingAlgorithm.class);
+
+    @Autowired
+    public FingerprintHasher(@Value("${goofydocs.fingerprint.benchmark-size:4MB}") DataSize benchmarkSize) {
+        byte[] probe = new byte[3 * BENCHMARK_SLICE + 17];
+        new Random(42).nextBytes(probe);
+        byte[] sample = null;
+        if (benchmarkSize.toBytes() > 0) {
+            sample = new byte[(int) Math.min(benchmarkSize.toBytes(), Integer.MAX_VALUE - 8)];
+            new Random(7).nextBytes(sample);
+        }
+
+        for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+            byte[] expected = reference(algorithm, probe);
+            Candidate best = null;
+            double bestSpeed = -1;
+            List<String> report = new ArrayList<>();
+            for (Candidate candidate : candidates(algorithm)) {
+                Hasher hasher;
+                try {
+                    hasher = candidate.factory().get();
+                } catch (RuntimeException e) {
+                    logger.debug("Fingerprint provider {} unavailable: {}", candidate.name(), e.getMessage());
+                    continue;
+                }
+                hasher.update(probe, 0, probe.length);
+                if (!Arrays.equals(expected, hasher.digest())) {
+                    logger.warn("Fingerprint provider {} disagrees with the stored {} digests, skipped",
+                            candidate.name(), algorithm);
+                    continue;
+                }
+                if (sample == null) {
+                    best = candidate;
+                    break;
+                }
+                double speed = benchmark(hasher, sample);
+                report.add(String.format("%s %.0f MB/s", candidate.name(), speed));
+                if (speed > bestSpeed) {
+                    best = candidate;
+                    bestSpeed = speed;
+                }
+            }
+            if (best == null) {
+                throw new IllegalStateException("No fingerprint provider for " + algorithm);
+            }
+            if (!report.isEmpty()) {
+                logger.info("Fingerprint providers for {}: {}; using {}", algorithm, String.join(", ", report),
+                        best.name());
+            }
+            selected.put(algorithm, best);
+            hashers.put(algorithm, ThreadLocal.withInitial(best.factory()));
+        }
+    }
+
+    public static FingerprintHasher defaults() {
+        return new FingerprintHasher(DataSize.ofBytes(0));
+    }
+
+    public byte[] hash(HashingAlgorithm algorithm, byte[] data) {
+        return hash(algorithm, data, 0, data.length);
+    }
+
+    public byte[] hash(HashingAlgorithm algorithm, byte[] data, int offset, int length) {
+        Hasher hasher = hashers.get(algorithm).get();
+        hasher.update(data, offset, length);
+        return hasher.digest();
+    }
+
+    public byte[] hash(HashingAlgorithm algorithm, ByteBuffer data) {
+        Hasher hasher = hashers.get(algorithm).get();
+        hasher.update(data);
+        return hasher.digest();
+    }
+
+    /**
+     * A hasher of its own for a caller feeding one digest in several pieces.
+     */
+    public Hasher newHasher(HashingAlgorithm algorithm) {
+        return selected.get(algorithm).factory().get();
+    }
+
+    public String providerName(HashingAlgorithm algorithm) {
+        return selected.get(algorithm).name();
+    }
+
+    private static List<Candidate> candidates(HashingAlgorithm algorithm) {
+        List<Candidate> candidates = new ArrayList<>();
+        switch (algorithm) {
+            case SHA1 -> {
+                for (Provider provider : providers("Mac.HmacSHA1")) {
+                    candidates.add(new Candidate("HmacSHA1/" + provider.getName(), () -> new MacHasher(provider)));
+                }
+            }
+            case SHA256 -> {
+                for (Provider provider : providers("MessageDigest.SHA-256")) {
+                    candidates.add(new Candidate("SHA-256/" + provider.getName(),
+                            () -> new MessageDigestHasher("SHA-256", provider)));
+                }
+            }
+            case BLAKE3 -> {
+                candidates.add(new Candidate("BLAKE3/commons-codec", Blake3Hasher::new));
+                for (Provider provider : providers("MessageDigest.BLAKE3-256")) {
+                    candidates.add(new Candidate("BLAKE3-256/" + provider.getName(),
+                            () -> new MessageDigestHasher("BLAKE3-256", provider)));
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported hashing algorithm: " + algorithm);
+        }
+        return candidates;
+    }
+
+    private static List<Provider> providers(String filter) {
+        Provider[] providers = Security.getProviders(filter);
+        return providers != null ? List.of(providers) : List.of();
+    }
+
+    // The implementations fingerprints were stored with until now
+    private static byte[] reference(HashingAlgorithm algorithm, byte[] data) {
+        return switch (algorithm) {
+            case SHA1 -> Hashing.hmacSha1(HMAC_KEY).hashBytes(data).asBytes();
+            case SHA256 -> Hashing.sha256().hashBytes(data).asBytes();
+            case BLAKE3 -> Blake3.hash(data);
+        };
+    }
+
+    private static double benchmark(Hasher hasher, byte[] sample) {
+        long elapsed = 0;
+        // The first pass only warms up the JIT
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int offset = 0; offset < sample.length; offset += BENCHMARK_SLICE) {
+                hasher.update(sample, offset, Math.min(BENCHMARK_SLICE, sample.length - offset));
+                hasher.digest();
+            }
+            elapsed = System.nanoTime() - start;
+        }
+        return (sample.length / (1024.0 * 1024.0)) / (Math.max(elapsed, 1) / 1e9);
+    }
+
+    private static final class MacHasher implements Hasher {
+        private final Mac mac;
+
+        MacHasher(Provider provider) {
+            try {
+                mac = Mac.getInstance("HmacSHA1", provider);
+                mac.init(new SecretKeySpec(HMAC_KEY, "HmacSHA1"));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void update(byte[] data, int offset, int length) {
+            mac.update(data, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer data) {
+            mac.update(data);
+        }
+
+        @Override
+        public byte[] digest() {
+            return mac.doFinal();
+        }
+    }
+
+    private static final class MessageDigestHasher implements Hasher {
+        private final MessageDigest digest;
+
+        MessageDigestHasher(String algorithm, Provider provider) {
+            try {
+                digest = MessageDigest.getInstance(algorithm, provider);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void update(byte[] data, int offset, int length) {
+            digest.update(data, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer data) {
+            digest.update(data);
+        }
+
+        @Override
+        public byte[] digest() {
+            return digest.digest();
+        }
+    }
+
+    private static final class Blake3Hasher implements Hasher {
+        private final Blake3 blake3 = Blake3.initHash();
+        private byte[] copyBuffer;
+
+        @Override
+        public void update(byte[] data, int offset, int length) {
+            blake3.update(data, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer data) {
+            if (data.hasArray()) {
+                blake3.update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                data.position(data.limit());
+                return;
+            }
+            // Direct buffers have no array to read in place; they go through a small reusable one
+            if (copyBuffer == null) {
+                copyBuffer = new byte[BENCHMARK_SLICE];
+            }
+            while (data.hasRemaining()) {
+                int length = Math.min(copyBuffer.length, data.remaining());
+                data.get(copyBuffer, 0, length);
+                blake3.update(copyBuffer, 0, length);
+            }
+        }
+
+        @Override
+        public byte[] digest() {
+            byte[] digest = blake3.doFinalize(HashingAlgorithm.BLAKE3.getDigestLength());
+            blake3.reset();
+            return digest;
+        }
+    }
+}
@@ -1,17 +1,29 @@
 package com.goofy.GoofyDocs.duplication;
 
 public enum HashingAlgorithm {
-    SHA1("SHA-1"),
-    SHA256("SHA-256"),
-    BLAKE3("BLAKE3");
+    SHA1(1, "SHA-1", 20),
+    SHA256(2, "SHA-256", 32),
+    BLAKE3(3, "BLAKE3", 32);
 
+    private final short id;
     private final String algorithmName;
+    private final int digestLength;
 
-    HashingAlgorithm(String algorithmName) {
+    HashingAlgorithm(int id, String algorithmName, int digestLength) {
+        this.id = (short) id;
         this.algorithmName = algorithmName;
+        this.digestLength = digestLength;
+    }
+
+    public short getId() {
+        return id;
     }
 
     public String getAlgorithmName() {
         return algorithmName;
     }
+
+    public int getDigestLength() {
+        return digestLength;
+    }
 }
@@ -0,0 +1,17 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.List;
+
+public class IncompleteUploadException extends RuntimeException {
+
+    private final List<Integer> missingChunks;
+
+    public IncompleteUploadException(String uploadId, List<Integer> missingChunks) {
+        super("Upload " + uploadId + " is missing " + missingChunks.size() + " chunk(s)");
+        this.missingChunks = missingChunks;
+    }
+
+    public List<Integer> getMissingChunks() {
+        return missingChunks;
+    }
+}
@@ -0,0 +1,421 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.goofy.GoofyDocs.chunking.Chunk;
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.chunking.ChunkingService;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.model.IngestJobEntity;
+import com.goofy.GoofyDocs.repository.IngestJobRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Asynchronous ingest: the upload is spooled to disk, a job id is returned right away and a bounded pool of
+ * workers chunks the file, committing one batch of chunks per transaction. Each batch records the file offset
+ * it ends at and its part of the manifest, so a job interrupted by a crash resumes from its last batch once
+ * its heartbeat ({@code updated_at}) is older than {@code stale-after}. The file itself is only created by
+ * the last transaction.
+ *
+ * Chunks stored by a job are leased like those of a negotiated upload: they stay marked as orphaned, dated at
+ * the job expiry, until the job completes, so the chunk GC reclaims the chunks of a job that never does.
+ */
+@Service
+public class IngestJobService {
+    private static final Logger logger = LoggerFactory.getLogger(IngestJobService.class);
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final DuplicationService duplicationService;
+    private final ChunkingService chunkingService;
+    private final IngestJobRepository jobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path spoolDirectory;
+    private final int batchChunks;
+    private final Duration jobTtl;
+    private final Duration staleAfter;
+    private final ThreadPoolExecutor executor;
+    private volatile boolean stopping;
+
+    @Autowired
+    public IngestJobService(
+            DuplicationService duplicationService,
+            ChunkingService chunkingService,
+            IngestJobRepository jobRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${goofydocs.ingest.spool-dir:${java.io.tmpdir}/goofydocs-ingest}") String spoolDirectory,
+            @Value("${goofydocs.ingest.workers:2}") int workers,
+            @Value("${goofydocs.ingest.queue-capacity:64}") int queueCapacity,
+            @Value("${goofydocs.ingest.batch-chunks:2048}") int batchChunks,
+            @Value("${goofydocs.ingest.job-ttl:PT24H}") Duration jobTtl,
+            @Value("${goofydocs.ingest.stale-after:PT5M}") Duration staleAfter) {
+        this.duplicationService = duplicationService;
+        this.chunkingService = chunkingService;
+        this.jobRepository = jobRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.spoolDirectory = Path.of(spoolDirectory);
+        this.batchChunks = batchChunks;
+        this.jobTtl = jobTtl;
+        this.staleAfter = staleAfter;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("ingest-job-"));
+    }
+
+    public Map<String, Object> submit(
+            MultipartFile upload,
+            HashingAlgorithm algorithm,
+            CompressionType compressionType,
+            ChunkingProfile chunkingProfile,
+            Long parentId) throws IOException {
+        String fileName = upload.getOriginalFilename();
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("fileName is required");
+        }
+        // Resolves the parent and profile now so a bad request is rejected before anything is spooled
+        IngestResult prepared = duplicationService.prepare(fileName, upload.getSize(), algorithm, chunkingProfile,
+                parentId);
+
+        String jobId = UUID.randomUUID().toString();
+        Files.createDirectories(spoolDirectory);
+        Path spool = spoolDirectory.resolve(jobId + ".upload");
+        upload.transferTo(spool);
+
+        IngestJobEntity job = new IngestJobEntity();
+        job.setId(jobId);
+        job.setStatus(IngestJobEntity.Status.QUEUED);
+        job.setFileName(fileName);
+        job.setFileSize(upload.getSize());
+        job.setSpoolPath(spool.toAbsolutePath().toString());
+        job.setAlgorithm(algorithm.name());
+        job.setCompressionType(compressionType != null ? compressionType.name() : null);
+        job.setChunkingProfile(prepared.profile.getId());
+        job.setParentId(parentId);
+        job.setUpdatedAt(LocalDateTime.now());
+        job.setExpiresAt(LocalDateTime.now().plus(jobTtl));
+        try {
+            job = jobRepository.save(job);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+
+        logger.info("Ingest job queued: id={}, name={}, size={}", jobId, fileName, upload.getSize());
+        dispatch(jobId);
+        return status(job);
+    }
+
+    public Optional<Map<String, Object>> getStatus(String jobId) {
+        return jobRepository.findById(jobId).map(IngestJobService::status);
+    }
+
+    @Scheduled(fixedDelayString = "${goofydocs.ingest.recovery-interval:PT1M}",
+            initialDelayString = "${goofydocs.ingest.recovery-initial-delay:PT10S}")
+    public void resumeStaleJobs() {
+        int capacity = executor.getQueue().remainingCapacity();
+        if (capacity == 0 || stopping) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (String jobId : jobRepository.findStale(now.minus(staleAfter), now, capacity)) {
+            logger.info("Resuming ingest job {}", jobId);
+            dispatch(jobId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${goofydocs.ingest.purge-interval:PT15M}")
+    public void purgeExpiredJobs() {
+        List<IngestJobEntity> expired = jobRepository.findExpired(LocalDateTime.now(), Limit.of(100));
+        for (IngestJobEntity job : expired) {
+            transactionTemplate.executeWithoutResult(status -> {
+                release(job.getId());
+                jobRepository.deleteById(job.getId());
+            });
+            deleteSpool(job);
+        }
+        if (!expired.isEmpty()) {
+            logger.info("Purged {} expired ingest job(s)", expired.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Workers stop at their next chunk and leave their job running; another instance (or this one after a
+        // restart) resumes it from the last committed batch
+        stopping = true;
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private void dispatch(String jobId) {
+        try {
+            executor.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            logger.info("Ingest workers are busy, job {} stays queued until it is resumed", jobId);
+        }
+    }
+
+    void run(String jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed = transactionTemplate.execute(status -> jobRepository.claim(jobId, now, now.minus(staleAfter)));
+        if (claimed == null || claimed == 0) {
+            return;
+        }
+
+        IngestJobEntity job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        try {
+            execute(job);
+        } catch (LostJobException e) {
+            logger.info("Ingest job {} stopped: {}", jobId, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ingest job {} failed", jobId, e);
+            fail(job, e);
+        }
+    }
+
+    private void execute(IngestJobEntity job) throws IOException {
+        Path spool = Path.of(job.getSpoolPath());
+        if (!Files.exists(spool)) {
+            throw new IOException("Spooled upload of job " + job.getId() + " is missing: " + spool);
+        }
+
+        HashingAlgorithm algorithm = HashingAlgorithm.valueOf(job.getAlgorithm());
+        CompressionType compressionType = job.getCompressionType() != null
+                ? CompressionType.valueOf(job.getCompressionType())
+                : null;
+        // The parent was checked on submit; if it was deleted since, the file is stored without it
+        IngestResult result = duplicationService.prepare(job.getFileName(), job.getFileSize(), algorithm,
+                ChunkingProfile.fromId(job.getChunkingProfile()), job.getParentId(), false);
+        restore(job, result);
+
+        BatchState state = new BatchState(job.getId(), job.getBatches(), job.getExpiresAt(), compressionType, result,
+                duplicationService.pendingChunks(algorithm));
+        if (job.getBytesChunked() > 0) {
+            logger.info("Ingest job {} resumes at byte {} (batch {})", job.getId(), job.getBytesChunked(),
+                    job.getBatches());
+        }
+        chunkingService.chunkFile(spool.toFile(), result.profile, job.getBytesChunked(), chunk -> {
+            if (stopping) {
+                throw new LostJobException("shutting down");
+            }
+            state.pending.add(chunk);
+            if (state.pending.size() >= batchChunks) {
+                commitBatch(state, false);
+            }
+        });
+        commitBatch(state, true);
+        complete(state);
+        deleteSpool(job);
+    }
+
+    private void commitBatch(BatchState state, boolean last) {
+        if (state.pending.isEmpty()) {
+            return;
+        }
+        List<Chunk> chunks = state.pending.chunks();
+        List<byte[]> digests = state.pending.digests();
+        int consumed = transactionTemplate.execute(status -> {
+            IngestJobEntity job = lock(state);
+            ChunkManifest.Builder manifest = ChunkManifest.builder(chunks.size());
+            int stored = duplicationService.storeChunks(chunks, digests, last, state.compressionType,
+                    state.lease, state.result, manifest);
+            if (stored == 0) {
+                return 0;
+            }
+
+            long bytes = 0;
+            for (Chunk chunk : chunks.subList(0, stored)) {
+                bytes += chunk.getOriginalSize();
+            }
+            jobRepository.insertBatch(job.getId(), job.getBatches(), manifest.build().encode());
+            job.setBatches(job.getBatches() + 1);
+            job.setBytesChunked(job.getBytesChunked() + bytes);
+            capture(state.result, job);
+            job.setUpdatedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            return stored;
+        });
+
+        if (consumed > 0) {
+            state.batches++;
+            state.pending.consume(consumed);
+        }
+    }
+
+    private void complete(BatchState state) {
+        IngestResult result = state.result;
+        transactionTemplate.executeWithoutResult(status -> {
+            IngestJobEntity job = lock(state);
+            ChunkManifest manifest = concat(jobRepository.findBatches(job.getId()));
+            duplicationService.finish(result, manifest, true);
+            capture(result, job);
+            job.setFileId(result.fileEntity.getId());
+            job.setStatus(IngestJobEntity.Status.COMPLETED);
+            job.setUpdatedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            jobRepository.deleteBatches(job.getId());
+        });
+
+        logger.info("Ingest job {} completed: fileId={}, chunks={}, uniqueChunks={}, duplicateChunks={}, batches={}",
+                state.jobId, result.fileEntity.getId(), result.totalChunks, result.uniqueChunks,
+                result.duplicateChunks, state.batches);
+    }
+
+    private void fail(IngestJobEntity job, Exception cause) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                IngestJobEntity locked = jobRepository.findByIdForUpdate(job.getId()).orElse(null);
+                if (locked == null || locked.getStatus() != IngestJobEntity.Status.RUNNING) {
+                    return;
+                }
+                release(locked.getId());
+                String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+                locked.setError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+                locked.setStatus(IngestJobEntity.Status.FAILED);
+                locked.setUpdatedAt(LocalDateTime.now());
+                jobRepository.save(locked);
+            });
+        } finally {
+            deleteSpool(job);
+        }
+    }
+
+    private void release(String jobId) {
+        duplicationService.release(concat(jobRepository.findBatches(jobId)).referenceCounts());
+        jobRepository.deleteBatches(jobId);
+    }
+
+    // Fences a worker whose job was taken over after it looked stale
+    private IngestJobEntity lock(BatchState state) {
+        IngestJobEntity job = jobRepository.findByIdForUpdate(state.jobId)
+                .orElseThrow(() -> new LostJobException("job was deleted"));
+        if (job.getStatus() != IngestJobEntity.Status.RUNNING || job.getBatches() != state.batches) {
+            throw new LostJobException("job was taken over by another worker");
+        }
+        return job;
+    }
+
+    private void deleteSpool(IngestJobEntity job) {
+        try {
+            Files.deleteIfExists(Path.of(job.getSpoolPath()));
+        } catch (IOException e) {
+            logger.warn("Unable to delete the spooled upload of ingest job {}", job.getId(), e);
+        }
+    }
+
+    private static ChunkManifest concat(List<byte[]> batches) {
+        List<ChunkManifest> parts = new ArrayList<>(batches.size());
+        int size = 0;
+        for (byte[] batch : batches) {
+            ChunkManifest part = ChunkManifest.decode(batch);
+            parts.add(part);
+            size += part.size();
+        }
+
+        ChunkManifest.Builder builder = ChunkManifest.builder(size);
+        for (ChunkManifest part : parts) {
+            for (int i = 0; i < part.size(); i++) {
+                builder.add(part.chunkId(i), part.chunkSize(i));
+            }
+        }
+        return builder.build();
+    }
+
+    private static void restore(IngestJobEntity job, IngestResult result) {
+        result.totalChunks = job.getTotalChunks();
+        result.uniqueChunks = job.getUniqueChunks();
+        result.duplicateChunks = job.getDuplicateChunks();
+        result.savedStorage = job.getSavedStorage();
+        result.newChunkBytes = job.getNewChunkBytes();
+        result.storedBytes = job.getStoredBytes();
+        result.totalCompressedSize = job.getCompressedBytes();
+        result.segmentResolvedChunks = job.getSegmentResolvedChunks();
+        result.deltaChunks = job.getDeltaChunks();
+    }
+
+    private static void capture(IngestResult result, IngestJobEntity job) {
+        job.setTotalChunks(result.totalChunks);
+        job.setUniqueChunks(result.uniqueChunks);
+        job.setDuplicateChunks(result.duplicateChunks);
+        job.setSavedStorage(result.savedStorage);
+        job.setNewChunkBytes(result.newChunkBytes);
+        job.setStoredBytes(result.storedBytes);
+        job.setCompressedBytes(result.totalCompressedSize);
+        job.setSegmentResolvedChunks(result.segmentResolvedChunks);
+        job.setDeltaChunks(result.deltaChunks);
+    }
+
+    private static Map<String, Object> status(IngestJobEntity job) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobId", job.getId());
+        result.put("status", job.getStatus().name());
+        result.put("fileName", job.getFileName());
+        result.put("fileSize", job.getFileSize());
+        result.put("bytesChunked", job.getBytesChunked());
+        result.put("progress", job.getFileSize() > 0 ? (double) job.getBytesChunked() / job.getFileSize() : 0);
+        result.put("batches", job.getBatches());
+        result.put("totalChunks", job.getTotalChunks());
+        result.put("uniqueChunks", job.getUniqueChunks());
+        result.put("duplicateChunks", job.getDuplicateChunks());
+        result.put("savedStorage", job.getSavedStorage());
+        result.put("fileId", job.getFileId());
+        result.put("error", job.getError());
+        result.put("createdAt", job.getCreatedAt().toString());
+        result.put("updatedAt", job.getUpdatedAt().toString());
+        return result;
+    }
+
+    private static final class BatchState {
+        private final String jobId;
+        private final LocalDateTime lease;
+        private final CompressionType compressionType;
+        private final IngestResult result;
+        private final PendingChunks pending;
+        private int batches;
+
+        BatchState(String jobId, int batches, LocalDateTime lease, CompressionType compressionType,
+                IngestResult result, PendingChunks pending) {
+            this.jobId = jobId;
+            this.batches = batches;
+            this.lease = lease;
+            this.compressionType = compressionType;
+            this.result = result;
+            this.pending = pending;
+        }
+    }
+
+    private static final class LostJobException extends RuntimeException {
+        LostJobException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.goofy.GoofyDocs.chunking.Chunk;
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.stats.DedupStats;
+
+/**
+ * Running totals of one file ingest. The file entity is only saved once every chunk is stored.
+ */
+class IngestResult {
+  FileEntity fileEntity;
+  final HashingAlgorithm algorithm;
+  final ChunkingProfile profile;
+  int totalChunks;
+  int duplicateChunks;
+  int uniqueChunks;
+  long savedStorage;
+  long totalCompressedSize;
+  long newChunkBytes;
+  long storedBytes;
+  int manifestEntries;
+  int segmentResolvedChunks;
+  int deltaChunks;
+
+  IngestResult(FileEntity fileEntity, HashingAlgorithm algorithm, ChunkingProfile profile) {
+    this.fileEntity = fileEntity;
+    this.algorithm = algorithm;
+    this.profile = profile;
+  }
+
+  void recordDuplicate(Chunk chunk) {
+    duplicateChunks++;
+    savedStorage += chunk.getOriginalSize();
+  }
+
+  void recordUnique(Chunk chunk, int storedSize) {
+    uniqueChunks++;
+    newChunkBytes += chunk.getOriginalSize();
+    storedBytes += storedSize;
+  }
+
+  DedupStats toStats() {
+    return new DedupStats(1, fileEntity.getSize(), totalChunks, duplicateChunks, savedStorage, newChunkBytes,
+        storedBytes);
+  }
+
+  Map<String, Object> toMap() {
+    Map<String, Object> result = new HashMap<>();
+    result.put("fileId", fileEntity.getId());
+    result.put("fileName", fileEntity.getName());
+    result.put("extension", fileEntity.getExtension());
+    result.put("fileSize", fileEntity.getSize());
+    result.put("algorithm", algorithm.name());
+    result.put("chunkingProfile", profile.name());
+    result.put("version", fileEntity.getVersion());
+    result.put("parentId", fileEntity.getParentId());
+    result.put("deltaManifest", fileEntity.getDeltaDepth() != null && fileEntity.getDeltaDepth() > 0);
+    result.put("manifestEntries", manifestEntries);
+    result.put("segmentResolvedChunks", segmentResolvedChunks);
+    result.put("deltaChunks", deltaChunks);
+    result.put("totalChunks", totalChunks);
+    result.put("uniqueChunks", uniqueChunks);
+    result.put("duplicateChunks", duplicateChunks);
+    result.put("savedStorage", savedStorage);
+    result.put("deduplicationRatio", totalChunks > 0 ? (double) duplicateChunks / totalChunks : 0);
+    return result;
+  }
+}
@@ -0,0 +1,60 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.goofy.GoofyDocs.chunking.Chunk;
+
+/**
+ * Chunks of one ingest read but not yet stored, with their digests. The chunker hands each chunk to the
+ * {@link DuplicateFilter} and goes on reading while the digest is computed on the hashing pool; a batch only
+ * waits for its digests when it is stored. Not thread-safe.
+ */
+final class PendingChunks {
+    private final DuplicateFilter duplicateFilter;
+    private final List<Chunk> chunks;
+    private final List<CompletableFuture<byte[]>> digests;
+
+    PendingChunks(DuplicateFilter duplicateFilter, int expectedChunks) {
+        this.duplicateFilter = duplicateFilter;
+        this.chunks = new ArrayList<>(expectedChunks);
+        this.digests = new ArrayList<>(expectedChunks);
+    }
+
+    void add(Chunk chunk) {
+        chunks.add(chunk);
+        digests.add(duplicateFilter.submit(chunk.data()));
+    }
+
+    int size() {
+        return chunks.size();
+    }
+
+    boolean isEmpty() {
+        return chunks.isEmpty();
+    }
+
+    List<Chunk> chunks() {
+        return chunks;
+    }
+
+    /**
+     * Digests of the pending chunks, in order, once they are all computed.
+     */
+    List<byte[]> digests() {
+        List<byte[]> result = new ArrayList<>(digests.size());
+        for (CompletableFuture<byte[]> digest : digests) {
+            result.add(DuplicateFilter.await(digest));
+        }
+        return result;
+    }
+
+    /**
+     * Drops the first {@code count} chunks, once stored.
+     */
+    void consume(int count) {
+        chunks.subList(0, count).clear();
+        digests.subList(0, count).clear();
+    }
+}
@@ -0,0 +1,18 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.List;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+
+public record UploadManifest(
+        String fileName,
+        long fileSize,
+        HashingAlgorithm algorithm,
+        CompressionType compression,
+        ChunkingProfile chunkingProfile,
+        List<Entry> chunks) {
+
+    public record Entry(String fingerprint, int size) {
+    }
+}
@@ -0,0 +1,119 @@
+package com.goofy.GoofyDocs.gc;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.store.ChunkStore;
+
+/**
+ * Sweeps chunks that lost their last file reference.
+ *
+ * File deletion only marks candidates ({@code orphaned_at}); a chunk is deleted once the mark is older than
+ * the grace period and it is still unreferenced. An upload that reuses a marked chunk clears the mark first,
+ * and the row lock taken by that update (or by the foreign key of its {@code chunk_ref} insert) makes the
+ * conditional delete below skip it. The base of a delta-encoded chunk counts as referenced until that chunk
+ * is collected. With an object store, packs that no chunk points into anymore are deleted after the chunks.
+ */
+@Component
+public class ChunkGarbageCollector {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkGarbageCollector.class);
+
+    private final ChunkRepository chunkRepository;
+    private final ChunkStore chunkStore;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gracePeriod;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Duration batchPause;
+
+    @Autowired
+    public ChunkGarbageCollector(
+            ChunkRepository chunkRepository,
+            ChunkStore chunkStore,
+            PlatformTransactionManager transactionManager,
+            @Value("${goofydocs.gc.grace-period:PT1H}") Duration gracePeriod,
+            @Value("${goofydocs.gc.batch-size:500}") int batchSize,
+            @Value("${goofydocs.gc.max-batches-per-run:20}") int maxBatchesPerRun,
+            @Value("${goofydocs.gc.batch-pause:PT0.2S}") Duration batchPause) {
+        this.chunkRepository = chunkRepository;
+        this.chunkStore = chunkStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.gracePeriod = gracePeriod;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.batchPause = batchPause;
+    }
+
+    @Scheduled(fixedDelayString = "${goofydocs.gc.interval:PT5M}", initialDelayString = "${goofydocs.gc.initial-delay:PT1M}")
+    public void collect() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(gracePeriod);
+        int examined = 0;
+        int deleted = 0;
+
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            int[] result;
+            try {
+                result = transactionTemplate.execute(status -> sweepBatch(cutoff));
+            } catch (DataIntegrityViolationException e) {
+                logger.warn("Chunk GC batch rolled back because a chunk was reused concurrently, retrying next run",
+                        e);
+                break;
+            }
+
+            examined += result[0];
+            deleted += result[1];
+            if (result[0] < batchSize || !pause()) {
+                break;
+            }
+        }
+
+        if (examined > 0) {
+            logger.info("Chunk GC run: examined={}, deleted={}", examined, deleted);
+        }
+
+        if (chunkStore.isExternal()) {
+            int packs = chunkStore.collectPacks(cutoff, batchSize);
+            if (packs > 0) {
+                logger.info("Chunk GC run: deleted {} unreferenced packs", packs);
+            }
+        }
+    }
+
+    private int[] sweepBatch(LocalDateTime cutoff) {
+        List<Long> candidates = chunkRepository.findOrphanedBefore(cutoff, batchSize);
+        if (candidates.isEmpty()) {
+            return new int[] { 0, 0 };
+        }
+
+        chunkRepository.clearOrphanedMarkIfReferenced(candidates);
+        List<Long> bases = chunkRepository.findBaseChunkIds(candidates);
+        int deleted = chunkRepository.deleteOrphaned(candidates, cutoff);
+        // A base whose last delta just went away becomes a candidate itself
+        if (!bases.isEmpty() && deleted > 0) {
+            chunkRepository.markOrphaned(bases, LocalDateTime.now());
+        }
+        return new int[] { candidates.size(), deleted };
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reference count per chunk id: an open-addressing map over parallel {@code long} / {@code int} arrays, so a
+ * manifest of a million chunks costs a few arrays instead of a million boxed map entries. Chunk ids are
+ * positive, 0 marks a free slot.
+ */
+public final class ChunkCounts {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] ids;
+    private int[] counts;
+    private int size;
+
+    public ChunkCounts() {
+        this(MIN_CAPACITY);
+    }
+
+    public ChunkCounts(int expectedIds) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedIds * 2 - 1)) << 1;
+        this.ids = new long[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code chunkId} and returns the new count. Entries are kept at 0.
+     */
+    public int add(long chunkId, int delta) {
+        if (chunkId <= 0) {
+            throw new IllegalArgumentException("Invalid chunk id: " + chunkId);
+        }
+        int slot = slot(chunkId);
+        if (ids[slot] == 0) {
+            ids[slot] = chunkId;
+            size++;
+            if (size * 2 > ids.length) {
+                counts[slot] = delta;
+                grow();
+                return delta;
+            }
+        }
+        counts[slot] += delta;
+        return counts[slot];
+    }
+
+    public void addAll(ChunkCounts other) {
+        other.forEach(this::add);
+    }
+
+    public int get(long chunkId) {
+        int slot = slot(chunkId);
+        return ids[slot] == chunkId ? counts[slot] : 0;
+    }
+
+    public boolean contains(long chunkId) {
+        return chunkId > 0 && ids[slot(chunkId)] == chunkId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long total() {
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            total += ids[i] != 0 ? counts[i] : 0;
+        }
+        return total;
+    }
+
+    /**
+     * Chunk ids in ascending order, the order in which their rows are locked.
+     */
+    public long[] sortedIds() {
+        long[] result = new long[size];
+        int n = 0;
+        for (long id : ids) {
+            if (id != 0) {
+                result[n++] = id;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    public List<Long> idList() {
+        List<Long> result = new ArrayList<>(size);
+        for (long id : sortedIds()) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != 0) {
+                consumer.accept(ids[i], counts[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long chunkId, int count);
+    }
+
+    private int slot(long chunkId) {
+        int mask = ids.length - 1;
+        int slot = home(chunkId, mask);
+        while (ids[slot] != 0 && ids[slot] != chunkId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Chunk ids are sequential; the multiplicative hash spreads neighbours over the table. Its upper 32 bits
+    // are kept, so any slot of the largest table can be a home slot
+    static int home(long chunkId, int mask) {
+        return (int) ((chunkId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldIds = ids;
+        int[] oldCounts = counts;
+        ids = new long[oldIds.length * 2];
+        counts = new int[oldIds.length * 2];
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != 0) {
+                int slot = slot(oldIds[i]);
+                ids[slot] = oldIds[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.util.Arrays;
+
+/**
+ * Ordered chunk ids and raw sizes of one file, with the byte offset of each chunk.
+ *
+ * The stored form ({@link #encode()}) is a format byte, the chunk count and then, per chunk, the zigzag varint
+ * of the id minus the previous id and the varint size. Chunks written together get consecutive ids, so most
+ * entries take two to four bytes.
+ */
+public final class ChunkManifest {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final long[] chunkIds;
+    private final int[] sizes;
+    private final long[] offsets;
+
+    public ChunkManifest(long[] chunkIds, int[] sizes) {
+        if (chunkIds.length != sizes.length) {
+            throw new IllegalArgumentException("Chunk ids and sizes differ in length");
+        }
+        this.chunkIds = chunkIds;
+        this.sizes = sizes;
+        this.offsets = new long[sizes.length + 1];
+        for (int i = 0; i < sizes.length; i++) {
+            offsets[i + 1] = offsets[i] + sizes[i];
+        }
+    }
+
+    public static Builder builder(int expectedChunks) {
+        return new Builder(expectedChunks);
+    }
+
+    public int size() {
+        return chunkIds.length;
+    }
+
+    public long chunkId(int index) {
+        return chunkIds[index];
+    }
+
+    public int chunkSize(int index) {
+        return sizes[index];
+    }
+
+    public long offset(int index) {
+        return offsets[index];
+    }
+
+    public long totalSize() {
+        return offsets[chunkIds.length];
+    }
+
+    /**
+     * Index of the chunk holding the byte at {@code offset}.
+     */
+    public int indexAt(long offset) {
+        if (offset < 0 || offset >= totalSize()) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is outside a manifest of " + totalSize()
+                    + " bytes");
+        }
+        int index = Arrays.binarySearch(offsets, 0, chunkIds.length, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    public ChunkCounts referenceCounts() {
+        ChunkCounts counts = new ChunkCounts(chunkIds.length);
+        for (long chunkId : chunkIds) {
+            counts.add(chunkId, 1);
+        }
+        return counts;
+    }
+
+    public byte[] encode() {
+        Encoder encoder = new Encoder(16 + chunkIds.length * 4);
+        encoder.buffer[encoder.length++] = FORMAT_VERSION;
+        encoder.writeVarLong(chunkIds.length);
+        long previous = 0;
+        for (int i = 0; i < chunkIds.length; i++) {
+            long delta = chunkIds[i] - previous;
+            encoder.writeVarLong((delta << 1) ^ (delta >> 63));
+            encoder.writeVarLong(sizes[i]);
+            previous = chunkIds[i];
+        }
+        return Arrays.copyOf(encoder.buffer, encoder.length);
+    }
+
+    public static ChunkManifest decode(byte[] data) {
+        Decoder decoder = new Decoder(data);
+        if (data.length == 0 || data[decoder.position++] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported manifest format");
+        }
+        long count = decoder.readVarLong();
+        if (count > data.length) {
+            throw new IllegalArgumentException("Corrupted manifest: " + count + " chunks in " + data.length + " bytes");
+        }
+        long[] chunkIds = new long[(int) count];
+        int[] sizes = new int[(int) count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = decoder.readVarLong();
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            chunkIds[i] = previous;
+            sizes[i] = Math.toIntExact(decoder.readVarLong());
+        }
+        if (decoder.position != data.length) {
+            throw new IllegalArgumentException("Corrupted manifest: trailing bytes");
+        }
+        return new ChunkManifest(chunkIds, sizes);
+    }
+
+    long[] chunkIds() {
+        return chunkIds;
+    }
+
+    int[] sizes() {
+        return sizes;
+    }
+
+    private static final class Encoder {
+        private byte[] buffer;
+        private int length;
+
+        private Encoder(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void writeVarLong(long value) {
+            if (buffer.length - length < 10) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] data;
+        private int position;
+
+        private Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position == data.length) {
+                    throw new IllegalArgumentException("Corrupted manifest: truncated entry");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Corrupted manifest: varint too long");
+        }
+    }
+
+    public static final class Builder {
+        private long[] chunkIds;
+        private int[] sizes;
+        private int count;
+
+        private Builder(int expectedChunks) {
+            this.chunkIds = new long[Math.max(expectedChunks, 16)];
+            this.sizes = new int[chunkIds.length];
+        }
+
+        public Builder add(long chunkId, int size) {
+            if (count == chunkIds.length) {
+                chunkIds = Arrays.copyOf(chunkIds, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            chunkIds[count] = chunkId;
+            sizes[count] = size;
+            count++;
+            return this;
+        }
+
+        Builder addRange(ChunkManifest source, int from, int to) {
+            for (int i = from; i < to; i++) {
+                add(source.chunkIds[i], source.sizes[i]);
+            }
+            return this;
+        }
+
+        public ChunkManifest build() {
+            return new ChunkManifest(Arrays.copyOf(chunkIds, count), Arrays.copyOf(sizes, count));
+        }
+    }
+}
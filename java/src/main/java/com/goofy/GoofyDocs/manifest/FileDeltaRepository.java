@@ -0,0 +1,110 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class FileDeltaRepository {
+
+    private static final String INSERT_EDIT = "INSERT INTO file_delta "
+            + "(file_id, edit_index, parent_index, removed, chunk_ids, chunk_sizes) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String FIND_EDITS = "SELECT file_id, parent_index, removed, chunk_ids, chunk_sizes "
+            + "FROM file_delta WHERE file_id = ANY(?) ORDER BY file_id, edit_index";
+
+    // Walks from a version up to the nearest ancestor holding a full manifest
+    private static final String FIND_CHAIN = "WITH RECURSIVE chain AS ("
+            + "SELECT id, parent_id, size, delta_depth, 0 AS distance FROM files WHERE id = ? "
+            + "UNION ALL SELECT f.id, f.parent_id, f.size, f.delta_depth, c.distance + 1 "
+            + "FROM files f JOIN chain c ON f.id = c.parent_id WHERE c.delta_depth > 0) "
+            + "SELECT id, size, delta_depth FROM chain ORDER BY distance DESC";
+
+    private static final String FIND_CHILDREN = "SELECT id FROM files WHERE parent_id = ? AND delta_depth > 0";
+
+    private static final String DELETE_EDITS = "DELETE FROM file_delta WHERE file_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FileDeltaRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public record ChainLink(long fileId, long size, int deltaDepth) {
+    }
+
+    public void insertEdits(long fileId, List<ManifestDelta.Edit> edits) {
+        List<Object[]> rows = new ArrayList<>(edits.size());
+        for (int i = 0; i < edits.size(); i++) {
+            ManifestDelta.Edit edit = edits.get(i);
+            rows.add(new Object[] { fileId, i, edit.parentIndex(), edit.removed(), boxed(edit.chunkIds()),
+                    boxed(edit.sizes()) });
+        }
+        jdbcTemplate.batchUpdate(INSERT_EDIT, rows);
+    }
+
+    public Map<Long, List<ManifestDelta.Edit>> findEdits(Collection<Long> fileIds) {
+        Map<Long, List<ManifestDelta.Edit>> edits = new LinkedHashMap<>();
+        jdbcTemplate.query(FIND_EDITS, rs -> {
+            edits.computeIfAbsent(rs.getLong("file_id"), id -> new ArrayList<>())
+                    .add(new ManifestDelta.Edit(rs.getInt("parent_index"), rs.getInt("removed"),
+                            longs(rs.getArray("chunk_ids")), ints(rs.getArray("chunk_sizes"))));
+        }, (Object) fileIds.toArray(new Long[0]));
+        return edits;
+    }
+
+    public List<ChainLink> findChain(long fileId) {
+        return jdbcTemplate.query(FIND_CHAIN,
+                (rs, rowNum) -> new ChainLink(rs.getLong("id"), rs.getLong("size"), rs.getInt("delta_depth")),
+                fileId);
+    }
+
+    public List<Long> findDeltaChildren(long fileId) {
+        return jdbcTemplate.queryForList(FIND_CHILDREN, Long.class, fileId);
+    }
+
+    public int deleteEdits(long fileId) {
+        return jdbcTemplate.update(DELETE_EDITS, fileId);
+    }
+
+    private static Long[] boxed(long[] values) {
+        Long[] boxed = new Long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+
+    private static Integer[] boxed(int[] values) {
+        Integer[] boxed = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+
+    private static long[] longs(Array array) throws SQLException {
+        Object[] values = (Object[]) array.getArray();
+        long[] result = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = ((Number) values[i]).longValue();
+        }
+        return result;
+    }
+
+    private static int[] ints(Array array) throws SQLException {
+        Object[] values = (Object[]) array.getArray();
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = ((Number) values[i]).intValue();
+        }
+        return result;
+    }
+}
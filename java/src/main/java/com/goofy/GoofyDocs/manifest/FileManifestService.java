@@ -0,0 +1,140 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+
+/**
+ * Stores and resolves file chunk manifests. A version whose manifest differs little from its parent's is
+ * stored as a {@link ManifestDelta} ({@code delta_depth > 0}); every {@code max-chain-depth} versions, or when
+ * the diff is not worth it, a full manifest is written instead so resolution stays bounded.
+ */
+@Service
+public class FileManifestService {
+    private static final Logger logger = LoggerFactory.getLogger(FileManifestService.class);
+
+    private final FileRepository fileRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final FileDeltaRepository fileDeltaRepository;
+    private final ChunkRepository chunkRepository;
+    private final int maxChainDepth;
+    private final int maxEdits;
+
+    @Autowired
+    public FileManifestService(
+            FileRepository fileRepository,
+            FileChunkRepository fileChunkRepository,
+            FileDeltaRepository fileDeltaRepository,
+            ChunkRepository chunkRepository,
+            @Value("${goofydocs.versioning.max-chain-depth:16}") int maxChainDepth,
+            @Value("${goofydocs.versioning.max-edits:1000}") int maxEdits) {
+        this.fileRepository = fileRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.fileDeltaRepository = fileDeltaRepository;
+        this.chunkRepository = chunkRepository;
+        this.maxChainDepth = maxChainDepth;
+        this.maxEdits = maxEdits;
+    }
+
+    public static FileManifestService fullManifestsOnly(FileRepository fileRepository,
+            FileChunkRepository fileChunkRepository) {
+        return new FileManifestService(fileRepository, fileChunkRepository, null, null, 0, 0);
+    }
+
+    /**
+     * Writes the manifest of a freshly saved file and returns the chunk references it stored, which is what
+     * {@code chunk.ref_count} counts.
+     */
+    public ChunkCounts write(FileEntity file, FileEntity parent, ChunkManifest manifest) {
+        if (parent != null && fileDeltaRepository != null && parent.getDeltaDepth() < maxChainDepth) {
+            Optional<ManifestDelta> delta = ManifestDelta.diff(resolve(parent), manifest, maxEdits)
+                    .filter(candidate -> 2L * (candidate.edits().size() + candidate.insertedChunks()) <= manifest.size());
+            if (delta.isPresent()) {
+                file.setDeltaDepth(parent.getDeltaDepth() + 1);
+                fileRepository.save(file);
+                fileDeltaRepository.insertEdits(file.getId(), delta.get().edits());
+                logger.debug("File {} stored as {} edit(s) against version {}", file.getId(),
+                        delta.get().edits().size(), parent.getId());
+                return insertReferences(file.getId(), delta.get().referenceCounts());
+            }
+        }
+
+        file.setDeltaDepth(0);
+        fileRepository.save(file);
+        fileChunkRepository.insertManifest(file.getId(), manifest);
+        return insertReferences(file.getId(), manifest.referenceCounts());
+    }
+
+    private ChunkCounts insertReferences(long fileId, ChunkCounts referenceCounts) {
+        fileChunkRepository.insertReferences(fileId, referenceCounts);
+        return referenceCounts;
+    }
+
+    public ChunkManifest resolve(FileEntity file) {
+        if (file.getDeltaDepth() == null || file.getDeltaDepth() == 0 || fileDeltaRepository == null) {
+            return fileChunkRepository.findManifest(file.getId(), file.getSize());
+        }
+
+        List<FileDeltaRepository.ChainLink> chain = fileDeltaRepository.findChain(file.getId());
+        FileDeltaRepository.ChainLink base = chain.get(0);
+        if (base.deltaDepth() != 0) {
+            throw new IllegalStateException("Version chain of file " + file.getId() + " has no full manifest");
+        }
+
+        List<Long> versions = chain.subList(1, chain.size()).stream()
+                .map(FileDeltaRepository.ChainLink::fileId)
+                .toList();
+        Map<Long, List<ManifestDelta.Edit>> edits = fileDeltaRepository.findEdits(versions);
+
+        ChunkManifest manifest = fileChunkRepository.findManifest(base.fileId(), base.size());
+        for (Long version : versions) {
+            manifest = new ManifestDelta(edits.getOrDefault(version, List.of())).apply(manifest);
+        }
+        if (manifest.totalSize() != file.getSize()) {
+            throw new IllegalStateException("Resolved manifest of file " + file.getId() + " has "
+                    + manifest.totalSize() + " bytes, expected " + file.getSize());
+        }
+        return manifest;
+    }
+
+    public List<Long> findDistinctChunkIds(Long fileId) {
+        return fileChunkRepository.findReferencedChunkIds(fileId);
+    }
+
+    /**
+     * Rewrites the versions stored as a delta of this file with their full manifest, so the file can be
+     * deleted without breaking their chain.
+     */
+    public int materializeDeltaChildren(Long fileId) {
+        if (fileDeltaRepository == null) {
+            return 0;
+        }
+        List<Long> children = fileDeltaRepository.findDeltaChildren(fileId);
+        for (Long childId : children) {
+            FileEntity child = fileRepository.findById(childId)
+                    .orElseThrow(() -> new IllegalStateException("Version disappeared: " + childId));
+            ChunkManifest manifest = resolve(child);
+
+            chunkRepository.decrementReferenceCountsForFile(childId);
+            fileChunkRepository.deleteManifest(childId);
+            fileDeltaRepository.deleteEdits(childId);
+            fileChunkRepository.insertManifest(childId, manifest);
+            chunkRepository.incrementReferenceCounts(insertReferences(childId, manifest.referenceCounts()));
+
+            child.setDeltaDepth(0);
+            fileRepository.saveAndFlush(child);
+        }
+        return children.size();
+    }
+}
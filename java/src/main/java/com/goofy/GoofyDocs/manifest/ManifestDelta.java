@@ -0,0 +1,186 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Chunk manifest of a file version expressed as edits against its parent's manifest. Each edit replaces
+ * {@code removed} parent entries starting at {@code parentIndex} with the given chunks; edits are ordered and
+ * never overlap.
+ */
+public final class ManifestDelta {
+    // Matching entries the search may walk per entry left after trimming; local edits need about one
+    private static final int WORK_PER_ENTRY = 8;
+
+    public record Edit(int parentIndex, int removed, long[] chunkIds, int[] sizes) {
+    }
+
+    private final List<Edit> edits;
+
+    public ManifestDelta(List<Edit> edits) {
+        this.edits = List.copyOf(edits);
+    }
+
+    public List<Edit> edits() {
+        return edits;
+    }
+
+    public int insertedChunks() {
+        int inserted = 0;
+        for (Edit edit : edits) {
+            inserted += edit.chunkIds().length;
+        }
+        return inserted;
+    }
+
+    public ChunkCounts referenceCounts() {
+        ChunkCounts counts = new ChunkCounts(insertedChunks());
+        for (Edit edit : edits) {
+            for (long chunkId : edit.chunkIds()) {
+                counts.add(chunkId, 1);
+            }
+        }
+        return counts;
+    }
+
+    public ChunkManifest apply(ChunkManifest parent) {
+        ChunkManifest.Builder builder = ChunkManifest.builder(parent.size() + insertedChunks());
+        int cursor = 0;
+        for (Edit edit : edits) {
+            if (edit.parentIndex() < cursor || edit.parentIndex() + edit.removed() > parent.size()) {
+                throw new IllegalStateException("Manifest edit at " + edit.parentIndex() + " does not fit its parent");
+            }
+            builder.addRange(parent, cursor, edit.parentIndex());
+            for (int i = 0; i < edit.chunkIds().length; i++) {
+                builder.add(edit.chunkIds()[i], edit.sizes()[i]);
+            }
+            cursor = edit.parentIndex() + edit.removed();
+        }
+        builder.addRange(parent, cursor, parent.size());
+        return builder.build();
+    }
+
+    /**
+     * Myers shortest edit script between the two chunk id sequences, or empty when more than {@code maxEdits}
+     * insertions and removals would be needed.
+     *
+     * The common prefix and suffix are skipped first and the search runs on the rest only. It gives up early
+     * when the length difference alone exceeds {@code maxEdits}, or once it has walked more than
+     * {@code WORK_PER_ENTRY} matching entries per remaining entry, which bounds the cost to O(N + M + maxEdits^2)
+     * instead of O((N + M) * maxEdits).
+     */
+    public static Optional<ManifestDelta> diff(ChunkManifest parent, ChunkManifest child, int maxEdits) {
+        long[] a = parent.chunkIds();
+        long[] b = child.chunkIds();
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        if (Math.abs(n - m) > maxEdits) {
+            return Optional.empty();
+        }
+
+        int max = Math.min(n + m, maxEdits);
+        long workLimit = (long) WORK_PER_ENTRY * (n + m);
+        long work = 0;
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+
+        for (int d = 0; d <= max; d++) {
+            trace.add(v.clone());
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                int start = x;
+                while (x < n && y < m && a[prefix + x] == b[prefix + y]) {
+                    x++;
+                    y++;
+                }
+                work += x - start;
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return Optional.of(new ManifestDelta(backtrack(trace, offset, prefix, n, m, child)));
+                }
+            }
+            if (work > workLimit) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static List<Edit> backtrack(List<int[]> trace, int offset, int prefix, int n, int m,
+            ChunkManifest child) {
+        // Single-step operations collected from the end: {parentIndex, childIndex or -1 for a removal}
+        List<int[]> operations = new ArrayList<>();
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int previousK = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]) ? k + 1 : k - 1;
+            int previousX = v[offset + previousK];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+            }
+            if (previousK == k + 1) {
+                operations.add(new int[] { prefix + x, prefix + y - 1 });
+            } else {
+                operations.add(new int[] { prefix + x - 1, -1 });
+            }
+            x = previousX;
+            y = previousY;
+        }
+        Collections.reverse(operations);
+
+        List<Edit> edits = new ArrayList<>();
+        int start = -1;
+        int removed = 0;
+        List<Integer> inserted = new ArrayList<>();
+        for (int[] operation : operations) {
+            int parentIndex = operation[0];
+            if (start >= 0 && parentIndex != start + removed) {
+                edits.add(toEdit(start, removed, inserted, child));
+                start = -1;
+            }
+            if (start < 0) {
+                start = parentIndex;
+                removed = 0;
+                inserted = new ArrayList<>();
+            }
+            if (operation[1] < 0) {
+                removed++;
+            } else {
+                inserted.add(operation[1]);
+            }
+        }
+        if (start >= 0) {
+            edits.add(toEdit(start, removed, inserted, child));
+        }
+        return edits;
+    }
+
+    private static Edit toEdit(int parentIndex, int removed, List<Integer> inserted, ChunkManifest child) {
+        long[] chunkIds = new long[inserted.size()];
+        int[] sizes = new int[inserted.size()];
+        for (int i = 0; i < inserted.size(); i++) {
+            chunkIds[i] = child.chunkId(inserted.get(i));
+            sizes[i] = child.chunkSize(inserted.get(i));
+        }
+        return new Edit(parentIndex, removed, chunkIds, sizes);
+    }
+}
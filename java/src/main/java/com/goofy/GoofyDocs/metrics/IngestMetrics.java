@@ -0,0 +1,198 @@
+package com.goofy.GoofyDocs.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.segment.SegmentMatch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+@Component
+public class IngestMetrics {
+
+    private final Map<ChunkingProfile, Timer> chunkingTimers = new EnumMap<>(ChunkingProfile.class);
+    private final Map<ChunkingProfile, Counter> chunkedBytes = new EnumMap<>(ChunkingProfile.class);
+    private final Map<ChunkingProfile, DistributionSummary> chunksPerFile = new EnumMap<>(ChunkingProfile.class);
+    private final Map<HashingAlgorithm, Timer> hashingTimers = new EnumMap<>(HashingAlgorithm.class);
+    private final Timer prefilterHitTimer;
+    private final Timer prefilterMissTimer;
+    private final Timer lookupHitTimer;
+    private final Timer lookupMissTimer;
+    private final Map<SegmentMatch.Kind, Timer> segmentLookupTimers = new EnumMap<>(SegmentMatch.Kind.class);
+    private final Map<CompressionType, Timer> compressionTimers = new EnumMap<>(CompressionType.class);
+    private final Map<CompressionType, Timer> decompressionTimers = new EnumMap<>(CompressionType.class);
+    private final Timer dbWriteTimer;
+    private final Timer deltaHitTimer;
+    private final Timer deltaMissTimer;
+    private final Counter deltaSavedBytes;
+    private final Counter duplicateChunks;
+    private final Counter uniqueChunks;
+
+    private final AtomicLong bytesInFlight = new AtomicLong();
+    private final LongAdder ingestedBytes = new LongAdder();
+    private final LongAdder duplicateBytes = new LongAdder();
+    private final LongAdder compressionInputBytes = new LongAdder();
+    private final LongAdder compressionOutputBytes = new LongAdder();
+
+    @Autowired
+    public IngestMetrics(MeterRegistry registry) {
+        for (ChunkingProfile profile : ChunkingProfile.values()) {
+            chunkingTimers.put(profile, Timer.builder("goofydocs.ingest.chunking")
+                    .description("Content-defined chunk boundary scan of one file")
+                    .tag("profile", profile.name())
+                    .register(registry));
+            chunkedBytes.put(profile, Counter.builder("goofydocs.ingest.chunking.bytes")
+                    .baseUnit("bytes")
+                    .tag("profile", profile.name())
+                    .register(registry));
+            chunksPerFile.put(profile, DistributionSummary.builder("goofydocs.ingest.chunking.chunks")
+                    .tag("profile", profile.name())
+                    .register(registry));
+        }
+
+        for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+            hashingTimers.put(algorithm, Timer.builder("goofydocs.ingest.hashing")
+                    .tag("algorithm", algorithm.name())
+                    .register(registry));
+        }
+
+        this.prefilterHitTimer = Timer.builder("goofydocs.ingest.hashing.prefilter")
+                .description("xxHash pre-filter of one chunk; a hit reuses the digest of an identical chunk")
+                .tag("result", "hit")
+                .register(registry);
+        this.prefilterMissTimer = Timer.builder("goofydocs.ingest.hashing.prefilter")
+                .tag("result", "miss")
+                .register(registry);
+        this.lookupHitTimer = Timer.builder("goofydocs.ingest.dedup.lookup")
+                .tag("result", "hit")
+                .register(registry);
+        this.lookupMissTimer = Timer.builder("goofydocs.ingest.dedup.lookup")
+                .tag("result", "miss")
+                .register(registry);
+
+        for (SegmentMatch.Kind kind : SegmentMatch.Kind.values()) {
+            segmentLookupTimers.put(kind, Timer.builder("goofydocs.ingest.dedup.segment.lookup")
+                    .tag("result", kind.name().toLowerCase())
+                    .register(registry));
+        }
+
+        for (CompressionType type : CompressionType.values()) {
+            compressionTimers.put(type, Timer.builder("goofydocs.ingest.compression")
+                    .tag("codec", type.name())
+                    .register(registry));
+            decompressionTimers.put(type, Timer.builder("goofydocs.reconstruct.decompression")
+                    .tag("codec", type.name())
+                    .register(registry));
+        }
+
+        this.dbWriteTimer = Timer.builder("goofydocs.ingest.db.write")
+                .register(registry);
+        this.deltaHitTimer = Timer.builder("goofydocs.ingest.similarity.delta")
+                .tag("result", "delta")
+                .register(registry);
+        this.deltaMissTimer = Timer.builder("goofydocs.ingest.similarity.delta")
+                .tag("result", "standalone")
+                .register(registry);
+        this.deltaSavedBytes = Counter.builder("goofydocs.ingest.similarity.saved")
+                .baseUnit("bytes")
+                .register(registry);
+        this.duplicateChunks = Counter.builder("goofydocs.ingest.chunks")
+                .tag("result", "duplicate")
+                .register(registry);
+        this.uniqueChunks = Counter.builder("goofydocs.ingest.chunks")
+                .tag("result", "unique")
+                .register(registry);
+
+        Gauge.builder("goofydocs.bytes.in.flight", bytesInFlight, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("goofydocs.ingest.dedup.ratio", this, IngestMetrics::dedupRatio)
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("goofydocs.ingest.compression.ratio", this, IngestMetrics::compressionRatio)
+                .strongReference(true)
+                .register(registry);
+    }
+
+    public static IngestMetrics noop() {
+        return new IngestMetrics(new CompositeMeterRegistry());
+    }
+
+    public void recordChunking(ChunkingProfile profile, long nanos, int chunks, long bytes) {
+        chunkingTimers.get(profile).record(nanos, TimeUnit.NANOSECONDS);
+        chunksPerFile.get(profile).record(chunks);
+        chunkedBytes.get(profile).increment(bytes);
+    }
+
+    public void recordHashing(HashingAlgorithm algorithm, long nanos) {
+        hashingTimers.get(algorithm).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPrefilter(long nanos, boolean hit) {
+        (hit ? prefilterHitTimer : prefilterMissTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordLookup(long nanos, boolean hit, long chunkBytes) {
+        (hit ? lookupHitTimer : lookupMissTimer).record(nanos, TimeUnit.NANOSECONDS);
+        (hit ? duplicateChunks : uniqueChunks).increment();
+        ingestedBytes.add(chunkBytes);
+        if (hit) {
+            duplicateBytes.add(chunkBytes);
+        }
+    }
+
+    // Chunks resolved through the segment index count as duplicates without a lookup of their own
+    public void recordSegmentLookup(SegmentMatch.Kind kind, long nanos, int resolvedChunks, long resolvedBytes) {
+        segmentLookupTimers.get(kind).record(nanos, TimeUnit.NANOSECONDS);
+        duplicateChunks.increment(resolvedChunks);
+        ingestedBytes.add(resolvedBytes);
+        duplicateBytes.add(resolvedBytes);
+    }
+
+    public void recordCompression(CompressionType type, long nanos, int rawBytes, int compressedBytes) {
+        compressionTimers.get(type).record(nanos, TimeUnit.NANOSECONDS);
+        compressionInputBytes.add(rawBytes);
+        compressionOutputBytes.add(compressedBytes);
+    }
+
+    public void recordDeltaEncoding(long nanos, boolean encoded, int compressedBytes, int storedBytes) {
+        (encoded ? deltaHitTimer : deltaMissTimer).record(nanos, TimeUnit.NANOSECONDS);
+        deltaSavedBytes.increment(compressedBytes - storedBytes);
+    }
+
+    public void recordDecompression(CompressionType type, long nanos) {
+        decompressionTimers.get(type).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDbWrite(long nanos) {
+        dbWriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void addBytesInFlight(long delta) {
+        bytesInFlight.addAndGet(delta);
+    }
+
+    private double dedupRatio() {
+        long total = ingestedBytes.sum();
+        return total > 0 ? (double) duplicateBytes.sum() / total : 0;
+    }
+
+    private double compressionRatio() {
+        long input = compressionInputBytes.sum();
+        return input > 0 ? (double) compressionOutputBytes.sum() / input : 0;
+    }
+}
@@ -11,6 +11,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
 @Entity
 @Table(name = "chunk")
@@ -22,15 +23,6 @@ public class ChunkEntity {
   @Column(columnDefinition = "bytea")
   private byte[] data;
 
-  @Column(name = "hash_sha_1")
-  private String hashSha1;
-
-  @Column(name = "hash_sha_256")
-  private String hashSha256;
-
-  @Column(name = "hash_blake3")
-  private String hashBlake3;
-
   @Column(name = "created_at")
   private LocalDateTime createdAt = LocalDateTime.now();
 
@@ -43,6 +35,25 @@ public class ChunkEntity {
   @Column(name = "original_size")
   private Integer originalSize;
 
+  @Column(name = "orphaned_at")
+  private LocalDateTime orphanedAt;
+
+  @Column(name = "ref_count", insertable = false, updatable = false)
+  private Long refCount;
+
+  // Set instead of data when the payload lives in a pack of the object store
+  @Column(name = "pack_id", insertable = false, updatable = false)
+  private Long packId;
+
+  @Column(name = "pack_offset", insertable = false, updatable = false)
+  private Long packOffset;
+
+  @Column(name = "stored_size", insertable = false, updatable = false)
+  private Integer storedSize;
+
+  @Transient
+  private byte[] loadedData;
+
   public Long getId() {
     return id;
   }
@@ -51,38 +62,17 @@ public class ChunkEntity {
     this.id = id;
   }
 
+  /**
+   * The stored payload: the inline data, or the bytes fetched from the chunk's pack by the ChunkStore.
+   */
   public byte[] getData() {
-    return data;
+    return data != null ? data : loadedData;
   }
 
   public void setData(byte[] data) {
     this.data = data;
   }
 
-  public String getHashSha1() {
-    return hashSha1;
-  }
-
-  public void setHashSha1(String hashSha1) {
-    this.hashSha1 = hashSha1;
-  }
-
-  public String getHashSha256() {
-    return hashSha256;
-  }
-
-  public void setHashSha256(String hashSha256) {
-    this.hashSha256 = hashSha256;
-  }
-
-  public String getHashBlake3() {
-    return hashBlake3;
-  }
-
-  public void setHashBlake3(String hashBlake3) {
-    this.hashBlake3 = hashBlake3;
-  }
-
   public LocalDateTime getCreatedAt() {
     return createdAt;
   }
@@ -106,4 +96,32 @@ public class ChunkEntity {
   public void setOriginalSize(Integer originalSize) {
     this.originalSize = originalSize;
   }
-}
\ No newline at end of file
+
+  public LocalDateTime getOrphanedAt() {
+    return orphanedAt;
+  }
+
+  public void setOrphanedAt(LocalDateTime orphanedAt) {
+    this.orphanedAt = orphanedAt;
+  }
+
+  public Long getRefCount() {
+    return refCount;
+  }
+
+  public Long getPackId() {
+    return packId;
+  }
+
+  public Long getPackOffset() {
+    return packOffset;
+  }
+
+  public Integer getStoredSize() {
+    return storedSize;
+  }
+
+  public void setLoadedData(byte[] loadedData) {
+    this.loadedData = loadedData;
+  }
+}
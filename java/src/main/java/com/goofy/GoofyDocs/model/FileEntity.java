@@ -17,6 +17,17 @@ public class FileEntity {
   private String extension;
   private Long size;
 
+  @Column(name = "chunking_profile")
+  private Short chunkingProfile;
+
+  @Column(name = "parent_id")
+  private Long parentId;
+
+  private Integer version = 1;
+
+  @Column(name = "delta_depth")
+  private Integer deltaDepth = 0;
+
   @Column(name = "created_at")
   private LocalDateTime createdAt = LocalDateTime.now();
 
@@ -55,6 +66,38 @@ public class FileEntity {
     this.size = size;
   }
 
+  public Short getChunkingProfile() {
+    return chunkingProfile;
+  }
+
+  public void setChunkingProfile(Short chunkingProfile) {
+    this.chunkingProfile = chunkingProfile;
+  }
+
+  public Long getParentId() {
+    return parentId;
+  }
+
+  public void setParentId(Long parentId) {
+    this.parentId = parentId;
+  }
+
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
+  public Integer getDeltaDepth() {
+    return deltaDepth;
+  }
+
+  public void setDeltaDepth(Integer deltaDepth) {
+    this.deltaDepth = deltaDepth;
+  }
+
   public LocalDateTime getCreatedAt() {
     return createdAt;
   }
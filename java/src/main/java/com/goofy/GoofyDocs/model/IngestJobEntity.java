@@ -0,0 +1,286 @@
+package com.goofy.GoofyDocs.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+@Entity
+@Table(name = "ingest_job")
+public class IngestJobEntity {
+  public enum Status {
+    QUEUED, RUNNING, COMPLETED, FAILED
+  }
+
+  @Id
+  private String id;
+
+  @Enumerated(EnumType.STRING)
+  private Status status;
+
+  @Column(name = "file_name")
+  private String fileName;
+
+  @Column(name = "file_size")
+  private Long fileSize;
+
+  @Column(name = "spool_path")
+  private String spoolPath;
+
+  private String algorithm;
+
+  @Column(name = "compression_type")
+  private String compressionType;
+
+  @Column(name = "chunking_profile")
+  private Short chunkingProfile;
+
+  @Column(name = "parent_id")
+  private Long parentId;
+
+  @Column(name = "file_id")
+  private Long fileId;
+
+  @Column(name = "bytes_chunked")
+  private long bytesChunked;
+
+  private int batches;
+
+  @Column(name = "total_chunks")
+  private int totalChunks;
+
+  @Column(name = "unique_chunks")
+  private int uniqueChunks;
+
+  @Column(name = "duplicate_chunks")
+  private int duplicateChunks;
+
+  @Column(name = "saved_storage")
+  private long savedStorage;
+
+  @Column(name = "new_chunk_bytes")
+  private long newChunkBytes;
+
+  @Column(name = "stored_bytes")
+  private long storedBytes;
+
+  @Column(name = "compressed_bytes")
+  private long compressedBytes;
+
+  @Column(name = "segment_resolved_chunks")
+  private int segmentResolvedChunks;
+
+  @Column(name = "delta_chunks")
+  private int deltaChunks;
+
+  private String error;
+
+  @Column(name = "created_at")
+  private LocalDateTime createdAt = LocalDateTime.now();
+
+  @Column(name = "updated_at")
+  private LocalDateTime updatedAt;
+
+  @Column(name = "expires_at")
+  private LocalDateTime expiresAt;
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public Long getFileSize() {
+    return fileSize;
+  }
+
+  public void setFileSize(Long fileSize) {
+    this.fileSize = fileSize;
+  }
+
+  public String getSpoolPath() {
+    return spoolPath;
+  }
+
+  public void setSpoolPath(String spoolPath) {
+    this.spoolPath = spoolPath;
+  }
+
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  public void setAlgorithm(String algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  public String getCompressionType() {
+    return compressionType;
+  }
+
+  public void setCompressionType(String compressionType) {
+    this.compressionType = compressionType;
+  }
+
+  public Short getChunkingProfile() {
+    return chunkingProfile;
+  }
+
+  public void setChunkingProfile(Short chunkingProfile) {
+    this.chunkingProfile = chunkingProfile;
+  }
+
+  public Long getParentId() {
+    return parentId;
+  }
+
+  public void setParentId(Long parentId) {
+    this.parentId = parentId;
+  }
+
+  public Long getFileId() {
+    return fileId;
+  }
+
+  public void setFileId(Long fileId) {
+    this.fileId = fileId;
+  }
+
+  public long getBytesChunked() {
+    return bytesChunked;
+  }
+
+  public void setBytesChunked(long bytesChunked) {
+    this.bytesChunked = bytesChunked;
+  }
+
+  public int getBatches() {
+    return batches;
+  }
+
+  public void setBatches(int batches) {
+    this.batches = batches;
+  }
+
+  public int getTotalChunks() {
+    return totalChunks;
+  }
+
+  public void setTotalChunks(int totalChunks) {
+    this.totalChunks = totalChunks;
+  }
+
+  public int getUniqueChunks() {
+    return uniqueChunks;
+  }
+
+  public void setUniqueChunks(int uniqueChunks) {
+    this.uniqueChunks = uniqueChunks;
+  }
+
+  public int getDuplicateChunks() {
+    return duplicateChunks;
+  }
+
+  public void setDuplicateChunks(int duplicateChunks) {
+    this.duplicateChunks = duplicateChunks;
+  }
+
+  public long getSavedStorage() {
+    return savedStorage;
+  }
+
+  public void setSavedStorage(long savedStorage) {
+    this.savedStorage = savedStorage;
+  }
+
+  public long getNewChunkBytes() {
+    return newChunkBytes;
+  }
+
+  public void setNewChunkBytes(long newChunkBytes) {
+    this.newChunkBytes = newChunkBytes;
+  }
+
+  public long getStoredBytes() {
+    return storedBytes;
+  }
+
+  public void setStoredBytes(long storedBytes) {
+    this.storedBytes = storedBytes;
+  }
+
+  public long getCompressedBytes() {
+    return compressedBytes;
+  }
+
+  public void setCompressedBytes(long compressedBytes) {
+    this.compressedBytes = compressedBytes;
+  }
+
+  public int getSegmentResolvedChunks() {
+    return segmentResolvedChunks;
+  }
+
+  public void setSegmentResolvedChunks(int segmentResolvedChunks) {
+    this.segmentResolvedChunks = segmentResolvedChunks;
+  }
+
+  public int getDeltaChunks() {
+    return deltaChunks;
+  }
+
+  public void setDeltaChunks(int deltaChunks) {
+    this.deltaChunks = deltaChunks;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public LocalDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public void setUpdatedAt(LocalDateTime updatedAt) {
+    this.updatedAt = updatedAt;
+  }
+
+  public LocalDateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public void setExpiresAt(LocalDateTime expiresAt) {
+    this.expiresAt = expiresAt;
+  }
+}
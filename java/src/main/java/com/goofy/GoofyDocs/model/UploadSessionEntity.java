@@ -0,0 +1,106 @@
+package com.goofy.GoofyDocs.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+@Entity
+@Table(name = "upload_session")
+public class UploadSessionEntity {
+  @Id
+  private String id;
+
+  @Column(name = "file_name")
+  private String fileName;
+
+  @Column(name = "file_size")
+  private Long fileSize;
+
+  private String algorithm;
+
+  @Column(name = "compression_type")
+  private String compressionType;
+
+  @Column(name = "chunking_profile")
+  private Short chunkingProfile;
+
+  @Column(name = "chunk_count")
+  private Integer chunkCount;
+
+  @Column(name = "created_at")
+  private LocalDateTime createdAt = LocalDateTime.now();
+
+  @Column(name = "expires_at")
+  private LocalDateTime expiresAt;
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public Long getFileSize() {
+    return fileSize;
+  }
+
+  public void setFileSize(Long fileSize) {
+    this.fileSize = fileSize;
+  }
+
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  public void setAlgorithm(String algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  public String getCompressionType() {
+    return compressionType;
+  }
+
+  public void setCompressionType(String compressionType) {
+    this.compressionType = compressionType;
+  }
+
+  public Short getChunkingProfile() {
+    return chunkingProfile;
+  }
+
+  public void setChunkingProfile(Short chunkingProfile) {
+    this.chunkingProfile = chunkingProfile;
+  }
+
+  public Integer getChunkCount() {
+    return chunkCount;
+  }
+
+  public void setChunkCount(Integer chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public LocalDateTime getExpiresAt() {
+    return expiresAt;
+  }
+
+  public void setExpiresAt(LocalDateTime expiresAt) {
+    this.expiresAt = expiresAt;
+  }
+}
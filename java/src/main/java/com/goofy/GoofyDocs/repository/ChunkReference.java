@@ -0,0 +1,4 @@
+package com.goofy.GoofyDocs.repository;
+
+public record ChunkReference(long id, boolean orphaned) {
+}
@@ -0,0 +1,8 @@
+package com.goofy.GoofyDocs.repository;
+
+/**
+ * A chunk rewritten into another pack; applied only while the chunk is still in {@code fromPackId}.
+ */
+public record ChunkRelocation(long chunkId, long fromPackId, long packId, long packOffset, int storedSize,
+    String compressionType, int originalSize) {
+}
@@ -1,16 +1,65 @@
 package com.goofy.GoofyDocs.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.goofy.GoofyDocs.model.ChunkEntity;
 
-public interface ChunkRepository extends JpaRepository<ChunkEntity, Long> {
+public interface ChunkRepository extends JpaRepository<ChunkEntity, Long>, ChunkRepositoryCustom {
 
-  Optional<ChunkEntity> findByHashSha1(String hash);
+  @Modifying
+  @Query(value = "UPDATE chunk c SET orphaned_at = :now "
+      + "WHERE c.id IN (:ids) AND c.orphaned_at IS NULL "
+      + "AND NOT EXISTS (SELECT 1 FROM chunk_ref r WHERE r.chunk_id = c.id) "
+      + "AND NOT EXISTS (SELECT 1 FROM chunk d WHERE d.base_chunk_id = c.id)", nativeQuery = true)
+  int markOrphaned(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
 
-  Optional<ChunkEntity> findByHashSha256(String hash);
+  @Modifying
+  @Query("update ChunkEntity c set c.orphanedAt = null where c.id = :id")
+  int clearOrphanedMark(@Param("id") Long id);
 
-  Optional<ChunkEntity> findByHashBlake3(String hash);
-}
\ No newline at end of file
+  @Modifying
+  @Query(value = "UPDATE chunk c SET orphaned_at = GREATEST(c.orphaned_at, :until) "
+      + "WHERE c.id IN (:ids) AND c.orphaned_at IS NOT NULL", nativeQuery = true)
+  int deferOrphanedMark(@Param("ids") Collection<Long> ids, @Param("until") LocalDateTime until);
+
+  @Query(value = "SELECT c.id FROM chunk c WHERE c.orphaned_at < :cutoff ORDER BY c.orphaned_at LIMIT :limit",
+      nativeQuery = true)
+  List<Long> findOrphanedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+  @Modifying
+  @Query(value = "UPDATE chunk c SET orphaned_at = NULL "
+      + "WHERE c.id IN (:ids) AND (EXISTS (SELECT 1 FROM chunk_ref r WHERE r.chunk_id = c.id) "
+      + "OR EXISTS (SELECT 1 FROM chunk d WHERE d.base_chunk_id = c.id))", nativeQuery = true)
+  int clearOrphanedMarkIfReferenced(@Param("ids") Collection<Long> ids);
+
+  @Modifying
+  @Query(value = "DELETE FROM chunk c "
+      + "WHERE c.id IN (:ids) AND c.orphaned_at < :cutoff "
+      + "AND NOT EXISTS (SELECT 1 FROM chunk_ref r WHERE r.chunk_id = c.id) "
+      + "AND NOT EXISTS (SELECT 1 FROM chunk d WHERE d.base_chunk_id = c.id)", nativeQuery = true)
+  int deleteOrphaned(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+
+  @Modifying
+  @Query(value = "UPDATE chunk c SET ref_count = c.ref_count - r.refs "
+      + "FROM chunk_ref r WHERE r.file_id = :fileId AND c.id = r.chunk_id", nativeQuery = true)
+  int decrementReferenceCountsForFile(@Param("fileId") Long fileId);
+
+  @Modifying
+  @Query(value = "UPDATE chunk SET base_chunk_id = :baseId, delta_depth = :depth WHERE id = :id", nativeQuery = true)
+  int setDeltaBase(@Param("id") Long id, @Param("baseId") Long baseId, @Param("depth") int depth);
+
+  @Query(value = "SELECT DISTINCT c.base_chunk_id FROM chunk c WHERE c.id IN (:ids) AND c.base_chunk_id IS NOT NULL",
+      nativeQuery = true)
+  List<Long> findBaseChunkIds(@Param("ids") Collection<Long> ids);
+
+  @Query(value = "SELECT c.ref_count FROM chunk c WHERE c.id = :id", nativeQuery = true)
+  Optional<Long> findReferenceCount(@Param("id") Long id);
+}
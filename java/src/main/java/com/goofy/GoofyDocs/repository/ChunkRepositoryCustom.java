@@ -0,0 +1,66 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.store.StorageTier;
+
+public interface ChunkRepositoryCustom {
+
+  Optional<ChunkReference> findByFingerprint(HashingAlgorithm algorithm, byte[] digest);
+
+  Optional<Long> insertIfAbsent(HashingAlgorithm algorithm, byte[] digest, byte[] data, String compressionType,
+      int originalSize);
+
+  List<FingerprintMatch> findByFingerprints(HashingAlgorithm algorithm, Collection<byte[]> digests);
+
+  /**
+   * The {@code algorithm} fingerprints of the given stored chunks; chunks that are gone are left out.
+   */
+  List<FingerprintMatch> findFingerprintsOfChunks(HashingAlgorithm algorithm, long[] chunkIds);
+
+  Optional<Long> insertIfAbsent(HashingAlgorithm algorithm, byte[] digest, byte[] data, String compressionType,
+      int originalSize, LocalDateTime orphanedAt);
+
+  /**
+   * Bulk form of {@link #insertIfAbsent}: digests must be distinct; returns the ids of the chunks this call
+   * inserted, keyed by hex digest. The others were stored concurrently and have to be looked up again.
+   */
+  Map<String, Long> insertAllIfAbsent(HashingAlgorithm algorithm, List<NewChunk> chunks, LocalDateTime orphanedAt);
+
+  void addFingerprint(HashingAlgorithm algorithm, byte[] digest, long chunkId);
+
+  void addFingerprints(HashingAlgorithm algorithm, Map<Long, byte[]> digestsByChunkId);
+
+  int incrementReferenceCounts(ChunkCounts referenceCounts);
+
+  int reviveChunks(long[] ids);
+
+  /**
+   * Pushes the GC mark of the marked ones among the given chunks back to {@code until} and counts those still
+   * stored. Unlike a cleared mark, a deferred one still gets the chunk collected if its ingest never completes.
+   */
+  int leaseChunks(long[] ids, LocalDateTime until);
+
+  /**
+   * Records a read of the given chunks, for the tiering.
+   */
+  int touchChunks(long[] ids);
+
+  /**
+   * Those of the given chunks that live in packs of {@code tier}, in pack order.
+   */
+  List<Long> findInTier(long[] ids, StorageTier tier);
+
+  /**
+   * Live chunks in packs of {@code tier} that were neither read nor written since {@code cutoff}, in pack order.
+   */
+  List<Long> findIdleInTier(StorageTier tier, LocalDateTime cutoff, int limit);
+
+  int relocateChunks(List<ChunkRelocation> relocations);
+}
@@ -0,0 +1,326 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.store.ChunkLocation;
+import com.goofy.GoofyDocs.store.ChunkStore;
+import com.goofy.GoofyDocs.store.StorageTier;
+
+public class ChunkRepositoryImpl implements ChunkRepositoryCustom {
+
+  private static final String FIND_BY_FINGERPRINT = "SELECT c.id, c.orphaned_at IS NOT NULL AS orphaned "
+      + "FROM chunk_fingerprint f JOIN chunk c ON c.id = f.chunk_id "
+      + "WHERE f.algorithm = ? AND f.digest = ?";
+
+  private static final String FIND_BY_FINGERPRINTS = "SELECT f.digest, c.id, c.orphaned_at IS NOT NULL AS orphaned, "
+      + "c.ref_count, COALESCE(c.original_size, octet_length(c.data)) AS original_size, "
+      + "COALESCE(c.stored_size, octet_length(c.data)) AS stored_size "
+      + "FROM chunk_fingerprint f JOIN chunk c ON c.id = f.chunk_id "
+      + "WHERE f.algorithm = ? AND f.digest = ANY(?)";
+
+  private static final String FIND_FINGERPRINTS_OF_CHUNKS = "SELECT f.digest, c.id, "
+      + "c.orphaned_at IS NOT NULL AS orphaned, c.ref_count, "
+      + "COALESCE(c.original_size, octet_length(c.data)) AS original_size, "
+      + "COALESCE(c.stored_size, octet_length(c.data)) AS stored_size "
+      + "FROM chunk_fingerprint f JOIN chunk c ON c.id = f.chunk_id "
+      + "WHERE f.algorithm = ? AND f.chunk_id = ANY(?::bigint[])";
+
+  private static final int LOOKUP_BATCH_SIZE = 1000;
+
+  // The fingerprint claims a fresh chunk id first; the chunk row is only written when the claim succeeded,
+  // so a concurrent upload of the same bytes never leaves an unreferenced chunk behind. With an object store
+  // the row is written with an empty payload and the winner alone stages its bytes and sets their location
+  // (SET_LOCATIONS) before the commit, so a lost claim stages nothing either.
+  private static final String INSERT_IF_ABSENT = "WITH claimed AS ("
+      + "INSERT INTO chunk_fingerprint (algorithm, digest, chunk_id) "
+      + "VALUES (?, ?, nextval(pg_get_serial_sequence('chunk', 'id'))) "
+      + "ON CONFLICT (algorithm, digest) DO NOTHING RETURNING chunk_id) "
+      + "INSERT INTO chunk (id, data, compression_type, original_size, created_at, orphaned_at) "
+      + "SELECT chunk_id, ?, ?, ?, now(), ?::timestamp FROM claimed RETURNING id";
+
+  // Same claim-then-write order as INSERT_IF_ABSENT, for a whole batch; the chunk insert runs even though
+  // the final SELECT only reads the claims.
+  private static final String INSERT_ALL_IF_ABSENT = "WITH input AS ("
+      + "SELECT * FROM unnest(?::bytea[], ?::bytea[], ?::varchar[], ?::int[]) "
+      + "AS i(digest, data, compression_type, original_size)), "
+      + "claimed AS (INSERT INTO chunk_fingerprint (algorithm, digest, chunk_id) "
+      + "SELECT ?, digest, nextval(pg_get_serial_sequence('chunk', 'id')) FROM input "
+      + "ON CONFLICT (algorithm, digest) DO NOTHING RETURNING digest, chunk_id), "
+      + "stored AS (INSERT INTO chunk (id, data, compression_type, original_size, created_at, orphaned_at) "
+      + "SELECT c.chunk_id, i.data, i.compression_type, i.original_size, now(), ?::timestamp "
+      + "FROM claimed c JOIN input i ON i.digest = c.digest) "
+      + "SELECT digest, chunk_id FROM claimed";
+
+  private static final String SET_LOCATIONS = "UPDATE chunk c "
+      + "SET data = NULL, pack_id = l.pack_id, pack_offset = l.pack_offset, stored_size = l.stored_size "
+      + "FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::int[]) AS l(id, pack_id, pack_offset, stored_size) "
+      + "WHERE c.id = l.id";
+
+  private static final byte[] PLACEHOLDER = new byte[0];
+
+  private static final int INSERT_BATCH_SIZE = 500;
+
+  private static final String ADD_FINGERPRINT = "INSERT INTO chunk_fingerprint (algorithm, digest, chunk_id) "
+      + "VALUES (?, ?, ?) ON CONFLICT (algorithm, digest) DO NOTHING";
+
+  // Rows are locked in id order before the update so two uploads sharing chunks cannot deadlock.
+  private static final String INCREMENT_REFERENCE_COUNTS = "WITH delta AS ("
+      + "SELECT * FROM unnest(?::bigint[], ?::int[]) AS d(id, refs)), "
+      + "locked AS (SELECT c.id FROM chunk c JOIN delta d ON d.id = c.id ORDER BY c.id FOR NO KEY UPDATE) "
+      + "UPDATE chunk c SET ref_count = c.ref_count + d.refs "
+      + "FROM delta d JOIN locked l ON l.id = d.id WHERE c.id = d.id";
+
+  // Clears the GC mark of the given chunks and counts those still stored, in one round trip
+  private static final String REVIVE_CHUNKS = "WITH revived AS ("
+      + "UPDATE chunk SET orphaned_at = NULL WHERE id = ANY(?::bigint[]) AND orphaned_at IS NOT NULL RETURNING id) "
+      + "SELECT COUNT(*) FROM chunk WHERE id = ANY(?::bigint[])";
+
+  // Defers the GC mark of the given chunks to a lease and counts those still stored, in one round trip
+  private static final String LEASE_CHUNKS = "WITH leased AS ("
+      + "UPDATE chunk SET orphaned_at = GREATEST(orphaned_at, ?) WHERE id = ANY(?::bigint[]) "
+      + "AND orphaned_at IS NOT NULL RETURNING id) "
+      + "SELECT COUNT(*) FROM chunk WHERE id = ANY(?::bigint[])";
+
+  private static final String TOUCH_CHUNKS = "UPDATE chunk SET last_read_at = now() WHERE id = ANY(?::bigint[])";
+
+  private static final String FIND_IN_TIER = "SELECT c.id FROM chunk c JOIN chunk_pack p ON p.id = c.pack_id "
+      + "WHERE c.id = ANY(?::bigint[]) AND p.tier = ? ORDER BY c.pack_id, c.pack_offset";
+
+  private static final String FIND_IDLE_IN_TIER = "SELECT c.id FROM chunk_pack p JOIN chunk c ON c.pack_id = p.id "
+      + "WHERE p.tier = ? AND c.orphaned_at IS NULL AND COALESCE(c.last_read_at, c.created_at) < ? "
+      + "ORDER BY c.pack_id, c.pack_offset LIMIT ?";
+
+  // Locked in id order like INCREMENT_REFERENCE_COUNTS; a chunk moved or deleted meanwhile is left alone
+  private static final String RELOCATE_CHUNKS = "WITH moved AS ("
+      + "SELECT * FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::bigint[], ?::int[], ?::varchar[], ?::int[]) "
+      + "AS m(id, from_pack_id, pack_id, pack_offset, stored_size, compression_type, original_size)), "
+      + "locked AS (SELECT c.id FROM chunk c JOIN moved m ON m.id = c.id AND c.pack_id = m.from_pack_id "
+      + "ORDER BY c.id FOR NO KEY UPDATE OF c) "
+      + "UPDATE chunk c SET pack_id = m.pack_id, pack_offset = m.pack_offset, stored_size = m.stored_size, "
+      + "compression_type = m.compression_type, original_size = m.original_size "
+      + "FROM moved m JOIN locked l ON l.id = m.id WHERE c.id = m.id";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ChunkStore chunkStore;
+
+  public ChunkRepositoryImpl(JdbcTemplate jdbcTemplate, ChunkStore chunkStore) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.chunkStore = chunkStore;
+  }
+
+  @Override
+  public Optional<ChunkReference> findByFingerprint(HashingAlgorithm algorithm, byte[] digest) {
+    List<ChunkReference> references = jdbcTemplate.query(FIND_BY_FINGERPRINT,
+        (rs, rowNum) -> new ChunkReference(rs.getLong("id"), rs.getBoolean("orphaned")),
+        algorithm.getId(), digest);
+    return references.stream().findFirst();
+  }
+
+  @Override
+  public List<FingerprintMatch> findByFingerprints(HashingAlgorithm algorithm, Collection<byte[]> digests) {
+    List<byte[]> pending = new ArrayList<>(digests);
+    List<FingerprintMatch> matches = new ArrayList<>();
+    for (int from = 0; from < pending.size(); from += LOOKUP_BATCH_SIZE) {
+      byte[][] batch = pending.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, pending.size()))
+          .toArray(new byte[0][]);
+      matches.addAll(jdbcTemplate.query(FIND_BY_FINGERPRINTS,
+          (rs, rowNum) -> new FingerprintMatch(rs.getBytes("digest"), rs.getLong("id"), rs.getBoolean("orphaned"),
+              rs.getLong("ref_count"), rs.getInt("original_size"), rs.getInt("stored_size")),
+          algorithm.getId(), batch));
+    }
+    return matches;
+  }
+
+  @Override
+  public List<FingerprintMatch> findFingerprintsOfChunks(HashingAlgorithm algorithm, long[] chunkIds) {
+    if (chunkIds.length == 0) {
+      return List.of();
+    }
+    return jdbcTemplate.query(FIND_FINGERPRINTS_OF_CHUNKS,
+        (rs, rowNum) -> new FingerprintMatch(rs.getBytes("digest"), rs.getLong("id"), rs.getBoolean("orphaned"),
+            rs.getLong("ref_count"), rs.getInt("original_size"), rs.getInt("stored_size")),
+        algorithm.getId(), chunkIds);
+  }
+
+  @Override
+  public Optional<Long> insertIfAbsent(HashingAlgorithm algorithm, byte[] digest, byte[] data, String compressionType,
+      int originalSize) {
+    return insertIfAbsent(algorithm, digest, data, compressionType, originalSize, null);
+  }
+
+  @Override
+  public Optional<Long> insertIfAbsent(HashingAlgorithm algorithm, byte[] digest, byte[] data, String compressionType,
+      int originalSize, LocalDateTime orphanedAt) {
+    boolean external = chunkStore.isExternal();
+    List<Long> ids = jdbcTemplate.queryForList(INSERT_IF_ABSENT, Long.class,
+        algorithm.getId(), digest, external ? PLACEHOLDER : data, compressionType, originalSize,
+        orphanedAt != null ? Timestamp.valueOf(orphanedAt) : null);
+    if (external && !ids.isEmpty()) {
+      stage(List.of(ids.get(0)), List.of(data));
+    }
+    return ids.stream().findFirst();
+  }
+
+  @Override
+  public Map<String, Long> insertAllIfAbsent(HashingAlgorithm algorithm, List<NewChunk> chunks,
+      LocalDateTime orphanedAt) {
+    Map<String, Long> inserted = new HashMap<>();
+    Timestamp orphaned = orphanedAt != null ? Timestamp.valueOf(orphanedAt) : null;
+    for (int from = 0; from < chunks.size(); from += INSERT_BATCH_SIZE) {
+      List<NewChunk> batch = chunks.subList(from, Math.min(from + INSERT_BATCH_SIZE, chunks.size()));
+      byte[][] digests = new byte[batch.size()][];
+      byte[][] data = new byte[batch.size()][];
+      String[] compressionTypes = new String[batch.size()];
+      Integer[] originalSizes = new Integer[batch.size()];
+      for (int i = 0; i < batch.size(); i++) {
+        NewChunk chunk = batch.get(i);
+        digests[i] = chunk.digest();
+        data[i] = chunkStore.isExternal() ? PLACEHOLDER : chunk.data();
+        compressionTypes[i] = chunk.compressionType();
+        originalSizes[i] = chunk.originalSize();
+      }
+      Map<String, Long> claimed = new HashMap<>();
+      jdbcTemplate.query(INSERT_ALL_IF_ABSENT,
+          rs -> {
+            claimed.put(HexFormat.of().formatHex(rs.getBytes("digest")), rs.getLong("chunk_id"));
+          },
+          digests, data, compressionTypes, originalSizes, algorithm.getId(), orphaned);
+
+      if (chunkStore.isExternal() && !claimed.isEmpty()) {
+        // Staged in input order, which keeps the chunks of a file together in the pack
+        List<Long> ids = new ArrayList<>(claimed.size());
+        List<byte[]> payloads = new ArrayList<>(claimed.size());
+        for (NewChunk chunk : batch) {
+          Long id = claimed.get(HexFormat.of().formatHex(chunk.digest()));
+          if (id != null) {
+            ids.add(id);
+            payloads.add(chunk.data());
+          }
+        }
+        stage(ids, payloads);
+      }
+      inserted.putAll(claimed);
+    }
+    return inserted;
+  }
+
+  /**
+   * Stages the payloads of chunks this transaction claimed and points their rows at them.
+   */
+  private void stage(List<Long> ids, List<byte[]> payloads) {
+    long[] chunkIds = new long[ids.size()];
+    long[] packIds = new long[ids.size()];
+    long[] packOffsets = new long[ids.size()];
+    int[] storedSizes = new int[ids.size()];
+    for (int i = 0; i < ids.size(); i++) {
+      ChunkLocation location = chunkStore.stage(payloads.get(i));
+      chunkIds[i] = ids.get(i);
+      packIds[i] = location.packId();
+      packOffsets[i] = location.offset();
+      storedSizes[i] = location.length();
+    }
+    jdbcTemplate.update(SET_LOCATIONS, chunkIds, packIds, packOffsets, storedSizes);
+  }
+
+  @Override
+  public void addFingerprint(HashingAlgorithm algorithm, byte[] digest, long chunkId) {
+    jdbcTemplate.update(ADD_FINGERPRINT, algorithm.getId(), digest, chunkId);
+  }
+
+  @Override
+  public void addFingerprints(HashingAlgorithm algorithm, Map<Long, byte[]> digestsByChunkId) {
+    List<Object[]> rows = new ArrayList<>(digestsByChunkId.size());
+    digestsByChunkId.forEach((chunkId, digest) -> rows.add(new Object[] { algorithm.getId(), digest, chunkId }));
+    for (int from = 0; from < rows.size(); from += LOOKUP_BATCH_SIZE) {
+      jdbcTemplate.batchUpdate(ADD_FINGERPRINT, rows.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, rows.size())));
+    }
+  }
+
+  @Override
+  public int incrementReferenceCounts(ChunkCounts referenceCounts) {
+    if (referenceCounts.isEmpty()) {
+      return 0;
+    }
+    long[] ids = referenceCounts.sortedIds();
+    int[] refs = new int[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      refs[i] = referenceCounts.get(ids[i]);
+    }
+    return jdbcTemplate.update(INCREMENT_REFERENCE_COUNTS, ids, refs);
+  }
+
+  @Override
+  public int reviveChunks(long[] ids) {
+    if (ids.length == 0) {
+      return 0;
+    }
+    Integer count = jdbcTemplate.queryForObject(REVIVE_CHUNKS, Integer.class, ids, ids);
+    return count != null ? count : 0;
+  }
+
+  @Override
+  public int leaseChunks(long[] ids, LocalDateTime until) {
+    if (ids.length == 0) {
+      return 0;
+    }
+    Integer count = jdbcTemplate.queryForObject(LEASE_CHUNKS, Integer.class, Timestamp.valueOf(until), ids, ids);
+    return count != null ? count : 0;
+  }
+
+  @Override
+  public int touchChunks(long[] ids) {
+    return ids.length == 0 ? 0 : jdbcTemplate.update(TOUCH_CHUNKS, ids);
+  }
+
+  @Override
+  public List<Long> findInTier(long[] ids, StorageTier tier) {
+    if (ids.length == 0) {
+      return List.of();
+    }
+    return jdbcTemplate.queryForList(FIND_IN_TIER, Long.class, ids, tier.name());
+  }
+
+  @Override
+  public List<Long> findIdleInTier(StorageTier tier, LocalDateTime cutoff, int limit) {
+    return jdbcTemplate.queryForList(FIND_IDLE_IN_TIER, Long.class, tier.name(), Timestamp.valueOf(cutoff), limit);
+  }
+
+  @Override
+  public int relocateChunks(List<ChunkRelocation> relocations) {
+    if (relocations.isEmpty()) {
+      return 0;
+    }
+    int size = relocations.size();
+    long[] ids = new long[size];
+    long[] fromPackIds = new long[size];
+    long[] packIds = new long[size];
+    long[] packOffsets = new long[size];
+    int[] storedSizes = new int[size];
+    String[] compressionTypes = new String[size];
+    int[] originalSizes = new int[size];
+    for (int i = 0; i < size; i++) {
+      ChunkRelocation relocation = relocations.get(i);
+      ids[i] = relocation.chunkId();
+      fromPackIds[i] = relocation.fromPackId();
+      packIds[i] = relocation.packId();
+      packOffsets[i] = relocation.packOffset();
+      storedSizes[i] = relocation.storedSize();
+      compressionTypes[i] = relocation.compressionType();
+      originalSizes[i] = relocation.originalSize();
+    }
+    return jdbcTemplate.update(RELOCATE_CHUNKS, ids, fromPackIds, packIds, packOffsets, storedSizes,
+        compressionTypes, originalSizes);
+  }
+}
@@ -8,6 +8,6 @@ import org.springframework.stereotype.Repository;
 import com.goofy.GoofyDocs.model.FileChunkEntity;
 
 @Repository
-public interface FileChunkRepository extends JpaRepository<FileChunkEntity, Long> {
+public interface FileChunkRepository extends JpaRepository<FileChunkEntity, Long>, FileChunkRepositoryCustom {
     List<FileChunkEntity> findByFileIdOrderByPosition(Long fileId);
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+
+public interface FileChunkRepositoryCustom {
+
+    void insertManifest(long fileId, ChunkManifest manifest);
+
+    void insertManifests(Map<Long, ChunkManifest> manifestsByFileId);
+
+    ChunkManifest findManifest(long fileId, long fileSize);
+
+    void insertReferences(long fileId, ChunkCounts referenceCounts);
+
+    void insertReferencesOfFiles(Map<Long, ChunkCounts> referenceCountsByFileId);
+
+    List<Long> findReferencedChunkIds(long fileId);
+
+    int deleteManifest(long fileId);
+}
@@ -0,0 +1,101 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+
+public class FileChunkRepositoryImpl implements FileChunkRepositoryCustom {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private static final String INSERT_MANIFEST = "INSERT INTO file_manifest (file_id, chunk_count, data) "
+            + "VALUES (?, ?, ?)";
+
+    private static final String FIND_MANIFEST = "SELECT data FROM file_manifest WHERE file_id = ?";
+
+    // Files stored before file_manifest existed keep one file_chunk row per chunk
+    private static final String FIND_LEGACY_ENTRIES = "SELECT chunk_id, position FROM file_chunk "
+            + "WHERE file_id = ? ORDER BY position";
+
+    private static final String INSERT_REFERENCE = "INSERT INTO chunk_ref (chunk_id, file_id, refs) VALUES (?, ?, ?)";
+
+    private static final String FIND_REFERENCED_CHUNK_IDS = "SELECT chunk_id FROM chunk_ref WHERE file_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FileChunkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertManifest(long fileId, ChunkManifest manifest) {
+        jdbcTemplate.update(INSERT_MANIFEST, fileId, manifest.size(), manifest.encode());
+    }
+
+    @Override
+    public void insertManifests(Map<Long, ChunkManifest> manifestsByFileId) {
+        List<Object[]> rows = new ArrayList<>(manifestsByFileId.size());
+        manifestsByFileId.forEach((fileId, manifest) -> rows.add(new Object[] { fileId, manifest.size(),
+                manifest.encode() }));
+        batchUpdate(INSERT_MANIFEST, rows);
+    }
+
+    @Override
+    public ChunkManifest findManifest(long fileId, long fileSize) {
+        List<byte[]> data = jdbcTemplate.query(FIND_MANIFEST, (rs, rowNum) -> rs.getBytes("data"), fileId);
+        if (!data.isEmpty()) {
+            return ChunkManifest.decode(data.get(0));
+        }
+        return findLegacyManifest(fileId, fileSize);
+    }
+
+    // Sizes follow from consecutive byte positions, so the chunk table is not touched
+    private ChunkManifest findLegacyManifest(long fileId, long fileSize) {
+        List<long[]> entries = jdbcTemplate.query(FIND_LEGACY_ENTRIES,
+                (rs, rowNum) -> new long[] { rs.getLong("chunk_id"), rs.getLong("position") }, fileId);
+
+        ChunkManifest.Builder builder = ChunkManifest.builder(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            long end = i + 1 < entries.size() ? entries.get(i + 1)[1] : fileSize;
+            builder.add(entries.get(i)[0], (int) (end - entries.get(i)[1]));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void insertReferences(long fileId, ChunkCounts referenceCounts) {
+        insertReferencesOfFiles(Map.of(fileId, referenceCounts));
+    }
+
+    @Override
+    public void insertReferencesOfFiles(Map<Long, ChunkCounts> referenceCountsByFileId) {
+        List<Object[]> rows = new ArrayList<>();
+        referenceCountsByFileId.forEach((fileId, referenceCounts) -> referenceCounts
+                .forEach((chunkId, refs) -> rows.add(new Object[] { chunkId, fileId, refs })));
+        batchUpdate(INSERT_REFERENCE, rows);
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += INSERT_BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + INSERT_BATCH_SIZE, rows.size())));
+        }
+    }
+
+    @Override
+    public List<Long> findReferencedChunkIds(long fileId) {
+        return jdbcTemplate.queryForList(FIND_REFERENCED_CHUNK_IDS, Long.class, fileId);
+    }
+
+    @Override
+    public int deleteManifest(long fileId) {
+        int references = jdbcTemplate.update("DELETE FROM chunk_ref WHERE file_id = ?", fileId);
+        jdbcTemplate.update("DELETE FROM file_manifest WHERE file_id = ?", fileId);
+        jdbcTemplate.update("DELETE FROM file_chunk WHERE file_id = ?", fileId);
+        return references;
+    }
+}
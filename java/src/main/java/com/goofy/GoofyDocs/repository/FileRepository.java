@@ -1,11 +1,24 @@
 package com.goofy.GoofyDocs.repository;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.goofy.GoofyDocs.model.FileEntity;
 
-public interface FileRepository extends JpaRepository<FileEntity, Long> {
+public interface FileRepository extends JpaRepository<FileEntity, Long>, FileRepositoryCustom {
   Optional<FileEntity> findById(Long id);
-}
\ No newline at end of file
+
+  @Modifying
+  @Query("delete from FileEntity f where f.id = :id")
+  int deleteFileById(@Param("id") Long id);
+
+  @Query("select f from FileEntity f where (:extension is null or f.extension = :extension) "
+      + "and (:namePrefix is null or f.name like concat(:namePrefix, '%')) order by f.id")
+  List<FileEntity> search(@Param("extension") String extension, @Param("namePrefix") String namePrefix, Limit limit);
+}
@@ -0,0 +1,14 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.util.List;
+
+import com.goofy.GoofyDocs.model.FileEntity;
+
+public interface FileRepositoryCustom {
+
+  /**
+   * Inserts new files in batches and assigns their ids; an identity column keeps {@code saveAll} to one
+   * round trip per file.
+   */
+  void insertAll(List<FileEntity> files);
+}
@@ -0,0 +1,45 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.goofy.GoofyDocs.model.FileEntity;
+
+public class FileRepositoryImpl implements FileRepositoryCustom {
+
+  private static final int INSERT_BATCH_SIZE = 1000;
+
+  private static final String ALLOCATE_IDS = "SELECT nextval(pg_get_serial_sequence('files', 'id')) "
+      + "FROM generate_series(1, ?)";
+
+  private static final String INSERT_FILE = "INSERT INTO files (id, name, extension, size, chunking_profile, "
+      + "parent_id, version, delta_depth, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public FileRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void insertAll(List<FileEntity> files) {
+    if (files.isEmpty()) {
+      return;
+    }
+    List<Long> ids = jdbcTemplate.queryForList(ALLOCATE_IDS, Long.class, files.size());
+    List<Object[]> rows = new ArrayList<>(files.size());
+    for (int i = 0; i < files.size(); i++) {
+      FileEntity file = files.get(i);
+      file.setId(ids.get(i));
+      rows.add(new Object[] { file.getId(), file.getName(), file.getExtension(), file.getSize(),
+          file.getChunkingProfile(), file.getParentId(), file.getVersion(), file.getDeltaDepth(),
+          Timestamp.valueOf(file.getCreatedAt()) });
+    }
+    for (int from = 0; from < rows.size(); from += INSERT_BATCH_SIZE) {
+      jdbcTemplate.batchUpdate(INSERT_FILE, rows.subList(from, Math.min(from + INSERT_BATCH_SIZE, rows.size())));
+    }
+  }
+}
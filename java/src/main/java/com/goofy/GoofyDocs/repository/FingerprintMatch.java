@@ -0,0 +1,5 @@
+package com.goofy.GoofyDocs.repository;
+
+public record FingerprintMatch(byte[] digest, long chunkId, boolean orphaned, long refCount, int originalSize,
+    int storedSize) {
+}
@@ -0,0 +1,40 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.goofy.GoofyDocs.model.IngestJobEntity;
+
+import jakarta.persistence.LockModeType;
+
+public interface IngestJobRepository extends JpaRepository<IngestJobEntity, String>, IngestJobRepositoryCustom {
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select j from IngestJobEntity j where j.id = :id")
+  Optional<IngestJobEntity> findByIdForUpdate(@Param("id") String id);
+
+  /**
+   * Takes over a queued job, or a running one whose worker stopped reporting progress.
+   */
+  @Modifying
+  @Query(value = "UPDATE ingest_job SET status = 'RUNNING', updated_at = :now "
+      + "WHERE id = :id AND expires_at > :now "
+      + "AND (status = 'QUEUED' OR (status = 'RUNNING' AND updated_at < :staleBefore))", nativeQuery = true)
+  int claim(@Param("id") String id, @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+  @Query(value = "SELECT id FROM ingest_job WHERE status IN ('QUEUED', 'RUNNING') AND updated_at < :staleBefore "
+      + "AND expires_at > :now ORDER BY created_at LIMIT :limit", nativeQuery = true)
+  List<String> findStale(@Param("staleBefore") LocalDateTime staleBefore, @Param("now") LocalDateTime now,
+      @Param("limit") int limit);
+
+  @Query("select j from IngestJobEntity j where j.expiresAt < :now")
+  List<IngestJobEntity> findExpired(@Param("now") LocalDateTime now, Limit limit);
+}
@@ -0,0 +1,12 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.util.List;
+
+public interface IngestJobRepositoryCustom {
+
+  void insertBatch(String jobId, int batchIndex, byte[] manifest);
+
+  List<byte[]> findBatches(String jobId);
+
+  int deleteBatches(String jobId);
+}
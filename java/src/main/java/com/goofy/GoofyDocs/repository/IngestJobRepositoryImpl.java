@@ -0,0 +1,37 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class IngestJobRepositoryImpl implements IngestJobRepositoryCustom {
+
+  private static final String INSERT_BATCH = "INSERT INTO ingest_job_batch (job_id, batch_index, manifest) "
+      + "VALUES (?, ?, ?)";
+
+  private static final String FIND_BATCHES = "SELECT manifest FROM ingest_job_batch WHERE job_id = ? "
+      + "ORDER BY batch_index";
+
+  private static final String DELETE_BATCHES = "DELETE FROM ingest_job_batch WHERE job_id = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public IngestJobRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void insertBatch(String jobId, int batchIndex, byte[] manifest) {
+    jdbcTemplate.update(INSERT_BATCH, jobId, batchIndex, manifest);
+  }
+
+  @Override
+  public List<byte[]> findBatches(String jobId) {
+    return jdbcTemplate.query(FIND_BATCHES, (rs, rowNum) -> rs.getBytes("manifest"), jobId);
+  }
+
+  @Override
+  public int deleteBatches(String jobId) {
+    return jdbcTemplate.update(DELETE_BATCHES, jobId);
+  }
+}
@@ -0,0 +1,4 @@
+package com.goofy.GoofyDocs.repository;
+
+public record NewChunk(byte[] digest, byte[] data, String compressionType, int originalSize) {
+}
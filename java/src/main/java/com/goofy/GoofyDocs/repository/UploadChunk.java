@@ -0,0 +1,4 @@
+package com.goofy.GoofyDocs.repository;
+
+public record UploadChunk(int index, byte[] digest, int size) {
+}
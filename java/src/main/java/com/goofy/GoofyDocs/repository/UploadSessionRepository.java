@@ -0,0 +1,30 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.goofy.GoofyDocs.model.UploadSessionEntity;
+
+import jakarta.persistence.LockModeType;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSessionEntity, String>,
+    UploadSessionRepositoryCustom {
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select s from UploadSessionEntity s where s.id = :id")
+  Optional<UploadSessionEntity> findByIdForUpdate(@Param("id") String id);
+
+  @Modifying
+  @Query(value = "DELETE FROM upload_session WHERE id = :id", nativeQuery = true)
+  int deleteSession(@Param("id") String id);
+
+  @Modifying
+  @Query(value = "DELETE FROM upload_session WHERE expires_at < :now", nativeQuery = true)
+  int deleteExpired(@Param("now") LocalDateTime now);
+}
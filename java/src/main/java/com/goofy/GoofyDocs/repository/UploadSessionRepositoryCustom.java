@@ -0,0 +1,13 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepositoryCustom {
+
+  void insertChunks(String sessionId, List<UploadChunk> chunks);
+
+  Optional<UploadChunk> findChunk(String sessionId, int index);
+
+  List<UploadChunk> findChunks(String sessionId);
+}
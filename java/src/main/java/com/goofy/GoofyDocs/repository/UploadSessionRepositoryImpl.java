@@ -0,0 +1,50 @@
+package com.goofy.GoofyDocs.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class UploadSessionRepositoryImpl implements UploadSessionRepositoryCustom {
+
+  private static final int INSERT_BATCH_SIZE = 1000;
+
+  private static final String INSERT_CHUNK = "INSERT INTO upload_session_chunk (session_id, chunk_index, digest, size) "
+      + "VALUES (?, ?, ?, ?)";
+
+  private static final String FIND_CHUNK = "SELECT chunk_index, digest, size FROM upload_session_chunk "
+      + "WHERE session_id = ? AND chunk_index = ?";
+
+  private static final String FIND_CHUNKS = "SELECT chunk_index, digest, size FROM upload_session_chunk "
+      + "WHERE session_id = ? ORDER BY chunk_index";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public UploadSessionRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void insertChunks(String sessionId, List<UploadChunk> chunks) {
+    jdbcTemplate.batchUpdate(INSERT_CHUNK, chunks, INSERT_BATCH_SIZE, (ps, chunk) -> {
+      ps.setString(1, sessionId);
+      ps.setInt(2, chunk.index());
+      ps.setBytes(3, chunk.digest());
+      ps.setInt(4, chunk.size());
+    });
+  }
+
+  @Override
+  public Optional<UploadChunk> findChunk(String sessionId, int index) {
+    return jdbcTemplate.query(FIND_CHUNK,
+        (rs, rowNum) -> new UploadChunk(rs.getInt("chunk_index"), rs.getBytes("digest"), rs.getInt("size")),
+        sessionId, index).stream().findFirst();
+  }
+
+  @Override
+  public List<UploadChunk> findChunks(String sessionId) {
+    return jdbcTemplate.query(FIND_CHUNKS,
+        (rs, rowNum) -> new UploadChunk(rs.getInt("chunk_index"), rs.getBytes("digest"), rs.getInt("size")),
+        sessionId);
+  }
+}
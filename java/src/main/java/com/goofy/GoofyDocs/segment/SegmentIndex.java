@@ -0,0 +1,219 @@
+package com.goofy.GoofyDocs.segment;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FingerprintMatch;
+
+/**
+ * Segment-level dedup. Consecutive chunks are grouped into content-defined segments (a segment ends after a
+ * chunk whose digest hits the boundary condition), so a run of duplicated chunks produces the same segments
+ * wherever it appears.
+ *
+ * A segment whose fingerprint is already indexed resolves all its chunks with one lookup. Otherwise the
+ * sparse index is consulted: only sampled chunk digests (hooks, one in {@code 2^hook-sample-bits}) point at
+ * the segments containing them, and the few segments sharing most hooks (champions) resolve the chunks they
+ * have in common with the incoming one. Segments store chunk ids only; the digests of the champions' chunks
+ * are read back from their fingerprints.
+ *
+ * Resolved chunks may be marked for collection. Their mark is deferred to the ingest lease rather than cleared,
+ * so they are still collected if the ingest dies; saving the file clears it.
+ */
+@Component
+public class SegmentIndex {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentIndex.class);
+
+    private final SegmentRepository segmentRepository;
+    private final ChunkRepository chunkRepository;
+    private final boolean enabled;
+    private final int averageChunks;
+    private final int minChunks;
+    private final int maxChunks;
+    private final int hookMask;
+    private final int maxChampions;
+
+    @Autowired
+    public SegmentIndex(
+            SegmentRepository segmentRepository,
+            ChunkRepository chunkRepository,
+            @Value("${goofydocs.segments.enabled:true}") boolean enabled,
+            @Value("${goofydocs.segments.average-chunks:64}") int averageChunks,
+            @Value("${goofydocs.segments.hook-sample-bits:5}") int hookSampleBits,
+            @Value("${goofydocs.segments.max-champions:2}") int maxChampions) {
+        if (averageChunks < 4 || hookSampleBits < 0 || hookSampleBits > 8) {
+            throw new IllegalArgumentException("Invalid segment index settings: average-chunks=" + averageChunks
+                    + ", hook-sample-bits=" + hookSampleBits);
+        }
+        this.segmentRepository = segmentRepository;
+        this.chunkRepository = chunkRepository;
+        this.enabled = enabled;
+        this.averageChunks = averageChunks;
+        this.minChunks = averageChunks / 4;
+        this.maxChunks = averageChunks * 4;
+        this.hookMask = (1 << hookSampleBits) - 1;
+        this.maxChampions = maxChampions;
+    }
+
+    public record Span(int from, int to) {
+
+        public int length() {
+            return to - from;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<Span> split(List<byte[]> digests) {
+        List<Span> spans = new ArrayList<>();
+        int from = 0;
+        for (int i = 0; i < digests.size(); i++) {
+            int length = i + 1 - from;
+            if (length >= maxChunks || (length >= minChunks && isBoundary(digests.get(i)))) {
+                spans.add(new Span(from, i + 1));
+                from = i + 1;
+            }
+        }
+        if (from < digests.size()) {
+            spans.add(new Span(from, digests.size()));
+        }
+        return spans;
+    }
+
+    private boolean isBoundary(byte[] digest) {
+        int n = digest.length;
+        int tail = (digest[n - 4] & 0xFF) << 24 | (digest[n - 3] & 0xFF) << 16 | (digest[n - 2] & 0xFF) << 8
+                | (digest[n - 1] & 0xFF);
+        return Integer.remainderUnsigned(tail, averageChunks) == 0;
+    }
+
+    /**
+     * Resolves what it can of a segment; {@code lease} is the ingest lease, or {@code null} for an unleased
+     * ingest, whose resolved chunks get their mark cleared.
+     */
+    public SegmentMatch lookup(HashingAlgorithm algorithm, List<byte[]> digests, LocalDateTime lease) {
+        byte[] fingerprint = fingerprint(digests);
+        long[] chunkIds = new long[digests.size()];
+
+        Optional<SegmentRepository.StoredSegment> exact = segmentRepository.findByFingerprint(algorithm, fingerprint);
+        if (exact.isPresent()) {
+            ChunkManifest manifest = exact.get().manifest();
+            if (manifest.size() == chunkIds.length) {
+                for (int i = 0; i < chunkIds.length; i++) {
+                    chunkIds[i] = manifest.chunkId(i);
+                }
+                if (retain(chunkIds, lease)) {
+                    return new SegmentMatch(SegmentMatch.Kind.EXACT, fingerprint, chunkIds);
+                }
+                Arrays.fill(chunkIds, 0);
+            }
+            logger.debug("Dropping stale segment {}", exact.get().id());
+            segmentRepository.delete(exact.get().id());
+        }
+
+        List<byte[]> hooks = hooks(digests);
+        if (hooks.isEmpty()) {
+            return new SegmentMatch(SegmentMatch.Kind.MISS, fingerprint, chunkIds);
+        }
+
+        // Segments keep only chunk ids; the digests of the champions' chunks come from their fingerprints
+        ChunkCounts championChunks = new ChunkCounts(maxChampions * maxChunks);
+        for (SegmentRepository.StoredSegment champion : segmentRepository.findChampions(algorithm, hooks,
+                maxChampions)) {
+            ChunkManifest manifest = champion.manifest();
+            for (int i = 0; i < manifest.size(); i++) {
+                championChunks.add(manifest.chunkId(i), 1);
+            }
+        }
+        Map<ByteBuffer, Long> known = new HashMap<>();
+        if (championChunks.size() > 0) {
+            for (FingerprintMatch match : chunkRepository.findFingerprintsOfChunks(algorithm,
+                    championChunks.sortedIds())) {
+                known.putIfAbsent(ByteBuffer.wrap(match.digest()), match.chunkId());
+            }
+        }
+
+        boolean resolved = false;
+        for (int i = 0; i < chunkIds.length; i++) {
+            Long chunkId = known.get(ByteBuffer.wrap(digests.get(i)));
+            if (chunkId != null) {
+                chunkIds[i] = chunkId;
+                resolved = true;
+            }
+        }
+        // Chunks collected since their fingerprints were read make the whole match unusable
+        if (resolved && !retain(chunkIds, lease)) {
+            Arrays.fill(chunkIds, 0);
+            resolved = false;
+        }
+        return new SegmentMatch(resolved ? SegmentMatch.Kind.CHAMPION : SegmentMatch.Kind.MISS, fingerprint,
+                chunkIds);
+    }
+
+    /**
+     * Indexes a segment that was not an exact hit, with the chunk ids the ingest ended up using.
+     */
+    public void record(HashingAlgorithm algorithm, SegmentMatch match, List<byte[]> digests, ChunkManifest manifest) {
+        if (match.kind() == SegmentMatch.Kind.EXACT) {
+            return;
+        }
+        segmentRepository.insert(algorithm, match.fingerprint(), manifest, hooks(digests));
+    }
+
+    private List<byte[]> hooks(List<byte[]> digests) {
+        List<byte[]> hooks = new ArrayList<>();
+        Set<ByteBuffer> seen = new HashSet<>();
+        for (byte[] digest : digests) {
+            if ((digest[0] & hookMask) == 0 && seen.add(ByteBuffer.wrap(digest))) {
+                hooks.add(digest);
+            }
+        }
+        return hooks;
+    }
+
+    // Whether every resolved chunk is still stored
+    private boolean retain(long[] chunkIds, LocalDateTime lease) {
+        ChunkCounts distinct = new ChunkCounts(chunkIds.length);
+        for (long chunkId : chunkIds) {
+            if (chunkId != 0) {
+                distinct.add(chunkId, 1);
+            }
+        }
+        long[] ids = distinct.sortedIds();
+        int live = lease != null ? chunkRepository.leaseChunks(ids, lease) : chunkRepository.reviveChunks(ids);
+        return live == distinct.size();
+    }
+
+    static byte[] fingerprint(List<byte[]> digests) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (byte[] digest : digests) {
+                sha256.update(digest);
+            }
+            return sha256.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
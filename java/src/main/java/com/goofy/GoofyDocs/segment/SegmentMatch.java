@@ -0,0 +1,26 @@
+package com.goofy.GoofyDocs.segment;
+
+/**
+ * Chunk ids an ingest can reuse for one segment without looking them up; {@code 0} marks a chunk the segment
+ * index could not resolve.
+ */
+public record SegmentMatch(Kind kind, byte[] fingerprint, long[] chunkIds) {
+
+    public enum Kind {
+        EXACT, CHAMPION, MISS
+    }
+
+    public long chunkId(int index) {
+        return chunkIds[index];
+    }
+
+    public int resolvedChunks() {
+        int resolved = 0;
+        for (long chunkId : chunkIds) {
+            if (chunkId != 0) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,69 @@
+package com.goofy.GoofyDocs.segment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+
+@Repository
+public class SegmentRepository {
+
+    private static final String FIND_BY_FINGERPRINT = "SELECT id, manifest FROM segment "
+            + "WHERE algorithm = ? AND fingerprint = ?";
+
+    // Segments sharing the most hooks with the incoming one, most recent first on ties
+    private static final String FIND_CHAMPIONS = "SELECT s.id, s.manifest FROM segment s "
+            + "JOIN (SELECT segment_id, COUNT(*) AS hits FROM segment_hook "
+            + "WHERE algorithm = ? AND hook = ANY(?) GROUP BY segment_id "
+            + "ORDER BY hits DESC, segment_id DESC LIMIT ?) h ON h.segment_id = s.id "
+            + "ORDER BY h.hits DESC, s.id DESC";
+
+    private static final String INSERT_SEGMENT = "INSERT INTO segment (algorithm, fingerprint, manifest) "
+            + "VALUES (?, ?, ?) ON CONFLICT (algorithm, fingerprint) DO NOTHING RETURNING id";
+
+    private static final String INSERT_HOOK = "INSERT INTO segment_hook (algorithm, hook, segment_id) VALUES (?, ?, ?) "
+            + "ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SegmentRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public record StoredSegment(long id, ChunkManifest manifest) {
+    }
+
+    public Optional<StoredSegment> findByFingerprint(HashingAlgorithm algorithm, byte[] fingerprint) {
+        return jdbcTemplate.query(FIND_BY_FINGERPRINT, (rs, rowNum) -> new StoredSegment(rs.getLong("id"),
+                ChunkManifest.decode(rs.getBytes("manifest"))),
+                algorithm.getId(), fingerprint).stream().findFirst();
+    }
+
+    public List<StoredSegment> findChampions(HashingAlgorithm algorithm, List<byte[]> hooks, int limit) {
+        return jdbcTemplate.query(FIND_CHAMPIONS, (rs, rowNum) -> new StoredSegment(rs.getLong("id"),
+                ChunkManifest.decode(rs.getBytes("manifest"))),
+                algorithm.getId(), hooks.toArray(new byte[0][]), limit);
+    }
+
+    public void insert(HashingAlgorithm algorithm, byte[] fingerprint, ChunkManifest manifest, List<byte[]> hooks) {
+        List<Long> ids = jdbcTemplate.queryForList(INSERT_SEGMENT, Long.class, algorithm.getId(), fingerprint,
+                manifest.encode());
+        if (ids.isEmpty() || hooks.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(hooks.size());
+        for (byte[] hook : hooks) {
+            rows.add(new Object[] { algorithm.getId(), hook, ids.get(0) });
+        }
+        jdbcTemplate.batchUpdate(INSERT_HOOK, rows);
+    }
+
+    public int delete(long id) {
+        return jdbcTemplate.update("DELETE FROM segment WHERE id = ?", id);
+    }
+}
@@ -0,0 +1,314 @@
+package com.goofy.GoofyDocs.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
+import com.goofy.GoofyDocs.model.ChunkEntity;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+
+/**
+ * Streams many stored files as one zip or tar archive. Each file is written window by window straight from
+ * its chunks, so memory is bounded by the load window and a chunk cache rather than by the files. The cache
+ * keeps the decoded chunks that a later file of the same archive references again (counted from the
+ * manifests up front) and the bases of delta chunks, within {@code cache-size} bytes.
+ */
+@Service
+public class ArchiveExportService {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveExportService.class);
+    private static final int LOAD_BATCH_SIZE = 256;
+    private static final long LOAD_WINDOW_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * The files of one archive with their resolved manifests.
+     */
+    public record ArchiveExport(List<FileEntity> files, List<ChunkManifest> manifests) {
+        public long totalSize() {
+            return manifests.stream().mapToLong(ChunkManifest::totalSize).sum();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter {
+        void write(byte[] data) throws IOException;
+    }
+
+    private final FileRepository fileRepository;
+    private final ChunkRepository chunkRepository;
+    private final FileManifestService manifestService;
+    private final ChunkContentLoader contentLoader;
+    private final IngestMetrics metrics;
+    private final int maxFiles;
+    private final long cacheBytes;
+
+    @Autowired
+    public ArchiveExportService(
+            FileRepository fileRepository,
+            ChunkRepository chunkRepository,
+            FileManifestService manifestService,
+            ChunkContentLoader contentLoader,
+            IngestMetrics metrics,
+            @Value("${goofydocs.export.max-files:10000}") int maxFiles,
+            @Value("${goofydocs.export.cache-size:64MB}") DataSize cacheSize) {
+        this.fileRepository = fileRepository;
+        this.chunkRepository = chunkRepository;
+        this.manifestService = manifestService;
+        this.contentLoader = contentLoader;
+        this.metrics = metrics;
+        this.maxFiles = maxFiles;
+        this.cacheBytes = cacheSize.toBytes();
+    }
+
+    /**
+     * Selects the files by id (in the given order) or, without ids, by extension and name prefix, and resolves
+     * their manifests, so that a missing file is reported before anything is streamed.
+     */
+    @Transactional(readOnly = true)
+    public ArchiveExport prepare(List<Long> fileIds, String extension, String namePrefix) {
+        List<FileEntity> files;
+        if (fileIds != null && !fileIds.isEmpty()) {
+            List<Long> distinctIds = List.copyOf(new LinkedHashSet<>(fileIds));
+            if (distinctIds.size() > maxFiles) {
+                throw new IllegalArgumentException("At most " + maxFiles + " files can be archived at once");
+            }
+            Map<Long, FileEntity> byId = fileRepository.findAllById(distinctIds).stream()
+                    .collect(Collectors.toMap(FileEntity::getId, Function.identity()));
+            files = new ArrayList<>(distinctIds.size());
+            for (Long id : distinctIds) {
+                FileEntity file = byId.get(id);
+                if (file == null) {
+                    throw new NoSuchElementException("File not found: " + id);
+                }
+                files.add(file);
+            }
+        } else {
+            files = fileRepository.search(blankToNull(extension), blankToNull(namePrefix), Limit.of(maxFiles + 1));
+            if (files.size() > maxFiles) {
+                throw new IllegalArgumentException("More than " + maxFiles + " files match, narrow the query");
+            }
+        }
+
+        List<ChunkManifest> manifests = files.stream().map(manifestService::resolve).toList();
+        return new ArchiveExport(files, manifests);
+    }
+
+    public void write(ArchiveExport export, ArchiveFormat format, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        ChunkCounts remainingUses = new ChunkCounts();
+        for (ChunkManifest manifest : export.manifests()) {
+            remainingUses.addAll(manifest.referenceCounts());
+        }
+        ChunkCache cache = new ChunkCache(cacheBytes);
+        Set<String> names = new HashSet<>();
+
+        if (format == ArchiveFormat.ZIP) {
+            // Stored chunks are mostly compressed already, deflating them again gains little
+            ZipOutputStream zip = new ZipOutputStream(out);
+            zip.setLevel(Deflater.BEST_SPEED);
+            for (int f = 0; f < export.files().size(); f++) {
+                FileEntity file = export.files().get(f);
+                ZipEntry entry = new ZipEntry(entryName(file, names));
+                entry.setTime(modifiedAt(file).toEpochMilli());
+                zip.putNextEntry(entry);
+                writeContent(file, export.manifests().get(f), remainingUses, cache, zip::write);
+                zip.closeEntry();
+            }
+            zip.finish();
+        } else {
+            TarWriter tar = new TarWriter(out);
+            for (int f = 0; f < export.files().size(); f++) {
+                FileEntity file = export.files().get(f);
+                ChunkManifest manifest = export.manifests().get(f);
+                tar.putEntry(entryName(file, names), manifest.totalSize(), modifiedAt(file));
+                writeContent(file, manifest, remainingUses, cache, data -> tar.write(data, 0, data.length));
+            }
+            tar.finish();
+        }
+        out.flush();
+
+        logger.info("Archive streamed: format={}, files={}, size={} bytes, chunksLoaded={}, cacheHits={}, took={} ms",
+                format, export.files().size(), export.totalSize(), cache.loaded, cache.hits,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void writeContent(
+            FileEntity file,
+            ChunkManifest manifest,
+            ChunkCounts remainingUses,
+            ChunkCache cache,
+            ChunkWriter writer) throws IOException {
+        int from = 0;
+        while (from < manifest.size()) {
+            int to = from;
+            long windowBytes = 0;
+            while (to < manifest.size() && to - from < LOAD_BATCH_SIZE && windowBytes < LOAD_WINDOW_BYTES) {
+                windowBytes += manifest.chunkSize(to);
+                to++;
+            }
+
+            // Cached chunks are pinned in the window first, so loading the others cannot evict them
+            Map<Long, byte[]> window = new HashMap<>();
+            Set<Long> toLoad = new LinkedHashSet<>();
+            for (int i = from; i < to; i++) {
+                long chunkId = manifest.chunkId(i);
+                if (!window.containsKey(chunkId) && !toLoad.contains(chunkId)) {
+                    byte[] cached = cache.get(chunkId);
+                    if (cached != null) {
+                        window.put(chunkId, cached);
+                    } else {
+                        toLoad.add(chunkId);
+                    }
+                }
+            }
+            try {
+                List<ChunkEntity> loaded = chunkRepository.findAllById(toLoad);
+                contentLoader.fetch(loaded);
+                for (ChunkEntity chunk : loaded) {
+                    window.put(chunk.getId(), decode(chunk, cache));
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Unable to decode the chunks of file " + file.getId(), e);
+            }
+            cache.loaded += toLoad.size();
+
+            for (int i = from; i < to; i++) {
+                long chunkId = manifest.chunkId(i);
+                byte[] data = window.get(chunkId);
+                if (data == null) {
+                    throw new IOException("Chunk " + chunkId + " of file " + file.getId() + " is missing");
+                }
+                if (data.length != manifest.chunkSize(i)) {
+                    throw new IOException("Chunk " + chunkId + " of file " + file.getId() + " has " + data.length
+                            + " bytes, expected " + manifest.chunkSize(i));
+                }
+                writer.write(data);
+
+                if (remainingUses.add(chunkId, -1) > 0) {
+                    cache.put(chunkId, data);
+                } else {
+                    cache.remove(chunkId);
+                }
+            }
+            from = to;
+        }
+    }
+
+    private byte[] decode(ChunkEntity chunk, ChunkCache cache) {
+        long start = System.nanoTime();
+        byte[] data = contentLoader.decode(chunk, baseChunkId -> {
+            byte[] base = cache.get(baseChunkId);
+            if (base == null) {
+                base = contentLoader.loadRaw(baseChunkId);
+                cache.put(baseChunkId, base);
+            }
+            return base;
+        });
+        if (chunk.getCompressionType() != null) {
+            metrics.recordDecompression(CompressionService.CompressionType.valueOf(chunk.getCompressionType()),
+                    System.nanoTime() - start);
+        }
+        return data;
+    }
+
+    /**
+     * Archive path of a file: its (relative) name and extension, made unique within the archive.
+     */
+    static String entryName(FileEntity file, Set<String> taken) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : file.getName().replace('\\', '/').split("/")) {
+            if (!segment.isEmpty() && !segment.equals(".") && !segment.equals("..")) {
+                segments.add(segment);
+            }
+        }
+        String base = segments.isEmpty() ? "file-" + file.getId() : String.join("/", segments);
+        String suffix = file.getExtension() != null && !file.getExtension().isEmpty() ? "." + file.getExtension() : "";
+        String name = base + suffix;
+        if (!taken.add(name)) {
+            name = base + " (" + file.getId() + ")" + suffix;
+            taken.add(name);
+        }
+        return name;
+    }
+
+    private static Instant modifiedAt(FileEntity file) {
+        return file.getCreatedAt() != null ? file.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant() : Instant.now();
+    }
+
+    private static String blankToNull(String value) {
+        return value != null && !value.isBlank() ? value : null;
+    }
+
+    /**
+     * Decoded chunks by id, least recently used first out once the byte budget is exceeded.
+     */
+    private static final class ChunkCache {
+        private final long capacity;
+        private final LinkedHashMap<Long, byte[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+        private long size;
+        private long hits;
+        private long loaded;
+
+        ChunkCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        byte[] get(long chunkId) {
+            byte[] data = entries.get(chunkId);
+            if (data != null) {
+                hits++;
+            }
+            return data;
+        }
+
+        void put(long chunkId, byte[] data) {
+            if (data.length > capacity || entries.containsKey(chunkId)) {
+                return;
+            }
+            entries.put(chunkId, data);
+            size += data.length;
+            var eldest = entries.entrySet().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                size -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+
+        void remove(long chunkId) {
+            byte[] data = entries.remove(chunkId);
+            if (data != null) {
+                size -= data.length;
+            }
+        }
+    }
+}
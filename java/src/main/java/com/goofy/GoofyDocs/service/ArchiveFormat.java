@@ -0,0 +1,22 @@
+package com.goofy.GoofyDocs.service;
+
+public enum ArchiveFormat {
+    ZIP("application/zip", "zip"),
+    TAR("application/x-tar", "tar");
+
+    private final String contentType;
+    private final String extension;
+
+    ArchiveFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,74 @@
+package com.goofy.GoofyDocs.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.goofy.GoofyDocs.compression.ChunkEnvelope;
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.compression.CorruptChunkException;
+import com.goofy.GoofyDocs.model.ChunkEntity;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.store.ChunkStore;
+
+/**
+ * Loads the raw bytes of a stored chunk, decoding the base chunks of a delta first.
+ */
+@Service
+public class ChunkContentLoader {
+    // Ingest bounds delta chains far below this; a longer chain means corrupted base references
+    private static final int MAX_CHAIN_LENGTH = 16;
+
+    private final ChunkRepository chunkRepository;
+    private final CompressionService compressionService;
+    private final ChunkStore chunkStore;
+
+    @Autowired
+    public ChunkContentLoader(ChunkRepository chunkRepository, CompressionService compressionService,
+            ChunkStore chunkStore) {
+        this.chunkRepository = chunkRepository;
+        this.compressionService = compressionService;
+        this.chunkStore = chunkStore;
+    }
+
+    public byte[] loadRaw(long chunkId) {
+        return loadRaw(chunkId, 0);
+    }
+
+    private byte[] loadRaw(long chunkId, int chainLength) {
+        if (chainLength > MAX_CHAIN_LENGTH) {
+            throw new CorruptChunkException("Delta chain of chunk " + chunkId + " is too long");
+        }
+        ChunkEntity chunk = chunkRepository.findById(chunkId)
+                .orElseThrow(() -> new IllegalStateException("Chunk not found: " + chunkId));
+        fetch(List.of(chunk));
+        return decode(chunk, baseChunkId -> loadRaw(baseChunkId, chainLength + 1));
+    }
+
+    /**
+     * Fetches the payloads of loaded chunks that live in the object store, before they are decoded.
+     */
+    public void fetch(Collection<ChunkEntity> chunks) {
+        chunkStore.load(chunks);
+    }
+
+    /**
+     * Decodes an already loaded chunk; the raw bytes of its delta base, if any, come from {@code bases}.
+     */
+    public byte[] decode(ChunkEntity chunk, LongFunction<byte[]> bases) {
+        if (chunk.getCompressionType() == null) {
+            return chunk.getData();
+        }
+
+        CompressionService.CompressionType type = CompressionService.CompressionType.valueOf(chunk.getCompressionType());
+        long baseChunkId = ChunkEnvelope.peekDictionaryId(chunk.getData());
+        byte[] base = baseChunkId != ChunkEnvelope.NO_DICTIONARY ? bases.apply(baseChunkId) : null;
+        int originalSize = chunk.getOriginalSize() != null
+                ? chunk.getOriginalSize()
+                : compressionService.readOriginalLength(chunk.getData(), type);
+        return compressionService.decompress(chunk.getData(), type, originalSize, base);
+    }
+}
@@ -0,0 +1,62 @@
+package com.goofy.GoofyDocs.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+
+@Service
+public class FileDeletionService {
+    private static final Logger logger = LoggerFactory.getLogger(FileDeletionService.class);
+    private static final int MARK_BATCH_SIZE = 1000;
+
+    private final FileRepository fileRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final ChunkRepository chunkRepository;
+    private final FileManifestService manifestService;
+
+    @Autowired
+    public FileDeletionService(
+            FileRepository fileRepository,
+            FileChunkRepository fileChunkRepository,
+            ChunkRepository chunkRepository,
+            FileManifestService manifestService) {
+        this.fileRepository = fileRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.chunkRepository = chunkRepository;
+        this.manifestService = manifestService;
+    }
+
+    @Transactional
+    public int deleteFile(Long fileId) {
+        if (!fileRepository.existsById(fileId)) {
+            throw new IllegalArgumentException("File not found: " + fileId);
+        }
+
+        int materializedVersions = manifestService.materializeDeltaChildren(fileId);
+        List<Long> chunkIds = manifestService.findDistinctChunkIds(fileId);
+        chunkRepository.decrementReferenceCountsForFile(fileId);
+        int removedReferences = fileChunkRepository.deleteManifest(fileId);
+        fileRepository.deleteFileById(fileId);
+
+        LocalDateTime now = LocalDateTime.now();
+        int orphanedChunks = 0;
+        for (int from = 0; from < chunkIds.size(); from += MARK_BATCH_SIZE) {
+            List<Long> batch = chunkIds.subList(from, Math.min(from + MARK_BATCH_SIZE, chunkIds.size()));
+            orphanedChunks += chunkRepository.markOrphaned(batch, now);
+        }
+
+        logger.info("File deleted: id={}, references removed={}, chunks marked for collection={}, "
+                + "dependent versions materialized={}", fileId, removedReferences, orphanedChunks, materializedVersions);
+        return orphanedChunks;
+    }
+}
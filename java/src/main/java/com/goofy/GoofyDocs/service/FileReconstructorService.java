@@ -1,8 +1,10 @@
 package com.goofy.GoofyDocs.service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,28 +12,48 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.goofy.GoofyDocs.compression.ChunkEnvelope;
 import com.goofy.GoofyDocs.compression.CompressionService;
-import com.goofy.GoofyDocs.model.FileChunkEntity;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
+import com.goofy.GoofyDocs.model.ChunkEntity;
 import com.goofy.GoofyDocs.model.FileEntity;
-import com.goofy.GoofyDocs.repository.FileChunkRepository;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
 import com.goofy.GoofyDocs.repository.FileRepository;
+import com.goofy.GoofyDocs.store.ChunkAccessTracker;
 
 @Service
 public class FileReconstructorService {
     private static final Logger logger = LoggerFactory.getLogger(FileReconstructorService.class);
+    private static final long MAX_RECONSTRUCTED_SIZE = Integer.MAX_VALUE - 8;
+    private static final int PARALLEL_DECODE_THRESHOLD = 16;
+    private static final int LOAD_BATCH_SIZE = 1000;
 
     private final FileRepository fileRepository;
-    private final FileChunkRepository fileChunkRepository;
     private final CompressionService compressionService;
+    private final IngestMetrics metrics;
+    private final ChunkRepository chunkRepository;
+    private final FileManifestService manifestService;
+    private final ChunkContentLoader contentLoader;
+    private final ChunkAccessTracker accessTracker;
 
     @Autowired
     public FileReconstructorService(
             FileRepository fileRepository,
-            FileChunkRepository fileChunkRepository,
-            CompressionService compressionService) {
+            CompressionService compressionService,
+            IngestMetrics metrics,
+            ChunkRepository chunkRepository,
+            FileManifestService manifestService,
+            ChunkContentLoader contentLoader,
+            ChunkAccessTracker accessTracker) {
         this.fileRepository = fileRepository;
-        this.fileChunkRepository = fileChunkRepository;
         this.compressionService = compressionService;
+        this.metrics = metrics;
+        this.chunkRepository = chunkRepository;
+        this.manifestService = manifestService;
+        this.contentLoader = contentLoader;
+        this.accessTracker = accessTracker;
     }
 
     @Transactional(readOnly = true)
@@ -39,46 +61,106 @@ public class FileReconstructorService {
         FileEntity file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new IllegalArgumentException("File not found: " + fileId));
 
-        List<FileChunkEntity> chunks = fileChunkRepository.findByFileIdOrderByPosition(fileId);
+        List<ChunkEntity> chunks = loadChunks(file);
         if (chunks.isEmpty()) {
             throw new IllegalStateException("No chunks found for the file: " + fileId);
         }
+        accessTracker.record(chunks);
+
+        int chunkCount = chunks.size();
+        byte[][] payloads = new byte[chunkCount][];
+        CompressionService.CompressionType[] compressionTypes = new CompressionService.CompressionType[chunkCount];
+        byte[][] dictionaries = new byte[chunkCount][];
+        Map<Long, byte[]> bases = new HashMap<>();
+        int[] offsets = new int[chunkCount + 1];
+
+        long totalSize = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            ChunkEntity chunk = chunks.get(i);
+            payloads[i] = chunk.getData();
+
+            int originalSize = payloads[i].length;
+            if (chunk.getCompressionType() != null) {
+                try {
+                    compressionTypes[i] = CompressionService.CompressionType.valueOf(chunk.getCompressionType());
+                    originalSize = chunk.getOriginalSize() != null
+                            ? chunk.getOriginalSize()
+                            : compressionService.readOriginalLength(payloads[i], compressionTypes[i]);
+                    long baseChunkId = ChunkEnvelope.peekDictionaryId(payloads[i]);
+                    if (baseChunkId != ChunkEnvelope.NO_DICTIONARY) {
+                        dictionaries[i] = bases.computeIfAbsent(baseChunkId, contentLoader::loadRaw);
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("Unable to size chunk {} of file {}", i, fileId, e);
+                    throw new IOException("Decompression error", e);
+                }
+            }
+
+            totalSize += originalSize;
+            if (totalSize > MAX_RECONSTRUCTED_SIZE) {
+                throw new IOException("File too large to be reconstructed in memory: " + fileId);
+            }
+            offsets[i + 1] = (int) totalSize;
+        }
 
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] reconstructedFile = new byte[(int) totalSize];
+        long bytesInFlight = totalSize;
+        metrics.addBytesInFlight(bytesInFlight);
 
-        for (FileChunkEntity chunk : chunks) {
-            byte[] chunkData = chunk.getChunk().getData();
+        IntStream indexes = IntStream.range(0, chunkCount);
+        if (chunkCount >= PARALLEL_DECODE_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
 
-            String compressionType = chunk.getChunk().getCompressionType();
-            if (compressionType != null) {
+        try {
+            indexes.forEach(i -> {
+                int originalSize = offsets[i + 1] - offsets[i];
+                if (compressionTypes[i] == null) {
+                    System.arraycopy(payloads[i], 0, reconstructedFile, offsets[i], originalSize);
+                    return;
+                }
                 try {
-                    int originalSize = chunk.getChunk().getOriginalSize() != null
-                            ? chunk.getChunk().getOriginalSize()
-                            : chunkData.length * 2;
-
-                    chunkData = compressionService.decompress(
-                            chunkData,
-                            CompressionService.CompressionType.valueOf(compressionType),
-                            originalSize);
-
-                    logger.debug("Decompressed chunk at position {}: original size={}, decompressed size={}",
-                            chunk.getPosition(),
-                            originalSize,
-                            chunkData.length);
-
-                } catch (Exception e) {
-                    logger.error("Error while decompressing chunk at position {}", chunk.getPosition(), e);
-                    throw new IOException("Decompression error", e);
+                    long start = System.nanoTime();
+                    compressionService.decompress(payloads[i], compressionTypes[i], reconstructedFile, offsets[i],
+                            originalSize, dictionaries[i]);
+                    metrics.recordDecompression(compressionTypes[i], System.nanoTime() - start);
+                } catch (RuntimeException e) {
+                    logger.error("Error while decompressing chunk {} of file {}", i, fileId, e);
+                    throw e;
                 }
-            }
 
-            outputStream.write(chunkData);
+                logger.debug("Decompressed chunk {}: original size={}, offset={}", i, originalSize, offsets[i]);
+            });
+        } catch (RuntimeException e) {
+            throw new IOException("Decompression error", e);
+        } finally {
+            metrics.addBytesInFlight(-bytesInFlight);
         }
 
-        byte[] reconstructedFile = outputStream.toByteArray();
         logger.info("File reconstructed: id={}, name={}, size={} bytes",
                 fileId, file.getName(), reconstructedFile.length);
 
         return reconstructedFile;
     }
+
+    private List<ChunkEntity> loadChunks(FileEntity file) {
+        ChunkManifest manifest = manifestService.resolve(file);
+        List<Long> chunkIds = manifest.referenceCounts().idList();
+        Map<Long, ChunkEntity> byId = new HashMap<>();
+        for (int from = 0; from < chunkIds.size(); from += LOAD_BATCH_SIZE) {
+            chunkRepository.findAllById(chunkIds.subList(from, Math.min(from + LOAD_BATCH_SIZE, chunkIds.size())))
+                    .forEach(chunk -> byId.put(chunk.getId(), chunk));
+        }
+        contentLoader.fetch(byId.values());
+        return IntStream.range(0, manifest.size())
+                .mapToObj(i -> {
+                    ChunkEntity chunk = byId.get(manifest.chunkId(i));
+                    if (chunk == null) {
+                        throw new IllegalStateException("Chunk " + manifest.chunkId(i) + " of file " + file.getId()
+                                + " is missing");
+                    }
+                    return chunk;
+                })
+                .toList();
+    }
 }
@@ -0,0 +1,116 @@
+package com.goofy.GoofyDocs.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Minimal ustar writer for regular files. Names longer than the header field use a GNU long name entry and
+ * sizes of 8 GiB and more the GNU base-256 encoding, as read by GNU tar, bsdtar and {@code ArchiveReader}.
+ */
+class TarWriter {
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private final OutputStream out;
+    private long remaining;
+    private long entrySize;
+
+    TarWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Starts an entry of exactly {@code size} bytes, to be written with {@link #write} before the next one.
+     */
+    void putEntry(String name, long size, Instant modified) throws IOException {
+        if (remaining != 0) {
+            throw new IllegalStateException(remaining + " bytes missing from the previous entry");
+        }
+        closeEntry();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > NAME_LENGTH) {
+            byte[] longName = new byte[nameBytes.length + 1];
+            System.arraycopy(nameBytes, 0, longName, 0, nameBytes.length);
+            out.write(header("././@LongLink".getBytes(StandardCharsets.US_ASCII), longName.length, modified, 'L'));
+            out.write(longName);
+            pad(longName.length);
+        }
+        out.write(header(nameBytes, size, modified, '0'));
+        remaining = size;
+        entrySize = size;
+    }
+
+    void write(byte[] data, int offset, int length) throws IOException {
+        if (length > remaining) {
+            throw new IllegalStateException("Entry is longer than its declared size");
+        }
+        out.write(data, offset, length);
+        remaining -= length;
+    }
+
+    /**
+     * Writes the end-of-archive marker; the underlying stream is left open.
+     */
+    void finish() throws IOException {
+        if (remaining != 0) {
+            throw new IllegalStateException(remaining + " bytes missing from the last entry");
+        }
+        closeEntry();
+        out.write(new byte[2 * BLOCK_SIZE]);
+        out.flush();
+    }
+
+    private void closeEntry() throws IOException {
+        pad(entrySize);
+        entrySize = 0;
+    }
+
+    private void pad(long size) throws IOException {
+        int padding = (int) ((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+        if (padding > 0) {
+            out.write(new byte[padding]);
+        }
+    }
+
+    private static byte[] header(byte[] nameBytes, long size, Instant modified, char type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        // Readers ignoring the long name entry still get a truncated name
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, NAME_LENGTH));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        if (size > MAX_OCTAL_SIZE) {
+            header[124] = (byte) 0x80;
+            for (int i = 135; i > 124; i--) {
+                header[i] = (byte) size;
+                size >>>= 8;
+            }
+        } else {
+            putOctal(header, 124, 12, size);
+        }
+        putOctal(header, 136, 12, modified.getEpochSecond());
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        byte[] digits = String.format("%0" + (length - 1) + "o", value).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(digits, 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+}
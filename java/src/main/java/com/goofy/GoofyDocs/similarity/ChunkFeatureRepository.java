@@ -0,0 +1,52 @@
+package com.goofy.GoofyDocs.similarity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class ChunkFeatureRepository {
+
+    private static final String INSERT_FEATURE = "INSERT INTO chunk_feature (feature_index, value, chunk_id) "
+            + "VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+
+    // The live chunk sharing the most super-features, newest first on ties, whose delta chain leaves room
+    private static final String FIND_BASE = "SELECT f.chunk_id, c.delta_depth "
+            + "FROM unnest(?::smallint[], ?::bigint[]) AS q(feature_index, value) "
+            + "JOIN chunk_feature f ON f.feature_index = q.feature_index AND f.value = q.value "
+            + "JOIN chunk c ON c.id = f.chunk_id "
+            + "WHERE c.delta_depth < ? AND c.orphaned_at IS NULL "
+            + "GROUP BY f.chunk_id, c.delta_depth ORDER BY COUNT(*) DESC, f.chunk_id DESC LIMIT 1";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChunkFeatureRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public record BaseCandidate(long chunkId, int deltaDepth) {
+    }
+
+    public void insert(long chunkId, long[] superFeatures) {
+        List<Object[]> rows = new ArrayList<>(superFeatures.length);
+        for (int i = 0; i < superFeatures.length; i++) {
+            rows.add(new Object[] { i, superFeatures[i], chunkId });
+        }
+        jdbcTemplate.batchUpdate(INSERT_FEATURE, rows);
+    }
+
+    public Optional<BaseCandidate> findBase(long[] superFeatures, int maxDeltaDepth) {
+        Short[] indexes = new Short[superFeatures.length];
+        Long[] values = new Long[superFeatures.length];
+        for (int i = 0; i < superFeatures.length; i++) {
+            indexes[i] = (short) i;
+            values[i] = superFeatures[i];
+        }
+        return jdbcTemplate.query(FIND_BASE,
+                (rs, rowNum) -> new BaseCandidate(rs.getLong("chunk_id"), rs.getInt("delta_depth")),
+                indexes, values, maxDeltaDepth).stream().findFirst();
+    }
+}
@@ -0,0 +1,80 @@
+package com.goofy.GoofyDocs.similarity;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Super-feature sketch of a chunk's content. Twelve min-hash features are taken over a gear rolling hash,
+ * each under its own random linear transform, and folded four by four into super-features. Two chunks that
+ * share a super-feature almost certainly share most of their content, while a few edited bytes only change
+ * the features whose extreme window they touch.
+ */
+public final class ResemblanceSketch {
+    public static final int SUPER_FEATURES = 3;
+
+    private static final int FEATURES_PER_SUPER_FEATURE = 4;
+    private static final int FEATURES = SUPER_FEATURES * FEATURES_PER_SUPER_FEATURE;
+    // The gear hash forgets a byte after 64 shifts, so this is also the window it covers
+    private static final int WINDOW = 64;
+    private static final long[] GEAR = new long[256];
+    private static final long[] MULTIPLIERS = new long[FEATURES];
+    private static final long[] ADDENDS = new long[FEATURES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_F00DL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+        for (int i = 0; i < FEATURES; i++) {
+            MULTIPLIERS[i] = random.nextLong() | 1;
+            ADDENDS[i] = random.nextLong();
+        }
+    }
+
+    private ResemblanceSketch() {
+    }
+
+    /**
+     * Returns the super-features of {@code data}, or an empty array when it is too short to have any.
+     */
+    public static long[] superFeatures(byte[] data) {
+        if (data.length < WINDOW) {
+            return new long[0];
+        }
+
+        long[] features = new long[FEATURES];
+        Arrays.fill(features, Long.MIN_VALUE);
+        long hash = 0;
+        for (int i = 0; i < data.length; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if (i < WINDOW - 1) {
+                continue;
+            }
+            for (int f = 0; f < FEATURES; f++) {
+                long value = hash * MULTIPLIERS[f] + ADDENDS[f];
+                if (value > features[f]) {
+                    features[f] = value;
+                }
+            }
+        }
+
+        long[] superFeatures = new long[SUPER_FEATURES];
+        for (int s = 0; s < SUPER_FEATURES; s++) {
+            long folded = s;
+            for (int f = s * FEATURES_PER_SUPER_FEATURE; f < (s + 1) * FEATURES_PER_SUPER_FEATURE; f++) {
+                folded = mix(folded * 31 + features[f]);
+            }
+            superFeatures[s] = folded;
+        }
+        return superFeatures;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,102 @@
+package com.goofy.GoofyDocs.similarity;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.service.ChunkContentLoader;
+
+/**
+ * Stores a new chunk as a delta of a similar stored chunk when that beats compressing it on its own. Bases are
+ * found through the super-features of {@link ResemblanceSketch}; a delta of a delta is allowed up to
+ * {@code max-delta-depth} so reconstruction stays bounded.
+ */
+@Service
+public class SimilarityService {
+    private static final Logger logger = LoggerFactory.getLogger(SimilarityService.class);
+
+    private final ChunkFeatureRepository featureRepository;
+    private final ChunkRepository chunkRepository;
+    private final ChunkContentLoader contentLoader;
+    private final CompressionService compressionService;
+    private final boolean enabled;
+    private final int maxDeltaDepth;
+
+    @Autowired
+    public SimilarityService(
+            ChunkFeatureRepository featureRepository,
+            ChunkRepository chunkRepository,
+            ChunkContentLoader contentLoader,
+            CompressionService compressionService,
+            @Value("${goofydocs.similarity.enabled:true}") boolean enabled,
+            @Value("${goofydocs.similarity.max-delta-depth:2}") int maxDeltaDepth) {
+        this.featureRepository = featureRepository;
+        this.chunkRepository = chunkRepository;
+        this.contentLoader = contentLoader;
+        this.compressionService = compressionService;
+        this.enabled = enabled;
+        this.maxDeltaDepth = maxDeltaDepth;
+    }
+
+    public record DeltaChunk(long baseChunkId, int deltaDepth, byte[] data) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long[] sketch(byte[] data) {
+        return ResemblanceSketch.superFeatures(data);
+    }
+
+    /**
+     * Delta-encodes {@code data} against the most similar stored chunk, if the result is smaller than
+     * {@code compressedLength}. Under a {@code lease}, a GC mark set on the base since the lookup is only deferred
+     * to it: the delta's own row keeps the base alive once stored, and a discarded delta leaves nothing behind.
+     */
+    public Optional<DeltaChunk> encode(byte[] data, long[] superFeatures, int compressedLength,
+            LocalDateTime lease) {
+        if (superFeatures.length == 0) {
+            return Optional.empty();
+        }
+        Optional<ChunkFeatureRepository.BaseCandidate> candidate = featureRepository.findBase(superFeatures,
+                maxDeltaDepth);
+        if (candidate.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long baseChunkId = candidate.get().chunkId();
+        // Holds the base against a GC mark set since the lookup, or tells that it is already gone
+        long[] base = { baseChunkId };
+        int live = lease != null ? chunkRepository.leaseChunks(base, lease) : chunkRepository.reviveChunks(base);
+        if (live == 0) {
+            return Optional.empty();
+        }
+        byte[] delta = compressionService.compressDelta(data, contentLoader.loadRaw(baseChunkId), baseChunkId);
+        if (delta.length >= compressedLength) {
+            logger.debug("Delta against chunk {} is not smaller ({} >= {} bytes)", baseChunkId, delta.length,
+                    compressedLength);
+            return Optional.empty();
+        }
+        return Optional.of(new DeltaChunk(baseChunkId, candidate.get().deltaDepth() + 1, delta));
+    }
+
+    /**
+     * Makes a newly stored chunk available as a base and records the base it was encoded against, if any.
+     */
+    public void index(long chunkId, long[] superFeatures, DeltaChunk delta) {
+        if (delta != null) {
+            chunkRepository.setDeltaBase(chunkId, delta.baseChunkId(), delta.deltaDepth());
+        }
+        if (superFeatures.length > 0) {
+            featureRepository.insert(chunkId, superFeatures);
+        }
+    }
+}
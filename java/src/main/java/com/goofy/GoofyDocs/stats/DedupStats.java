@@ -0,0 +1,59 @@
+package com.goofy.GoofyDocs.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public record DedupStats(
+        long files,
+        long logicalBytes,
+        long totalChunks,
+        long duplicateChunks,
+        long duplicateBytes,
+        long newChunkBytes,
+        long storedBytes) {
+
+    public static final DedupStats EMPTY = new DedupStats(0, 0, 0, 0, 0, 0, 0);
+
+    public DedupStats plus(DedupStats other) {
+        return new DedupStats(files + other.files, logicalBytes + other.logicalBytes, totalChunks + other.totalChunks,
+                duplicateChunks + other.duplicateChunks, duplicateBytes + other.duplicateBytes,
+                newChunkBytes + other.newChunkBytes, storedBytes + other.storedBytes);
+    }
+
+    public long uniqueChunks() {
+        return totalChunks - duplicateChunks;
+    }
+
+    public double deduplicationRatio() {
+        return totalChunks > 0 ? (double) duplicateChunks / totalChunks : 0;
+    }
+
+    public double compressionRatio() {
+        return storedBytes > 0 ? (double) newChunkBytes / storedBytes : 0;
+    }
+
+    public double averageReferencesPerChunk() {
+        return uniqueChunks() > 0 ? (double) totalChunks / uniqueChunks() : 0;
+    }
+
+    public long savedBytes() {
+        return duplicateBytes + newChunkBytes - storedBytes;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("files", files);
+        result.put("logicalBytes", logicalBytes);
+        result.put("totalChunks", totalChunks);
+        result.put("uniqueChunks", uniqueChunks());
+        result.put("duplicateChunks", duplicateChunks);
+        result.put("deduplicatedBytes", duplicateBytes);
+        result.put("storedBytes", storedBytes);
+        result.put("compressionSavedBytes", newChunkBytes - storedBytes);
+        result.put("savedBytes", savedBytes());
+        result.put("deduplicationRatio", deduplicationRatio());
+        result.put("compressionRatio", compressionRatio());
+        result.put("averageReferencesPerChunk", averageReferencesPerChunk());
+        return result;
+    }
+}
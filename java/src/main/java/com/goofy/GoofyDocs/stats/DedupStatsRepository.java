@@ -0,0 +1,103 @@
+package com.goofy.GoofyDocs.stats;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+
+@Repository
+public class DedupStatsRepository {
+
+    private static final String AGGREGATES = "COALESCE(SUM(files), 0) AS files, "
+            + "COALESCE(SUM(logical_bytes), 0) AS logical_bytes, "
+            + "COALESCE(SUM(total_chunks), 0) AS total_chunks, "
+            + "COALESCE(SUM(duplicate_chunks), 0) AS duplicate_chunks, "
+            + "COALESCE(SUM(duplicate_bytes), 0) AS duplicate_bytes, "
+            + "COALESCE(SUM(new_chunk_bytes), 0) AS new_chunk_bytes, "
+            + "COALESCE(SUM(stored_bytes), 0) AS stored_bytes";
+
+    private static final String UPSERT = "INSERT INTO dedup_stats (bucket_start, extension, chunking_profile, "
+            + "files, logical_bytes, total_chunks, duplicate_chunks, duplicate_bytes, new_chunk_bytes, stored_bytes) "
+            + "VALUES (date_trunc('hour', ?::timestamp), ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (bucket_start, extension, chunking_profile) DO UPDATE SET "
+            + "files = dedup_stats.files + EXCLUDED.files, "
+            + "logical_bytes = dedup_stats.logical_bytes + EXCLUDED.logical_bytes, "
+            + "total_chunks = dedup_stats.total_chunks + EXCLUDED.total_chunks, "
+            + "duplicate_chunks = dedup_stats.duplicate_chunks + EXCLUDED.duplicate_chunks, "
+            + "duplicate_bytes = dedup_stats.duplicate_bytes + EXCLUDED.duplicate_bytes, "
+            + "new_chunk_bytes = dedup_stats.new_chunk_bytes + EXCLUDED.new_chunk_bytes, "
+            + "stored_bytes = dedup_stats.stored_bytes + EXCLUDED.stored_bytes";
+
+    private static final String TOTALS = "SELECT " + AGGREGATES + " FROM dedup_stats";
+
+    private static final String BY_EXTENSION = "SELECT extension, " + AGGREGATES
+            + " FROM dedup_stats GROUP BY extension ORDER BY SUM(logical_bytes) DESC";
+
+    private static final String BY_PROFILE = "SELECT chunking_profile, " + AGGREGATES
+            + " FROM dedup_stats GROUP BY chunking_profile ORDER BY chunking_profile";
+
+    private static final String BY_WINDOW = "SELECT date_trunc(?, bucket_start) AS window_start, " + AGGREGATES
+            + " FROM dedup_stats WHERE bucket_start >= date_trunc(?, ?::timestamp) - (? * ('1 ' || ?)::interval)"
+            + " GROUP BY 1 ORDER BY 1 DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DedupStatsRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void add(LocalDateTime time, String extension, ChunkingProfile profile, DedupStats delta) {
+        jdbcTemplate.update(UPSERT, Timestamp.valueOf(time), extension, profile.getId(),
+                delta.files(), delta.logicalBytes(), delta.totalChunks(), delta.duplicateChunks(),
+                delta.duplicateBytes(), delta.newChunkBytes(), delta.storedBytes());
+    }
+
+    public DedupStats totals() {
+        return jdbcTemplate.queryForObject(TOTALS, (rs, rowNum) -> mapStats(rs));
+    }
+
+    public Map<String, DedupStats> byExtension() {
+        Map<String, DedupStats> result = new LinkedHashMap<>();
+        jdbcTemplate.query(BY_EXTENSION, rs -> {
+            result.put(rs.getString("extension"), mapStats(rs));
+        });
+        return result;
+    }
+
+    public Map<ChunkingProfile, DedupStats> byProfile() {
+        Map<ChunkingProfile, DedupStats> result = new LinkedHashMap<>();
+        jdbcTemplate.query(BY_PROFILE, rs -> {
+            result.put(ChunkingProfile.fromId(rs.getShort("chunking_profile")), mapStats(rs));
+        });
+        return result;
+    }
+
+    public Map<LocalDateTime, DedupStats> byWindow(StatsWindow window, int windows, LocalDateTime now) {
+        String unit = window.getTruncation();
+        Map<LocalDateTime, DedupStats> result = new LinkedHashMap<>();
+        List<Map.Entry<LocalDateTime, DedupStats>> rows = jdbcTemplate.query(BY_WINDOW,
+                (rs, rowNum) -> Map.entry(rs.getTimestamp("window_start").toLocalDateTime(), mapStats(rs)),
+                unit, unit, Timestamp.valueOf(now), windows - 1, unit);
+        rows.forEach(row -> result.put(row.getKey(), row.getValue()));
+        return result;
+    }
+
+    private static DedupStats mapStats(ResultSet rs) throws SQLException {
+        return new DedupStats(
+                rs.getLong("files"),
+                rs.getLong("logical_bytes"),
+                rs.getLong("total_chunks"),
+                rs.getLong("duplicate_chunks"),
+                rs.getLong("duplicate_bytes"),
+                rs.getLong("new_chunk_bytes"),
+                rs.getLong("stored_bytes"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.goofy.GoofyDocs.stats;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+
+/**
+ * Dedup and compression savings, maintained incrementally: each ingest adds its own counts to an
+ * hour/extension bucket, so reads only aggregate the (small) bucket table and never scan chunks.
+ */
+@Service
+public class DedupStatsService {
+
+    private final DedupStatsRepository statsRepository;
+
+    @Autowired
+    public DedupStatsService(DedupStatsRepository statsRepository) {
+        this.statsRepository = statsRepository;
+    }
+
+    public void record(String extension, ChunkingProfile profile, DedupStats delta) {
+        statsRepository.add(LocalDateTime.now(), extension != null ? extension : "", profile, delta);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> summary(StatsWindow window, int windows) {
+        Map<String, Object> byExtension = new LinkedHashMap<>();
+        statsRepository.byExtension().forEach((extension, stats) -> byExtension.put(extension, stats.toMap()));
+
+        Map<String, Object> byProfile = new LinkedHashMap<>();
+        statsRepository.byProfile().forEach((profile, stats) -> byProfile.put(profile.name(), stats.toMap()));
+
+        Map<String, Object> byWindow = new LinkedHashMap<>();
+        statsRepository.byWindow(window, windows, LocalDateTime.now())
+                .forEach((start, stats) -> byWindow.put(start.toString(), stats.toMap()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("totals", statsRepository.totals().toMap());
+        result.put("byExtension", byExtension);
+        result.put("byChunkingProfile", byProfile);
+        result.put("window", window.name());
+        result.put("byWindow", byWindow);
+        return result;
+    }
+}
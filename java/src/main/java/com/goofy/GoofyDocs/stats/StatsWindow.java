@@ -0,0 +1,18 @@
+package com.goofy.GoofyDocs.stats;
+
+public enum StatsWindow {
+    HOUR("hour"),
+    DAY("day"),
+    WEEK("week"),
+    MONTH("month");
+
+    private final String truncation;
+
+    StatsWindow(String truncation) {
+        this.truncation = truncation;
+    }
+
+    public String getTruncation() {
+        return truncation;
+    }
+}
@@ -0,0 +1,77 @@
+package com.goofy.GoofyDocs.store;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.goofy.GoofyDocs.model.ChunkEntity;
+
+/**
+ * Read counts of packed chunks since the last tiering run, kept in memory and drained by
+ * {@link ChunkTierMigrator}. Once {@code max-tracked-chunks} chunks are tracked, reads of other chunks are
+ * ignored until the next drain. Recording threads share a read lock and the drain takes the write lock, so
+ * no read counted into the drained map is lost.
+ */
+@Component
+public class ChunkAccessTracker {
+    private final boolean enabled;
+    private final int maxTrackedChunks;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, Integer> reads = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ChunkAccessTracker(
+            @Value("${goofydocs.store.tiering.enabled:false}") boolean enabled,
+            @Value("${goofydocs.store.tiering.max-tracked-chunks:200000}") int maxTrackedChunks) {
+        this.enabled = enabled;
+        this.maxTrackedChunks = maxTrackedChunks;
+    }
+
+    public static ChunkAccessTracker disabled() {
+        return new ChunkAccessTracker(false, 0);
+    }
+
+    /**
+     * Counts one read of each distinct chunk of {@code chunks}; chunks stored inline are not tiered.
+     */
+    public void record(Collection<ChunkEntity> chunks) {
+        if (!enabled) {
+            return;
+        }
+        long[] ids = chunks.stream()
+                .filter(chunk -> chunk.getPackId() != null)
+                .mapToLong(ChunkEntity::getId)
+                .distinct()
+                .toArray();
+        lock.readLock().lock();
+        try {
+            for (long id : ids) {
+                if (reads.size() < maxTrackedChunks || reads.containsKey(id)) {
+                    reads.merge(id, 1, Integer::sum);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the read counts by chunk id and starts counting afresh.
+     */
+    public Map<Long, Integer> drain() {
+        lock.writeLock().lock();
+        try {
+            Map<Long, Integer> drained = reads;
+            reads = new ConcurrentHashMap<>();
+            return drained;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
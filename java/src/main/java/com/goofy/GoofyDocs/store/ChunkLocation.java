@@ -0,0 +1,7 @@
+package com.goofy.GoofyDocs.store;
+
+/**
+ * Byte range of a chunk payload within a pack object.
+ */
+public record ChunkLocation(long packId, long offset, int length) {
+}
@@ -0,0 +1,132 @@
+package com.goofy.GoofyDocs.store;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pack rows. Those written while chunks are staged (creation, upload id, completion) go through a pool of
+ * {@code pack-connections} of their own, in autocommit: they must outlive the transactions appending to the pack,
+ * and those wait for them while holding a connection of the main pool, which could otherwise be exhausted.
+ */
+@Repository
+public class ChunkPackRepository {
+
+    private static final String NEXT_ID = "SELECT nextval(pg_get_serial_sequence('chunk_pack', 'id'))";
+
+    private static final String INSERT = "INSERT INTO chunk_pack (id, object_key, tier, created_at) "
+            + "VALUES (?, ?, ?, ?)";
+
+    private static final String SET_UPLOAD_ID = "UPDATE chunk_pack SET upload_id = ? WHERE id = ?";
+
+    private static final String COMPLETE = "UPDATE chunk_pack SET size = ?, upload_id = NULL WHERE id = ?";
+
+    private static final String FIND_PACKS = "SELECT id, object_key, upload_id, tier FROM chunk_pack "
+            + "WHERE id = ANY(?::bigint[])";
+
+    private static final String RELEASE = "UPDATE chunk_pack SET released_at = ? WHERE id = ANY(?::bigint[])";
+
+    // A pack emptied by the tiering may still be read by requests that loaded its chunks before the move,
+    // so the grace period runs from the release rather than the creation
+    private static final String FIND_UNREFERENCED = "SELECT p.id, p.object_key, p.upload_id, p.tier FROM chunk_pack p "
+            + "WHERE COALESCE(p.released_at, p.created_at) < ? "
+            + "AND NOT EXISTS (SELECT 1 FROM chunk c WHERE c.pack_id = p.id) "
+            + "ORDER BY p.id LIMIT ?";
+
+    private static final String DELETE_UNREFERENCED = "DELETE FROM chunk_pack p "
+            + "WHERE p.id = ? AND NOT EXISTS (SELECT 1 FROM chunk c WHERE c.pack_id = p.id)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate ledger;
+    private final HikariDataSource ledgerDataSource;
+
+    @Autowired
+    public ChunkPackRepository(
+            JdbcTemplate jdbcTemplate,
+            DataSourceProperties dataSourceProperties,
+            @Value("${goofydocs.store.pack-connections:2}") int packConnections) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Connections are only opened once a pack is written, so the database backend never opens any
+        this.ledgerDataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.ledgerDataSource.setPoolName("chunk-pack");
+        this.ledgerDataSource.setMaximumPoolSize(packConnections);
+        this.ledgerDataSource.setMinimumIdle(0);
+        this.ledgerDataSource.setAutoCommit(true);
+        this.ledger = new JdbcTemplate(ledgerDataSource);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ledgerDataSource.close();
+    }
+
+    public record StoredPack(long id, String objectKey, String uploadId, StorageTier tier) {
+    }
+
+    public long nextId() {
+        return ledger.queryForObject(NEXT_ID, Long.class);
+    }
+
+    public void insert(long id, String objectKey, StorageTier tier) {
+        ledger.update(INSERT, id, objectKey, tier.name(), Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    public void setUploadId(long id, String uploadId) {
+        ledger.update(SET_UPLOAD_ID, uploadId, id);
+    }
+
+    public void complete(long id, long size) {
+        ledger.update(COMPLETE, size, id);
+    }
+
+    public Map<Long, StoredPack> findPacks(Collection<Long> ids) {
+        Map<Long, StoredPack> packs = new HashMap<>();
+        jdbcTemplate.query(FIND_PACKS, rs -> {
+            StoredPack pack = mapPack(rs);
+            packs.put(pack.id(), pack);
+        }, (Object) ids.stream().mapToLong(Long::longValue).toArray());
+        return packs;
+    }
+
+    /**
+     * Marks packs whose chunks were moved elsewhere; see FIND_UNREFERENCED.
+     */
+    public void release(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            jdbcTemplate.update(RELEASE, Timestamp.valueOf(LocalDateTime.now()),
+                    ids.stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    /**
+     * Packs created before {@code cutoff} that no chunk points into anymore, including those whose writer
+     * rolled back or never completed the object.
+     */
+    public List<StoredPack> findUnreferencedBefore(LocalDateTime cutoff, int limit) {
+        return jdbcTemplate.query(FIND_UNREFERENCED, (rs, rowNum) -> mapPack(rs), Timestamp.valueOf(cutoff), limit);
+    }
+
+    public boolean deleteUnreferenced(long id) {
+        return jdbcTemplate.update(DELETE_UNREFERENCED, id) > 0;
+    }
+
+    private static StoredPack mapPack(ResultSet rs) throws SQLException {
+        return new StoredPack(rs.getLong("id"), rs.getString("object_key"), rs.getString("upload_id"),
+                StorageTier.valueOf(rs.getString("tier")));
+    }
+}
@@ -0,0 +1,641 @@
+package com.goofy.GoofyDocs.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyDocs.model.ChunkEntity;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Where chunk payloads live. With the {@code database} backend they stay in the chunk rows; with an object
+ * store ({@code local} or {@code s3}) new payloads are appended to a pack object and the row keeps its range.
+ *
+ * Concurrent transactions append to one open pack per tier: parts of {@code part-size} bytes are uploaded in
+ * parallel while chunks are staged, and a transaction waits before its commit until the packs it wrote to are
+ * complete, so a committed chunk always points into a complete object. A pack is completed once it reaches
+ * its size, or when a transaction commits and the pack has been open for {@code pack-linger}; transactions
+ * starting after that get a new pack. Small transactions, such as the negotiated upload of one chunk, thus
+ * share packs and the writes of their rows. Pack rows are written ahead of their objects, outside the
+ * transactions appending to them (see {@link ChunkPackRepository}); packs that no chunk points into (rolled
+ * back, or emptied by the chunk GC) are deleted by {@link #collectPacks}.
+ * Reads fetch the chunks of a pack with ranged GETs, merging ranges less than {@code read-gap} bytes apart.
+ *
+ * With tiering enabled, new packs are written to a hot tier on a local directory and the backend becomes the
+ * cold tier, which receives the chunks rewritten by {@link ChunkTierMigrator} into packs of
+ * {@code cold-pack-size} bytes. Each pack row records its tier.
+ */
+@Component
+public class ChunkStore {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStore.class);
+
+    public enum Backend {
+        DATABASE, LOCAL, S3
+    }
+
+    record ReadRange(long offset, int length, int first, int last) {
+    }
+
+    private final ObjectStore objectStore;
+    private final ObjectStore hotStore;
+    private final ChunkPackRepository packRepository;
+    private final String keyPrefix;
+    private final long packSize;
+    private final long coldPackSize;
+    private final int partSize;
+    private final int readGap;
+    private final int maxReadSize;
+    private final long packLingerNanos;
+    private final ThreadPoolExecutor executor;
+    private final Map<StorageTier, PackWriter> openPacks = new EnumMap<>(StorageTier.class);
+
+    @Autowired
+    public ChunkStore(
+            ChunkPackRepository packRepository,
+            @Value("${goofydocs.store.backend:database}") String backend,
+            @Value("${goofydocs.store.key-prefix:chunks/}") String keyPrefix,
+            @Value("${goofydocs.store.local.root:${java.io.tmpdir}/goofydocs-chunks}") Path localRoot,
+            @Value("${goofydocs.store.s3.endpoint:}") String s3Endpoint,
+            @Value("${goofydocs.store.s3.region:us-east-1}") String s3Region,
+            @Value("${goofydocs.store.s3.bucket:}") String s3Bucket,
+            @Value("${goofydocs.store.s3.access-key:}") String s3AccessKey,
+            @Value("${goofydocs.store.s3.secret-key:}") String s3SecretKey,
+            @Value("${goofydocs.store.pack-size:64MB}") DataSize packSize,
+            @Value("${goofydocs.store.part-size:8MB}") DataSize partSize,
+            @Value("${goofydocs.store.threads:8}") int threads,
+            @Value("${goofydocs.store.read-gap:64KB}") DataSize readGap,
+            @Value("${goofydocs.store.max-read-size:16MB}") DataSize maxReadSize,
+            @Value("${goofydocs.store.pack-linger:50ms}") Duration packLinger,
+            @Value("${goofydocs.store.tiering.enabled:false}") boolean tiering,
+            @Value("${goofydocs.store.tiering.hot-root:${java.io.tmpdir}/goofydocs-hot}") Path hotRoot,
+            @Value("${goofydocs.store.tiering.cold-pack-size:256MB}") DataSize coldPackSize) throws IOException {
+        this(objectStore(Backend.valueOf(backend.trim().toUpperCase(Locale.ROOT)), localRoot, s3Endpoint, s3Region,
+                s3Bucket, s3AccessKey, s3SecretKey), tiering ? new LocalObjectStore(hotRoot) : null, packRepository,
+                keyPrefix, packSize.toBytes(), coldPackSize.toBytes(), (int) partSize.toBytes(), threads,
+                (int) readGap.toBytes(), (int) maxReadSize.toBytes(), packLinger);
+    }
+
+    public ChunkStore(
+            ObjectStore objectStore,
+            ObjectStore hotStore,
+            ChunkPackRepository packRepository,
+            String keyPrefix,
+            long packSize,
+            long coldPackSize,
+            int partSize,
+            int threads,
+            int readGap,
+            int maxReadSize,
+            Duration packLinger) {
+        if (hotStore != null && objectStore == null) {
+            throw new IllegalArgumentException("Tiering needs an object store backend for the cold tier");
+        }
+        this.objectStore = objectStore;
+        this.hotStore = hotStore;
+        this.packRepository = packRepository;
+        this.keyPrefix = keyPrefix;
+        this.packSize = packSize;
+        this.coldPackSize = coldPackSize;
+        this.partSize = partSize;
+        this.readGap = readGap;
+        this.maxReadSize = maxReadSize;
+        this.packLingerNanos = packLinger.toNanos();
+        // A saturated pool makes the caller do the request itself, which bounds the parts held in memory
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads), new CustomizableThreadFactory("chunk-store-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static ChunkStore database() {
+        return new ChunkStore(null, null, null, "", 0, 0, 0, 1, 0, 0, Duration.ZERO);
+    }
+
+    private static ObjectStore objectStore(Backend backend, Path localRoot, String endpoint, String region,
+            String bucket, String accessKey, String secretKey) throws IOException {
+        return switch (backend) {
+            case DATABASE -> null;
+            case LOCAL -> new LocalObjectStore(localRoot);
+            case S3 -> {
+                if (endpoint.isBlank() || bucket.isBlank()) {
+                    throw new IllegalArgumentException("goofydocs.store.s3.endpoint and bucket are required");
+                }
+                yield new S3ObjectStore(URI.create(endpoint), region, bucket, accessKey, secretKey);
+            }
+        };
+    }
+
+    /**
+     * Whether new payloads go to an object store rather than into the chunk rows.
+     */
+    public boolean isExternal() {
+        return objectStore != null;
+    }
+
+    /**
+     * Whether new payloads go to the hot tier and idle ones are moved to the cold tier.
+     */
+    public boolean isTiered() {
+        return hotStore != null;
+    }
+
+    /**
+     * Appends {@code payload} to a pack of the tier new chunks are written to.
+     */
+    public ChunkLocation stage(byte[] payload) {
+        return stage(payload, isTiered() ? StorageTier.HOT : StorageTier.COLD);
+    }
+
+    /**
+     * Appends {@code payload} to an open pack of {@code tier}. The location is valid once the current
+     * transaction commits; outside a transaction the payload is written as a pack of its own right away.
+     */
+    public ChunkLocation stage(byte[] payload, StorageTier tier) {
+        requireObjectStore();
+        if (tier == StorageTier.HOT && !isTiered()) {
+            throw new IllegalStateException("Tiering is disabled, there is no hot tier");
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            PackWriter writer = new PackWriter(tier);
+            ChunkLocation location = writer.append(payload);
+            writer.seal();
+            writer.awaitCompletion();
+            return location;
+        }
+
+        TransactionPacks packs = (TransactionPacks) TransactionSynchronizationManager.getResource(this);
+        if (packs == null) {
+            packs = new TransactionPacks();
+            TransactionSynchronizationManager.bindResource(this, packs);
+            TransactionSynchronizationManager.registerSynchronization(packs);
+        }
+        return packs.append(payload, tier);
+    }
+
+    /**
+     * Fetches the payloads of the given chunks that live in packs, with coalesced ranged reads in parallel.
+     * Chunks holding their data inline are left as they are.
+     */
+    public void load(Collection<ChunkEntity> chunks) {
+        Map<Long, List<ChunkEntity>> byPack = chunks.stream()
+                .filter(chunk -> chunk.getData() == null && chunk.getPackId() != null)
+                .distinct()
+                .collect(Collectors.groupingBy(ChunkEntity::getPackId));
+        if (byPack.isEmpty()) {
+            return;
+        }
+        requireObjectStore();
+
+        Map<Long, ChunkPackRepository.StoredPack> packs = packRepository.findPacks(byPack.keySet());
+        List<Future<Void>> reads = new ArrayList<>();
+        for (Map.Entry<Long, List<ChunkEntity>> pack : byPack.entrySet()) {
+            ChunkPackRepository.StoredPack stored = packs.get(pack.getKey());
+            if (stored == null) {
+                throw new IllegalStateException("Chunk pack not found: " + pack.getKey());
+            }
+            ObjectStore store = objectStore(stored.tier());
+            if (store == null) {
+                throw new IllegalStateException("Chunk pack " + stored.id() + " is on the hot tier, which is disabled");
+            }
+            String key = stored.objectKey();
+            List<ChunkEntity> members = new ArrayList<>(pack.getValue());
+            members.sort(Comparator.comparingLong(ChunkEntity::getPackOffset));
+            long[] offsets = members.stream().mapToLong(ChunkEntity::getPackOffset).toArray();
+            int[] lengths = members.stream().mapToInt(ChunkEntity::getStoredSize).toArray();
+
+            for (ReadRange range : coalesce(offsets, lengths, readGap, maxReadSize)) {
+                reads.add(executor.submit(() -> {
+                    byte[] data = store.getRange(key, range.offset(), range.length());
+                    for (int i = range.first(); i <= range.last(); i++) {
+                        int from = (int) (offsets[i] - range.offset());
+                        members.get(i).setLoadedData(Arrays.copyOfRange(data, from, from + lengths[i]));
+                    }
+                    return null;
+                }));
+            }
+        }
+        await(reads);
+    }
+
+    /**
+     * Deletes up to {@code limit} packs created before {@code cutoff} that no chunk points into anymore, and
+     * returns how many were deleted. A pack is only reclaimed once all its chunks are gone.
+     */
+    public int collectPacks(LocalDateTime cutoff, int limit) {
+        if (objectStore == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (ChunkPackRepository.StoredPack pack : packRepository.findUnreferencedBefore(cutoff, limit)) {
+            ObjectStore store = objectStore(pack.tier());
+            if (store == null) {
+                // A hot pack left behind after tiering was disabled; its chunks cannot be read either
+                logger.warn("Chunk pack {} is on the hot tier, which is disabled", pack.id());
+                continue;
+            }
+            try {
+                if (pack.uploadId() != null) {
+                    store.abortMultipartUpload(pack.objectKey(), pack.uploadId());
+                }
+            } catch (IOException e) {
+                logger.debug("Upload {} of pack {} already gone: {}", pack.uploadId(), pack.id(), e.getMessage());
+            }
+            try {
+                store.delete(pack.objectKey());
+                deleted += packRepository.deleteUnreferenced(pack.id()) ? 1 : 0;
+            } catch (IOException e) {
+                logger.warn("Unable to delete chunk pack {} ({}), retrying next run", pack.id(), pack.objectKey(), e);
+            }
+        }
+        return deleted;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<PackWriter> open;
+        synchronized (openPacks) {
+            open = new ArrayList<>(openPacks.values());
+        }
+        for (PackWriter writer : open) {
+            try {
+                writer.abortIfAbandoned();
+                writer.seal();
+            } catch (RuntimeException e) {
+                logger.warn("Unable to complete chunk pack {} on shutdown", writer.key, e);
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Groups the ranges of one pack (sorted by offset) into reads: neighbours less than {@code gap} bytes
+     * apart share a read as long as it stays within {@code maxLength} bytes.
+     */
+    static List<ReadRange> coalesce(long[] offsets, int[] lengths, int gap, int maxLength) {
+        List<ReadRange> ranges = new ArrayList<>();
+        int first = 0;
+        for (int i = 1; i <= offsets.length; i++) {
+            long start = offsets[first];
+            long end = offsets[i - 1] + lengths[i - 1];
+            if (i == offsets.length || offsets[i] - end > gap || offsets[i] + lengths[i] - start > maxLength) {
+                ranges.add(new ReadRange(start, (int) (end - start), first, i - 1));
+                first = i;
+            }
+        }
+        return ranges;
+    }
+
+    private ObjectStore objectStore(StorageTier tier) {
+        return tier == StorageTier.HOT ? hotStore : objectStore;
+    }
+
+    private void requireObjectStore() {
+        if (objectStore == null) {
+            throw new IllegalStateException("Chunk payloads are stored in the database, no object store is configured");
+        }
+    }
+
+    private static <T> List<T> await(List<Future<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new UncheckedIOException(new IOException("Interrupted while waiting for the object store", e));
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw new IllegalStateException("Object store request failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * The pack of {@code tier} the transaction of {@code packs} appends to: the one it already writes to, else
+     * the shared open pack, else a new pack that becomes the shared one.
+     */
+    private PackWriter openPack(StorageTier tier, TransactionPacks packs) {
+        PackWriter writer = packs.current.get(tier);
+        if (writer != null && writer.isWritable()) {
+            return writer;
+        }
+        synchronized (openPacks) {
+            writer = openPacks.get(tier);
+        }
+        if (writer == null || !writer.join()) {
+            // The pack row is written outside the lock; a pack opened meanwhile by another transaction is
+            // replaced and keeps only the writers it has
+            writer = new PackWriter(tier);
+            writer.enter();
+            PackWriter replaced;
+            synchronized (openPacks) {
+                replaced = openPacks.put(tier, writer);
+            }
+            if (replaced != null) {
+                replaced.abortIfAbandoned();
+            }
+        }
+        packs.current.put(tier, writer);
+        packs.writers.add(writer);
+        return writer;
+    }
+
+    /**
+     * The packs the current transaction appended to; before the commit it waits until they are complete.
+     */
+    private final class TransactionPacks implements TransactionSynchronization {
+        private final Set<PackWriter> writers = new LinkedHashSet<>();
+        private final Map<StorageTier, PackWriter> current = new EnumMap<>(StorageTier.class);
+
+        ChunkLocation append(byte[] payload, StorageTier tier) {
+            while (true) {
+                PackWriter writer = openPack(tier, this);
+                ChunkLocation location = writer.append(payload);
+                if (location != null) {
+                    return location;
+                }
+                current.remove(tier);
+            }
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            writers.forEach(PackWriter::awaitCompletion);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ChunkStore.this);
+            writers.forEach(PackWriter::leave);
+        }
+    }
+
+    /**
+     * One pack object being written, shared by the transactions that joined it: a single PUT when it stays
+     * under one part, a multipart upload otherwise. It is sealed once, by whoever finds it full or lingered
+     * long enough; the others wait for the completion. Object store requests and pack row writes are made
+     * outside its monitor, so appends never wait on them.
+     */
+    private final class PackWriter {
+        private final StorageTier tier;
+        private final ObjectStore store;
+        private final long maxSize;
+        private final long id;
+        private final String key;
+        private final long lingerDeadline;
+        private final List<Future<String>> parts = new ArrayList<>();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private ByteArrayOutputStream part = new ByteArrayOutputStream();
+        private CompletableFuture<String> upload;
+        private long size;
+        private int joined;
+        private boolean sealed;
+
+        PackWriter(StorageTier tier) {
+            this.tier = tier;
+            this.store = objectStore(tier);
+            this.maxSize = tier == StorageTier.COLD && isTiered() ? coldPackSize : packSize;
+            this.id = packRepository.nextId();
+            this.key = keyPrefix + id;
+            packRepository.insert(id, key, tier);
+            this.lingerDeadline = System.nanoTime() + packLingerNanos;
+        }
+
+        /**
+         * Registers one more transaction writing to this pack; false when the pack takes no new writers.
+         */
+        synchronized boolean join() {
+            if (sealed || size >= maxSize || System.nanoTime() - lingerDeadline > 0) {
+                return false;
+            }
+            joined++;
+            return true;
+        }
+
+        /**
+         * Registers the transaction that opened this pack, whose linger may already have passed.
+         */
+        synchronized void enter() {
+            joined++;
+        }
+
+        synchronized boolean isWritable() {
+            return !sealed && size < maxSize;
+        }
+
+        /**
+         * Appends {@code payload}, or returns null when the pack was sealed meanwhile. The writer that fills
+         * the pack seals it.
+         */
+        ChunkLocation append(byte[] payload) {
+            ChunkLocation location;
+            boolean created = false;
+            boolean full;
+            synchronized (this) {
+                if (sealed || size >= maxSize) {
+                    return null;
+                }
+                location = new ChunkLocation(id, size, payload.length);
+                part.write(payload, 0, payload.length);
+                size += payload.length;
+                if (part.size() >= partSize) {
+                    created = flushPart();
+                }
+                full = size >= maxSize;
+            }
+            if (created) {
+                startUpload();
+            }
+            if (full) {
+                seal();
+            }
+            return location;
+        }
+
+        /**
+         * Waits until the pack is complete, sealing it once its linger has passed; fails when it could not be
+         * written.
+         */
+        void awaitCompletion() {
+            long linger = lingerDeadline - System.nanoTime();
+            if (linger > 0) {
+                try {
+                    completion.get(linger, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // Sealed below; a failed write is reported by join
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new IOException("Interrupted while waiting for chunk pack " + key,
+                            e));
+                }
+            }
+            seal();
+            try {
+                completion.join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("Unable to write chunk pack " + key, e.getCause());
+            }
+        }
+
+        /**
+         * Stops appends and writes the object; a no-op when the pack is sealed already.
+         */
+        void seal() {
+            synchronized (this) {
+                if (sealed) {
+                    return;
+                }
+                sealed = true;
+            }
+            detach();
+            try {
+                if (upload == null) {
+                    store.put(key, part.toByteArray());
+                } else {
+                    if (part.size() > 0) {
+                        flushPart();
+                    }
+                    List<String> etags = await(parts);
+                    store.completeMultipartUpload(key, upload.join(), etags);
+                }
+                packRepository.complete(id, size);
+                completion.complete(null);
+            } catch (IOException | RuntimeException e) {
+                completion.completeExceptionally(e);
+                abortUpload();
+            } finally {
+                part = null;
+            }
+        }
+
+        /**
+         * Called once per joined transaction when it ends. A pack left by all its writers before anyone
+         * sealed it holds no committed chunk; it is aborted once it takes no new writers either.
+         */
+        void leave() {
+            synchronized (this) {
+                joined--;
+            }
+            if (System.nanoTime() - lingerDeadline > 0) {
+                abortIfAbandoned();
+            }
+        }
+
+        void abortIfAbandoned() {
+            synchronized (this) {
+                if (sealed || joined > 0) {
+                    return;
+                }
+                sealed = true;
+                part = null;
+            }
+            detach();
+            completion.completeExceptionally(new IllegalStateException("Chunk pack " + key + " was abandoned"));
+            abortUpload();
+        }
+
+        private void detach() {
+            synchronized (openPacks) {
+                openPacks.remove(tier, this);
+            }
+        }
+
+        private void abortUpload() {
+            parts.forEach(future -> future.cancel(true));
+            if (upload != null) {
+                // An upload still being created is aborted once it is
+                upload.thenAccept(uploadId -> {
+                    try {
+                        store.abortMultipartUpload(key, uploadId);
+                    } catch (IOException e) {
+                        logger.warn("Unable to abort the upload of chunk pack {}, the GC will retry", key, e);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Queues the buffered part for upload, under the monitor. Returns true when the part is the first: the
+         * caller then creates the upload, after leaving the monitor, and the queued parts start once it exists.
+         */
+        private boolean flushPart() {
+            boolean created = upload == null;
+            if (created) {
+                upload = new CompletableFuture<>();
+            }
+            int partNumber = parts.size() + 1;
+            byte[] data = part.toByteArray();
+            part.reset();
+            parts.add(upload.thenApplyAsync(uploadId -> uploadPart(uploadId, partNumber, data), executor));
+            return created;
+        }
+
+        private void startUpload() {
+            String uploadId;
+            try {
+                uploadId = store.createMultipartUpload(key);
+            } catch (IOException | RuntimeException e) {
+                upload.completeExceptionally(new IOException("Unable to start the upload of chunk pack " + key, e));
+                return;
+            }
+            try {
+                // Recorded first, so that the GC can abort the upload of a pack that is never completed
+                packRepository.setUploadId(id, uploadId);
+                upload.complete(uploadId);
+            } catch (RuntimeException e) {
+                upload.completeExceptionally(e);
+                try {
+                    store.abortMultipartUpload(key, uploadId);
+                } catch (IOException abortError) {
+                    e.addSuppressed(abortError);
+                }
+            }
+        }
+
+        private String uploadPart(String uploadId, int partNumber, byte[] data) {
+            try {
+                return store.uploadPart(key, uploadId, partNumber, data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
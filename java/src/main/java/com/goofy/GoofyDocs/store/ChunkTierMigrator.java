@@ -0,0 +1,201 @@
+package com.goofy.GoofyDocs.store;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyDocs.compression.ChunkEnvelope;
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+import com.goofy.GoofyDocs.model.ChunkEntity;
+import com.goofy.GoofyDocs.repository.ChunkRelocation;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.service.ChunkContentLoader;
+
+/**
+ * Moves chunks between the storage tiers.
+ *
+ * Each run first applies the reads counted by {@link ChunkAccessTracker}: chunks read at least
+ * {@code promote-reads} times since the previous run are promoted from the cold tier back to the hot one,
+ * re-encoded with the light {@code hot-compression}. Then chunks of the hot tier neither read nor written
+ * for {@code demote-after} are demoted, recompressed with ZSTD at {@code cold-level} into large cold packs.
+ * Delta-encoded chunks keep their bytes, which are ZSTD already and tied to their base.
+ *
+ * A batch writes the new packs and repoints its chunks in one transaction, so readers see either the old or
+ * the new location; the emptied packs are deleted by the chunk GC once their grace period has passed.
+ */
+@Component
+public class ChunkTierMigrator {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkTierMigrator.class);
+
+    private record Encoded(byte[] data, String compressionType, int originalSize) {
+    }
+
+    private final ChunkStore chunkStore;
+    private final ChunkAccessTracker accessTracker;
+    private final ChunkRepository chunkRepository;
+    private final ChunkPackRepository packRepository;
+    private final ChunkContentLoader contentLoader;
+    private final CompressionService compressionService;
+    private final TransactionTemplate transactionTemplate;
+    private final CompressionType hotCompression;
+    private final int coldLevel;
+    private final Duration demoteAfter;
+    private final int promoteReads;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    @Autowired
+    public ChunkTierMigrator(
+            ChunkStore chunkStore,
+            ChunkAccessTracker accessTracker,
+            ChunkRepository chunkRepository,
+            ChunkPackRepository packRepository,
+            ChunkContentLoader contentLoader,
+            CompressionService compressionService,
+            PlatformTransactionManager transactionManager,
+            @Value("${goofydocs.store.tiering.hot-compression:LZ4}") String hotCompression,
+            @Value("${goofydocs.store.tiering.cold-level:19}") int coldLevel,
+            @Value("${goofydocs.store.tiering.demote-after:P7D}") Duration demoteAfter,
+            @Value("${goofydocs.store.tiering.promote-reads:3}") int promoteReads,
+            @Value("${goofydocs.store.tiering.batch-size:500}") int batchSize,
+            @Value("${goofydocs.store.tiering.max-batches-per-run:20}") int maxBatchesPerRun) {
+        this.chunkStore = chunkStore;
+        this.accessTracker = accessTracker;
+        this.chunkRepository = chunkRepository;
+        this.packRepository = packRepository;
+        this.contentLoader = contentLoader;
+        this.compressionService = compressionService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hotCompression = hotCompression.isBlank() || hotCompression.equalsIgnoreCase("NONE")
+                ? null
+                : CompressionType.valueOf(hotCompression.trim().toUpperCase(Locale.ROOT));
+        this.coldLevel = coldLevel;
+        this.demoteAfter = demoteAfter;
+        this.promoteReads = promoteReads;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    @Scheduled(fixedDelayString = "${goofydocs.store.tiering.interval:PT5M}",
+            initialDelayString = "${goofydocs.store.tiering.initial-delay:PT2M}")
+    public void migrate() {
+        if (!chunkStore.isTiered()) {
+            return;
+        }
+
+        Map<Long, Integer> reads = accessTracker.drain();
+        long[] promoted = { 0, 0, 0 };
+        if (!reads.isEmpty()) {
+            long[] readIds = reads.keySet().stream().mapToLong(Long::longValue).toArray();
+            for (int from = 0; from < readIds.length; from += batchSize) {
+                chunkRepository.touchChunks(
+                        Arrays.copyOfRange(readIds, from, Math.min(from + batchSize, readIds.length)));
+            }
+            long[] frequent = reads.entrySet().stream()
+                    .filter(entry -> entry.getValue() >= promoteReads)
+                    .mapToLong(Map.Entry::getKey)
+                    .toArray();
+            List<Long> toPromote = chunkRepository.findInTier(frequent, StorageTier.COLD);
+            for (int from = 0; from < toPromote.size(); from += batchSize) {
+                if (!moveBatch(toPromote.subList(from, Math.min(from + batchSize, toPromote.size())),
+                        StorageTier.HOT, promoted)) {
+                    break;
+                }
+            }
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minus(demoteAfter);
+        long[] demoted = { 0, 0, 0 };
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<Long> idle = chunkRepository.findIdleInTier(StorageTier.HOT, cutoff, batchSize);
+            if (idle.isEmpty() || !moveBatch(idle, StorageTier.COLD, demoted) || idle.size() < batchSize) {
+                break;
+            }
+        }
+
+        if (promoted[0] > 0 || demoted[0] > 0) {
+            logger.info("Chunk tiering run: promoted={} ({} -> {} bytes), demoted={} ({} -> {} bytes)",
+                    promoted[0], promoted[1], promoted[2], demoted[0], demoted[1], demoted[2]);
+        }
+    }
+
+    /**
+     * Moves one batch to {@code target} and adds the moved chunks and their stored bytes before and after to
+     * {@code totals}; false when the batch failed and the run should stop.
+     */
+    private boolean moveBatch(List<Long> chunkIds, StorageTier target, long[] totals) {
+        try {
+            long[] result = transactionTemplate.execute(status -> relocate(chunkIds, target));
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += result[i];
+            }
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to move {} chunks to the {} tier, retrying next run", chunkIds.size(), target, e);
+            return false;
+        }
+    }
+
+    private long[] relocate(List<Long> chunkIds, StorageTier target) {
+        List<ChunkEntity> chunks = chunkRepository.findAllById(chunkIds);
+        contentLoader.fetch(chunks);
+
+        List<ChunkRelocation> relocations = new ArrayList<>(chunks.size());
+        Set<Long> sourcePacks = new HashSet<>();
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        for (ChunkEntity chunk : chunks) {
+            if (chunk.getPackId() == null) {
+                continue;
+            }
+            Encoded encoded = encode(chunk, target);
+            ChunkLocation location = chunkStore.stage(encoded.data(), target);
+            relocations.add(new ChunkRelocation(chunk.getId(), chunk.getPackId(), location.packId(),
+                    location.offset(), location.length(), encoded.compressionType(), encoded.originalSize()));
+            sourcePacks.add(chunk.getPackId());
+            bytesBefore += chunk.getStoredSize();
+            bytesAfter += location.length();
+        }
+
+        int moved = chunkRepository.relocateChunks(relocations);
+        packRepository.release(sourcePacks);
+        return new long[] { moved, bytesBefore, bytesAfter };
+    }
+
+    private Encoded encode(ChunkEntity chunk, StorageTier target) {
+        byte[] stored = chunk.getData();
+        if (chunk.getCompressionType() != null
+                && ChunkEnvelope.peekDictionaryId(stored) != ChunkEnvelope.NO_DICTIONARY) {
+            return new Encoded(stored, chunk.getCompressionType(), ChunkEnvelope.peekRawLength(stored));
+        }
+
+        byte[] raw = contentLoader.decode(chunk, contentLoader::loadRaw);
+        CompressionType type = target == StorageTier.HOT ? hotCompression : CompressionType.ZSTD;
+        if (type == null) {
+            return new Encoded(raw, null, raw.length);
+        }
+        byte[] compressed = target == StorageTier.COLD
+                ? compressionService.compress(raw, type, coldLevel)
+                : compressionService.compress(raw, type);
+        // Incompressible chunks are cheaper to keep raw on either tier
+        return compressed.length < raw.length
+                ? new Encoded(compressed, type.name(), raw.length)
+                : new Encoded(raw, null, raw.length);
+    }
+}
@@ -0,0 +1,135 @@
+package com.goofy.GoofyDocs.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Object store emulated on a local directory, for single-node deployments and tests: an object is a file
+ * under {@code root}, multipart uploads are staged under {@code root/.uploads} and published with an atomic
+ * move, so a reader never sees a partial object.
+ */
+public class LocalObjectStore implements ObjectStore {
+    private static final String UPLOADS_DIR = ".uploads";
+
+    private final Path root;
+
+    public LocalObjectStore(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root.resolve(UPLOADS_DIR));
+    }
+
+    @Override
+    public void put(String key, byte[] data) throws IOException {
+        Path staged = root.resolve(UPLOADS_DIR).resolve(UUID.randomUUID() + ".object");
+        Files.write(staged, data);
+        publish(staged, objectPath(key));
+    }
+
+    @Override
+    public String createMultipartUpload(String key) throws IOException {
+        objectPath(key);
+        String uploadId = UUID.randomUUID().toString();
+        Files.createDirectory(root.resolve(UPLOADS_DIR).resolve(uploadId));
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, byte[] data) throws IOException {
+        Path upload = uploadPath(uploadId);
+        Files.write(upload.resolve(Integer.toString(partNumber)), data);
+        return etag(data);
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) throws IOException {
+        Path upload = uploadPath(uploadId);
+        Path staged = upload.resolve("object");
+        try (OutputStream out = Files.newOutputStream(staged)) {
+            for (int part = 1; part <= partETags.size(); part++) {
+                Path partPath = upload.resolve(Integer.toString(part));
+                if (!etag(Files.readAllBytes(partPath)).equals(partETags.get(part - 1))) {
+                    throw new IOException("Part " + part + " of upload " + uploadId + " does not match its ETag");
+                }
+                Files.copy(partPath, out);
+            }
+        }
+        publish(staged, objectPath(key));
+        deleteRecursively(upload);
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) throws IOException {
+        deleteRecursively(uploadPath(uploadId));
+    }
+
+    @Override
+    public byte[] getRange(String key, long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try (FileChannel channel = FileChannel.open(objectPath(key), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Range " + offset + "+" + length + " is past the end of " + key);
+                }
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(objectPath(key));
+    }
+
+    private Path objectPath(String key) throws IOException {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.startsWith(root.resolve(UPLOADS_DIR)) || path.equals(root)) {
+            throw new IOException("Invalid object key: " + key);
+        }
+        return path;
+    }
+
+    private Path uploadPath(String uploadId) throws IOException {
+        Path upload = root.resolve(UPLOADS_DIR).resolve(uploadId).normalize();
+        if (!upload.getParent().equals(root.resolve(UPLOADS_DIR)) || !Files.isDirectory(upload)) {
+            throw new NoSuchFileException("No such upload: " + uploadId);
+        }
+        return upload;
+    }
+
+    private static void publish(Path staged, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String etag(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.goofy.GoofyDocs.store;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The part of the S3 object API chunk packs need: whole and multipart uploads, ranged reads and deletes.
+ * Implementations are thread-safe.
+ */
+public interface ObjectStore {
+
+    void put(String key, byte[] data) throws IOException;
+
+    /**
+     * Starts a multipart upload and returns its id.
+     */
+    String createMultipartUpload(String key) throws IOException;
+
+    /**
+     * Uploads part {@code partNumber} (from 1) and returns its ETag. Every part but the last must be at least
+     * 5 MB on S3.
+     */
+    String uploadPart(String key, String uploadId, int partNumber, byte[] data) throws IOException;
+
+    /**
+     * Assembles the parts, given by their ETags in part order.
+     */
+    void completeMultipartUpload(String key, String uploadId, List<String> partETags) throws IOException;
+
+    void abortMultipartUpload(String key, String uploadId) throws IOException;
+
+    /**
+     * Reads {@code length} bytes at {@code offset}.
+     */
+    byte[] getRange(String key, long offset, int length) throws IOException;
+
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,185 @@
+package com.goofy.GoofyDocs.store;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * S3 API client over the JDK HTTP client, for AWS S3 and compatible stores (MinIO, Ceph, ...). Requests are
+ * signed with SigV4 and address the bucket path-style ({@code endpoint/bucket/key}), which every compatible
+ * store accepts. Throttling and server errors are retried a few times.
+ */
+public class S3ObjectStore implements ObjectStore {
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectStore.class);
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final String EMPTY_PAYLOAD_HASH = S3RequestSigner.sha256Hex(new byte[0]);
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>([^<]+)</UploadId>");
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final HttpClient client;
+    private final URI endpoint;
+    private final String bucket;
+    private final S3RequestSigner signer;
+
+    public S3ObjectStore(URI endpoint, String region, String bucket, String accessKey, String secretKey) {
+        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        this.endpoint = endpoint;
+        this.bucket = bucket;
+        this.signer = new S3RequestSigner(accessKey, secretKey, region);
+    }
+
+    @Override
+    public void put(String key, byte[] data) throws IOException {
+        send("PUT", key, new TreeMap<>(), null, data);
+    }
+
+    @Override
+    public String createMultipartUpload(String key) throws IOException {
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("uploads", "");
+        String body = new String(send("POST", key, query, null, new byte[0]).body(), StandardCharsets.UTF_8);
+        Matcher matcher = UPLOAD_ID.matcher(body);
+        if (!matcher.find()) {
+            throw new IOException("No upload id in the response for " + key);
+        }
+        return matcher.group(1);
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, byte[] data) throws IOException {
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("partNumber", Integer.toString(partNumber));
+        query.put("uploadId", uploadId);
+        return send("PUT", key, query, null, data).headers().firstValue("ETag")
+                .orElseThrow(() -> new IOException("No ETag for part " + partNumber + " of " + key));
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> partETags) throws IOException {
+        StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < partETags.size(); i++) {
+            body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(partETags.get(i).replace("&", "&amp;").replace("\"", "&quot;"))
+                    .append("</ETag></Part>");
+        }
+        body.append("</CompleteMultipartUpload>");
+
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("uploadId", uploadId);
+        HttpResponse<byte[]> response = send("POST", key, query, null,
+                body.toString().getBytes(StandardCharsets.UTF_8));
+        // S3 can report a failed completion with a 200 and an error document
+        String result = new String(response.body(), StandardCharsets.UTF_8);
+        if (result.contains("<Error>")) {
+            throw new IOException("Multipart upload of " + key + " failed: " + result);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) throws IOException {
+        SortedMap<String, String> query = new TreeMap<>();
+        query.put("uploadId", uploadId);
+        send("DELETE", key, query, null, null);
+    }
+
+    @Override
+    public byte[] getRange(String key, long offset, int length) throws IOException {
+        byte[] data = send("GET", key, new TreeMap<>(), "bytes=" + offset + "-" + (offset + length - 1), null).body();
+        if (data.length != length) {
+            throw new IOException("Range " + offset + "+" + length + " of " + key + " returned " + data.length
+                    + " bytes");
+        }
+        return data;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        send("DELETE", key, new TreeMap<>(), null, null);
+    }
+
+    private HttpResponse<byte[]> send(String method, String key, SortedMap<String, String> query, String range,
+            byte[] body) throws IOException {
+        String path = "/" + S3RequestSigner.uriEncode(bucket, true) + "/" + S3RequestSigner.uriEncode(key, false);
+        String canonicalQuery = S3RequestSigner.canonicalQuery(query);
+        URI uri = URI.create(endpoint.toString().replaceAll("/+$", "") + path
+                + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery));
+        String payloadHash = body != null && body.length > 0 ? S3RequestSigner.sha256Hex(body) : EMPTY_PAYLOAD_HASH;
+
+        IOException failure = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            String amzDate = ZonedDateTime.now(ZoneOffset.UTC).format(AMZ_DATE);
+            SortedMap<String, String> headers = new TreeMap<>();
+            headers.put("host", uri.getRawAuthority());
+            headers.put("x-amz-content-sha256", payloadHash);
+            headers.put("x-amz-date", amzDate);
+            if (range != null) {
+                headers.put("range", range);
+            }
+
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofMinutes(5))
+                    .method(method, body != null
+                            ? HttpRequest.BodyPublishers.ofByteArray(body)
+                            : HttpRequest.BodyPublishers.noBody())
+                    .header("Authorization", signer.authorization(method, uri.getRawPath(), canonicalQuery, headers,
+                            payloadHash, amzDate));
+            headers.forEach((name, value) -> {
+                if (!name.equals("host")) {
+                    request.header(name, value);
+                }
+            });
+
+            HttpResponse<byte[]> response;
+            try {
+                response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while calling the object store", e);
+            } catch (IOException e) {
+                failure = e;
+                retryAfter(method, key, attempt, failure);
+                continue;
+            }
+
+            int status = response.statusCode();
+            if (status / 100 == 2) {
+                return response;
+            }
+            failure = new IOException(method + " " + key + " failed with status " + status + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+            if (status != 429 && status / 100 != 5) {
+                throw failure;
+            }
+            retryAfter(method, key, attempt, failure);
+        }
+        throw failure;
+    }
+
+    private static void retryAfter(String method, String key, int attempt, IOException failure) throws IOException {
+        if (attempt == MAX_ATTEMPTS) {
+            return;
+        }
+        logger.warn("{} {} failed (attempt {}/{}): {}", method, key, attempt, MAX_ATTEMPTS, failure.getMessage());
+        try {
+            Thread.sleep(200L << attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while retrying an object store call", e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.goofy.GoofyDocs.store;
+
+/**
+ * Where a pack lives: the local hot tier for recently written or frequently read chunks, or the cold tier
+ * (the configured backend) for dense, rarely read ones.
+ */
+public enum StorageTier {
+    HOT, COLD
+}
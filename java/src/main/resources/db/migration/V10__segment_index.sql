@@ -0,0 +1,22 @@
+-- Runs of consecutive chunks keyed by the hash of their chunk digests. Entries are hints for ingest, not
+-- references: the chunks they list are revalidated on use and a stale entry is dropped.
+CREATE TABLE segment (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    algorithm SMALLINT NOT NULL,
+    fingerprint BYTEA NOT NULL,
+    chunk_digests BYTEA NOT NULL,
+    manifest BYTEA NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL DEFAULT now()
+);
+
+CREATE UNIQUE INDEX idx_segment_fingerprint ON segment (algorithm, fingerprint);
+
+-- Sparse index: only sampled chunk digests (hooks) point at the segments that contain them
+CREATE TABLE segment_hook (
+    algorithm SMALLINT NOT NULL,
+    hook BYTEA NOT NULL,
+    segment_id BIGINT NOT NULL REFERENCES segment (id) ON DELETE CASCADE,
+    PRIMARY KEY (algorithm, hook, segment_id)
+);
+
+CREATE INDEX idx_segment_hook_segment_id ON segment_hook (segment_id);
@@ -0,0 +1,16 @@
+-- A chunk stored as a delta keeps its base alive: the GC skips chunks that are the base of another one
+ALTER TABLE chunk
+    ADD COLUMN base_chunk_id BIGINT REFERENCES chunk (id),
+    ADD COLUMN delta_depth SMALLINT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_chunk_base_chunk_id ON chunk (base_chunk_id) WHERE base_chunk_id IS NOT NULL;
+
+-- Super-features of stored chunks (see ResemblanceSketch), used to find a similar base for a new chunk
+CREATE TABLE chunk_feature (
+    feature_index SMALLINT NOT NULL,
+    value BIGINT NOT NULL,
+    chunk_id BIGINT NOT NULL REFERENCES chunk (id) ON DELETE CASCADE,
+    PRIMARY KEY (feature_index, value, chunk_id)
+);
+
+CREATE INDEX idx_chunk_feature_chunk_id ON chunk_feature (chunk_id);
@@ -0,0 +1,40 @@
+-- Asynchronous ingest: the upload is spooled to disk and chunked by a worker that commits one batch of
+-- chunks at a time. bytes_chunked is the file offset the next batch resumes from after a restart.
+CREATE TABLE ingest_job (
+    id VARCHAR(36) PRIMARY KEY,
+    status VARCHAR(16) NOT NULL,
+    file_name VARCHAR(255) NOT NULL,
+    file_size BIGINT NOT NULL,
+    spool_path VARCHAR(1024) NOT NULL,
+    algorithm VARCHAR(32) NOT NULL,
+    compression_type VARCHAR(32),
+    chunking_profile SMALLINT NOT NULL,
+    parent_id BIGINT,
+    file_id BIGINT REFERENCES files (id) ON DELETE SET NULL,
+    bytes_chunked BIGINT NOT NULL DEFAULT 0,
+    batches INTEGER NOT NULL DEFAULT 0,
+    total_chunks INTEGER NOT NULL DEFAULT 0,
+    unique_chunks INTEGER NOT NULL DEFAULT 0,
+    duplicate_chunks INTEGER NOT NULL DEFAULT 0,
+    saved_storage BIGINT NOT NULL DEFAULT 0,
+    new_chunk_bytes BIGINT NOT NULL DEFAULT 0,
+    stored_bytes BIGINT NOT NULL DEFAULT 0,
+    compressed_bytes BIGINT NOT NULL DEFAULT 0,
+    segment_resolved_chunks INTEGER NOT NULL DEFAULT 0,
+    delta_chunks INTEGER NOT NULL DEFAULT 0,
+    error VARCHAR(1024),
+    created_at TIMESTAMP(6) NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    expires_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_ingest_job_status ON ingest_job (status, updated_at);
+CREATE INDEX idx_ingest_job_expires_at ON ingest_job (expires_at);
+
+-- Manifest of each committed batch, concatenated in order when the job completes
+CREATE TABLE ingest_job_batch (
+    job_id VARCHAR(36) NOT NULL REFERENCES ingest_job (id) ON DELETE CASCADE,
+    batch_index INTEGER NOT NULL,
+    manifest BYTEA NOT NULL,
+    PRIMARY KEY (job_id, batch_index)
+);
@@ -0,0 +1,19 @@
+-- Chunk payloads in an object store (goofydocs.store.backend): chunks are packed into large objects and a
+-- chunk row points at its byte range instead of holding the bytes. Chunks stored before keep their data.
+-- A pack row is written before its object, in a transaction of its own, so that the GC finds packs whose
+-- writer failed; size is set once the object is complete, upload_id while a multipart upload is open.
+CREATE TABLE chunk_pack (
+    id BIGSERIAL PRIMARY KEY,
+    object_key VARCHAR(1024) NOT NULL UNIQUE,
+    size BIGINT,
+    upload_id VARCHAR(1024),
+    created_at TIMESTAMP(6) NOT NULL
+);
+
+ALTER TABLE chunk
+    ADD COLUMN pack_id BIGINT REFERENCES chunk_pack (id),
+    ADD COLUMN pack_offset BIGINT,
+    ADD COLUMN stored_size INTEGER,
+    ADD CONSTRAINT chk_chunk_payload CHECK (data IS NOT NULL OR pack_id IS NOT NULL) NOT VALID;
+
+CREATE INDEX idx_chunk_pack_id ON chunk (pack_id) WHERE pack_id IS NOT NULL;
@@ -0,0 +1,11 @@
+-- Storage tiers (goofydocs.store.tiering): new packs go to a hot local tier, chunks not read for a while are
+-- rewritten into dense packs on the cold tier (the configured backend) and cold chunks read often move back.
+-- Packs written before tiering live on the backend, which is the cold tier.
+ALTER TABLE chunk_pack
+    ADD COLUMN tier VARCHAR(8) NOT NULL DEFAULT 'COLD',
+    ADD COLUMN released_at TIMESTAMP(6);
+
+-- Set from the read statistics of the reconstructor, at most once per tiering interval
+ALTER TABLE chunk ADD COLUMN last_read_at TIMESTAMP(6);
+
+CREATE INDEX idx_chunk_pack_tier ON chunk_pack (tier) WHERE tier <> 'COLD';
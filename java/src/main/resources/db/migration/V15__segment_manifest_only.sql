@@ -0,0 +1,3 @@
+-- Champion chunks are matched through chunk_fingerprint by chunk id, so a segment no longer keeps a copy of
+-- its chunk digests next to its manifest.
+ALTER TABLE segment DROP COLUMN chunk_digests;
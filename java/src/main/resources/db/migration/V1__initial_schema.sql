@@ -0,0 +1,26 @@
+CREATE TABLE files (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255),
+    extension VARCHAR(255),
+    size BIGINT,
+    created_at TIMESTAMP(6)
+);
+
+CREATE TABLE chunk (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    data BYTEA,
+    hash_sha_1 VARCHAR(255),
+    hash_sha_256 VARCHAR(255),
+    hash_blake3 VARCHAR(255),
+    created_at TIMESTAMP(6),
+    compression_type VARCHAR(255),
+    original_size INTEGER
+);
+
+CREATE TABLE file_chunk (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_id BIGINT REFERENCES files (id),
+    chunk_id BIGINT REFERENCES chunk (id),
+    position INTEGER,
+    created_at TIMESTAMP(6)
+);
@@ -0,0 +1,4 @@
+ALTER TABLE chunk ADD COLUMN IF NOT EXISTS orphaned_at TIMESTAMP(6);
+
+CREATE INDEX IF NOT EXISTS idx_chunk_orphaned_at ON chunk (orphaned_at) WHERE orphaned_at IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_file_chunk_chunk_id ON file_chunk (chunk_id);
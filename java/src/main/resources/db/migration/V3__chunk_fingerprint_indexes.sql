@@ -0,0 +1,43 @@
+-- Concurrent uploads could store the same chunk twice before these constraints existed:
+-- point every reference at the oldest copy and drop the others.
+UPDATE file_chunk fc
+SET chunk_id = d.keep_id
+FROM (
+    SELECT id, MIN(id) OVER (PARTITION BY hash_sha_1) AS keep_id
+    FROM chunk
+    WHERE hash_sha_1 IS NOT NULL
+) d
+WHERE fc.chunk_id = d.id AND d.id <> d.keep_id;
+
+DELETE FROM chunk c USING chunk k
+WHERE c.hash_sha_1 = k.hash_sha_1 AND c.id > k.id;
+
+UPDATE file_chunk fc
+SET chunk_id = d.keep_id
+FROM (
+    SELECT id, MIN(id) OVER (PARTITION BY hash_sha_256) AS keep_id
+    FROM chunk
+    WHERE hash_sha_256 IS NOT NULL
+) d
+WHERE fc.chunk_id = d.id AND d.id <> d.keep_id;
+
+DELETE FROM chunk c USING chunk k
+WHERE c.hash_sha_256 = k.hash_sha_256 AND c.id > k.id;
+
+UPDATE file_chunk fc
+SET chunk_id = d.keep_id
+FROM (
+    SELECT id, MIN(id) OVER (PARTITION BY hash_blake3) AS keep_id
+    FROM chunk
+    WHERE hash_blake3 IS NOT NULL
+) d
+WHERE fc.chunk_id = d.id AND d.id <> d.keep_id;
+
+DELETE FROM chunk c USING chunk k
+WHERE c.hash_blake3 = k.hash_blake3 AND c.id > k.id;
+
+CREATE UNIQUE INDEX ux_chunk_hash_sha_1 ON chunk (hash_sha_1) WHERE hash_sha_1 IS NOT NULL;
+CREATE UNIQUE INDEX ux_chunk_hash_sha_256 ON chunk (hash_sha_256) WHERE hash_sha_256 IS NOT NULL;
+CREATE UNIQUE INDEX ux_chunk_hash_blake3 ON chunk (hash_blake3) WHERE hash_blake3 IS NOT NULL;
+
+CREATE INDEX idx_file_chunk_file_position ON file_chunk (file_id, position);
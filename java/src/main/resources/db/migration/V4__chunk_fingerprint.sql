@@ -0,0 +1,30 @@
+CREATE TABLE chunk_fingerprint (
+    algorithm SMALLINT NOT NULL,
+    digest BYTEA NOT NULL,
+    chunk_id BIGINT NOT NULL REFERENCES chunk (id) ON DELETE CASCADE,
+    PRIMARY KEY (algorithm, digest)
+);
+
+CREATE INDEX idx_chunk_fingerprint_chunk_id ON chunk_fingerprint (chunk_id);
+
+-- Algorithm ids follow HashingAlgorithm: 1 = SHA1, 2 = SHA256, 3 = BLAKE3
+INSERT INTO chunk_fingerprint (algorithm, digest, chunk_id)
+SELECT 1, decode(hash_sha_1, 'hex'), id FROM chunk WHERE hash_sha_1 IS NOT NULL
+ON CONFLICT DO NOTHING;
+
+INSERT INTO chunk_fingerprint (algorithm, digest, chunk_id)
+SELECT 2, decode(hash_sha_256, 'hex'), id FROM chunk WHERE hash_sha_256 IS NOT NULL
+ON CONFLICT DO NOTHING;
+
+INSERT INTO chunk_fingerprint (algorithm, digest, chunk_id)
+SELECT 3, decode(hash_blake3, 'hex'), id FROM chunk WHERE hash_blake3 IS NOT NULL
+ON CONFLICT DO NOTHING;
+
+DROP INDEX ux_chunk_hash_sha_1;
+DROP INDEX ux_chunk_hash_sha_256;
+DROP INDEX ux_chunk_hash_blake3;
+
+ALTER TABLE chunk
+    DROP COLUMN hash_sha_1,
+    DROP COLUMN hash_sha_256,
+    DROP COLUMN hash_blake3;
@@ -0,0 +1,42 @@
+ALTER TABLE chunk ADD COLUMN ref_count BIGINT NOT NULL DEFAULT 0;
+
+UPDATE chunk c SET ref_count = r.refs
+FROM (SELECT chunk_id, COUNT(*) AS refs FROM file_chunk GROUP BY chunk_id) r
+WHERE c.id = r.chunk_id;
+
+-- One row per hour and extension, upserted once per ingested file
+CREATE TABLE dedup_stats (
+    bucket_start TIMESTAMP(6) NOT NULL,
+    extension VARCHAR(255) NOT NULL,
+    files BIGINT NOT NULL DEFAULT 0,
+    logical_bytes BIGINT NOT NULL DEFAULT 0,
+    total_chunks BIGINT NOT NULL DEFAULT 0,
+    duplicate_chunks BIGINT NOT NULL DEFAULT 0,
+    duplicate_bytes BIGINT NOT NULL DEFAULT 0,
+    new_chunk_bytes BIGINT NOT NULL DEFAULT 0,
+    stored_bytes BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket_start, extension)
+);
+
+-- Existing data lands in the bucket of the upgrade; the first reference of a chunk counts as the new one
+INSERT INTO dedup_stats (bucket_start, extension, files, logical_bytes, total_chunks, duplicate_chunks,
+                         duplicate_bytes, new_chunk_bytes, stored_bytes)
+SELECT date_trunc('hour', now()::timestamp), COALESCE(f.extension, ''), f.files, f.logical_bytes,
+       COALESCE(r.total_chunks, 0), COALESCE(r.duplicate_chunks, 0), COALESCE(r.duplicate_bytes, 0),
+       COALESCE(r.new_chunk_bytes, 0), COALESCE(r.stored_bytes, 0)
+FROM (SELECT COALESCE(extension, '') AS extension, COUNT(*) AS files, COALESCE(SUM(size), 0) AS logical_bytes
+      FROM files GROUP BY 1) f
+LEFT JOIN (SELECT extension,
+                  COUNT(*) AS total_chunks,
+                  COUNT(*) FILTER (WHERE nth > 1) AS duplicate_chunks,
+                  COALESCE(SUM(raw_size) FILTER (WHERE nth > 1), 0) AS duplicate_bytes,
+                  COALESCE(SUM(raw_size) FILTER (WHERE nth = 1), 0) AS new_chunk_bytes,
+                  COALESCE(SUM(stored_size) FILTER (WHERE nth = 1), 0) AS stored_bytes
+           FROM (SELECT COALESCE(fl.extension, '') AS extension,
+                        COALESCE(c.original_size, octet_length(c.data)) AS raw_size,
+                        octet_length(c.data) AS stored_size,
+                        row_number() OVER (PARTITION BY fc.chunk_id ORDER BY fc.id) AS nth
+                 FROM file_chunk fc
+                 JOIN files fl ON fl.id = fc.file_id
+                 JOIN chunk c ON c.id = fc.chunk_id) refs
+           GROUP BY extension) r ON r.extension = f.extension;
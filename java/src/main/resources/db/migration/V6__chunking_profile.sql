@@ -0,0 +1,6 @@
+-- Profile ids follow ChunkingProfile: 1 = DEFAULT, 2 = SMALL, 3 = LARGE
+ALTER TABLE files ADD COLUMN chunking_profile SMALLINT NOT NULL DEFAULT 1;
+
+ALTER TABLE dedup_stats ADD COLUMN chunking_profile SMALLINT NOT NULL DEFAULT 1;
+ALTER TABLE dedup_stats DROP CONSTRAINT dedup_stats_pkey;
+ALTER TABLE dedup_stats ADD PRIMARY KEY (bucket_start, extension, chunking_profile);
@@ -0,0 +1,21 @@
+CREATE TABLE upload_session (
+    id VARCHAR(36) PRIMARY KEY,
+    file_name VARCHAR(255) NOT NULL,
+    file_size BIGINT NOT NULL,
+    algorithm VARCHAR(32) NOT NULL,
+    compression_type VARCHAR(32),
+    chunking_profile SMALLINT NOT NULL,
+    chunk_count INTEGER NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    expires_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_upload_session_expires_at ON upload_session (expires_at);
+
+CREATE TABLE upload_session_chunk (
+    session_id VARCHAR(36) NOT NULL REFERENCES upload_session (id) ON DELETE CASCADE,
+    chunk_index INTEGER NOT NULL,
+    digest BYTEA NOT NULL,
+    size INTEGER NOT NULL,
+    PRIMARY KEY (session_id, chunk_index)
+);
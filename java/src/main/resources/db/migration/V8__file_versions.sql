@@ -0,0 +1,19 @@
+ALTER TABLE files
+    ADD COLUMN parent_id BIGINT REFERENCES files (id) ON DELETE SET NULL,
+    ADD COLUMN version INTEGER NOT NULL DEFAULT 1,
+    ADD COLUMN delta_depth INTEGER NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_files_parent_id ON files (parent_id) WHERE parent_id IS NOT NULL;
+
+-- Versions stored as a diff of their parent's chunk manifest (delta_depth > 0) keep one row per edit
+CREATE TABLE file_delta (
+    file_id BIGINT NOT NULL REFERENCES files (id) ON DELETE CASCADE,
+    edit_index INTEGER NOT NULL,
+    parent_index INTEGER NOT NULL,
+    removed INTEGER NOT NULL,
+    chunk_ids BIGINT[] NOT NULL,
+    chunk_sizes INTEGER[] NOT NULL,
+    PRIMARY KEY (file_id, edit_index)
+);
+
+CREATE INDEX idx_file_delta_chunk_ids ON file_delta USING GIN (chunk_ids);
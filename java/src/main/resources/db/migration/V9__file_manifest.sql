@@ -0,0 +1,29 @@
+-- One row per file: the chunk list is delta-encoded in a single blob (see ChunkManifest#encode)
+CREATE TABLE file_manifest (
+    file_id BIGINT PRIMARY KEY REFERENCES files (id) ON DELETE CASCADE,
+    chunk_count INTEGER NOT NULL,
+    data BYTEA NOT NULL
+);
+
+-- Reverse index of the chunks referenced by each file's stored manifest, full or delta, with their
+-- multiplicity; the GC and ref_count maintenance read it instead of the manifests themselves
+CREATE TABLE chunk_ref (
+    chunk_id BIGINT NOT NULL REFERENCES chunk (id),
+    file_id BIGINT NOT NULL REFERENCES files (id) ON DELETE CASCADE,
+    refs INTEGER NOT NULL,
+    PRIMARY KEY (chunk_id, file_id)
+);
+
+CREATE INDEX idx_chunk_ref_file_id ON chunk_ref (file_id);
+
+INSERT INTO chunk_ref (chunk_id, file_id, refs)
+SELECT chunk_id, file_id, COUNT(*)
+FROM (
+    SELECT chunk_id, file_id FROM file_chunk
+    UNION ALL
+    SELECT unnest(chunk_ids), file_id FROM file_delta
+) refs
+GROUP BY chunk_id, file_id;
+
+DROP INDEX idx_file_delta_chunk_ids;
+DROP INDEX IF EXISTS idx_file_chunk_chunk_id;
@@ -8,7 +8,6 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -39,7 +38,7 @@ public class ChunkingPerformanceTest {
     }
 
     @BeforeEach
-    void setup() throws NoSuchAlgorithmException, IOException {
+    void setup() throws IOException {
         chunkingService = new ChunkingService();
         System.out.println("Searching for files in: " + PROJECT_ROOT);
 
@@ -0,0 +1,125 @@
+package com.goofy.GoofyDocs.chunking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkingServiceTest {
+
+    private final ChunkingService chunkingService = new ChunkingService();
+
+    @Test
+    void testChunkSizesRespectProfileBounds() throws Exception {
+        byte[] content = new byte[2 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        Path testFile = Files.createTempFile("profile-", ".bin");
+        Files.write(testFile, content);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (ChunkingProfile profile : ChunkingProfile.values()) {
+                List<Chunk> chunks = chunkingService.chunkFile(testFile.toFile(), profile);
+
+                int offset = 0;
+                for (int i = 0; i < chunks.size(); i++) {
+                    Chunk chunk = chunks.get(i);
+                    assertEquals(offset, chunk.getPosition());
+                    assertTrue(chunk.getOriginalSize() <= profile.getMaxChunkSize());
+                    if (i < chunks.size() - 1) {
+                        assertTrue(chunk.getOriginalSize() >= profile.getMinChunkSize());
+                    }
+                    assertArrayEquals(Arrays.copyOfRange(content, offset, offset + chunk.getOriginalSize()),
+                            chunk.getData());
+                    offset += chunk.getOriginalSize();
+                }
+                assertEquals(content.length, offset);
+
+                List<String> expectedHashes = chunks.stream().map(Chunk::getHash).toList();
+                List<Future<List<Chunk>>> concurrentRuns = new ArrayList<>();
+                for (int run = 0; run < 4; run++) {
+                    concurrentRuns.add(executor.submit(() -> chunkingService.chunkFile(testFile.toFile(), profile)));
+                }
+                for (Future<List<Chunk>> concurrentRun : concurrentRuns) {
+                    assertEquals(expectedHashes, concurrentRun.get().stream().map(Chunk::getHash).toList());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            Files.deleteIfExists(testFile);
+        }
+    }
+
+    @Test
+    void testChunkingResumedAtABoundaryYieldsTheSameChunks() throws IOException {
+        byte[] content = new byte[1024 * 1024];
+        new Random(7).nextBytes(content);
+        Path testFile = Files.createTempFile("resume-", ".bin");
+        Files.write(testFile, content);
+
+        try {
+            List<Chunk> chunks = chunkingService.chunkFile(testFile.toFile(), ChunkingProfile.DEFAULT);
+            int resumeAt = chunks.size() / 2;
+            long offset = chunks.get(resumeAt).getPosition();
+
+            List<Chunk> resumed = new ArrayList<>();
+            long bytesRead = chunkingService.chunkFile(testFile.toFile(), ChunkingProfile.DEFAULT, offset,
+                    resumed::add);
+
+            assertEquals(content.length - offset, bytesRead);
+            assertEquals(chunks.subList(resumeAt, chunks.size()).stream().map(Chunk::getHash).toList(),
+                    resumed.stream().map(Chunk::getHash).toList());
+            assertEquals(offset, resumed.get(0).getPosition());
+        } finally {
+            Files.deleteIfExists(testFile);
+        }
+    }
+
+    @Test
+    void testScanFindsTheChunkBoundariesWithoutBuildingChunks() throws IOException {
+        byte[] content = new byte[1024 * 1024];
+        Random random = new Random(11);
+        random.nextBytes(content);
+        // Repeated regions so that boundaries also fall inside identical content
+        System.arraycopy(content, 0, content, 512 * 1024, 256 * 1024);
+
+        List<Chunk> chunks = chunkingService.chunkBytes(content, ChunkingProfile.DEFAULT);
+        List<long[]> boundaries = new ArrayList<>();
+        ByteArrayOutputStream scanned = new ByteArrayOutputStream();
+        long bytesRead = chunkingService.scanStream(new ByteArrayInputStream(content), ChunkingProfile.DEFAULT,
+                new ChunkingService.ScanSink() {
+                    @Override
+                    public void update(byte[] data, int offset, int length) {
+                        scanned.write(data, offset, length);
+                    }
+
+                    @Override
+                    public void boundary(long position, int length) {
+                        assertEquals(position + length, scanned.size());
+                        boundaries.add(new long[] { position, length });
+                    }
+                });
+
+        assertEquals(content.length, bytesRead);
+        assertArrayEquals(content, scanned.toByteArray());
+        assertEquals(chunks.size(), boundaries.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(chunks.get(i).getPosition(), boundaries.get(i)[0]);
+            assertEquals(chunks.get(i).getOriginalSize(), boundaries.get(i)[1]);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.goofy.GoofyDocs.compression;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.jpountz.lz4.LZ4Factory;
+
+class ChunkEnvelopeTest {
+
+    private CompressionService compressionService;
+    private byte[] originalData;
+
+    @BeforeEach
+    void setup() {
+        compressionService = new CompressionService();
+        originalData = new byte[16 * 1024];
+        Random random = new Random(42);
+        for (int i = 0; i < originalData.length; i++) {
+            originalData[i] = (byte) (random.nextInt(4) + 'a');
+        }
+    }
+
+    @Test
+    void testEveryCodecRoundTripsThroughEnvelope() {
+        for (CompressionService.CompressionType type : CompressionService.CompressionType.values()) {
+            byte[] compressed = compressionService.compress(originalData, type);
+
+            assertTrue(ChunkEnvelope.isEnveloped(compressed));
+            ChunkEnvelope.Header header = ChunkEnvelope.read(compressed);
+            assertEquals(type, header.codec());
+            assertEquals(originalData.length, header.rawLength());
+            assertEquals(ChunkEnvelope.NO_DICTIONARY, header.dictionaryId());
+            assertEquals(originalData.length, compressionService.readOriginalLength(compressed, type));
+
+            assertArrayEquals(originalData, compressionService.decompress(compressed, type, originalData.length));
+        }
+    }
+
+    @Test
+    void testHighZstdLevelRoundTripsAndIsNoLarger() {
+        byte[] standard = compressionService.compress(originalData, CompressionService.CompressionType.ZSTD);
+        byte[] dense = compressionService.compress(originalData, CompressionService.CompressionType.ZSTD, 19);
+
+        assertTrue(dense.length <= standard.length);
+        assertArrayEquals(originalData, compressionService.decompress(dense, CompressionService.CompressionType.ZSTD,
+                originalData.length));
+    }
+
+    @Test
+    void testCorruptPayloadIsRejected() {
+        byte[] compressed = compressionService.compress(originalData, CompressionService.CompressionType.ZSTD);
+        compressed[compressed.length / 2] ^= 0x01;
+
+        assertThrows(CorruptChunkException.class,
+                () -> compressionService.decompress(compressed, CompressionService.CompressionType.ZSTD,
+                        originalData.length));
+    }
+
+    @Test
+    void testCorruptHeaderIsRejected() {
+        byte[] compressed = compressionService.compress(originalData, CompressionService.CompressionType.SNAPPY);
+        compressed[5] ^= 0x01;
+
+        assertThrows(CorruptChunkException.class, () -> ChunkEnvelope.read(compressed));
+    }
+
+    @Test
+    void testDeltaRoundTripsAgainstItsBase() {
+        byte[] edited = originalData.clone();
+        for (int i = 0; i < 64; i++) {
+            edited[i * 200] = (byte) 'z';
+        }
+
+        byte[] delta = compressionService.compressDelta(edited, originalData, 17L);
+
+        assertEquals(17L, ChunkEnvelope.peekDictionaryId(delta));
+        assertTrue(delta.length < compressionService.compress(edited, CompressionService.CompressionType.ZSTD).length);
+        assertArrayEquals(edited, compressionService.decompress(delta, CompressionService.CompressionType.ZSTD,
+                edited.length, originalData));
+        assertThrows(CorruptChunkException.class, () -> compressionService.decompress(delta,
+                CompressionService.CompressionType.ZSTD, edited.length));
+    }
+
+    @Test
+    void testLegacyLz4ChunkIsStillReadable() {
+        byte[] payload = LZ4Factory.fastestInstance().fastCompressor().compress(originalData);
+        ByteBuffer legacy = ByteBuffer.allocate(8 + payload.length);
+        legacy.putInt(originalData.length);
+        legacy.putInt(payload.length);
+        legacy.put(payload);
+
+        assertFalse(ChunkEnvelope.isEnveloped(legacy.array()));
+        assertArrayEquals(originalData,
+                compressionService.decompress(legacy.array(), CompressionService.CompressionType.LZ4, 0));
+    }
+}
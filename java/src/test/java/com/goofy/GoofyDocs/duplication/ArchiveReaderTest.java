@@ -0,0 +1,134 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+class ArchiveReaderTest {
+
+    @Test
+    void testZipEntriesAreReadInOrder() throws IOException {
+        Map<String, byte[]> files = sampleFiles();
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("docs/"));
+            zip.closeEntry();
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                zip.putNextEntry(new ZipEntry(file.getKey()));
+                zip.write(file.getValue());
+                zip.closeEntry();
+            }
+        }
+
+        assertEntries(files, read(archive.toByteArray()));
+    }
+
+    @Test
+    void testGzippedTarWithLongNameIsRead() throws IOException {
+        Map<String, byte[]> files = sampleFiles();
+        String longName = "docs/" + "nested/".repeat(20) + "report.txt";
+        files.put(longName, "long name".getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tar.write(tarHeader("docs/", 0, '5'));
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            if (file.getKey().length() > 100) {
+                byte[] name = (file.getKey() + "\0").getBytes(StandardCharsets.UTF_8);
+                tar.write(tarHeader("././@LongLink", name.length, 'L'));
+                writePadded(tar, name);
+            }
+            tar.write(tarHeader(file.getKey(), file.getValue().length, '0'));
+            writePadded(tar, file.getValue());
+        }
+        tar.write(new byte[1024]);
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(tar.toByteArray());
+        }
+
+        assertEntries(files, read(gzipped.toByteArray()));
+    }
+
+    @Test
+    void testUnknownFormatIsRejected() {
+        byte[] data = "just some text, not an archive".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () -> read(data));
+    }
+
+    private static Map<String, byte[]> sampleFiles() {
+        Random random = new Random(42);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("empty.txt", new byte[0]);
+        for (int i = 0; i < 5; i++) {
+            byte[] data = new byte[random.nextInt(5000)];
+            random.nextBytes(data);
+            files.put("docs/file-" + i + ".bin", data);
+        }
+        return files;
+    }
+
+    private static Map<String, byte[]> read(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        ArchiveReader.read(new ByteArrayInputStream(archive), (name, size, content) -> {
+            byte[] data = content.readAllBytes();
+            if (size >= 0) {
+                assertEquals(size, data.length);
+            }
+            entries.put(name, data);
+        });
+        return entries;
+    }
+
+    private static void assertEntries(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals(expected.keySet().stream().toList(), actual.keySet().stream().toList());
+        expected.forEach((name, data) -> assertArrayEquals(data, actual.get(name), name));
+    }
+
+    private static byte[] tarHeader(String name, long size, char type) {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, 0);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        putOctal(header, 148, 7, sum);
+        return header;
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = String.format("%0" + (length - 1) + "o", value);
+        System.arraycopy(octal.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    private static void writePadded(ByteArrayOutputStream out, byte[] data) throws IOException {
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+}
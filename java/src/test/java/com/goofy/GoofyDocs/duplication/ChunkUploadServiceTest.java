@@ -0,0 +1,212 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfileResolver;
+import com.goofy.GoofyDocs.chunking.ChunkingService;
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.model.UploadSessionEntity;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+import com.goofy.GoofyDocs.repository.FingerprintMatch;
+import com.goofy.GoofyDocs.repository.UploadChunk;
+import com.goofy.GoofyDocs.repository.UploadSessionRepository;
+import com.goofy.GoofyDocs.stats.DedupStatsService;
+
+class ChunkUploadServiceTest {
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileChunkRepository fileChunkRepository;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private DedupStatsService statsService;
+
+    private DuplicationService duplicationService;
+    private ChunkUploadService service;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        duplicationService = new DuplicationService(new ChunkingService(), fileRepository, chunkRepository,
+                fileChunkRepository, new CompressionService());
+        service = new ChunkUploadService(duplicationService, chunkRepository, fileRepository,
+                FileManifestService.fullManifestsOnly(fileRepository, fileChunkRepository), uploadSessionRepository,
+                statsService, ChunkingProfileResolver.defaults(), Duration.ofHours(1));
+        when(uploadSessionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void testNegotiationReportsOnlyMissingFingerprintsOnce() {
+        byte[] stored = randomBytes(1, 4096);
+        byte[] fresh = randomBytes(2, 8192);
+        byte[] storedDigest = duplicationService.fingerprint(stored, HashingAlgorithm.SHA256);
+        byte[] freshDigest = duplicationService.fingerprint(fresh, HashingAlgorithm.SHA256);
+        when(chunkRepository.findByFingerprints(eq(HashingAlgorithm.SHA256), anyCollection()))
+                .thenReturn(List.of(new FingerprintMatch(storedDigest, 7L, false, 3, stored.length, stored.length)));
+
+        UploadManifest manifest = new UploadManifest("report.log", 4096 + 8192 * 2, HashingAlgorithm.SHA256, null,
+                null, List.of(
+                        new UploadManifest.Entry(HexFormat.of().formatHex(storedDigest), 4096),
+                        new UploadManifest.Entry(HexFormat.of().formatHex(freshDigest), 8192),
+                        new UploadManifest.Entry(HexFormat.of().formatHex(freshDigest), 8192)));
+
+        Map<String, Object> status = service.createSession(manifest);
+
+        assertEquals(List.of(1), status.get("missingChunks"));
+        assertEquals(8192L, status.get("missingBytes"));
+        verify(uploadSessionRepository).insertChunks(any(), any());
+    }
+
+    @Test
+    void testManifestSizesMustMatchFileSize() {
+        UploadManifest manifest = new UploadManifest("a.bin", 10, HashingAlgorithm.SHA256, null, null,
+                List.of(new UploadManifest.Entry("00".repeat(32), 4096)));
+
+        assertThrows(IllegalArgumentException.class, () -> service.createSession(manifest));
+    }
+
+    @Test
+    void testChunkBodyMustMatchFingerprint() {
+        byte[] expected = randomBytes(3, 4096);
+        byte[] tampered = randomBytes(4, 4096);
+        UploadSessionEntity session = session("upload-1");
+        when(uploadSessionRepository.findById("upload-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.findChunk("upload-1", 0)).thenReturn(Optional.of(
+                new UploadChunk(0, duplicationService.fingerprint(expected, HashingAlgorithm.SHA256), 4096)));
+
+        assertThrows(IllegalArgumentException.class, () -> service.uploadChunk("upload-1", 0, tampered));
+        verify(chunkRepository, never()).insertIfAbsent(any(), any(), any(), any(), anyInt(), any());
+
+        when(chunkRepository.findByFingerprint(any(), any())).thenReturn(Optional.empty());
+        when(chunkRepository.insertIfAbsent(any(), any(), any(), any(), anyInt(), any())).thenReturn(Optional.of(9L));
+
+        Map<String, Object> result = service.uploadChunk("upload-1", 0, expected).orElseThrow();
+        assertTrue((Boolean) result.get("stored"));
+        verify(chunkRepository).insertIfAbsent(eq(HashingAlgorithm.SHA256), any(), eq(expected), eq(null), eq(4096),
+                eq(session.getExpiresAt()));
+    }
+
+    @Test
+    void testCommitWithMissingChunksIsRejected() {
+        byte[] data = randomBytes(5, 4096);
+        UploadSessionEntity session = session("upload-2");
+        when(uploadSessionRepository.findByIdForUpdate("upload-2")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.findChunks("upload-2")).thenReturn(List.of(
+                new UploadChunk(0, duplicationService.fingerprint(data, HashingAlgorithm.SHA256), 4096)));
+        when(chunkRepository.findByFingerprints(any(), anyCollection())).thenReturn(List.of());
+
+        IncompleteUploadException e = assertThrows(IncompleteUploadException.class,
+                () -> service.commit("upload-2"));
+        assertEquals(List.of(0), e.getMissingChunks());
+        verify(fileRepository, never()).save(any());
+    }
+
+    @Test
+    void testCommitRevivesMarkedChunksInOneStatement() {
+        byte[] first = randomBytes(6, 4096);
+        byte[] second = randomBytes(7, 4096);
+        byte[] firstDigest = duplicationService.fingerprint(first, HashingAlgorithm.SHA256);
+        byte[] secondDigest = duplicationService.fingerprint(second, HashingAlgorithm.SHA256);
+        UploadSessionEntity session = session("upload-3");
+        session.setFileSize(3 * 4096L);
+        when(uploadSessionRepository.findByIdForUpdate("upload-3")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.findChunks("upload-3")).thenReturn(List.of(
+                new UploadChunk(0, secondDigest, 4096),
+                new UploadChunk(1, firstDigest, 4096),
+                new UploadChunk(2, secondDigest, 4096)));
+        when(chunkRepository.findByFingerprints(any(), anyCollection())).thenReturn(List.of(
+                new FingerprintMatch(firstDigest, 7L, true, 0, 4096, 4096),
+                new FingerprintMatch(secondDigest, 8L, true, 0, 4096, 4096)));
+        when(chunkRepository.reviveChunks(any())).thenReturn(2);
+        when(fileRepository.save(any())).thenAnswer(invocation -> {
+            FileEntity entity = invocation.getArgument(0);
+            entity.setId(1L);
+            return entity;
+        });
+
+        Map<String, Object> result = service.commit("upload-3").orElseThrow();
+
+        assertEquals(1L, result.get("fileId"));
+        verify(chunkRepository).reviveChunks(aryEq(new long[] { 7, 8 }));
+        verify(chunkRepository, never()).clearOrphanedMark(anyLong());
+    }
+
+    @Test
+    void testCommitReportsMarkedChunksCollectedMeanwhile() {
+        byte[] first = randomBytes(8, 4096);
+        byte[] second = randomBytes(9, 4096);
+        byte[] firstDigest = duplicationService.fingerprint(first, HashingAlgorithm.SHA256);
+        byte[] secondDigest = duplicationService.fingerprint(second, HashingAlgorithm.SHA256);
+        UploadSessionEntity session = session("upload-4");
+        session.setFileSize(2 * 4096L);
+        when(uploadSessionRepository.findByIdForUpdate("upload-4")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.findChunks("upload-4")).thenReturn(List.of(
+                new UploadChunk(0, firstDigest, 4096),
+                new UploadChunk(1, secondDigest, 4096)));
+        // Chunk 8 is swept between the lookup and the revival
+        when(chunkRepository.findByFingerprints(any(), anyCollection()))
+                .thenReturn(List.of(
+                        new FingerprintMatch(firstDigest, 7L, false, 1, 4096, 4096),
+                        new FingerprintMatch(secondDigest, 8L, true, 0, 4096, 4096)))
+                .thenReturn(List.of(new FingerprintMatch(firstDigest, 7L, false, 1, 4096, 4096)));
+        when(chunkRepository.reviveChunks(any())).thenReturn(0);
+
+        IncompleteUploadException e = assertThrows(IncompleteUploadException.class,
+                () -> service.commit("upload-4"));
+        assertEquals(List.of(1), e.getMissingChunks());
+        verify(fileRepository, never()).save(any());
+    }
+
+    private static UploadSessionEntity session(String id) {
+        UploadSessionEntity session = new UploadSessionEntity();
+        session.setId(id);
+        session.setFileName("data.bin");
+        session.setFileSize(4096L);
+        session.setAlgorithm(HashingAlgorithm.SHA256.name());
+        session.setChunkingProfile((short) 1);
+        session.setChunkCount(1);
+        session.setExpiresAt(LocalDateTime.now().plusHours(1));
+        return session;
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,60 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class DigestTableTest {
+
+    @Test
+    void testCountsAndFirstOccurrences() {
+        Random random = new Random(42);
+        DigestTable table = new DigestTable(32, 16);
+        Map<String, int[]> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            // Digests sharing their first bytes still have to be told apart
+            byte[] digest = ByteBuffer.allocate(32).putInt(7).putLong(random.nextInt(40_000)).array();
+            String hex = HexFormat.of().formatHex(digest);
+            int[] entry = expected.computeIfAbsent(hex, key -> new int[] { 0, 0 });
+            if (entry[0] == 0) {
+                entry[1] = i;
+            }
+            entry[0]++;
+            assertEquals(entry[0], table.add(digest, i));
+        }
+
+        assertEquals(expected.size(), table.size());
+        List<String> order = new ArrayList<>();
+        table.forEach((digest, count, firstIndex) -> {
+            String hex = HexFormat.of().formatHex(digest);
+            order.add(hex);
+            assertEquals(expected.get(hex)[0], count);
+            assertEquals(expected.get(hex)[1], firstIndex);
+        });
+        assertEquals(List.copyOf(expected.keySet()), order);
+    }
+
+    @Test
+    void testStoredBytesCountEveryOccurrence() {
+        DigestTable table = new DigestTable(20, 4);
+        byte[] first = ByteBuffer.allocate(20).putInt(1).array();
+        byte[] second = ByteBuffer.allocate(20).putInt(2).array();
+        table.add(first, 0, 100);
+        table.add(second, 1, 30);
+        table.add(first, 2, 100);
+
+        assertTrue(table.markStored(first));
+        assertFalse(table.markStored(ByteBuffer.allocate(20).putInt(3).array()));
+        assertEquals(1, table.storedCount());
+        assertEquals(200, table.storedBytes());
+    }
+}
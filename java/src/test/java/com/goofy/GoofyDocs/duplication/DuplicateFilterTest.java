@@ -0,0 +1,96 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.Test;
+
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
+
+class DuplicateFilterTest {
+
+    private final FingerprintHasher hasher = FingerprintHasher.defaults();
+
+    @Test
+    void testRepeatedChunksReuseTheirDigest() {
+        AtomicInteger computed = new AtomicInteger();
+        DuplicateFilter filter = new DuplicateFilter(1024 * 1024, data -> {
+            computed.incrementAndGet();
+            return hasher.hash(HashingAlgorithm.SHA256, data);
+        }, IngestMetrics.noop());
+
+        byte[] first = randomChunk(1, 8192);
+        byte[] second = randomChunk(2, 8192);
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(hasher.hash(HashingAlgorithm.SHA256, first), filter.fingerprint(first.clone()));
+            assertArrayEquals(hasher.hash(HashingAlgorithm.SHA256, second), filter.fingerprint(second.clone()));
+        }
+
+        assertEquals(2, computed.get());
+        assertEquals(18, filter.hits());
+    }
+
+    @Test
+    void testEvictedChunksAreHashedAgain() {
+        AtomicInteger computed = new AtomicInteger();
+        DuplicateFilter filter = new DuplicateFilter(10_000, data -> {
+            computed.incrementAndGet();
+            return hasher.hash(HashingAlgorithm.BLAKE3, data);
+        }, IngestMetrics.noop());
+
+        byte[] first = randomChunk(1, 6000);
+        filter.fingerprint(first);
+        filter.fingerprint(randomChunk(2, 6000));
+        filter.fingerprint(first);
+
+        assertEquals(3, computed.get());
+        assertEquals(0, filter.hits());
+    }
+
+    @Test
+    void testDisabledFilterHashesEveryChunk() {
+        AtomicInteger computed = new AtomicInteger();
+        DuplicateFilter filter = new DuplicateFilter(0, data -> {
+            computed.incrementAndGet();
+            return hasher.hash(HashingAlgorithm.SHA1, data);
+        }, IngestMetrics.noop());
+
+        byte[] chunk = randomChunk(3, 4096);
+        filter.fingerprint(chunk);
+        filter.fingerprint(chunk);
+
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    void testRepeatWaitsForTheDigestOfItsEarlierCopy() {
+        AtomicInteger computed = new AtomicInteger();
+        List<Runnable> queued = new ArrayList<>();
+        DuplicateFilter filter = new DuplicateFilter(1024 * 1024, data -> {
+            computed.incrementAndGet();
+            return hasher.hash(HashingAlgorithm.SHA256, data);
+        }, queued::add, IngestMetrics.noop());
+
+        byte[] chunk = randomChunk(4, 8192);
+        CompletableFuture<byte[]> first = filter.submit(chunk);
+        CompletableFuture<byte[]> repeat = filter.submit(chunk.clone());
+        assertFalse(repeat.isDone());
+        queued.forEach(Runnable::run);
+
+        assertEquals(1, computed.get());
+        assertArrayEquals(hasher.hash(HashingAlgorithm.SHA256, chunk), DuplicateFilter.await(first));
+        assertArrayEquals(hasher.hash(HashingAlgorithm.SHA256, chunk), DuplicateFilter.await(repeat));
+    }
+
+    private static byte[] randomChunk(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -18,7 +17,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -38,7 +37,7 @@ class DuplicationPerformanceTest {
     private ChunkingService chunkingService;
 
     @BeforeEach
-    void setup() throws NoSuchAlgorithmException {
+    void setup() {
         chunkingService = new ChunkingService();
         duplicationService = new DuplicationService(chunkingService);
     }
@@ -98,14 +97,10 @@ class DuplicationPerformanceTest {
         });
 
         ChunkRepository chunkRepo = mock(ChunkRepository.class);
-        when(chunkRepo.findByHashSha1(anyString())).thenReturn(Optional.empty());
-        when(chunkRepo.findByHashSha256(anyString())).thenReturn(Optional.empty());
-        when(chunkRepo.findByHashBlake3(anyString())).thenReturn(Optional.empty());
-        when(chunkRepo.save(any(ChunkEntity.class))).thenAnswer(invocation -> {
-            ChunkEntity entity = invocation.getArgument(0);
-            entity.setId(1L);
-            return entity;
-        });
+        when(chunkRepo.findByFingerprint(any(HashingAlgorithm.class), any(byte[].class))).thenReturn(Optional.empty());
+        when(chunkRepo.insertIfAbsent(any(HashingAlgorithm.class), any(byte[].class), any(byte[].class), any(),
+                anyInt())).thenReturn(Optional.of(1L));
+        when(chunkRepo.getReferenceById(1L)).thenReturn(new ChunkEntity());
 
         FileChunkRepository fileChunkRepo = mock(FileChunkRepository.class);
         when(fileChunkRepo.save(any(FileChunkEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
@@ -0,0 +1,214 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyDocs.chunking.ChunkingProfileResolver;
+import com.goofy.GoofyDocs.chunking.ChunkingService;
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.repository.ChunkReference;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+import com.goofy.GoofyDocs.segment.SegmentIndex;
+import com.goofy.GoofyDocs.segment.SegmentRepository;
+
+class DuplicationServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private FileChunkRepository fileChunkRepository;
+
+    @Mock
+    private SegmentRepository segmentRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ChunkingService chunkingService = new ChunkingService();
+    private final Map<String, Long> storedChunks = new HashMap<>();
+    private final List<ChunkManifest> manifests = new ArrayList<>();
+    private final Set<Long> released = new HashSet<>();
+    private int inserts;
+    private int failingInsert;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> {
+            FileEntity entity = invocation.getArgument(0);
+            entity.setId(1L);
+            return entity;
+        });
+        doAnswer(invocation -> manifests.add(invocation.getArgument(1)))
+                .when(fileChunkRepository).insertManifest(anyLong(), any());
+
+        when(chunkRepository.findByFingerprint(any(), any())).thenAnswer(invocation -> Optional
+                .ofNullable(storedChunks.get(HexFormat.of().formatHex(invocation.<byte[]>getArgument(1))))
+                .map(id -> new ChunkReference(id, false)));
+        when(chunkRepository.insertIfAbsent(any(), any(), any(), any(), anyInt(), any())).thenAnswer(invocation -> {
+            if (++inserts == failingInsert) {
+                throw new IllegalStateException("Connection lost");
+            }
+            String hex = HexFormat.of().formatHex(invocation.<byte[]>getArgument(1));
+            if (storedChunks.containsKey(hex)) {
+                return Optional.empty();
+            }
+            long id = storedChunks.size() + 1;
+            storedChunks.put(hex, id);
+            return Optional.of(id);
+        });
+        when(chunkRepository.reviveChunks(any())).thenAnswer(invocation -> invocation.<long[]>getArgument(0).length);
+        when(chunkRepository.markOrphaned(any(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            released.addAll(ids);
+            return ids.size();
+        });
+        when(segmentRepository.findByFingerprint(any(), any())).thenReturn(Optional.empty());
+        when(segmentRepository.findChampions(any(), anyList(), anyInt())).thenReturn(List.of());
+    }
+
+    @Test
+    void testFailureMidFileReleasesTheLeasedChunksAndSavesNoFile(@TempDir Path tempDir) throws IOException {
+        File file = createTestFile(tempDir);
+        failingInsert = 6;
+        DuplicationService service = service(4, false);
+
+        assertThrows(IllegalStateException.class,
+                () -> service.processAndStoreFile(file, file.getName(), file.length(), HashingAlgorithm.SHA256));
+
+        verify(fileRepository, never()).save(any(FileEntity.class));
+        verify(fileChunkRepository, never()).insertManifest(anyLong(), any());
+        verify(chunkRepository, never()).incrementReferenceCounts(any());
+        // Every chunk stored before the failure is handed back to the GC
+        assertEquals(LongStream.rangeClosed(1, 5).boxed().collect(Collectors.toSet()), released);
+    }
+
+    @Test
+    void testLastBatchConsumesTheTrailingSegment(@TempDir Path tempDir) throws IOException {
+        File file = createTestFile(tempDir);
+        int chunks = chunkingService.chunkFile(file).size();
+
+        Map<String, Object> result = service(4, true)
+                .processAndStoreFile(file, file.getName(), file.length(), HashingAlgorithm.SHA256);
+
+        assertEquals(chunks, result.get("totalChunks"));
+        assertEquals(1, manifests.size());
+        assertEquals(chunks, manifests.get(0).size());
+        assertEquals(file.length(), manifests.get(0).totalSize());
+        assertTrue(released.isEmpty());
+    }
+
+    @Test
+    void testBatchedIngestMatchesOneTransaction(@TempDir Path tempDir) throws IOException {
+        File file = createTestFile(tempDir);
+
+        Map<String, Object> single = service(100_000, true)
+                .processAndStoreFile(file, file.getName(), file.length(), HashingAlgorithm.SHA256);
+        storedChunks.clear();
+        Map<String, Object> batched = service(4, true)
+                .processAndStoreFile(file, file.getName(), file.length(), HashingAlgorithm.SHA256);
+
+        assertTrue((Integer) single.get("duplicateChunks") > 0);
+        for (String key : List.of("totalChunks", "uniqueChunks", "duplicateChunks", "savedStorage",
+                "manifestEntries")) {
+            assertEquals(single.get(key), batched.get(key), key);
+        }
+        assertEquals(2, manifests.size());
+        assertArrayEquals(chunkIds(manifests.get(0)), chunkIds(manifests.get(1)));
+        verify(chunkRepository, never()).markOrphaned(any(), any());
+    }
+
+    @Test
+    void testMissingParentIsDroppedOnlyWhenNotRequired() {
+        DuplicationService service = service(4, false);
+        when(fileRepository.findById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.prepare("v2.txt", 10, HashingAlgorithm.SHA256, null, 99L));
+        IngestResult resumed = service.prepare("v2.txt", 10, HashingAlgorithm.SHA256, null, 99L, false);
+
+        assertNull(resumed.fileEntity.getParentId());
+    }
+
+    private DuplicationService service(int batchChunks, boolean segmented) {
+        SegmentIndex segmentIndex = new SegmentIndex(segmentRepository, chunkRepository, segmented, 4, 0, 2);
+        return new DuplicationService(chunkingService, fileRepository, chunkRepository, fileChunkRepository,
+                new CompressionService(), IngestMetrics.noop(), null, null, ChunkingProfileResolver.defaults(),
+                FileManifestService.fullManifestsOnly(fileRepository, fileChunkRepository), segmentIndex, null,
+                transactionManager, batchChunks, Duration.ofHours(1), FingerprintHasher.defaults(),
+                DataSize.ofBytes(0), 2);
+    }
+
+    private static long[] chunkIds(ChunkManifest manifest) {
+        long[] ids = new long[manifest.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = manifest.chunkId(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Two random blocks separated by zero runs, laid out as a z b z a z. Boundaries chain from the previous
+     * one, so the repeated random block is cut differently; the zero runs are what the file repeats.
+     */
+    private static File createTestFile(Path tempDir) throws IOException {
+        Random random = new Random(42);
+        byte[][] blocks = new byte[3][64 * 1024];
+        random.nextBytes(blocks[0]);
+        random.nextBytes(blocks[1]);
+        byte[] content = new byte[6 * blocks[0].length];
+        int[] layout = { 0, 2, 1, 2, 0, 2 };
+        for (int i = 0; i < layout.length; i++) {
+            System.arraycopy(blocks[layout[i]], 0, content, i * blocks[0].length, blocks[0].length);
+        }
+        Path file = tempDir.resolve("report.bin");
+        Files.write(file, content);
+        return file.toFile();
+    }
+}
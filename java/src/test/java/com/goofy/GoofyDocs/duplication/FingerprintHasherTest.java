@@ -0,0 +1,52 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.Blake3;
+import org.springframework.util.unit.DataSize;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.hash.Hashing;
+
+class FingerprintHasherTest {
+
+    @Test
+    void testDigestsMatchTheStoredFingerprints() {
+        FingerprintHasher hasher = new FingerprintHasher(DataSize.ofKilobytes(256));
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+
+        assertArrayEquals(Hashing.hmacSha1("key".getBytes()).hashBytes(data).asBytes(),
+                hasher.hash(HashingAlgorithm.SHA1, data), "SHA1");
+        assertArrayEquals(Hashing.sha256().hashBytes(data).asBytes(),
+                hasher.hash(HashingAlgorithm.SHA256, data), "SHA256");
+        assertArrayEquals(Blake3.hash(data), hasher.hash(HashingAlgorithm.BLAKE3, data), "BLAKE3");
+    }
+
+    @Test
+    void testSlicesAndBuffersHashLikeArrays() {
+        FingerprintHasher hasher = FingerprintHasher.defaults();
+        byte[] data = new byte[50_000];
+        new Random(7).nextBytes(data);
+
+        for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+            byte[] expected = hasher.hash(algorithm, data);
+
+            FingerprintHasher.Hasher incremental = hasher.newHasher(algorithm);
+            incremental.update(data, 0, 1000);
+            incremental.update(data, 1000, data.length - 1000);
+            assertArrayEquals(expected, incremental.digest(), algorithm.name());
+
+            byte[] padded = new byte[data.length + 20];
+            System.arraycopy(data, 0, padded, 10, data.length);
+            ByteBuffer slice = ByteBuffer.wrap(padded, 10, data.length).slice();
+            assertArrayEquals(expected, hasher.hash(algorithm, slice), algorithm.name());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+            assertArrayEquals(expected, hasher.hash(algorithm, direct), algorithm.name());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.goofy.GoofyDocs.duplication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.goofy.GoofyDocs.chunking.Chunk;
+import com.goofy.GoofyDocs.chunking.ChunkingProfile;
+import com.goofy.GoofyDocs.chunking.ChunkingService;
+import com.goofy.GoofyDocs.manifest.ChunkCounts;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.model.IngestJobEntity;
+import com.goofy.GoofyDocs.repository.IngestJobRepository;
+
+class IngestJobServiceTest {
+
+    private static final int BATCH_CHUNKS = 4;
+
+    @Mock
+    private DuplicationService duplicationService;
+
+    @Mock
+    private IngestJobRepository jobRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path tempDir;
+
+    // The ingest_job rows and their committed batches, as the job queries see them
+    private final Map<String, IngestJobEntity> jobs = new HashMap<>();
+    private final Map<String, List<byte[]>> batches = new HashMap<>();
+    private final Map<String, Long> chunkIds = new HashMap<>();
+    private int locks;
+    private int takenOverAtLock;
+    private int storedBatches;
+    private int failingBatch;
+    private IngestJobService service;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        service = new IngestJobService(duplicationService, new ChunkingService(), jobRepository, transactionManager,
+                tempDir.toString(), 1, 4, BATCH_CHUNKS, Duration.ofHours(24), Duration.ofMinutes(5));
+
+        when(jobRepository.claim(anyString(), any(), any())).thenReturn(1);
+        when(jobRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(jobs.get(invocation.<String>getArgument(0))));
+        when(jobRepository.findByIdForUpdate(anyString())).thenAnswer(invocation -> {
+            IngestJobEntity job = jobs.get(invocation.<String>getArgument(0));
+            // Another worker resumed the job after it looked stale and committed a batch of its own
+            if (++locks == takenOverAtLock) {
+                IngestJobEntity takenOver = copy(job);
+                takenOver.setBatches(job.getBatches() + 1);
+                return Optional.of(takenOver);
+            }
+            return Optional.ofNullable(job);
+        });
+        when(jobRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        doAnswer(invocation -> batches.computeIfAbsent(invocation.getArgument(0), id -> new ArrayList<>())
+                .add(invocation.getArgument(2)))
+                .when(jobRepository).insertBatch(anyString(), anyInt(), any());
+        when(jobRepository.findBatches(anyString()))
+                .thenAnswer(invocation -> batches.getOrDefault(invocation.<String>getArgument(0), List.of()));
+        when(jobRepository.deleteBatches(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(batches.remove(invocation.<String>getArgument(0)))
+                        .map(List::size).orElse(0));
+
+        when(duplicationService.prepare(anyString(), anyLong(), any(), any(), any(), anyBoolean()))
+                .thenAnswer(invocation -> new IngestResult(new FileEntity(), invocation.getArgument(2),
+                        invocation.getArgument(3)));
+        when(duplicationService.pendingChunks(any())).thenAnswer(invocation -> new PendingChunks(
+                new DuplicateFilter(0, IngestJobServiceTest::digest, Runnable::run, null), BATCH_CHUNKS));
+        // Each distinct chunk gets one id, whichever job stores it
+        when(duplicationService.storeChunks(anyList(), anyList(), anyBoolean(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    if (++storedBatches == failingBatch) {
+                        throw new IllegalStateException("Connection lost");
+                    }
+                    List<Chunk> chunks = invocation.getArgument(0);
+                    List<byte[]> digests = invocation.getArgument(1);
+                    IngestResult result = invocation.getArgument(5);
+                    ChunkManifest.Builder manifest = invocation.getArgument(6);
+                    for (int i = 0; i < chunks.size(); i++) {
+                        long chunkId = chunkIds.computeIfAbsent(HexFormat.of().formatHex(digests.get(i)),
+                                hex -> chunkIds.size() + 1L);
+                        manifest.add(chunkId, chunks.get(i).getOriginalSize());
+                    }
+                    result.totalChunks += chunks.size();
+                    return chunks.size();
+                });
+    }
+
+    @Test
+    void testResumedJobProducesTheSameManifest() throws IOException {
+        byte[] content = randomBytes(1, 192 * 1024);
+        job("straight", content, null);
+        service.run("straight");
+        ChunkManifest expected = finishedManifest();
+        assertTrue(expected.size() > 3 * BATCH_CHUNKS);
+
+        job("resumed", content, null);
+        takenOverAtLock = locks + 3;
+        service.run("resumed");
+        IngestJobEntity interrupted = jobs.get("resumed");
+        assertEquals(2, interrupted.getBatches());
+        assertTrue(interrupted.getBytesChunked() > 0 && interrupted.getBytesChunked() < content.length);
+
+        // Its heartbeat went stale, so a worker claims it again and picks up at the last committed batch
+        service.run("resumed");
+
+        ArgumentCaptor<ChunkManifest> manifests = ArgumentCaptor.forClass(ChunkManifest.class);
+        verify(duplicationService, times(2)).finish(any(), manifests.capture(), eq(true));
+        assertArrayEquals(expected.encode(), manifests.getValue().encode());
+        assertEquals(expected.size(), jobs.get("resumed").getTotalChunks());
+        assertEquals(IngestJobEntity.Status.COMPLETED, jobs.get("resumed").getStatus());
+        assertFalse(batches.containsKey("resumed"));
+    }
+
+    @Test
+    void testWorkerStopsWhenTheJobWasTakenOver() throws IOException {
+        job("fenced", randomBytes(2, 128 * 1024), null);
+        takenOverAtLock = 2;
+
+        service.run("fenced");
+
+        IngestJobEntity job = jobs.get("fenced");
+        assertEquals(IngestJobEntity.Status.RUNNING, job.getStatus());
+        assertEquals(1, job.getBatches());
+        assertEquals(1, batches.get("fenced").size());
+        verify(duplicationService, never()).finish(any(), any(), anyBoolean());
+        verify(duplicationService, never()).release(any());
+    }
+
+    @Test
+    void testFailedJobReleasesItsBatches() throws IOException {
+        job("failing", randomBytes(3, 128 * 1024), null);
+        failingBatch = 3;
+
+        service.run("failing");
+
+        IngestJobEntity job = jobs.get("failing");
+        assertEquals(IngestJobEntity.Status.FAILED, job.getStatus());
+        assertEquals("Connection lost", job.getError());
+        ArgumentCaptor<ChunkCounts> released = ArgumentCaptor.forClass(ChunkCounts.class);
+        verify(duplicationService).release(released.capture());
+        assertEquals(chunkIds.size(), released.getValue().size());
+        assertFalse(batches.containsKey("failing"));
+        assertFalse(Files.exists(Path.of(job.getSpoolPath())));
+    }
+
+    @Test
+    void testResumedJobToleratesADeletedParent() throws IOException {
+        job("versioned", randomBytes(4, 16 * 1024), 99L);
+
+        service.run("versioned");
+
+        verify(duplicationService).prepare(eq("versioned.bin"), anyLong(), any(), any(), eq(99L), eq(false));
+        assertEquals(IngestJobEntity.Status.COMPLETED, jobs.get("versioned").getStatus());
+    }
+
+    private ChunkManifest finishedManifest() {
+        ArgumentCaptor<ChunkManifest> manifest = ArgumentCaptor.forClass(ChunkManifest.class);
+        verify(duplicationService).finish(any(), manifest.capture(), eq(true));
+        return manifest.getValue();
+    }
+
+    private void job(String id, byte[] content, Long parentId) throws IOException {
+        Path spool = tempDir.resolve(id + ".upload");
+        Files.write(spool, content);
+        IngestJobEntity job = new IngestJobEntity();
+        job.setId(id);
+        job.setStatus(IngestJobEntity.Status.RUNNING);
+        job.setFileName(id + ".bin");
+        job.setFileSize((long) content.length);
+        job.setSpoolPath(spool.toString());
+        job.setAlgorithm(HashingAlgorithm.SHA256.name());
+        job.setChunkingProfile(ChunkingProfile.SMALL.getId());
+        job.setParentId(parentId);
+        job.setUpdatedAt(LocalDateTime.now());
+        job.setExpiresAt(LocalDateTime.now().plusHours(24));
+        jobs.put(id, job);
+    }
+
+    private static IngestJobEntity copy(IngestJobEntity job) {
+        IngestJobEntity copy = new IngestJobEntity();
+        copy.setId(job.getId());
+        copy.setStatus(job.getStatus());
+        copy.setBatches(job.getBatches());
+        copy.setBytesChunked(job.getBytesChunked());
+        return copy;
+    }
+
+    private static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,195 @@
+package com.goofy.GoofyDocs.gc;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.store.ChunkStore;
+
+class ChunkGarbageCollectorTest {
+
+    private static final Duration GRACE_PERIOD = Duration.ofHours(1);
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // The chunk table as the GC queries see it; the stubs below mirror their SQL conditions
+    private final Map<Long, Row> chunks = new TreeMap<>();
+    private Runnable afterCandidatesListed = () -> {
+    };
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(chunkRepository.findOrphanedBefore(any(), anyInt())).thenAnswer(invocation -> {
+            LocalDateTime cutoff = invocation.getArgument(0);
+            List<Long> candidates = chunks.entrySet().stream()
+                    .filter(entry -> entry.getValue().orphanedAt != null
+                            && entry.getValue().orphanedAt.isBefore(cutoff))
+                    .sorted(Comparator.comparing(entry -> entry.getValue().orphanedAt))
+                    .limit(invocation.<Integer>getArgument(1))
+                    .map(Map.Entry::getKey)
+                    .toList();
+            afterCandidatesListed.run();
+            return candidates;
+        });
+        when(chunkRepository.clearOrphanedMarkIfReferenced(anyCollection())).thenAnswer(invocation -> {
+            int cleared = 0;
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                Row row = chunks.get(id);
+                if (row != null && isReferenced(id)) {
+                    row.orphanedAt = null;
+                    cleared++;
+                }
+            }
+            return cleared;
+        });
+        when(chunkRepository.findBaseChunkIds(anyCollection())).thenAnswer(invocation -> invocation
+                .<Collection<Long>>getArgument(0).stream()
+                .map(chunks::get)
+                .filter(Objects::nonNull)
+                .map(row -> row.baseId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList());
+        when(chunkRepository.deleteOrphaned(anyCollection(), any())).thenAnswer(invocation -> {
+            LocalDateTime cutoff = invocation.getArgument(1);
+            List<Long> deleted = new ArrayList<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                Row row = chunks.get(id);
+                if (row != null && row.orphanedAt != null && row.orphanedAt.isBefore(cutoff) && !isReferenced(id)) {
+                    deleted.add(id);
+                }
+            }
+            deleted.forEach(chunks::remove);
+            return deleted.size();
+        });
+        when(chunkRepository.markOrphaned(anyCollection(), any())).thenAnswer(invocation -> {
+            int marked = 0;
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                Row row = chunks.get(id);
+                if (row != null && row.orphanedAt == null && !isReferenced(id)) {
+                    row.orphanedAt = invocation.getArgument(1);
+                    marked++;
+                }
+            }
+            return marked;
+        });
+    }
+
+    @Test
+    void testSweepLeavesAChunkWhoseMarkWasDeferred() {
+        LocalDateTime markedAt = LocalDateTime.now().minusHours(2);
+        LocalDateTime lease = LocalDateTime.now().plusHours(1);
+        chunks.put(1L, new Row(markedAt, false, null));
+        chunks.put(2L, new Row(markedAt, false, null));
+        // An upload reuses chunk 2 between the candidate query and the delete, deferring its mark to its lease
+        afterCandidatesListed = () -> {
+            chunks.get(2L).orphanedAt = lease;
+            afterCandidatesListed = () -> {
+            };
+        };
+
+        collector(ChunkStore.database()).collect();
+
+        assertFalse(chunks.containsKey(1L));
+        assertTrue(chunks.containsKey(2L));
+        assertEquals(lease, chunks.get(2L).orphanedAt);
+
+        collector(ChunkStore.database()).collect();
+        assertTrue(chunks.containsKey(2L));
+    }
+
+    @Test
+    void testReReferencedChunkIsRescued() {
+        // Marked when its last file went away, then referenced again by an upload that committed before the sweep
+        chunks.put(3L, new Row(LocalDateTime.now().minusHours(2), true, null));
+
+        collector(ChunkStore.database()).collect();
+
+        assertTrue(chunks.containsKey(3L));
+        assertNull(chunks.get(3L).orphanedAt);
+    }
+
+    @Test
+    void testBasesOfSweptDeltaChunksAreMarked() {
+        LocalDateTime markedAt = LocalDateTime.now().minusHours(2);
+        chunks.put(4L, new Row(null, false, null));
+        chunks.put(5L, new Row(markedAt, false, 4L));
+        // Base 6 keeps a live delta, so it must not be marked when its other delta goes
+        chunks.put(6L, new Row(null, false, null));
+        chunks.put(7L, new Row(markedAt, false, 6L));
+        chunks.put(8L, new Row(null, true, 6L));
+        LocalDateTime start = LocalDateTime.now();
+
+        collector(ChunkStore.database()).collect();
+
+        assertFalse(chunks.containsKey(5L));
+        assertFalse(chunks.containsKey(7L));
+        // The base starts its own grace period rather than going in the same run
+        assertNotNull(chunks.get(4L).orphanedAt);
+        assertFalse(chunks.get(4L).orphanedAt.isBefore(start));
+        assertNull(chunks.get(6L).orphanedAt);
+        assertTrue(chunks.containsKey(8L));
+    }
+
+    @Test
+    void testUnreferencedPacksAreCollectedAfterTheChunks() {
+        ChunkStore chunkStore = mock(ChunkStore.class);
+        when(chunkStore.isExternal()).thenReturn(true);
+
+        collector(chunkStore).collect();
+
+        verify(chunkStore).collectPacks(any(), eq(500));
+    }
+
+    private ChunkGarbageCollector collector(ChunkStore chunkStore) {
+        return new ChunkGarbageCollector(chunkRepository, chunkStore, transactionManager, GRACE_PERIOD, 500, 20,
+                Duration.ZERO);
+    }
+
+    private boolean isReferenced(Long id) {
+        Row row = chunks.get(id);
+        return row.referenced || chunks.values().stream().anyMatch(other -> id.equals(other.baseId));
+    }
+
+    private static final class Row {
+        LocalDateTime orphanedAt;
+        final boolean referenced;
+        final Long baseId;
+
+        Row(LocalDateTime orphanedAt, boolean referenced, Long baseId) {
+            this.orphanedAt = orphanedAt;
+            this.referenced = referenced;
+            this.baseId = baseId;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class ChunkCountsTest {
+
+    @Test
+    void testCountsMatchAHashMap() {
+        Random random = new Random(42);
+        ChunkCounts counts = new ChunkCounts();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Mostly sequential ids, as the chunk sequence hands them out, with repeats
+            long chunkId = 1 + (random.nextInt(4) == 0 ? random.nextInt(1000) : 1_000_000 + i);
+            int delta = 1 + random.nextInt(3);
+            assertEquals((int) expected.merge(chunkId, delta, Integer::sum), counts.add(chunkId, delta));
+        }
+
+        assertEquals(expected.size(), counts.size());
+        assertEquals(expected.values().stream().mapToLong(Integer::longValue).sum(), counts.total());
+        expected.forEach((chunkId, count) -> assertEquals(count, counts.get(chunkId)));
+        assertEquals(0, counts.get(999_999_999L));
+        assertFalse(counts.contains(999_999_999L));
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), counts.sortedIds());
+    }
+
+    @Test
+    void testHomeSlotsCoverTablesBeyondTwentyFourBits() {
+        int mask = (1 << 28) - 1;
+        boolean[] regions = new boolean[16];
+        for (long chunkId = 1; chunkId <= 10_000; chunkId++) {
+            regions[ChunkCounts.home(chunkId, mask) >>> 24] = true;
+        }
+
+        // Sequential ids land in every 2^24-slot region of a 2^28-slot table, not only the first
+        for (int region = 0; region < regions.length; region++) {
+            assertTrue(regions[region], "region " + region);
+        }
+    }
+
+    @Test
+    void testManifestReferenceCounts() {
+        ChunkManifest manifest = ChunkManifest.builder(4).add(7, 10).add(3, 10).add(7, 10).add(9, 5).build();
+        ChunkCounts counts = manifest.referenceCounts();
+
+        assertEquals(3, counts.size());
+        assertEquals(2, counts.get(7));
+        assertEquals(4, counts.total());
+        assertArrayEquals(new long[] { 3, 7, 9 }, counts.sortedIds());
+    }
+}
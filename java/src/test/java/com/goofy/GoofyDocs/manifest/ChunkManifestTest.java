@@ -0,0 +1,69 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class ChunkManifestTest {
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        Random random = new Random(42);
+        ChunkManifest.Builder builder = ChunkManifest.builder(0);
+        long chunkId = 1_000_000L;
+        for (int i = 0; i < 10_000; i++) {
+            // Mostly consecutive ids, with the occasional jump backwards to an older chunk
+            chunkId = random.nextInt(10) == 0 ? random.nextInt(1_000_000) : chunkId + 1;
+            builder.add(chunkId, 4096 + random.nextInt(60_000));
+        }
+        ChunkManifest manifest = builder.build();
+
+        byte[] encoded = manifest.encode();
+        ChunkManifest decoded = ChunkManifest.decode(encoded);
+
+        assertTrue(encoded.length < manifest.size() * 6, "Encoded manifest takes " + encoded.length + " bytes");
+        assertEquals(manifest.size(), decoded.size());
+        assertEquals(manifest.totalSize(), decoded.totalSize());
+        for (int i = 0; i < manifest.size(); i++) {
+            assertEquals(manifest.chunkId(i), decoded.chunkId(i));
+            assertEquals(manifest.chunkSize(i), decoded.chunkSize(i));
+        }
+        assertArrayEquals(encoded, decoded.encode());
+    }
+
+    @Test
+    void testEmptyManifestRoundTrip() {
+        ChunkManifest decoded = ChunkManifest.decode(ChunkManifest.builder(0).build().encode());
+
+        assertEquals(0, decoded.size());
+        assertEquals(0, decoded.totalSize());
+    }
+
+    @Test
+    void testIndexAtFindsChunkHoldingOffset() {
+        ChunkManifest manifest = ChunkManifest.builder(3).add(7, 100).add(3, 50).add(9, 10).build();
+
+        assertEquals(0, manifest.indexAt(0));
+        assertEquals(0, manifest.indexAt(99));
+        assertEquals(1, manifest.indexAt(100));
+        assertEquals(1, manifest.indexAt(149));
+        assertEquals(2, manifest.indexAt(150));
+        assertEquals(2, manifest.indexAt(159));
+        assertEquals(150, manifest.offset(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> manifest.indexAt(160));
+    }
+
+    @Test
+    void testDecodeRejectsTruncatedData() {
+        byte[] encoded = ChunkManifest.builder(2).add(1, 4096).add(2, 8192).build().encode();
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.decode(truncated));
+        assertThrows(IllegalArgumentException.class, () -> ChunkManifest.decode(new byte[] { 2, 0 }));
+    }
+}
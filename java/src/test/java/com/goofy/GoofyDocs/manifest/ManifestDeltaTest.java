@@ -0,0 +1,125 @@
+package com.goofy.GoofyDocs.manifest;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class ManifestDeltaTest {
+
+    @Test
+    void testIdenticalManifestsHaveNoEdits() {
+        ChunkManifest parent = manifest(1, 2, 3, 4);
+
+        ManifestDelta delta = ManifestDelta.diff(parent, manifest(1, 2, 3, 4), 10).orElseThrow();
+
+        assertTrue(delta.edits().isEmpty());
+        assertManifestEquals(parent, delta.apply(parent));
+    }
+
+    @Test
+    void testInsertRemoveAndReplaceRoundTrip() {
+        ChunkManifest parent = manifest(1, 2, 3, 4, 5, 6, 7, 8);
+        ChunkManifest[] children = {
+                manifest(1, 2, 9, 3, 4, 5, 6, 7, 8),
+                manifest(1, 2, 5, 6, 7, 8),
+                manifest(1, 2, 3, 10, 11, 6, 7, 8),
+                manifest(0, 1, 2, 3, 4, 5, 6, 7, 8, 12),
+                manifest(8, 7, 6, 5, 4, 3, 2, 1),
+                manifest(),
+        };
+
+        for (ChunkManifest child : children) {
+            ManifestDelta delta = ManifestDelta.diff(parent, child, 100).orElseThrow();
+            assertManifestEquals(child, delta.apply(parent));
+        }
+    }
+
+    @Test
+    void testReplacementIsMergedIntoOneEdit() {
+        ManifestDelta delta = ManifestDelta.diff(manifest(1, 2, 3, 4, 5), manifest(1, 2, 10, 11, 5), 10).orElseThrow();
+
+        assertEquals(1, delta.edits().size());
+        ManifestDelta.Edit edit = delta.edits().get(0);
+        assertEquals(2, edit.parentIndex());
+        assertEquals(2, edit.removed());
+        assertEquals(2, delta.insertedChunks());
+        assertEquals(2, delta.referenceCounts().size());
+    }
+
+    @Test
+    void testRandomEditsRoundTrip() {
+        Random random = new Random(42);
+        long[] ids = random.longs(2000, 1, 500).toArray();
+        ChunkManifest parent = manifest(ids);
+
+        for (int round = 0; round < 20; round++) {
+            long[] edited = ids.clone();
+            for (int i = 0; i < 10; i++) {
+                edited[random.nextInt(edited.length)] = 1000 + random.nextInt(100);
+            }
+            ChunkManifest child = manifest(edited);
+            ManifestDelta delta = ManifestDelta.diff(parent, child, 100).orElseThrow();
+            assertTrue(delta.insertedChunks() <= 10);
+            assertManifestEquals(child, delta.apply(parent));
+        }
+    }
+
+    @Test
+    void testDiffGivesUpBeyondMaxEdits() {
+        Optional<ManifestDelta> delta = ManifestDelta.diff(manifest(1, 2, 3, 4), manifest(5, 6, 7, 8), 4);
+
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    void testLocalEditsInALargeManifest() {
+        long[] ids = new long[1_000_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        ChunkManifest parent = manifest(ids);
+        long[] edited = ids.clone();
+        edited[400_000] = 2_000_001;
+        edited[500_000] = 2_000_002;
+        edited[500_001] = 2_000_003;
+
+        ManifestDelta delta = ManifestDelta.diff(parent, manifest(edited), 10).orElseThrow();
+
+        assertEquals(3, delta.insertedChunks());
+        assertManifestEquals(manifest(edited), delta.apply(parent));
+    }
+
+    @Test
+    void testDiffGivesUpOnWidespreadEditsOfRepetitiveManifests() {
+        // Every diagonal matches for long runs here, the worst case for the search without a work limit
+        long[] ids = new long[200_000];
+        Arrays.fill(ids, 7);
+        long[] edited = ids.clone();
+        for (int i = 0; i < edited.length; i += 50) {
+            edited[i] = 8;
+        }
+
+        assertTrue(ManifestDelta.diff(manifest(ids), manifest(edited), 1000).isEmpty());
+    }
+
+    private static ChunkManifest manifest(long... chunkIds) {
+        ChunkManifest.Builder builder = ChunkManifest.builder(chunkIds.length);
+        for (long chunkId : chunkIds) {
+            builder.add(chunkId, (int) (chunkId * 100 + 1));
+        }
+        return builder.build();
+    }
+
+    private static void assertManifestEquals(ChunkManifest expected, ChunkManifest actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.chunkId(i), actual.chunkId(i), "chunk id at " + i);
+            assertEquals(expected.chunkSize(i), actual.chunkSize(i), "chunk size at " + i);
+        }
+        assertEquals(expected.totalSize(), actual.totalSize());
+    }
+}
@@ -0,0 +1,129 @@
+package com.goofy.GoofyDocs.segment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+
+import com.goofy.GoofyDocs.duplication.HashingAlgorithm;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FingerprintMatch;
+
+class SegmentIndexTest {
+
+    @Mock
+    private SegmentRepository segmentRepository;
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    private SegmentIndex segmentIndex;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        segmentIndex = new SegmentIndex(segmentRepository, chunkRepository, true, 16, 0, 2);
+    }
+
+    @Test
+    void testSegmentsRealignAfterAnInsertion() {
+        List<byte[]> digests = digests(1, 2000);
+        List<byte[]> shifted = new ArrayList<>(digests(2, 3));
+        shifted.addAll(digests);
+
+        List<SegmentIndex.Span> spans = segmentIndex.split(digests);
+        List<SegmentIndex.Span> shiftedSpans = segmentIndex.split(shifted);
+
+        assertEquals(digests.size(), spans.get(spans.size() - 1).to());
+        for (SegmentIndex.Span span : spans) {
+            assertTrue(span.length() >= 4 || span.to() == digests.size(), "Segment too short: " + span);
+            assertTrue(span.length() <= 64, "Segment too long: " + span);
+        }
+        // Past the first boundary both files produce the same segments
+        long shared = spans.stream()
+                .filter(span -> shiftedSpans.contains(new SegmentIndex.Span(span.from() + 3, span.to() + 3)))
+                .count();
+        assertTrue(shared >= spans.size() - 1, shared + " of " + spans.size() + " segments realigned");
+    }
+
+    @Test
+    void testExactHitResolvesEveryChunk() {
+        List<byte[]> digests = digests(3, 4);
+        ChunkManifest manifest = ChunkManifest.builder(4).add(10, 100).add(11, 100).add(10, 100).add(12, 50).build();
+        when(segmentRepository.findByFingerprint(eq(HashingAlgorithm.SHA256), any()))
+                .thenReturn(Optional.of(new SegmentRepository.StoredSegment(1L, manifest)));
+        LocalDateTime lease = LocalDateTime.now().plusHours(1);
+        when(chunkRepository.leaseChunks(any(), eq(lease))).thenReturn(3);
+
+        SegmentMatch match = segmentIndex.lookup(HashingAlgorithm.SHA256, digests, lease);
+
+        assertEquals(SegmentMatch.Kind.EXACT, match.kind());
+        assertEquals(4, match.resolvedChunks());
+        assertEquals(12L, match.chunkId(3));
+        verify(segmentRepository, never()).findChampions(any(), anyList(), anyInt());
+        // Marked chunks keep a mark that expires with the ingest lease
+        verify(chunkRepository).leaseChunks(aryEq(new long[] { 10, 11, 12 }), eq(lease));
+        verify(chunkRepository, never()).reviveChunks(any());
+
+        segmentIndex.record(HashingAlgorithm.SHA256, match, digests, manifest);
+        verify(segmentRepository, never()).insert(any(), any(), any(), anyList());
+    }
+
+    @Test
+    void testStaleExactHitIsDroppedAndChampionsResolveKnownChunks() {
+        List<byte[]> digests = digests(4, 3);
+        ChunkManifest stale = ChunkManifest.builder(3).add(20, 10).add(21, 10).add(22, 10).build();
+        when(segmentRepository.findByFingerprint(eq(HashingAlgorithm.SHA256), any()))
+                .thenReturn(Optional.of(new SegmentRepository.StoredSegment(7L, stale)));
+
+        ChunkManifest champion = ChunkManifest.builder(3).add(30, 10).add(31, 10).add(32, 10).build();
+        when(segmentRepository.findChampions(eq(HashingAlgorithm.SHA256), anyList(), eq(2)))
+                .thenReturn(List.of(new SegmentRepository.StoredSegment(8L, champion)));
+        // Chunk 32 was collected: only the fingerprints of the others are found
+        when(chunkRepository.findFingerprintsOfChunks(eq(HashingAlgorithm.SHA256), aryEq(new long[] { 30, 31, 32 })))
+                .thenReturn(List.of(
+                        new FingerprintMatch(digests.get(2), 30L, false, 1, 10, 10),
+                        new FingerprintMatch(digests(5, 1).get(0), 31L, false, 1, 10, 10)));
+        when(chunkRepository.reviveChunks(any())).thenReturn(2, 1);
+
+        SegmentMatch match = segmentIndex.lookup(HashingAlgorithm.SHA256, digests, null);
+
+        verify(segmentRepository).delete(7L);
+        assertEquals(SegmentMatch.Kind.CHAMPION, match.kind());
+        assertEquals(1, match.resolvedChunks());
+        assertEquals(0L, match.chunkId(0));
+        assertEquals(30L, match.chunkId(2));
+
+        ChunkManifest stored = ChunkManifest.builder(3).add(40, 10).add(41, 10).add(30, 10).build();
+        segmentIndex.record(HashingAlgorithm.SHA256, match, digests, stored);
+        verify(segmentRepository).insert(eq(HashingAlgorithm.SHA256), eq(match.fingerprint()), eq(stored), anyList());
+    }
+
+    private static List<byte[]> digests(long seed, int count) {
+        Random random = new Random(seed);
+        List<byte[]> digests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] digest = new byte[32];
+            random.nextBytes(digest);
+            digests.add(digest);
+        }
+        return digests;
+    }
+}
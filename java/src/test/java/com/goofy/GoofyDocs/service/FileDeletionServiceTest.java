@@ -0,0 +1,110 @@
+package com.goofy.GoofyDocs.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.manifest.FileDeltaRepository;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.manifest.ManifestDelta;
+import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.repository.FileChunkRepository;
+import com.goofy.GoofyDocs.repository.FileRepository;
+
+class FileDeletionServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FileChunkRepository fileChunkRepository;
+
+    @Mock
+    private FileDeltaRepository fileDeltaRepository;
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    private FileDeletionService service;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        FileManifestService manifestService = new FileManifestService(fileRepository, fileChunkRepository,
+                fileDeltaRepository, chunkRepository, 16, 1000);
+        service = new FileDeletionService(fileRepository, fileChunkRepository, chunkRepository, manifestService);
+    }
+
+    @Test
+    void testDeletingAFileMaterializesItsDeltaChildrenFirst() {
+        // Version 2 replaces the second chunk of version 1
+        when(fileRepository.existsById(1L)).thenReturn(true);
+        when(fileDeltaRepository.findDeltaChildren(1L)).thenReturn(List.of(2L));
+        when(fileRepository.findById(2L)).thenReturn(Optional.of(file(2L, 300L, 1)));
+        when(fileDeltaRepository.findChain(2L)).thenReturn(List.of(
+                new FileDeltaRepository.ChainLink(1L, 300L, 0),
+                new FileDeltaRepository.ChainLink(2L, 300L, 1)));
+        when(fileChunkRepository.findManifest(1L, 300L))
+                .thenReturn(new ChunkManifest(new long[] { 10, 11, 12 }, new int[] { 100, 100, 100 }));
+        when(fileDeltaRepository.findEdits(List.of(2L))).thenReturn(Map.of(2L, List.of(
+                new ManifestDelta.Edit(1, 1, new long[] { 13 }, new int[] { 100 }))));
+        when(fileChunkRepository.findReferencedChunkIds(1L)).thenReturn(List.of(10L, 11L, 12L));
+        when(chunkRepository.markOrphaned(any(), any())).thenReturn(1);
+
+        int orphaned = service.deleteFile(1L);
+
+        ArgumentCaptor<ChunkManifest> manifest = ArgumentCaptor.forClass(ChunkManifest.class);
+        InOrder order = inOrder(fileChunkRepository, fileDeltaRepository, chunkRepository, fileRepository);
+        order.verify(fileDeltaRepository).deleteEdits(2L);
+        order.verify(fileChunkRepository).insertManifest(eq(2L), manifest.capture());
+        order.verify(fileChunkRepository).deleteManifest(1L);
+        order.verify(fileRepository).deleteFileById(1L);
+        order.verify(chunkRepository).markOrphaned(eq(List.of(10L, 11L, 12L)), any());
+        assertArrayEquals(new long[] { 10, 13, 12 }, chunkIds(manifest.getValue()));
+        assertEquals(1, orphaned);
+    }
+
+    @Test
+    void testMissingFileIsRejected() {
+        when(fileRepository.existsById(5L)).thenReturn(false);
+
+        assertThrows(IllegalArgumentException.class, () -> service.deleteFile(5L));
+        verify(fileChunkRepository, never()).deleteManifest(anyLong());
+        verify(chunkRepository, never()).markOrphaned(any(), any());
+    }
+
+    private static FileEntity file(Long id, Long size, int deltaDepth) {
+        FileEntity file = new FileEntity();
+        file.setId(id);
+        file.setSize(size);
+        file.setDeltaDepth(deltaDepth);
+        return file;
+    }
+
+    private static long[] chunkIds(ChunkManifest manifest) {
+        long[] ids = new long[manifest.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = manifest.chunkId(i);
+        }
+        return ids;
+    }
+}
@@ -1,31 +1,47 @@
 package com.goofy.GoofyDocs.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import org.mockito.Mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
 import org.springframework.util.StopWatch;
 
 import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.manifest.ChunkManifest;
+import com.goofy.GoofyDocs.manifest.FileManifestService;
+import com.goofy.GoofyDocs.metrics.IngestMetrics;
 import com.goofy.GoofyDocs.model.ChunkEntity;
-import com.goofy.GoofyDocs.model.FileChunkEntity;
 import com.goofy.GoofyDocs.model.FileEntity;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
 import com.goofy.GoofyDocs.repository.FileChunkRepository;
 import com.goofy.GoofyDocs.repository.FileRepository;
+import com.goofy.GoofyDocs.store.ChunkAccessTracker;
+import com.goofy.GoofyDocs.store.ChunkStore;
 
 class FileReconstructorServiceTest {
 
@@ -35,9 +51,15 @@ class FileReconstructorServiceTest {
     @Mock
     private FileChunkRepository fileChunkRepository;
 
+    @Mock
+    private ChunkRepository chunkRepository;
+
     @Mock
     private CompressionService compressionService;
 
+    // The chunk table behind the mocked repository
+    private final Map<Long, ChunkEntity> storedChunks = new HashMap<>();
+
     private FileReconstructorService service;
 
     private static final int[] FILE_SIZES = { 1, 10, 50, 100 };
@@ -47,11 +69,20 @@ class FileReconstructorServiceTest {
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
-        service = new FileReconstructorService(fileRepository, fileChunkRepository, compressionService);
+        service = service(compressionService);
+        when(chunkRepository.findAllById(any())).thenAnswer(invocation -> {
+            Iterable<Long> ids = invocation.getArgument(0);
+            List<ChunkEntity> found = new ArrayList<>();
+            ids.forEach(id -> found.add(storedChunks.get(id)));
+            found.removeIf(Objects::isNull);
+            return found;
+        });
+        when(chunkRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(storedChunks.get(invocation.<Long>getArgument(0))));
     }
 
     @Test
-    void testReconstructorPerformanceDashboard(@TempDir Path tempDir) throws IOException {
+    void testReconstructorPerformanceDashboard() throws IOException {
         System.out.println("\n=== File Reconstructor Performance Dashboard ===");
         System.out.println("Format: Type | File Size | Chunk Size | Total Time | Speed | Chunks/s");
         System.out.println("------------------------------------------------------------------------");
@@ -59,13 +90,8 @@ class FileReconstructorServiceTest {
         for (String fileType : FILE_TYPES) {
             for (int fileSize : FILE_SIZES) {
                 for (int chunkSize : CHUNK_SIZES) {
-                    TestFileData testData = createTestFileWithChunks(tempDir, fileType, fileSize * 1024 * 1024,
-                            chunkSize);
-
-                    when(fileRepository.findById(testData.fileEntity.getId()))
-                            .thenReturn(Optional.of(testData.fileEntity));
-                    when(fileChunkRepository.findByFileIdOrderByPosition(testData.fileEntity.getId()))
-                            .thenReturn(testData.fileChunks);
+                    storedChunks.clear();
+                    TestFileData testData = createTestFileWithChunks(fileType, fileSize * 1024 * 1024, chunkSize);
 
                     StopWatch watch = new StopWatch();
                     watch.start();
@@ -74,12 +100,12 @@ class FileReconstructorServiceTest {
 
                     double totalTimeSeconds = watch.getTotalTimeMillis() / 1000.0;
                     double speedMBps = fileSize / totalTimeSeconds;
-                    double chunksPerSecond = testData.fileChunks.size() / totalTimeSeconds;
+                    double chunksPerSecond = testData.chunkCount / totalTimeSeconds;
 
                     System.out.printf("%s (%dMB, chunks %dKB):\n", fileType, fileSize, chunkSize / 1024);
                     System.out.printf("  - Total time: %.2f s\n", totalTimeSeconds);
                     System.out.printf("  - Speed: %.2f MB/s\n", speedMBps);
-                    System.out.printf("  - Chunks processed: %d chunks\n", testData.fileChunks.size());
+                    System.out.printf("  - Chunks processed: %d chunks\n", testData.chunkCount);
                     System.out.printf("  - Throughput: %.2f chunks/s\n", chunksPerSecond);
                     System.out.printf("  - Final size: %.2f MB\n", reconstructedFile.length / (1024.0 * 1024.0));
                     System.out.println("------------------------------------------------------------------------");
@@ -90,12 +116,11 @@ class FileReconstructorServiceTest {
 
     private static class TestFileData {
         FileEntity fileEntity;
-        List<FileChunkEntity> fileChunks;
+        int chunkCount;
         byte[] originalData;
     }
 
-    private TestFileData createTestFileWithChunks(Path tempDir, String type, int size, int chunkSize)
-            throws IOException {
+    private TestFileData createTestFileWithChunks(String type, int size, int chunkSize) {
         TestFileData data = new TestFileData();
 
         data.originalData = new byte[size];
@@ -119,108 +144,143 @@ class FileReconstructorServiceTest {
                 }
             }
 
-        data.fileEntity = new FileEntity();
-        data.fileEntity.setId(random.nextLong());
-        data.fileEntity.setName("test_" + type);
-        data.fileEntity.setExtension(type);
-
-        data.fileChunks = new ArrayList<>();
+        List<ChunkEntity> chunks = new ArrayList<>();
         for (int offset = 0; offset < size; offset += chunkSize) {
             int length = Math.min(chunkSize, size - offset);
-            byte[] chunkData = Arrays.copyOfRange(data.originalData, offset, offset + length);
-
-            ChunkEntity chunk = new ChunkEntity();
-            chunk.setId(random.nextLong());
-            chunk.setData(chunkData);
-
-            FileChunkEntity fileChunk = new FileChunkEntity();
-            fileChunk.setFile(data.fileEntity);
-            fileChunk.setChunk(chunk);
-            fileChunk.setPosition(offset / chunkSize);
-
-            data.fileChunks.add(fileChunk);
+            chunks.add(chunk(chunks.size() + 1L, Arrays.copyOfRange(data.originalData, offset, offset + length)));
         }
+        data.fileEntity = storeFile(Math.abs(random.nextLong()), chunks);
+        data.fileEntity.setName("test_" + type);
+        data.fileEntity.setExtension(type);
+        data.chunkCount = chunks.size();
 
         return data;
     }
 
     @Test
     void testReconstructFile() throws IOException {
-        Long fileId = 1L;
-        FileEntity fileEntity = new FileEntity();
-        fileEntity.setId(fileId);
-        fileEntity.setName("test");
-        fileEntity.setExtension("txt");
-
-        byte[] chunk1Data = "Hello ".getBytes();
-        byte[] chunk2Data = "World".getBytes();
-        byte[] chunk3Data = "!".getBytes();
-
-        ChunkEntity chunk1 = new ChunkEntity();
-        chunk1.setData(chunk1Data);
-        ChunkEntity chunk2 = new ChunkEntity();
-        chunk2.setData(chunk2Data);
-        ChunkEntity chunk3 = new ChunkEntity();
-        chunk3.setData(chunk3Data);
-
-        FileChunkEntity fileChunk1 = new FileChunkEntity();
-        fileChunk1.setFile(fileEntity);
-        fileChunk1.setChunk(chunk1);
-        fileChunk1.setPosition(0);
-
-        FileChunkEntity fileChunk2 = new FileChunkEntity();
-        fileChunk2.setFile(fileEntity);
-        fileChunk2.setChunk(chunk2);
-        fileChunk2.setPosition(1);
-
-        FileChunkEntity fileChunk3 = new FileChunkEntity();
-        fileChunk3.setFile(fileEntity);
-        fileChunk3.setChunk(chunk3);
-        fileChunk3.setPosition(2);
-
-        when(fileRepository.findById(fileId)).thenReturn(Optional.of(fileEntity));
-        when(fileChunkRepository.findByFileIdOrderByPosition(fileId))
-                .thenReturn(Arrays.asList(fileChunk1, fileChunk2, fileChunk3));
-
-        byte[] reconstructedFile = service.reconstructFile(fileId);
+        ChunkEntity hello = chunk(1L, "Hello ".getBytes());
+        ChunkEntity world = chunk(2L, "World".getBytes());
+        ChunkEntity bang = chunk(3L, "!".getBytes());
+        // A chunk repeated in the manifest is loaded once
+        storeFile(1L, List.of(hello, world, bang, bang));
+
+        byte[] reconstructedFile = service.reconstructFile(1L);
 
         assertNotNull(reconstructedFile);
-        assertEquals("Hello World!", new String(reconstructedFile));
+        assertEquals("Hello World!!", new String(reconstructedFile));
+        verify(chunkRepository).findAllById(argThat(ids -> ((Collection<?>) ids).size() == 3));
     }
 
     @Test
     void testReconstructCompressedFile() throws IOException {
-        Long fileId = 1L;
-        FileEntity fileEntity = new FileEntity();
-        fileEntity.setId(fileId);
-        fileEntity.setName("test");
-        fileEntity.setExtension("txt");
-
         byte[] compressedData = "compressed".getBytes();
         byte[] originalData = "Hello World!".getBytes();
         int originalSize = originalData.length;
 
-        ChunkEntity chunk = new ChunkEntity();
-        chunk.setData(compressedData);
+        ChunkEntity chunk = chunk(1L, compressedData);
         chunk.setCompressionType(CompressionService.CompressionType.LZ4.name());
         chunk.setOriginalSize(originalSize);
+        storeFile(1L, List.of(chunk));
 
-        FileChunkEntity fileChunk = new FileChunkEntity();
-        fileChunk.setFile(fileEntity);
-        fileChunk.setChunk(chunk);
-        fileChunk.setPosition(0);
-
-        when(fileRepository.findById(fileId)).thenReturn(Optional.of(fileEntity));
-        when(fileChunkRepository.findByFileIdOrderByPosition(fileId))
-                .thenReturn(List.of(fileChunk));
-        when(compressionService.decompress(compressedData, CompressionService.CompressionType.LZ4, originalSize))
-                .thenReturn(originalData);
+        when(compressionService.decompress(eq(compressedData), eq(CompressionService.CompressionType.LZ4),
+                any(byte[].class), eq(0), eq(originalSize), isNull()))
+                .thenAnswer(invocation -> {
+                    byte[] destination = invocation.getArgument(2);
+                    System.arraycopy(originalData, 0, destination, 0, originalSize);
+                    return originalSize;
+                });
 
-        byte[] reconstructedFile = service.reconstructFile(fileId);
+        byte[] reconstructedFile = service.reconstructFile(1L);
 
         assertNotNull(reconstructedFile);
         assertEquals("Hello World!", new String(reconstructedFile));
-        verify(compressionService).decompress(compressedData, CompressionService.CompressionType.LZ4, originalSize);
+        verify(compressionService).decompress(eq(compressedData), eq(CompressionService.CompressionType.LZ4),
+                any(byte[].class), eq(0), eq(originalSize), isNull());
+    }
+
+    @Test
+    void testReconstructCompressedChunksIntoExactBuffer() throws IOException {
+        CompressionService realCompressionService = new CompressionService();
+        FileReconstructorService realService = service(realCompressionService);
+
+        Random random = new Random(42);
+        CompressionService.CompressionType[] types = CompressionService.CompressionType.values();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        List<ChunkEntity> chunks = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            byte[] chunkData = new byte[1024 + random.nextInt(8192)];
+            for (int j = 0; j < chunkData.length; j++) {
+                chunkData[j] = (byte) ((j % 26) + 'a');
+            }
+            expected.write(chunkData);
+
+            ChunkEntity chunk;
+            if (i % 4 == 3) {
+                chunk = chunk(i + 1L, chunkData);
+            } else {
+                CompressionService.CompressionType type = types[i % types.length];
+                chunk = chunk(i + 1L, realCompressionService.compress(chunkData, type));
+                chunk.setCompressionType(type.name());
+                chunk.setOriginalSize(chunkData.length);
+            }
+            chunks.add(chunk);
+        }
+        storeFile(2L, chunks);
+
+        byte[] reconstructedFile = realService.reconstructFile(2L);
+
+        assertArrayEquals(expected.toByteArray(), reconstructedFile);
+    }
+
+    @Test
+    void testDeltaChunkIsDecodedAgainstItsBase() throws IOException {
+        CompressionService realCompressionService = new CompressionService();
+        byte[] base = new byte[16 * 1024];
+        new Random(5).nextBytes(base);
+        byte[] edited = base.clone();
+        edited[100] ^= 1;
+
+        // The base is stored but belongs to another file
+        ChunkEntity baseChunk = chunk(7L,
+                realCompressionService.compress(base, CompressionService.CompressionType.ZSTD));
+        baseChunk.setCompressionType(CompressionService.CompressionType.ZSTD.name());
+        baseChunk.setOriginalSize(base.length);
+        storedChunks.put(7L, baseChunk);
+        ChunkEntity delta = chunk(8L, realCompressionService.compressDelta(edited, base, 7L));
+        delta.setCompressionType(CompressionService.CompressionType.ZSTD.name());
+        delta.setOriginalSize(edited.length);
+        storeFile(3L, List.of(delta));
+
+        byte[] reconstructedFile = service(realCompressionService).reconstructFile(3L);
+
+        assertArrayEquals(edited, reconstructedFile);
+        assertTrue(delta.getData().length < base.length / 4);
+    }
+
+    @Test
+    void testChunksAreLoadedInBatches() throws IOException {
+        List<ChunkEntity> chunks = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            chunks.add(chunk(i + 1L, new byte[] { (byte) i }));
+        }
+        storeFile(4L, chunks);
+
+        byte[] reconstructedFile = service.reconstructFile(4L);
+
+        assertEquals(2500, reconstructedFile.length);
+        assertEquals((byte) 2499, reconstructedFile[2499]);
+        verify(chunkRepository, times(3)).findAllById(any());
+    }
+
+    @Test
+    void testMissingChunkIsReported() {
+        storeFile(5L, List.of(chunk(1L, "kept".getBytes()), chunk(2L, "collected".getBytes())));
+        storedChunks.remove(2L);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> service.reconstructFile(5L));
+        assertTrue(exception.getMessage().contains("Chunk 2 "));
     }
 
     @Test
@@ -236,16 +296,46 @@ class FileReconstructorServiceTest {
 
     @Test
     void testNoChunksFound() {
-        Long fileId = 1L;
-        FileEntity fileEntity = new FileEntity();
-        fileEntity.setId(fileId);
-
-        when(fileRepository.findById(fileId)).thenReturn(Optional.of(fileEntity));
-        when(fileChunkRepository.findByFileIdOrderByPosition(fileId)).thenReturn(List.of());
+        storeFile(1L, List.of());
 
         IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
-            service.reconstructFile(fileId);
+            service.reconstructFile(1L);
         });
         assertNotNull(exception);
     }
+
+    private FileReconstructorService service(CompressionService compression) {
+        return new FileReconstructorService(fileRepository, compression, IngestMetrics.noop(), chunkRepository,
+                FileManifestService.fullManifestsOnly(fileRepository, fileChunkRepository),
+                new ChunkContentLoader(chunkRepository, compression, ChunkStore.database()),
+                ChunkAccessTracker.disabled());
+    }
+
+    private static ChunkEntity chunk(Long id, byte[] data) {
+        ChunkEntity chunk = new ChunkEntity();
+        chunk.setId(id);
+        chunk.setData(data);
+        return chunk;
+    }
+
+    /**
+     * Stores the chunks and a full manifest listing them in order; sizes are the original chunk sizes.
+     */
+    private FileEntity storeFile(Long fileId, Collection<ChunkEntity> chunks) {
+        ChunkManifest.Builder manifest = ChunkManifest.builder(chunks.size());
+        for (ChunkEntity chunk : chunks) {
+            storedChunks.put(chunk.getId(), chunk);
+            manifest.add(chunk.getId(),
+                    chunk.getOriginalSize() != null ? chunk.getOriginalSize() : chunk.getData().length);
+        }
+        ChunkManifest built = manifest.build();
+
+        FileEntity file = new FileEntity();
+        file.setId(fileId);
+        file.setName("test");
+        file.setSize(built.totalSize());
+        when(fileRepository.findById(fileId)).thenReturn(Optional.of(file));
+        when(fileChunkRepository.findManifest(fileId, built.totalSize())).thenReturn(built);
+        return file;
+    }
 }
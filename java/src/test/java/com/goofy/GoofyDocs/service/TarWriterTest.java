@@ -0,0 +1,79 @@
+package com.goofy.GoofyDocs.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import com.goofy.GoofyDocs.duplication.ArchiveReader;
+import com.goofy.GoofyDocs.model.FileEntity;
+
+class TarWriterTest {
+
+    @Test
+    void testWrittenArchiveReadsBack() throws IOException {
+        Random random = new Random(42);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("empty.txt", new byte[0]);
+        files.put("docs/" + "nested/".repeat(20) + "report.pdf", new byte[1500]);
+        for (int i = 0; i < 5; i++) {
+            byte[] data = new byte[random.nextInt(3000)];
+            random.nextBytes(data);
+            files.put("file-" + i + ".bin", data);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarWriter tar = new TarWriter(out);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            byte[] data = file.getValue();
+            tar.putEntry(file.getKey(), data.length, Instant.now());
+            // Written in pieces, as chunks are
+            for (int offset = 0; offset < data.length; offset += 1000) {
+                tar.write(data, offset, Math.min(1000, data.length - offset));
+            }
+        }
+        tar.finish();
+
+        assertEquals(0, out.size() % 512);
+        Map<String, byte[]> read = new LinkedHashMap<>();
+        ArchiveReader.read(new ByteArrayInputStream(out.toByteArray()),
+                (name, size, content) -> read.put(name, content.readAllBytes()));
+        assertEquals(files.keySet().stream().toList(), read.keySet().stream().toList());
+        files.forEach((name, data) -> assertArrayEquals(data, read.get(name), name));
+    }
+
+    @Test
+    void testShortEntryIsRejected() throws IOException {
+        TarWriter tar = new TarWriter(new ByteArrayOutputStream());
+        tar.putEntry("a.txt", 10, Instant.now());
+        tar.write(new byte[4], 0, 4);
+        assertThrows(IllegalStateException.class, () -> tar.putEntry("b.txt", 1, Instant.now()));
+    }
+
+    @Test
+    void testEntryNamesAreRelativeAndUnique() {
+        Set<String> taken = new HashSet<>();
+        assertEquals("docs/a.txt", ArchiveExportService.entryName(file(1L, "/docs/../a", "txt"), taken));
+        assertEquals("report.pdf", ArchiveExportService.entryName(file(2L, "report", "pdf"), taken));
+        assertEquals("report (3).pdf", ArchiveExportService.entryName(file(3L, "report", "pdf"), taken));
+        assertEquals("file-4", ArchiveExportService.entryName(file(4L, "..", ""), taken));
+    }
+
+    private static FileEntity file(long id, String name, String extension) {
+        FileEntity file = new FileEntity();
+        file.setId(id);
+        file.setName(name);
+        file.setExtension(extension);
+        return file;
+    }
+}
@@ -0,0 +1,53 @@
+package com.goofy.GoofyDocs.similarity;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class ResemblanceSketchTest {
+
+    @Test
+    void testLightlyEditedChunkSharesASuperFeature() {
+        byte[] original = randomBytes(1, 8192);
+        byte[] edited = original.clone();
+        Random random = new Random(2);
+        for (int i = 0; i < 4; i++) {
+            edited[random.nextInt(edited.length)] ^= 0x5A;
+        }
+
+        assertTrue(sharesSuperFeature(ResemblanceSketch.superFeatures(original),
+                ResemblanceSketch.superFeatures(edited)));
+    }
+
+    @Test
+    void testUnrelatedChunksShareNoSuperFeature() {
+        long[] first = ResemblanceSketch.superFeatures(randomBytes(3, 8192));
+        long[] second = ResemblanceSketch.superFeatures(randomBytes(4, 8192));
+
+        assertEquals(ResemblanceSketch.SUPER_FEATURES, first.length);
+        assertFalse(sharesSuperFeature(first, second));
+    }
+
+    @Test
+    void testShortChunkHasNoSketch() {
+        assertEquals(0, ResemblanceSketch.superFeatures(randomBytes(5, 16)).length);
+    }
+
+    private static boolean sharesSuperFeature(long[] first, long[] second) {
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] == second[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
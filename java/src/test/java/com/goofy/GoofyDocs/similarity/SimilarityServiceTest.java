@@ -0,0 +1,105 @@
+package com.goofy.GoofyDocs.similarity;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.service.ChunkContentLoader;
+
+class SimilarityServiceTest {
+
+    private static final long BASE_ID = 5L;
+
+    @Mock
+    private ChunkFeatureRepository featureRepository;
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private ChunkContentLoader contentLoader;
+
+    private final LocalDateTime lease = LocalDateTime.now().plusMinutes(30);
+    private SimilarityService service;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        service = new SimilarityService(featureRepository, chunkRepository, contentLoader, new CompressionService(),
+                true, 2);
+        when(featureRepository.findBase(any(), anyInt()))
+                .thenReturn(Optional.of(new ChunkFeatureRepository.BaseCandidate(BASE_ID, 0)));
+    }
+
+    @Test
+    void testSimilarChunkIsEncodedAgainstItsLeasedBase() {
+        byte[] base = randomBytes(1, 8192);
+        byte[] data = base.clone();
+        data[100] ^= 0x5A;
+        when(chunkRepository.leaseChunks(aryEq(new long[] { BASE_ID }), eq(lease))).thenReturn(1);
+        when(contentLoader.loadRaw(BASE_ID)).thenReturn(base);
+
+        SimilarityService.DeltaChunk delta = service.encode(data, new long[] { 1 }, data.length, lease).orElseThrow();
+
+        assertEquals(BASE_ID, delta.baseChunkId());
+        assertEquals(1, delta.deltaDepth());
+        assertTrue(delta.data().length < data.length);
+        verify(chunkRepository, never()).reviveChunks(any());
+    }
+
+    @Test
+    void testDiscardedDeltaLeavesTheBaseMarkToTheLease() {
+        byte[] data = randomBytes(2, 8192);
+        when(chunkRepository.leaseChunks(aryEq(new long[] { BASE_ID }), eq(lease))).thenReturn(1);
+        when(contentLoader.loadRaw(BASE_ID)).thenReturn(randomBytes(3, 8192));
+
+        // An unrelated base gives no delta smaller than the chunk compressed on its own
+        assertTrue(service.encode(data, new long[] { 1 }, 64, lease).isEmpty());
+
+        verify(chunkRepository).leaseChunks(aryEq(new long[] { BASE_ID }), eq(lease));
+        verify(chunkRepository, never()).reviveChunks(any());
+        verify(chunkRepository, never()).clearOrphanedMark(anyLong());
+    }
+
+    @Test
+    void testCollectedBaseIsSkipped() {
+        when(chunkRepository.leaseChunks(any(), any())).thenReturn(0);
+
+        assertTrue(service.encode(randomBytes(4, 8192), new long[] { 1 }, 8192, lease).isEmpty());
+
+        verify(contentLoader, never()).loadRaw(anyLong());
+    }
+
+    @Test
+    void testUnleasedEncodingRevivesTheBase() {
+        byte[] base = randomBytes(5, 8192);
+        when(chunkRepository.reviveChunks(aryEq(new long[] { BASE_ID }))).thenReturn(1);
+        when(contentLoader.loadRaw(BASE_ID)).thenReturn(base);
+
+        assertTrue(service.encode(base.clone(), new long[] { 1 }, base.length, null).isPresent());
+        verify(chunkRepository, never()).leaseChunks(any(), any());
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,327 @@
+package com.goofy.GoofyDocs.store;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import com.goofy.GoofyDocs.model.ChunkEntity;
+
+class ChunkStoreTest {
+
+    private static final int PART_SIZE = 4096;
+
+    /**
+     * A transaction on a thread of its own, so that several can append to the store at once. Commit and
+     * rollback run the synchronizations the way the transaction manager does.
+     */
+    private static final class Transaction implements AutoCloseable {
+        private final ExecutorService thread = Executors.newSingleThreadExecutor();
+
+        Transaction() {
+            run(() -> {
+                TransactionSynchronizationManager.initSynchronization();
+                return null;
+            });
+        }
+
+        ChunkLocation stage(ChunkStore chunkStore, byte[] payload) {
+            return run(() -> chunkStore.stage(payload));
+        }
+
+        void commit() {
+            run(() -> {
+                try {
+                    TransactionSynchronizationUtils.triggerBeforeCommit(false);
+                } catch (RuntimeException e) {
+                    complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+                    throw e;
+                }
+                complete(TransactionSynchronization.STATUS_COMMITTED);
+                return null;
+            });
+        }
+
+        void rollback() {
+            run(() -> {
+                complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+                return null;
+            });
+        }
+
+        @Override
+        public void close() {
+            thread.shutdownNow();
+        }
+
+        private static void complete(int status) {
+            try {
+                TransactionSynchronizationUtils.triggerAfterCompletion(status);
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
+        private <T> T run(Callable<T> action) {
+            try {
+                return thread.submit(action).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    @TempDir
+    Path root;
+
+    @Mock
+    private ChunkPackRepository packRepository;
+
+    private final Map<Long, StorageTier> packTiers = new HashMap<>();
+    private final AtomicLong packIds = new AtomicLong();
+    private LocalObjectStore objectStore;
+    private ChunkStore chunkStore;
+
+    @BeforeEach
+    void setup() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        when(packRepository.nextId()).thenAnswer(invocation -> packIds.incrementAndGet());
+        doAnswer(invocation -> packTiers.put(invocation.getArgument(0), invocation.getArgument(2)))
+                .when(packRepository).insert(anyLong(), anyString(), any());
+        when(packRepository.findPacks(anyCollection())).thenAnswer(invocation -> {
+            Map<Long, ChunkPackRepository.StoredPack> packs = new HashMap<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                packs.put(id, new ChunkPackRepository.StoredPack(id, "chunks/" + id, null, packTiers.get(id)));
+            }
+            return packs;
+        });
+        when(packRepository.deleteUnreferenced(anyLong())).thenReturn(true);
+        objectStore = new LocalObjectStore(root);
+    }
+
+    @AfterEach
+    void teardown() {
+        if (chunkStore != null) {
+            chunkStore.shutdown();
+        }
+    }
+
+    @Test
+    void testNearbyRangesShareOneRead() {
+        long[] offsets = { 0, 100, 250, 10_000, 10_050 };
+        int[] lengths = { 100, 100, 50, 50, 50 };
+
+        List<ChunkStore.ReadRange> ranges = ChunkStore.coalesce(offsets, lengths, 64, 1024);
+
+        assertEquals(List.of(
+                new ChunkStore.ReadRange(0, 300, 0, 2),
+                new ChunkStore.ReadRange(10_000, 100, 3, 4)), ranges);
+    }
+
+    @Test
+    void testReadsStayWithinTheMaximumSize() {
+        long[] offsets = { 0, 400, 800, 1200 };
+        int[] lengths = { 400, 400, 400, 400 };
+
+        List<ChunkStore.ReadRange> ranges = ChunkStore.coalesce(offsets, lengths, 0, 1000);
+
+        assertEquals(List.of(
+                new ChunkStore.ReadRange(0, 800, 0, 1),
+                new ChunkStore.ReadRange(800, 800, 2, 3)), ranges);
+    }
+
+    @Test
+    void testConcurrentTransactionsShareOnePack() {
+        chunkStore = chunkStore(Duration.ofMillis(500));
+        byte[] first = randomBytes(1, 3000);
+        byte[] second = randomBytes(2, 3000);
+        byte[] third = randomBytes(3, 5000);
+
+        ChunkLocation a;
+        ChunkLocation b;
+        ChunkLocation c;
+        try (Transaction one = new Transaction(); Transaction two = new Transaction()) {
+            a = one.stage(chunkStore, first);
+            b = two.stage(chunkStore, second);
+            c = one.stage(chunkStore, third);
+            one.commit();
+            two.commit();
+        }
+
+        assertEquals(a.packId(), b.packId());
+        assertEquals(a.packId(), c.packId());
+        // The pack grew past one part, so it went up as a multipart upload
+        verify(packRepository).setUploadId(eq(a.packId()), anyString());
+        verify(packRepository).complete(a.packId(), first.length + second.length + third.length);
+        verify(packRepository, times(1)).nextId();
+        assertArrayEquals(first, read(a));
+        assertArrayEquals(second, read(b));
+        assertArrayEquals(third, read(c));
+    }
+
+    @Test
+    void testRolledBackWriterLeavesThePackToTheOthers() {
+        chunkStore = chunkStore(Duration.ofMillis(500));
+        byte[] kept = randomBytes(4, 6000);
+
+        ChunkLocation committed;
+        ChunkLocation rolledBack;
+        try (Transaction one = new Transaction(); Transaction two = new Transaction()) {
+            committed = one.stage(chunkStore, kept);
+            rolledBack = two.stage(chunkStore, randomBytes(5, 2000));
+            two.rollback();
+            one.commit();
+        }
+
+        assertEquals(committed.packId(), rolledBack.packId());
+        verify(packRepository).complete(committed.packId(), 8000);
+        assertArrayEquals(kept, read(committed));
+    }
+
+    @Test
+    void testPackAbandonedByItsOnlyWriterIsAborted() {
+        chunkStore = chunkStore(Duration.ZERO);
+
+        ChunkLocation abandoned;
+        try (Transaction transaction = new Transaction()) {
+            abandoned = transaction.stage(chunkStore, randomBytes(6, 3 * PART_SIZE));
+            transaction.rollback();
+        }
+        ChunkLocation next;
+        try (Transaction transaction = new Transaction()) {
+            next = transaction.stage(chunkStore, randomBytes(7, 1000));
+            transaction.commit();
+        }
+
+        verify(packRepository, never()).complete(eq(abandoned.packId()), anyLong());
+        assertThrows(NoSuchFileException.class, () -> objectStore.getRange("chunks/" + abandoned.packId(), 0, 1));
+        assertNotEquals(abandoned.packId(), next.packId());
+        verify(packRepository).complete(next.packId(), 1000);
+    }
+
+    @Test
+    void testTransactionPastTheLingerOfItsOwnPackKeepsIt() {
+        chunkStore = chunkStore(Duration.ZERO);
+        byte[] first = randomBytes(8, 2000);
+        byte[] second = randomBytes(9, 2000);
+
+        ChunkLocation a;
+        ChunkLocation b;
+        try (Transaction one = new Transaction(); Transaction two = new Transaction()) {
+            a = one.stage(chunkStore, first);
+            // Without a linger nobody joins the open pack; the second transaction replaces it with its own
+            b = two.stage(chunkStore, second);
+            two.commit();
+            one.commit();
+        }
+
+        assertNotEquals(a.packId(), b.packId());
+        assertArrayEquals(first, read(a));
+        assertArrayEquals(second, read(b));
+    }
+
+    @Test
+    void testCommitWaitsForTheLingerThenSealsThePack() {
+        Duration linger = Duration.ofMillis(200);
+        chunkStore = chunkStore(linger);
+        byte[] payload = randomBytes(10, 1000);
+
+        long started = System.nanoTime();
+        ChunkLocation location;
+        try (Transaction transaction = new Transaction()) {
+            location = transaction.stage(chunkStore, payload);
+            transaction.commit();
+        }
+
+        assertTrue(System.nanoTime() - started >= linger.toNanos());
+        verify(packRepository).complete(location.packId(), payload.length);
+        assertArrayEquals(payload, read(location));
+        try (Transaction transaction = new Transaction()) {
+            // The sealed pack takes no new writers
+            assertNotEquals(location.packId(), transaction.stage(chunkStore, payload).packId());
+            transaction.rollback();
+        }
+    }
+
+    @Test
+    void testUnreferencedPacksAndTheirUploadsAreDeleted() throws IOException {
+        chunkStore = chunkStore(Duration.ZERO);
+        ChunkLocation complete = chunkStore.stage(randomBytes(11, 1000));
+        String uploadId = objectStore.createMultipartUpload("chunks/99");
+        when(packRepository.findUnreferencedBefore(any(), anyInt())).thenReturn(List.of(
+                new ChunkPackRepository.StoredPack(complete.packId(), "chunks/" + complete.packId(), null,
+                        StorageTier.COLD),
+                new ChunkPackRepository.StoredPack(99, "chunks/99", uploadId, StorageTier.COLD)));
+
+        assertEquals(2, chunkStore.collectPacks(LocalDateTime.now(), 10));
+
+        assertThrows(NoSuchFileException.class, () -> objectStore.getRange("chunks/" + complete.packId(), 0, 1));
+        assertThrows(NoSuchFileException.class, () -> objectStore.uploadPart("chunks/99", uploadId, 1, new byte[1]));
+        verify(packRepository).deleteUnreferenced(complete.packId());
+        verify(packRepository).deleteUnreferenced(99);
+    }
+
+    private ChunkStore chunkStore(Duration linger) {
+        return new ChunkStore(objectStore, null, packRepository, "chunks/", 1 << 20, 1 << 20, PART_SIZE, 2, 0,
+                1 << 20, linger);
+    }
+
+    private byte[] read(ChunkLocation location) {
+        ChunkEntity chunk = new ChunkEntity();
+        ReflectionTestUtils.setField(chunk, "packId", location.packId());
+        ReflectionTestUtils.setField(chunk, "packOffset", location.offset());
+        ReflectionTestUtils.setField(chunk, "storedSize", location.length());
+        chunkStore.load(List.of(chunk));
+        return chunk.getData();
+    }
+
+    private static byte[] randomBytes(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
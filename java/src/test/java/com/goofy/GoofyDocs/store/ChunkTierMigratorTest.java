@@ -0,0 +1,286 @@
+package com.goofy.GoofyDocs.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.goofy.GoofyDocs.compression.CompressionService;
+import com.goofy.GoofyDocs.compression.CompressionService.CompressionType;
+import com.goofy.GoofyDocs.model.ChunkEntity;
+import com.goofy.GoofyDocs.repository.ChunkRelocation;
+import com.goofy.GoofyDocs.repository.ChunkRepository;
+import com.goofy.GoofyDocs.service.ChunkContentLoader;
+
+class ChunkTierMigratorTest {
+
+    /**
+     * The columns of a chunk row the migrator reads and moves.
+     */
+    private static final class Row {
+        final long id;
+        long packId;
+        long packOffset;
+        int storedSize;
+        String compressionType;
+        int originalSize;
+        LocalDateTime lastUsed;
+
+        Row(long id, ChunkLocation location, String compressionType, int originalSize, LocalDateTime lastUsed) {
+            this.id = id;
+            this.compressionType = compressionType;
+            this.originalSize = originalSize;
+            this.lastUsed = lastUsed;
+            moveTo(location);
+        }
+
+        void moveTo(ChunkLocation location) {
+            packId = location.packId();
+            packOffset = location.offset();
+            storedSize = location.length();
+        }
+    }
+
+    @TempDir
+    Path root;
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private ChunkPackRepository packRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<Long, Row> rows = new HashMap<>();
+    private final Map<Long, StorageTier> packTiers = new HashMap<>();
+    private final AtomicLong packIds = new AtomicLong();
+    private final CompressionService compressionService = new CompressionService();
+    private ChunkStore chunkStore;
+    private ChunkAccessTracker accessTracker;
+    private ChunkContentLoader contentLoader;
+    private ChunkTierMigrator migrator;
+
+    @BeforeEach
+    void setup() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        when(packRepository.nextId()).thenAnswer(invocation -> packIds.incrementAndGet());
+        doAnswer(invocation -> packTiers.put(invocation.getArgument(0), invocation.getArgument(2)))
+                .when(packRepository).insert(anyLong(), anyString(), any());
+        when(packRepository.findPacks(anyCollection())).thenAnswer(invocation -> {
+            Map<Long, ChunkPackRepository.StoredPack> packs = new HashMap<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                packs.put(id, new ChunkPackRepository.StoredPack(id, "chunks/" + id, null, packTiers.get(id)));
+            }
+            return packs;
+        });
+
+        when(chunkRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(rows.get(invocation.<Long>getArgument(0)))
+                        .map(ChunkTierMigratorTest::entity));
+        when(chunkRepository.findAllById(any())).thenAnswer(invocation -> findAll(invocation.getArgument(0)));
+        when(chunkRepository.findIdleInTier(any(), any(), anyInt())).thenAnswer(invocation -> rows.values().stream()
+                .filter(row -> packTiers.get(row.packId) == invocation.getArgument(0))
+                .filter(row -> row.lastUsed.isBefore(invocation.getArgument(1)))
+                .map(row -> row.id)
+                .limit(invocation.<Integer>getArgument(2))
+                .toList());
+        when(chunkRepository.findInTier(any(), any())).thenAnswer(invocation -> Arrays.stream(
+                        invocation.<long[]>getArgument(0))
+                .filter(id -> rows.containsKey(id) && packTiers.get(rows.get(id).packId) == invocation.getArgument(1))
+                .boxed()
+                .toList());
+        when(chunkRepository.touchChunks(any())).thenAnswer(invocation -> {
+            long[] ids = invocation.getArgument(0);
+            Arrays.stream(ids).forEach(id -> rows.get(id).lastUsed = LocalDateTime.now());
+            return ids.length;
+        });
+        // Like the SQL, a relocation applies only while the chunk is still in the pack it was read from
+        when(chunkRepository.relocateChunks(any())).thenAnswer(invocation -> {
+            int moved = 0;
+            for (ChunkRelocation relocation : invocation.<List<ChunkRelocation>>getArgument(0)) {
+                Row row = rows.get(relocation.chunkId());
+                if (row.packId == relocation.fromPackId()) {
+                    row.moveTo(new ChunkLocation(relocation.packId(), relocation.packOffset(),
+                            relocation.storedSize()));
+                    row.compressionType = relocation.compressionType();
+                    row.originalSize = relocation.originalSize();
+                    moved++;
+                }
+            }
+            return moved;
+        });
+
+        chunkStore = new ChunkStore(new LocalObjectStore(root.resolve("cold")),
+                new LocalObjectStore(root.resolve("hot")), packRepository, "chunks/", 1 << 20, 1 << 20,
+                1 << 20, 2, 0, 1 << 20, Duration.ZERO);
+        accessTracker = new ChunkAccessTracker(true, 1000);
+        contentLoader = new ChunkContentLoader(chunkRepository, compressionService, chunkStore);
+        migrator = new ChunkTierMigrator(chunkStore, accessTracker, chunkRepository, packRepository, contentLoader,
+                compressionService, transactionManager, "LZ4", 3, Duration.ofDays(7), 3, 500, 20);
+    }
+
+    @AfterEach
+    void teardown() {
+        chunkStore.shutdown();
+    }
+
+    @Test
+    void testIdleHotChunksAreDemoted() {
+        byte[] idleData = textBytes(1, 16 * 1024);
+        byte[] recentData = textBytes(2, 16 * 1024);
+        Row idle = store(1, compressionService.compress(idleData, CompressionType.LZ4), "LZ4", idleData.length,
+                StorageTier.HOT, LocalDateTime.now().minusDays(8));
+        Row recent = store(2, compressionService.compress(recentData, CompressionType.LZ4), "LZ4",
+                recentData.length, StorageTier.HOT, LocalDateTime.now().minusDays(1));
+        long idlePack = idle.packId;
+        long recentPack = recent.packId;
+
+        migrator.migrate();
+
+        assertEquals(StorageTier.COLD, packTiers.get(idle.packId));
+        assertEquals("ZSTD", idle.compressionType);
+        assertArrayEquals(idleData, contentLoader.loadRaw(1));
+        assertEquals(recentPack, recent.packId);
+        assertArrayEquals(recentData, contentLoader.loadRaw(2));
+        verify(packRepository).release(Set.of(idlePack));
+    }
+
+    @Test
+    void testFrequentlyReadColdChunksArePromoted() {
+        byte[] frequentData = textBytes(3, 16 * 1024);
+        byte[] rareData = textBytes(4, 16 * 1024);
+        Row frequent = store(1, compressionService.compress(frequentData, CompressionType.ZSTD, 3), "ZSTD",
+                frequentData.length, StorageTier.COLD, LocalDateTime.now().minusDays(30));
+        Row rare = store(2, compressionService.compress(rareData, CompressionType.ZSTD, 3), "ZSTD",
+                rareData.length, StorageTier.COLD, LocalDateTime.now().minusDays(30));
+        for (int read = 0; read < 3; read++) {
+            accessTracker.record(List.of(entity(frequent)));
+        }
+        accessTracker.record(List.of(entity(rare), entity(rare)));
+        accessTracker.record(List.of(entity(rare)));
+        long rarePack = rare.packId;
+
+        migrator.migrate();
+
+        assertEquals(StorageTier.HOT, packTiers.get(frequent.packId));
+        assertEquals("LZ4", frequent.compressionType);
+        assertArrayEquals(frequentData, contentLoader.loadRaw(1));
+        assertEquals(rarePack, rare.packId);
+        assertTrue(rare.lastUsed.isAfter(LocalDateTime.now().minusDays(1)));
+        assertTrue(accessTracker.drain().isEmpty());
+    }
+
+    @Test
+    void testDeltaChunksKeepTheirBytes() {
+        byte[] baseData = textBytes(5, 16 * 1024);
+        byte[] editedData = baseData.clone();
+        for (int i = 0; i < 32; i++) {
+            editedData[i * 500] = (byte) 'z';
+        }
+        byte[] delta = compressionService.compressDelta(editedData, baseData, 1L);
+        store(1, baseData, null, baseData.length, StorageTier.HOT, LocalDateTime.now());
+        Row edited = store(2, delta, "ZSTD", editedData.length, StorageTier.HOT, LocalDateTime.now().minusDays(8));
+
+        migrator.migrate();
+
+        assertEquals(StorageTier.COLD, packTiers.get(edited.packId));
+        assertArrayEquals(delta, load(edited).getData());
+        assertArrayEquals(editedData, contentLoader.loadRaw(2));
+    }
+
+    @Test
+    void testRelocationLosingTheRaceKeepsTheOtherMove() {
+        byte[] data = textBytes(6, 16 * 1024);
+        Row row = store(1, compressionService.compress(data, CompressionType.LZ4), "LZ4", data.length,
+                StorageTier.HOT, LocalDateTime.now().minusDays(8));
+        byte[] moved = compressionService.compress(data, CompressionType.ZSTD, 3);
+        ChunkLocation elsewhere = chunkStore.stage(moved, StorageTier.COLD);
+        // Another node moves the chunk once this run has read it
+        doAnswer(invocation -> {
+            List<ChunkEntity> chunks = findAll(invocation.getArgument(0));
+            row.moveTo(elsewhere);
+            row.compressionType = "ZSTD";
+            return chunks;
+        }).when(chunkRepository).findAllById(any());
+
+        migrator.migrate();
+
+        long written = packIds.get();
+        assertNotEquals(elsewhere.packId(), written);
+        assertEquals(elsewhere.packId(), row.packId);
+        assertTrue(rows.values().stream().noneMatch(other -> other.packId == written));
+        assertArrayEquals(data, contentLoader.loadRaw(1));
+    }
+
+    private Row store(long id, byte[] stored, String compressionType, int originalSize, StorageTier tier,
+            LocalDateTime lastUsed) {
+        Row row = new Row(id, chunkStore.stage(stored, tier), compressionType, originalSize, lastUsed);
+        rows.put(id, row);
+        return row;
+    }
+
+    private ChunkEntity load(Row row) {
+        ChunkEntity chunk = entity(row);
+        chunkStore.load(List.of(chunk));
+        return chunk;
+    }
+
+    private List<ChunkEntity> findAll(Iterable<Long> ids) {
+        List<ChunkEntity> chunks = new ArrayList<>();
+        ids.forEach(id -> chunks.add(entity(rows.get(id))));
+        return chunks;
+    }
+
+    private static ChunkEntity entity(Row row) {
+        ChunkEntity chunk = new ChunkEntity();
+        chunk.setId(row.id);
+        chunk.setCompressionType(row.compressionType);
+        chunk.setOriginalSize(row.originalSize);
+        ReflectionTestUtils.setField(chunk, "packId", row.packId);
+        ReflectionTestUtils.setField(chunk, "packOffset", row.packOffset);
+        ReflectionTestUtils.setField(chunk, "storedSize", row.storedSize);
+        return chunk;
+    }
+
+    private static byte[] textBytes(long seed, int length) {
+        byte[] data = new byte[length];
+        Random random = new Random(seed);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(4) + 'a');
+        }
+        return data;
+    }
+}
@@ -0,0 +1,55 @@
+package com.goofy.GoofyDocs.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalObjectStoreTest {
+
+    @Test
+    void testMultipartObjectIsReadBackByRange(@TempDir Path root) throws IOException {
+        LocalObjectStore store = new LocalObjectStore(root);
+        byte[] first = randomBytes(1, 5000);
+        byte[] second = randomBytes(2, 3000);
+
+        String uploadId = store.createMultipartUpload("chunks/1");
+        String secondTag = store.uploadPart("chunks/1", uploadId, 2, second);
+        String firstTag = store.uploadPart("chunks/1", uploadId, 1, first);
+        assertThrows(NoSuchFileException.class, () -> store.getRange("chunks/1", 0, 1));
+        store.completeMultipartUpload("chunks/1", uploadId, List.of(firstTag, secondTag));
+
+        assertArrayEquals(Arrays.copyOfRange(first, 100, 200), store.getRange("chunks/1", 100, 100));
+        byte[] across = store.getRange("chunks/1", 4990, 20);
+        assertArrayEquals(Arrays.copyOfRange(first, 4990, 5000), Arrays.copyOfRange(across, 0, 10));
+        assertArrayEquals(Arrays.copyOfRange(second, 0, 10), Arrays.copyOfRange(across, 10, 20));
+        assertThrows(IOException.class, () -> store.getRange("chunks/1", 7990, 20));
+    }
+
+    @Test
+    void testAbortedUploadLeavesNothingBehind(@TempDir Path root) throws IOException {
+        LocalObjectStore store = new LocalObjectStore(root);
+        String uploadId = store.createMultipartUpload("chunks/2");
+        store.uploadPart("chunks/2", uploadId, 1, randomBytes(3, 1000));
+        store.abortMultipartUpload("chunks/2", uploadId);
+
+        assertFalse(Files.exists(root.resolve(".uploads").resolve(uploadId)));
+        assertThrows(IOException.class, () -> store.completeMultipartUpload("chunks/2", uploadId, List.of()));
+        assertThrows(IOException.class, () -> store.put("../outside", new byte[1]));
+    }
+
+    private static byte[] randomBytes(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}